@@ -48,14 +48,15 @@ import java.awt.Rectangle;
  */
 public class FindLocalMaxima {
 
-   private static final GaussianBlur FILTER = new GaussianBlur();
-   private static final ImageCalculator IMAGECALCULATOR = new ImageCalculator();
-
    public enum FilterType {
       NONE,
       GAUSSIAN1_5
    }
 
+   // per thread copy of the pixel values, so that repeated calls (one per frame)
+   // do not allocate a new array every time
+   private static final ThreadLocal<int[]> WORKSPACE = new ThreadLocal<int[]>();
+
    /**
     * Static utility function to find local maxima in an Image
     *
@@ -66,8 +67,6 @@ public class FindLocalMaxima {
     * @return Polygon with maxima
     */
    public static Polygon findMax(ImagePlus iPlus, int n, int threshold, FilterType filterType) {
-      Polygon maxima = new Polygon();
-
       ImageProcessor iProc = iPlus.getProcessor();
       Rectangle roi = iProc.getRoi();
       // HACK: need to figure out the underlying cause, but make it workable for now
@@ -77,42 +76,67 @@ public class FindLocalMaxima {
          roi.height = iProc.getHeight();
          roi.width = iProc.getWidth();
       }
+      return findMax(iProc, roi, n, threshold, filterType);
+   }
+
+   /**
+    * Finds local maxima in the given area of an ImageProcessor.  Does not
+    * change the processor, and does not need an ImagePlus, so that several
+    * threads can each look for maxima in their own image.
+    *
+    * @param iProc      - ImageProcessor in which to look for local maxima
+    * @param roi        - area to search (clipped to the image)
+    * @param n          - minimum distance to other local maximum
+    * @param threshold  - value below which a maximum will be rejected
+    * @param filterType - Prefilter the image.  Either none or Gaussian1_5
+    * @return Polygon with maxima
+    */
+   public static Polygon findMax(ImageProcessor iProc, Rectangle roi, int n, int threshold,
+         FilterType filterType) {
+      Polygon maxima = new Polygon();
+      roi = roi.intersection(new Rectangle(0, 0, iProc.getWidth(), iProc.getHeight()));
 
       // Prefilter if needed
       if  (filterType == GAUSSIAN1_5) {
          // TODO: if there is an ROI, we only need to filter_ in the ROI
          ImageProcessor iProcG1 = iProc.duplicate();
          ImageProcessor iProcG5 = iProc.duplicate();
-         FILTER.blurGaussian(iProcG1, 0.4, 0.4, 0.01);
-         FILTER.blurGaussian(iProcG5, 2.0, 2.0, 0.01);
+         GaussianBlur filter = new GaussianBlur();
+         filter.blurGaussian(iProcG1, 0.4, 0.4, 0.01);
+         filter.blurGaussian(iProcG5, 2.0, 2.0, 0.01);
          ImagePlus p1 = new ImagePlus("G1", iProcG1);
          ImagePlus p5 = new ImagePlus("G5", iProcG5);
-         IMAGECALCULATOR.run("subtract", p1, p5);
+         new ImageCalculator().run("subtract", p1, p5);
          iProc = p1.getProcessor();
       }
 
+      final int width = iProc.getWidth();
+      final int[] values = pixelValues(iProc);
+
       for (int x = roi.x + n; x < roi.width + roi.x - n - 1; x++) {
          for (int y = roi.y + n; y < roi.height + roi.y - n - 1; y++) {
             // Is this a local maximum?
+            final int value = values[y * width + x];
             boolean failed = false;
-            for (int mx = x - n; mx < x + n && !failed; mx++) {
-               for (int my = y - n; my < y + n && !failed; my++) {
-                  if (iProc.get(mx, my) > iProc.get(x, y)) {
+            for (int my = y - n; my < y + n && !failed; my++) {
+               final int rowOffset = my * width;
+               for (int mx = x - n; mx < x + n; mx++) {
+                  final int other = values[rowOffset + mx];
+                  // special handling of pixels of equal intensity: avoid excluding
+                  // x,y itself, when there are multiple pixel of same intensity
+                  // in the box, take the first one
+                  if (other > value || (other == value && (mx > x || my > y))) {
                      failed = true;
-                  } else if (iProc.get(mx, my) == iProc.get(x, y)) {
-                     // special handling of pixels of equal intensity
-                     if (mx > x || my > y) {
-                        // avoid excluding x,y itself, when there are multiple 
-                        // pixel of same intensity in the box, take the first one
-                        failed = true;
-                     }
+                     break;
                   }
                }
             }
             if (!failed) {
-               int cornerAverage = (iProc.get(x - n, y - n) + iProc.get(x - n, y + n)
-                       + iProc.get(x + n, y - n) + iProc.get(x + n, y + n)) / 4;
-               if (iProc.get(x, y) - threshold > cornerAverage) {
+               int cornerAverage = (values[(y - n) * width + x - n]
+                       + values[(y + n) * width + x - n]
+                       + values[(y - n) * width + x + n]
+                       + values[(y + n) * width + x + n]) / 4;
+               if (value - threshold > cornerAverage) {
                   maxima.addPoint(x, y);
                }
             }
@@ -124,6 +148,36 @@ public class FindLocalMaxima {
       return maxima;
    }
 
+   /**
+    * Copies the values of all pixels (as returned by ImageProcessor.get()) into
+    * this thread's workspace array.
+    */
+   private static int[] pixelValues(ImageProcessor iProc) {
+      final int size = iProc.getWidth() * iProc.getHeight();
+      int[] values = WORKSPACE.get();
+      if (values == null || values.length < size) {
+         values = new int[size];
+         WORKSPACE.set(values);
+      }
+      Object pixels = iProc.getPixels();
+      if (pixels instanceof short[]) {
+         short[] p = (short[]) pixels;
+         for (int i = 0; i < size; i++) {
+            values[i] = p[i] & 0xffff;
+         }
+      } else if (pixels instanceof byte[]) {
+         byte[] p = (byte[]) pixels;
+         for (int i = 0; i < size; i++) {
+            values[i] = p[i] & 0xff;
+         }
+      } else {
+         for (int i = 0; i < size; i++) {
+            values[i] = iProc.get(i);
+         }
+      }
+      return values;
+   }
+
 
    // Filters local maxima list using the ImageJ findMaxima Threshold algorithm
    public static Polygon noiseFilter(ImageProcessor iProc, Polygon inputPoints, int threshold) {
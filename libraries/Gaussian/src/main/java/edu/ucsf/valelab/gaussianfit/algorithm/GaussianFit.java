@@ -112,6 +112,9 @@ public class GaussianFit {
    MultiVariateGaussianMLE mGFMLE_;
    NonLinearConjugateGradientOptimizer nlcgo_;
    LevenbergMarquardtOptimizer lMO_;
+   // Reused from spot to spot, so that fitting does not allocate these every time
+   CurveFitter curveFitter_;
+   ParametricGaussianFunction pGF_;
 
 
    /**
@@ -166,6 +169,7 @@ public class GaussianFit {
          lMO_ = new LevenbergMarquardtOptimizer();
          LMChecker lmChecker = new LMChecker();
          lMO_.setConvergenceChecker(lmChecker);
+         curveFitter_ = new CurveFitter(lMO_);
       }
       if (fitMode_ == NELDERMEADMLE) {
          nm_ = new NelderMead();
@@ -231,7 +235,8 @@ public class GaussianFit {
       if (fitMode_ == LEVENBERGMARQUARD || fitMode_ == LEVENBERGMARQUARDMLE) {
 
          // lMO_.setMaxIterations(maxIterations);
-         CurveFitter cF = new CurveFitter(lMO_);
+         CurveFitter cF = curveFitter_;
+         cF.clearObservations();
          short[] pixels = (short[]) siProc.getPixels();
          if (fitMode_ == LEVENBERGMARQUARD) {
             for (int i = 0; i < pixels.length; i++) {
@@ -245,9 +250,10 @@ public class GaussianFit {
             }
          }
          try {
-            paramsOut = cF.fit(new ParametricGaussianFunction(
-                        shape_, siProc.getWidth(), fixedWidth_),
-                  estimate.getParms());
+            if (pGF_ == null || pGF_.getImageWidth() != siProc.getWidth()) {
+               pGF_ = new ParametricGaussianFunction(shape_, siProc.getWidth(), fixedWidth_);
+            }
+            paramsOut = cF.fit(pGF_, estimate.getParms());
          } catch (FunctionEvaluationException ex) {
             ReportingUtils.logError(ex.getMessage());
          } catch (OptimizationException ex) {
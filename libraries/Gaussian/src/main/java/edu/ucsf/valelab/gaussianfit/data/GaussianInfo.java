@@ -293,6 +293,20 @@ public class GaussianInfo {
       return widthNm_;
    }
 
+   /**
+    * Applies the width and number of photons filters to a fitted spot.
+    *
+    * @param spotData result of a Gaussian fit
+    * @return true if the spot should be kept
+    */
+   protected boolean passesFilters(SpotData spotData) {
+      return (!useWidthFilter_
+            || (spotData.getWidth() > widthMin_ && spotData.getWidth() < widthMax_))
+            && (!useNrPhotonsFilter_
+            || (spotData.getIntensity() > nrPhotonsMin_
+            && spotData.getIntensity() < nrPhotonsMax_));
+   }
+
    public void copy(GaussianInfo source) {
       setBaseLevel(source.getBaseLevel());
       setChannelsToSkip(source.getChannelsToSkip());
@@ -38,28 +38,24 @@ import edu.ucsf.valelab.gaussianfit.data.GaussianInfo;
 import edu.ucsf.valelab.gaussianfit.data.RowData;
 import edu.ucsf.valelab.gaussianfit.data.SpotData;
 import edu.ucsf.valelab.gaussianfit.fitting.ZCalibrator;
-import edu.ucsf.valelab.gaussianfit.utils.ProgressThread;
 import edu.ucsf.valelab.gaussianfit.utils.ReportingUtils;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.gui.Roi;
 import ij.plugin.HyperStackConverter;
-import ij.plugin.frame.RoiManager;
 import ij.process.ImageProcessor;
 import ij.process.ShortProcessor;
-import java.awt.Polygon;
+import java.awt.Rectangle;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.micromanager.Studio;
 import org.micromanager.data.Coords;
 import org.micromanager.data.Coords.CoordsBuilder;
@@ -73,7 +69,11 @@ public class FitAllThread extends GaussianInfo implements Runnable {
 
    double[] params0_;
    double[] steps_ = new double[5];
-   GaussianFitStackThread[] gfsThreads_;
+   private volatile FrameFitWorker[] workers_;
+   // statistics of the analysis, summed over all threads
+   private long detectionNs_;
+   private long fitNs_;
+   private int imagesAnalyzed_;
    private volatile Thread t_ = null;
    private static boolean running_ = false;
    private final FindLocalMaxima.FilterType preFilterType_;
@@ -113,10 +113,10 @@ public class FitAllThread extends GaussianInfo implements Runnable {
    }
 
    public synchronized void stop() {
-      if (gfsThreads_ != null) {
-         for (GaussianFitStackThread gfsThread : gfsThreads_) {
-            if (gfsThread != null) {
-               gfsThread.stop();
+      if (workers_ != null) {
+         for (FrameFitWorker worker : workers_) {
+            if (worker != null) {
+               worker.stop();
             }
          }
       }
@@ -139,9 +139,10 @@ public class FitAllThread extends GaussianInfo implements Runnable {
    @Override
    public void run() {
 
-      // List with spot positions found through the Find Maxima command
-      sourceList_ = new LinkedBlockingQueue<SpotData>();
       resultList_ = Collections.synchronizedList(new ArrayList<SpotData>());
+      detectionNs_ = 0;
+      fitNs_ = 0;
+      imagesAnalyzed_ = 0;
 
       // take the active ImageJ image
       ImagePlus siPlus;
@@ -295,22 +296,21 @@ public class FitAllThread extends GaussianInfo implements Runnable {
       studio_.alerts().postAlert("Spot analysis results", FitAllThread.class,
             "Analyzed " + resultList_.size() + " spots in " + df2.format(took)
                   + " seconds (" + df0.format(rate) + " spots/sec.)");
+      // per thread numbers, to see whether we scale with the number of threads
+      double detectionS = detectionNs_ / 1E9;
+      double fitS = fitNs_ / 1E9;
+      studio_.logs().logMessage("Gaussian fit: " + imagesAnalyzed_ + " images, "
+            + resultList_.size() + " spots, " + nrThreads_ + " threads.  Spot finding: "
+            + df2.format(detectionS) + " thread-seconds ("
+            + df0.format(imagesAnalyzed_ / Math.max(detectionS, 1E-9))
+            + " images/thread-sec.), fitting: " + df2.format(fitS) + " thread-seconds ("
+            + df0.format(resultList_.size() / Math.max(fitS, 1E-9))
+            + " spots/thread-sec.)");
 
       running_ = false;
    }
 
-   @SuppressWarnings("unchecked")
    private int analyzeImagePlus(ImagePlus siPlus, int position, Roi originalRoi) {
-      int halfSize = super.getHalfBoxSize();
-      int nrSpots = 0;
-      // Start up IJ.Prefs.getThreads() threads for gaussian fitting
-      gfsThreads_ = new GaussianFitStackThread[nrThreads_];
-      Future<?>[] futures = new Future<?>[nrThreads_];
-      for (int i = 0; i < nrThreads_; i++) {
-         gfsThreads_[i] = new GaussianFitStackThread(sourceList_, resultList_, siPlus);
-         gfsThreads_[i].copy(this);
-         futures[i] = threadPool_.submit(gfsThreads_[i]);
-      }
       final int shownChannel = siPlus.getChannel();
       final int shownSlice = siPlus.getSlice();
       final int shownFrame = siPlus.getFrame();
@@ -320,168 +320,63 @@ public class FitAllThread extends GaussianInfo implements Runnable {
          siPlus.setPosition(i, siPlus.getCurrentSlice(), siPlus.getFrame());
       }
 
-      int nrChannels = siPlus.getNChannels();
-      if (skipChannels_) {
-         nrChannels -= channelsToSkip_.length;
-      }
-      int nrImages = nrChannels * siPlus.getNSlices() * siPlus.getNFrames();
-      int imageCount = 0;
-      try {
-         for (int c = 1; c <= siPlus.getNChannels(); c++) {
-            if (!running_) {
-               break;
-            }
-            if (!skipChannels_ || !inArray(channelsToSkip_, c)) {
-               for (int z = 1; z <= siPlus.getNSlices(); z++) {
-                  if (!running_) {
-                     break;
-                  }
-                  for (int f = 1; f <= siPlus.getNFrames(); f++) {
-                     if (!running_) {
-                        break;
-                     }
-                     // to avoid making a gigantic sourceList and running out of memory
-                     // sleep a bit when the sourcesize gets too big
-                     // once we have very fast multi-core computers, this constant can be increased
-                     if (sourceList_.size() > 100000) {
-                        try {
-                           Thread.sleep(1000);
-                        } catch (InterruptedException ex) {
-                           // not sure what to do
-                        }
-                     }
-
-                     imageCount++;
-                     ij.IJ.showStatus("Processing image " + imageCount);
-
-                     ImageProcessor siProc = null;
-                     Polygon p = new Polygon();
-                     synchronized (SpotData.LOCK_IP) {
-                        siPlus.setPositionWithoutUpdate(c, z, f);
-                        // If ROI manager is used, use RoiManager Rois
-                        //  may be dangerous if the user is not aware
-                        RoiManager roiM = RoiManager.getInstance();
-                        Roi[] rois = null;
-                        //if (roiM != null && roiM.getSelectedIndex() > -1 ) {
-                        //   rois = roiM.getSelectedRoisAsArray();
-                        //}
-                        if (rois != null && rois.length > 0) {
-                           for (Roi roi : rois) {
-                              siPlus.setRoi(roi, false);
-                              siProc = siPlus.getProcessor();
-                              Polygon q = FindLocalMaxima.findMax(siPlus,
-                                    2 * super.getHalfBoxSize(), noiseTolerance_,
-                                    preFilterType_);
-                              for (int i = 0; i < q.npoints; i++) {
-                                 p.addPoint(q.xpoints[i], q.ypoints[i]);
-                              }
-                           }
-                        } else {  // no Rois in RoiManager
-                           siPlus.setRoi(originalRoi, false);
-                           siProc = siPlus.getProcessor();
-                           p = FindLocalMaxima
-                                 .findMax(siPlus, 2 * super.getHalfBoxSize(), noiseTolerance_,
-                                       preFilterType_);
-                        }
-                     }
-
-                     ij.IJ.showProgress(imageCount, nrImages);
-
-                     if (p.npoints > nrSpots) {
-                        nrSpots = p.npoints;
-                     }
-                     int[][] sC = new int[p.npoints][2];
-                     for (int j = 0; j < p.npoints; j++) {
-                        sC[j][0] = p.xpoints[j];
-                        sC[j][1] = p.ypoints[j];
-                     }
-
-                     Arrays.sort(sC, new SpotSortComparator());
-
-                     for (int j = 0; j < sC.length; j++) {
-                        // filter out spots too close to the edge
-                        if (sC[j][0] > halfSize && sC[j][0] < siPlus.getWidth() - halfSize
-                              && sC[j][1] > halfSize && sC[j][1] < siPlus.getHeight() - halfSize) {
-                           ImageProcessor sp = SpotData.getSpotProcessor(siProc,
-                                 halfSize, sC[j][0], sC[j][1]);
-                           if (sp == null) {
-                              continue;
-                           }
-                           int channel = c;
-
-                           SpotData thisSpot = new SpotData(sp, channel, z, f,
-                                 position, j, sC[j][0], sC[j][1]);
-                           try {
-                              sourceList_.put(thisSpot);
-                           } catch (InterruptedException iex) {
-                              Thread.currentThread().interrupt();
-                              throw new RuntimeException("Unexpected interruption");
-                           }
-                        }
-                     }
-                  }
+      // Images to analyze, in the order we used to analyze them one by one
+      List<int[]> images = new ArrayList<int[]>();
+      for (int c = 1; c <= siPlus.getNChannels(); c++) {
+         if (!skipChannels_ || !inArray(channelsToSkip_, c)) {
+            for (int z = 1; z <= siPlus.getNSlices(); z++) {
+               for (int f = 1; f <= siPlus.getNFrames(); f++) {
+                  images.add(new int[] {c, z, f});
                }
             }
          }
-         // start ProgresBar thread
-         ProgressThread pt = new ProgressThread(sourceList_);
-         pt.init();
-
-
-      } catch (OutOfMemoryError ome) {
-         ij.IJ.error("Out Of Memory");
+      }
+      Rectangle searchArea = new Rectangle(0, 0, siPlus.getWidth(), siPlus.getHeight());
+      if (originalRoi != null) {
+         searchArea = searchArea.intersection(originalRoi.getBounds());
       }
 
-      // Send working threads signal that we are done:
-      SpotData lastSpot = new SpotData(null, -1, 1, -1, -1, -1, -1, -1);
-      try {
-         sourceList_.put(lastSpot);
-      } catch (InterruptedException iex) {
-         Thread.currentThread().interrupt();
-         throw new RuntimeException("Unexpected interruption");
+      // Each worker claims the next image that has not been analyzed yet, finds
+      // the spots in it, and fits them
+      AtomicInteger nextImage = new AtomicInteger(0);
+      AtomicInteger imagesDone = new AtomicInteger(0);
+      FrameFitWorker[] workers = new FrameFitWorker[nrThreads_];
+      Future<?>[] futures = new Future<?>[nrThreads_];
+      for (int i = 0; i < nrThreads_; i++) {
+         workers[i] = new FrameFitWorker(siPlus, position, images, nextImage, imagesDone,
+               searchArea, preFilterType_, resultList_);
+         workers[i].copy(this);
+      }
+      workers_ = workers;
+      for (int i = 0; i < nrThreads_; i++) {
+         if (!running_) {
+            workers[i].stop();
+         }
+         futures[i] = threadPool_.submit(workers[i]);
       }
 
       // wait for worker threads to finish
+      int nrSpots = 0;
       for (int i = 0; i < nrThreads_; i++) {
          try {
             futures[i].get();
-            gfsThreads_[i] = null;
          } catch (ExecutionException | InterruptedException ie) {
             ReportingUtils.logError(ie);
          }
+         nrSpots = Math.max(nrSpots, workers[i].getMaxSpotsPerImage());
+         detectionNs_ += workers[i].getDetectionNs();
+         fitNs_ += workers[i].getFitNs();
+         imagesAnalyzed_ += workers[i].getImagesAnalyzed();
       }
+      workers_ = null;
+      ij.IJ.showStatus("");
 
       siPlus.setPosition(shownChannel, shownSlice, shownFrame);
 
-      sourceList_.clear();
       return nrSpots;
    }
 
 
-   private class SpotSortComparator implements Comparator<int[]> {
-
-      // Return the result of comparing the two row arrays
-      @Override
-      public int compare(int[] p1, int[] p2) {
-         if (p1[0] < p2[0]) {
-            return -1;
-         }
-         if (p1[0] > p2[0]) {
-            return 1;
-         }
-         if (p1[0] == p2[0]) {
-            if (p1[1] < p2[1]) {
-               return -1;
-            }
-            if (p1[1] > p2[1]) {
-               return 1;
-            }
-         }
-         return 0;
-      }
-   }
-
-
    private static boolean inArray(int[] input, final int c) {
       for (final int n : input) {
          if (n == c) {
@@ -0,0 +1,214 @@
+/*
+Author: Nico Stuurman
+
+Copyright (c) 2013-2017, Regents of the University of California
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+ */
+
+package edu.ucsf.valelab.gaussianfit.fitmanagement;
+
+import edu.ucsf.valelab.gaussianfit.DataCollectionForm;
+import edu.ucsf.valelab.gaussianfit.algorithm.FindLocalMaxima;
+import edu.ucsf.valelab.gaussianfit.algorithm.GaussianFit;
+import edu.ucsf.valelab.gaussianfit.data.GaussianInfo;
+import edu.ucsf.valelab.gaussianfit.data.SpotData;
+import edu.ucsf.valelab.gaussianfit.fitting.ZCalibrator;
+import edu.ucsf.valelab.gaussianfit.utils.ReportingUtils;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds and fits all spots in a series of images.  Several of these workers
+ * share one list of images, and each takes the next image that has not been
+ * claimed yet, so that fast workers automatically take over work from slow ones.
+ * A worker finds the spots in an image and fits them right away, using its own
+ * GaussianFit instance for all spots.
+ *
+ * @author nico
+ */
+public class FrameFitWorker extends GaussianInfo implements Runnable {
+
+   private final int position_;
+   private final List<int[]> images_;  // channel, slice, frame (1-based)
+   private final AtomicInteger nextImage_;
+   private final AtomicInteger imagesDone_;
+   private final Rectangle searchArea_;
+   private final FindLocalMaxima.FilterType preFilterType_;
+   private volatile boolean stopNow_ = false;
+
+   // statistics, only valid after run() finished
+   private long detectionNs_ = 0;
+   private long fitNs_ = 0;
+   private int imagesAnalyzed_ = 0;
+   private int spotsFitted_ = 0;
+   private int maxSpotsPerImage_ = 0;
+
+   /**
+    * @param siPlus        image to analyze
+    * @param position      stage position number to record in the spot data
+    * @param images        list of channel, slice, frame (1-based) of images to analyze
+    * @param nextImage     index into images of the next image to analyze, shared between workers
+    * @param imagesDone    count of images analyzed, shared between workers
+    * @param searchArea    area of each image in which to look for spots
+    * @param preFilterType filter to apply before looking for spots
+    * @param resultList    receives the fitted spots. Needs to be thread safe.
+    */
+   public FrameFitWorker(ImagePlus siPlus, int position, List<int[]> images,
+         AtomicInteger nextImage, AtomicInteger imagesDone, Rectangle searchArea,
+         FindLocalMaxima.FilterType preFilterType, List<SpotData> resultList) {
+      siPlus_ = siPlus;
+      position_ = position;
+      images_ = images;
+      nextImage_ = nextImage;
+      imagesDone_ = imagesDone;
+      searchArea_ = searchArea;
+      preFilterType_ = preFilterType;
+      resultList_ = resultList;
+   }
+
+   public void stop() {
+      stopNow_ = true;
+   }
+
+   @Override
+   public void run() {
+      final int halfSize = super.getHalfBoxSize();
+      GaussianFit gs = new GaussianFit(super.getShape(), super.getFitMode(),
+            super.getUseFixedWidth(), super.getFixedWidthNm() / super.getPixelSize() / 2);
+      ZCalibrator zc = DataCollectionForm.zc_;
+      ImageStack stack = siPlus_.getStack();
+
+      int imageNr;
+      while (!stopNow_ && (imageNr = nextImage_.getAndIncrement()) < images_.size()) {
+         final int[] czf = images_.get(imageNr);
+         final long startTime = System.nanoTime();
+         ImageProcessor siProc;
+         synchronized (SpotData.LOCK_IP) {
+            // Returns a new processor (for virtual stacks read from disk), that
+            // only this thread uses
+            siProc = stack.getProcessor(siPlus_.getStackIndex(czf[0], czf[1], czf[2]));
+         }
+         Polygon p = FindLocalMaxima.findMax(siProc, searchArea_, 2 * halfSize,
+               noiseTolerance_, preFilterType_);
+         if (p.npoints > maxSpotsPerImage_) {
+            maxSpotsPerImage_ = p.npoints;
+         }
+         int[][] sC = new int[p.npoints][2];
+         for (int j = 0; j < p.npoints; j++) {
+            sC[j][0] = p.xpoints[j];
+            sC[j][1] = p.ypoints[j];
+         }
+         Arrays.sort(sC, SPOT_ORDER);
+         final long detectedTime = System.nanoTime();
+         detectionNs_ += detectedTime - startTime;
+
+         try {
+            for (int j = 0; j < sC.length && !stopNow_; j++) {
+               // filter out spots too close to the edge
+               if (sC[j][0] > halfSize && sC[j][0] < siPlus_.getWidth() - halfSize
+                     && sC[j][1] > halfSize && sC[j][1] < siPlus_.getHeight() - halfSize) {
+                  ImageProcessor sp;
+                  siProc.setRoi(sC[j][0] - halfSize, sC[j][1] - halfSize,
+                        2 * halfSize, 2 * halfSize);
+                  try {
+                     sp = siProc.crop();
+                  } catch (java.lang.ArrayIndexOutOfBoundsException ex) {
+                     continue;
+                  }
+                  SpotData spot = new SpotData(sp, czf[0], czf[1], czf[2],
+                        position_, j, sC[j][0], sC[j][1]);
+                  GaussianFit.Data fitResult = gs.dogaussianfit(sp, maxIterations_);
+                  SpotData spotData = SpotDataConverter.convert(spot, fitResult, this, zc);
+                  if (fitResult.getParms().length > 1 && passesFilters(spotData)) {
+                     resultList_.add(spotData);
+                     spotsFitted_++;
+                  }
+               }
+            }
+         } catch (Exception ex) {
+            ReportingUtils.logError(ex);
+            ReportingUtils.logError("Thread run out of memory  "
+                  + Thread.currentThread().getName());
+            ReportingUtils.showError("Fitter out of memory.\n"
+                  + "Out of memory error");
+            return;
+         }
+         fitNs_ += System.nanoTime() - detectedTime;
+         imagesAnalyzed_++;
+
+         int done = imagesDone_.incrementAndGet();
+         ij.IJ.showStatus("Processing image " + done);
+         ij.IJ.showProgress(done, images_.size());
+      }
+   }
+
+   /**
+    * Time spent finding spots, in nanoseconds.
+    */
+   public long getDetectionNs() {
+      return detectionNs_;
+   }
+
+   /**
+    * Time spent fitting spots, in nanoseconds.
+    */
+   public long getFitNs() {
+      return fitNs_;
+   }
+
+   public int getImagesAnalyzed() {
+      return imagesAnalyzed_;
+   }
+
+   public int getSpotsFitted() {
+      return spotsFitted_;
+   }
+
+   public int getMaxSpotsPerImage() {
+      return maxSpotsPerImage_;
+   }
+
+   private static final Comparator<int[]> SPOT_ORDER = new Comparator<int[]>() {
+      @Override
+      public int compare(int[] p1, int[] p2) {
+         if (p1[0] != p2[0]) {
+            return p1[0] < p2[0] ? -1 : 1;
+         }
+         if (p1[1] != p2[1]) {
+            return p1[1] < p2[1] ? -1 : 1;
+         }
+         return 0;
+      }
+   };
+}
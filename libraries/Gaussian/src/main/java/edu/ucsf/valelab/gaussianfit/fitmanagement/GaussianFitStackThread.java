@@ -109,12 +109,7 @@ public class GaussianFitStackThread extends GaussianInfo implements Runnable {
             // those when spot goes out of scope
             SpotData spotData = SpotDataConverter.convert(spot, fitResult, this, zc);
 
-            if (fitResult.getParms().length > 1
-                    && (!useWidthFilter_
-                    || (spotData.getWidth() > widthMin_ && spotData.getWidth() < widthMax_))
-                  && (!useNrPhotonsFilter_
-                    || (spotData.getIntensity() > nrPhotonsMin_
-                    && spotData.getIntensity() < nrPhotonsMax_))) {
+            if (fitResult.getParms().length > 1 && passesFilters(spotData)) {
                resultList_.add(spotData);
             }
 
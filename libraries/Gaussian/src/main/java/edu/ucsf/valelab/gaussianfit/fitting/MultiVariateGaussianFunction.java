@@ -64,7 +64,10 @@ public class MultiVariateGaussianFunction implements MultivariateRealFunction {
    }
 
    public void setImage(short[] data, int width, int height) {
-      data_ = new int[data.length];
+      // reuse the array, this is called for every spot
+      if (data_ == null || data_.length != data.length) {
+         data_ = new int[data.length];
+      }
       for (int i = 0; i < data.length; i++) {
          data_[i] = (int) data[i] & 0xffff;
       }
@@ -58,6 +58,10 @@ public class ParametricGaussianFunction implements ParametricRealFunction {
       fitWidth_ = s <= 0.0;
    }
 
+   public int getImageWidth() {
+      return imageWidth_;
+   }
+
    /**
     * @param d       - index into the pixel array, used to calculate x,y coordinates
     * @param doubles
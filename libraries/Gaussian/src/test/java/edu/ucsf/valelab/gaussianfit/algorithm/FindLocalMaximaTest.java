@@ -0,0 +1,165 @@
+package edu.ucsf.valelab.gaussianfit.algorithm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import edu.ucsf.valelab.gaussianfit.algorithm.FindLocalMaxima.FilterType;
+import ij.ImagePlus;
+import ij.plugin.ImageCalculator;
+import ij.plugin.filter.GaussianBlur;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks that {@link FindLocalMaxima} finds the same maxima as the version
+ * that called ImageProcessor.get() for every pixel of every box.
+ */
+public class FindLocalMaximaTest {
+   private static final int WIDTH = 131;
+   private static final int HEIGHT = 97;
+
+   /**
+    * Gaussian spots on a noisy background, plus a few plateaus of equal
+    * intensity, so that the rule for pixels of equal intensity is exercised.
+    */
+   static ShortProcessor spots(long seed) {
+      Random random = new Random(seed);
+      ShortProcessor proc = new ShortProcessor(WIDTH, HEIGHT);
+      for (int i = 0; i < WIDTH * HEIGHT; i++) {
+         proc.set(i, 100 + random.nextInt(20));
+      }
+      for (int spot = 0; spot < 40; spot++) {
+         double cx = random.nextDouble() * WIDTH;
+         double cy = random.nextDouble() * HEIGHT;
+         double amplitude = 50 + random.nextInt(2000);
+         for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+               double d2 = (x - cx) * (x - cx) + (y - cy) * (y - cy);
+               if (d2 < 36) {
+                  proc.set(x, y, proc.get(x, y) + (int) (amplitude * Math.exp(-d2 / 2.5)));
+               }
+            }
+         }
+      }
+      for (int plateau = 0; plateau < 5; plateau++) {
+         int px = random.nextInt(WIDTH - 3);
+         int py = random.nextInt(HEIGHT - 3);
+         for (int y = py; y < py + 3; y++) {
+            for (int x = px; x < px + 3; x++) {
+               proc.set(x, y, 3000);
+            }
+         }
+      }
+      return proc;
+   }
+
+   /**
+    * FindLocalMaxima.findMax before it worked on a copy of the pixel values.
+    */
+   private static Polygon legacyFindMax(ImageProcessor iProc, Rectangle roi, int n,
+                                        int threshold, FilterType filterType) {
+      Polygon maxima = new Polygon();
+      if (filterType == FilterType.GAUSSIAN1_5) {
+         ImageProcessor iProcG1 = iProc.duplicate();
+         ImageProcessor iProcG5 = iProc.duplicate();
+         GaussianBlur filter = new GaussianBlur();
+         filter.blurGaussian(iProcG1, 0.4, 0.4, 0.01);
+         filter.blurGaussian(iProcG5, 2.0, 2.0, 0.01);
+         ImagePlus p1 = new ImagePlus("G1", iProcG1);
+         ImagePlus p5 = new ImagePlus("G5", iProcG5);
+         new ImageCalculator().run("subtract", p1, p5);
+         iProc = p1.getProcessor();
+      }
+      for (int x = roi.x + n; x < roi.width + roi.x - n - 1; x++) {
+         for (int y = roi.y + n; y < roi.height + roi.y - n - 1; y++) {
+            boolean failed = false;
+            for (int mx = x - n; mx < x + n && !failed; mx++) {
+               for (int my = y - n; my < y + n && !failed; my++) {
+                  if (iProc.get(mx, my) > iProc.get(x, y)) {
+                     failed = true;
+                  } else if (iProc.get(mx, my) == iProc.get(x, y)) {
+                     if (mx > x || my > y) {
+                        failed = true;
+                     }
+                  }
+               }
+            }
+            if (!failed) {
+               int cornerAverage = (iProc.get(x - n, y - n) + iProc.get(x - n, y + n)
+                       + iProc.get(x + n, y - n) + iProc.get(x + n, y + n)) / 4;
+               if (iProc.get(x, y) - threshold > cornerAverage) {
+                  maxima.addPoint(x, y);
+               }
+            }
+         }
+      }
+      return maxima;
+   }
+
+   private static void assertSameMaxima(String message, Polygon expected, Polygon actual) {
+      assertEquals(message, expected.npoints, actual.npoints);
+      assertArrayEquals(message, Arrays.copyOf(expected.xpoints, expected.npoints),
+            Arrays.copyOf(actual.xpoints, actual.npoints));
+      assertArrayEquals(message, Arrays.copyOf(expected.ypoints, expected.npoints),
+            Arrays.copyOf(actual.ypoints, actual.npoints));
+   }
+
+   private static void check(long seed, Rectangle roi, int n, int threshold,
+                             FilterType filterType) {
+      ShortProcessor proc = spots(seed);
+      short[] before = ((short[]) proc.getPixels()).clone();
+      Polygon expected = legacyFindMax(proc, roi, n, threshold, filterType);
+      Polygon actual = FindLocalMaxima.findMax(proc, roi, n, threshold, filterType);
+      String message = "seed " + seed + ", " + roi + ", n " + n + ", threshold " + threshold
+            + ", " + filterType;
+      assertSameMaxima(message, expected, actual);
+      // The image itself is left alone
+      assertArrayEquals(before, (short[]) proc.getPixels());
+   }
+
+   @Test
+   public void maximaMatchLegacyImplementation() {
+      Rectangle all = new Rectangle(0, 0, WIDTH, HEIGHT);
+      Rectangle part = new Rectangle(17, 9, 60, 45);
+      for (long seed = 1; seed <= 5; seed++) {
+         for (FilterType filterType : FilterType.values()) {
+            for (int n : new int[] {1, 3, 5}) {
+               check(seed, all, n, 0, filterType);
+               check(seed, all, n, 50, filterType);
+               check(seed, part, n, 20, filterType);
+            }
+         }
+      }
+   }
+
+   @Test
+   public void plateausGiveOneMaximum() {
+      ShortProcessor proc = new ShortProcessor(20, 20);
+      for (int y = 8; y < 11; y++) {
+         for (int x = 8; x < 11; x++) {
+            proc.set(x, y, 500);
+         }
+      }
+      Rectangle all = new Rectangle(0, 0, 20, 20);
+      Polygon maxima = FindLocalMaxima.findMax(proc, all, 3, 10, FilterType.NONE);
+      assertSameMaxima("plateau", legacyFindMax(proc, all, 3, 10, FilterType.NONE), maxima);
+      assertEquals(1, maxima.npoints);
+   }
+
+   @Test
+   public void imagePlusUsesItsRoi() {
+      ShortProcessor proc = spots(7);
+      ImagePlus iPlus = new ImagePlus("spots", proc);
+      Rectangle part = new Rectangle(30, 20, 50, 40);
+      iPlus.setRoi(part);
+      Polygon maxima = FindLocalMaxima.findMax(iPlus, 3, 20, FilterType.NONE);
+      assertSameMaxima("roi", legacyFindMax(proc, part, 3, 20, FilterType.NONE), maxima);
+      assertTrue(maxima.npoints > 0);
+   }
+}
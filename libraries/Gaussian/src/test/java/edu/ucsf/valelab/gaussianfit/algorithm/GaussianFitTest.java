@@ -0,0 +1,89 @@
+package edu.ucsf.valelab.gaussianfit.algorithm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import edu.ucsf.valelab.gaussianfit.fitting.MultiVariateGaussianFunction;
+import edu.ucsf.valelab.gaussianfit.fitting.MultiVariateGaussianMLE;
+import ij.process.ShortProcessor;
+import java.util.Random;
+import org.apache.commons.math.optimization.fitting.CurveFitter;
+import org.junit.Test;
+
+/**
+ * Checks that a {@link GaussianFit} that fits one spot after the other gives
+ * the same results as allocating the curve fitter, fit function and cost
+ * function data for every spot, as it did before they were reused.
+ */
+public class GaussianFitTest {
+   private static final int MAX_ITERATIONS = 2000;
+
+   /**
+    * A noisy Gaussian spot of the given size, not quite centered.
+    */
+   private static ShortProcessor spot(int size, Random random) {
+      ShortProcessor proc = new ShortProcessor(size, size);
+      double cx = size / 2.0 - 0.5 + random.nextDouble() - 0.5;
+      double cy = size / 2.0 - 0.5 + random.nextDouble() - 0.5;
+      double sigma = 0.9 + random.nextDouble() * 0.6;
+      double amplitude = 500 + random.nextInt(3000);
+      for (int y = 0; y < size; y++) {
+         for (int x = 0; x < size; x++) {
+            double d2 = (x - cx) * (x - cx) + (y - cy) * (y - cy);
+            proc.set(x, y, (int) (200 + random.nextInt(30)
+                  + amplitude * Math.exp(-d2 / (2 * sigma * sigma))));
+         }
+      }
+      return proc;
+   }
+
+   /**
+    * What dogaussianfit allocated for every spot before they were reused.
+    */
+   private static void freshState(GaussianFit fit) {
+      if (fit.lMO_ != null) {
+         fit.curveFitter_ = new CurveFitter(fit.lMO_);
+         fit.pGF_ = null;
+      }
+      if (fit.mGF_ != null) {
+         fit.mGF_ = new MultiVariateGaussianFunction(fit.shape_, fit.fixedWidth_);
+      }
+      if (fit.mGFMLE_ != null) {
+         fit.mGFMLE_ = new MultiVariateGaussianMLE(fit.shape_, fit.fixedWidth_);
+      }
+   }
+
+   private static void check(int shape, int fitMode, boolean fixWidth, long seed) {
+      GaussianFit reused = new GaussianFit(shape, fitMode, fixWidth, 1.2);
+      GaussianFit fresh = new GaussianFit(shape, fitMode, fixWidth, 1.2);
+      Random random = new Random(seed);
+      for (int i = 0; i < 30; i++) {
+         // Spot sizes change now and then, as they do between fits with
+         // different box sizes
+         ShortProcessor proc = spot(i < 20 ? 9 : 11, random);
+         double[] actual = reused.dogaussianfit(proc, MAX_ITERATIONS).getParms().clone();
+         freshState(fresh);
+         double[] expected = fresh.dogaussianfit(proc, MAX_ITERATIONS).getParms().clone();
+         String message = "shape " + shape + ", mode " + fitMode + ", fixed width "
+               + fixWidth + ", spot " + i;
+         assertArrayEquals(message, expected, actual, 0.0);
+         assertEquals(message, proc.getWidth() / 2.0, actual[GaussianFit.XC], 1.5);
+         assertEquals(message, proc.getHeight() / 2.0, actual[GaussianFit.YC], 1.5);
+      }
+   }
+
+   @Test
+   public void levenbergMarquardtFitsMatchFreshFitter() {
+      check(GaussianFit.CIRCLE, GaussianFit.LEVENBERGMARQUARD, false, 1);
+      check(GaussianFit.ASYMMETRIC, GaussianFit.LEVENBERGMARQUARD, false, 2);
+      check(GaussianFit.CIRCLE, GaussianFit.LEVENBERGMARQUARD, true, 3);
+      check(GaussianFit.CIRCLE, GaussianFit.LEVENBERGMARQUARDMLE, false, 4);
+   }
+
+   @Test
+   public void simplexFitsMatchFreshCostFunction() {
+      check(GaussianFit.CIRCLE, GaussianFit.NELDERMEAD, false, 5);
+      check(GaussianFit.ELLIPSE, GaussianFit.NELDERMEAD, false, 6);
+      check(GaussianFit.CIRCLE, GaussianFit.NELDERMEADMLE, false, 7);
+   }
+}
@@ -32,13 +32,17 @@
 package org.micromanager.imageprocessing;
 
 import ij.gui.OvalRoi;
+import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
+import ij.process.ShortProcessor;
+import java.awt.Rectangle;
 import java.util.Arrays;
 
 /**
  * Collection of Image Sharpness algorithms.  These are all static methods that take an
- * ImageProcessor.
+ * ImageProcessor.  8 and 16-bit images are scored with the equivalent array kernels in
+ * {@link SharpnessKernels}, which do not copy or modify the image.
  *
  * @author Nick Anthony
  */
@@ -48,6 +52,7 @@ public class ImgSharpnessAnalysis {
    private double fftUpperCutoff_ = 14;
    private Method method_ = Method.Edges;
    private boolean allowInPlaceModification_ = false;
+   private boolean parallel_ = true;
 
    /**
     * Utility class making it easy to select a sharpness algorithm.
@@ -99,6 +104,34 @@ public class ImgSharpnessAnalysis {
       return method_;
    }
 
+   /**
+    * Whether large images are split in bands that are scored on several cores.  Turn this
+    * off when scoring several images at the same time, e.g. with a {@link SharpnessStackScorer}.
+    *
+    * @param parallel Use several cores for a single image.  Default is true.
+    */
+   public void setParallel(boolean parallel) {
+      parallel_ = parallel;
+   }
+
+   public boolean isParallel() {
+      return parallel_;
+   }
+
+   /**
+    * Returns a new ImgSharpnessAnalysis with the same settings.
+    *
+    * @return copy of this ImgSharpnessAnalysis
+    */
+   public ImgSharpnessAnalysis copy() {
+      ImgSharpnessAnalysis copy = new ImgSharpnessAnalysis();
+      copy.setFFTCutoff(fftLowerCutoff_, fftUpperCutoff_);
+      copy.setComputationMethod(method_);
+      copy.allowInPlaceModification(allowInPlaceModification_);
+      copy.setParallel(parallel_);
+      return copy;
+   }
+
    /**
     * Compute the sharpness of `proc` using the current `Method` set with `setComputationMethod`.
     *
@@ -106,6 +139,13 @@ public class ImgSharpnessAnalysis {
     * @return The sharpness value.
     */
    public double compute(ImageProcessor proc) {
+      if (method_ != Method.FFTBandpass && canUseKernels(proc)) {
+         return compute(proc.getPixels(), proc.getWidth(), proc.getHeight(), null);
+      }
+      return computeWithImageJ(proc);
+   }
+
+   private double computeWithImageJ(ImageProcessor proc) {
       switch (method_) {
          case Edges:
             return computeEdges(proc, allowInPlaceModification_);
@@ -134,6 +174,99 @@ public class ImgSharpnessAnalysis {
       }
    }
 
+   /**
+    * The kernels give the same result as the ImageJ code for plain 8 and 16-bit images.  The
+    * ImageJ code only applies some of the steps to the ROI, so images with a ROI keep using it.
+    */
+   private static boolean canUseKernels(ImageProcessor proc) {
+      if (!(proc instanceof ByteProcessor || proc instanceof ShortProcessor)) {
+         return false;
+      }
+      Rectangle roi = proc.getRoi();
+      return proc.getMask() == null && proc.getCalibrationTable() == null
+            && roi.x == 0 && roi.y == 0
+            && roi.width == proc.getWidth() && roi.height == proc.getHeight()
+            && isLargeEnough(roi);
+   }
+
+   /**
+    * ImageJ's 3x3 filters treat images narrower or lower than the kernel differently from
+    * the edge handling in SharpnessKernels, so these keep using the ImageJ code.
+    */
+   private static boolean isLargeEnough(Rectangle region) {
+      return region.width >= 3 && region.height >= 3;
+   }
+
+   /**
+    * Wraps 8 or 16-bit pixels in an ImageProcessor, cropped to the ROI.
+    */
+   private static ImageProcessor toProcessor(Object pixels, int width, int height,
+                                             Rectangle roi) {
+      ImageProcessor proc;
+      if (pixels instanceof byte[]) {
+         proc = new ByteProcessor(width, height, (byte[]) pixels);
+      } else if (pixels instanceof short[]) {
+         proc = new ShortProcessor(width, height, (short[]) pixels, null);
+      } else {
+         throw new IllegalArgumentException("Only 8 and 16-bit pixels are supported");
+      }
+      if (roi != null) {
+         proc.setRoi(roi);
+         proc = proc.crop();
+      }
+      return proc;
+   }
+
+   /**
+    * Compute the sharpness of 8 or 16-bit pixels using the current `Method`, without copying
+    * or modifying them.  The result is the same as that of `compute` for a ByteProcessor or
+    * ShortProcessor with these pixels, cropped to the ROI.
+    *
+    * @param pixels byte[] or short[] with the pixels of the image.
+    * @param width Width of the image.
+    * @param height Height of the image.
+    * @param roi Region to score, or null for the whole image.
+    * @return The sharpness value.
+    */
+   public double compute(Object pixels, int width, int height, Rectangle roi) {
+      Rectangle region = new Rectangle(0, 0, width, height);
+      if (roi != null) {
+         region = region.intersection(roi);
+      }
+      if (method_ != Method.FFTBandpass && !isLargeEnough(region)) {
+         // Cropping copies the pixels, which the ImageJ code may modify
+         return computeWithImageJ(toProcessor(pixels, width, height, region));
+      }
+      switch (method_) {
+         case Edges:
+            return SharpnessKernels.edges(pixels, width, height, roi, parallel_);
+         case StdDev:
+            return SharpnessKernels.normalizedStdDev(pixels, width, height, roi, parallel_);
+         case Mean:
+            return SharpnessKernels.mean(pixels, width, height, roi, parallel_);
+         case NormalizedVariance:
+            return SharpnessKernels.normalizedVariance(pixels, width, height, roi, parallel_);
+         case SharpEdges:
+            return SharpnessKernels.sharpEdges(pixels, width, height, roi, parallel_);
+         case Redondo:
+            return SharpnessKernels.redondo(pixels, width, height, roi, parallel_);
+         case Volath:
+            return SharpnessKernels.volath(pixels, width, height, roi, parallel_);
+         case Volath5:
+            return SharpnessKernels.volath5(pixels, width, height, roi, parallel_);
+         case MedianEdges:
+            return SharpnessKernels.medianEdges(pixels, width, height, roi, parallel_);
+         case Tenengrad:
+            return SharpnessKernels.tenengrad(pixels, width, height, roi, parallel_);
+         case FFTBandpass:
+            // The FFT needs a (padded) float copy anyway
+            return computeFFTBandpass(toProcessor(pixels, width, height, roi),
+                  fftLowerCutoff_, fftUpperCutoff_);
+         default:
+            throw new AssertionError(method_.name());
+      }
+   }
+
    /**
     * Uses the ImageJ code to find edges in the image.  The mean intensity of the edge map is
     * divided by the mean intensity of the original image.
@@ -292,13 +425,13 @@ public class ImgSharpnessAnalysis {
 
       for (int i = 1; i < w - 1; ++i) {
          for (int j = 0; j < h; ++j) {
-            sum1 += proc.getPixel(i, j) * proc.getPixel(i + 1, j);
+            sum1 += (double) proc.getPixel(i, j) * proc.getPixel(i + 1, j);
          }
       }
 
       for (int i = 0; i < w - 2; ++i) {
          for (int j = 0; j < h; ++j) {
-            sum2 += proc.getPixel(i, j) * proc.getPixel(i + 2, j);
+            sum2 += (double) proc.getPixel(i, j) * proc.getPixel(i + 2, j);
          }
       }
 
@@ -316,7 +449,7 @@ public class ImgSharpnessAnalysis {
 
       for (int i = 0; i < w - 1; ++i) {
          for (int j = 0; j < h; ++j) {
-            sum += proc.getPixel(i, j) * proc.getPixel(i + 1, j);
+            sum += (double) proc.getPixel(i, j) * proc.getPixel(i + 1, j);
          }
       }
 
@@ -0,0 +1,653 @@
+package org.micromanager.imageprocessing;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Sharpness kernels that work directly on 8-bit (byte[]) and 16-bit (short[])
+ * pixel arrays, without creating ImageJ processors or image-sized copies.
+ *
+ * <p>Every kernel gives the same score as the ImageJ based method with the same
+ * name in {@link ImgSharpnessAnalysis}, up to rounding of the final sums: 3x3
+ * filters replicate the edge pixels, and intermediate images (median,
+ * sharpened, convolved) are rounded and clipped to the pixel range as ImageJ
+ * does.  When a ROI is given, the score is that of the image cropped to the
+ * ROI.</p>
+ *
+ * <p>Rows are copied into small row buffers (with one pixel of padding on each
+ * side) and filtered from there, so that the inner loops work on int[] without
+ * per-pixel bounds or type checks.  When parallel is true and the image is
+ * large enough, the rows are split in bands that are scored on several cores;
+ * the partial sums are added in band order, so that the result does not depend
+ * on the number of threads.</p>
+ */
+public final class SharpnessKernels {
+   // Below this number of pixels, splitting the image costs more than it gains
+   private static final long PARALLEL_MIN_PIXELS = 1 << 18;
+
+   private SharpnessKernels() {}
+
+   /**
+    * Pixels of the region that is scored.
+    */
+   private static final class Plane {
+      final byte[] bytes_;
+      final short[] shorts_;
+      final int stride_;
+      final int x0_;
+      final int y0_;
+      final int width_;
+      final int height_;
+      final int max_;
+
+      Plane(Object pixels, int imageWidth, int imageHeight, Rectangle roi) {
+         if (pixels instanceof byte[]) {
+            bytes_ = (byte[]) pixels;
+            shorts_ = null;
+            max_ = 255;
+         } else if (pixels instanceof short[]) {
+            bytes_ = null;
+            shorts_ = (short[]) pixels;
+            max_ = 65535;
+         } else {
+            throw new IllegalArgumentException("Only 8 and 16-bit pixels are supported");
+         }
+         int length = bytes_ != null ? bytes_.length : shorts_.length;
+         if (imageWidth <= 0 || imageHeight <= 0
+               || (long) imageWidth * imageHeight != length) {
+            throw new IllegalArgumentException("Image size " + imageWidth + "x" + imageHeight
+                  + " does not match " + length + " pixels");
+         }
+         Rectangle region = new Rectangle(0, 0, imageWidth, imageHeight);
+         if (roi != null) {
+            region = region.intersection(roi);
+            if (region.isEmpty()) {
+               throw new IllegalArgumentException("ROI is outside of the image");
+            }
+         }
+         stride_ = imageWidth;
+         x0_ = region.x;
+         y0_ = region.y;
+         width_ = region.width;
+         height_ = region.height;
+      }
+
+      long count() {
+         return (long) width_ * height_;
+      }
+
+      int[] newRow() {
+         return new int[width_ + 2];
+      }
+
+      int clampY(int y) {
+         return y < 0 ? 0 : (y >= height_ ? height_ - 1 : y);
+      }
+
+      /**
+       * Copies row y (clamped to the region) into row[1..width], and
+       * replicates the edge pixels into row[0] and row[width + 1].
+       */
+      void load(int y, int[] row) {
+         int offset = (y0_ + clampY(y)) * stride_ + x0_;
+         if (bytes_ != null) {
+            for (int x = 0; x < width_; x++) {
+               row[x + 1] = bytes_[offset + x] & 0xff;
+            }
+         } else {
+            for (int x = 0; x < width_; x++) {
+               row[x + 1] = shorts_[offset + x] & 0xffff;
+            }
+         }
+         row[0] = row[1];
+         row[width_ + 1] = row[width_];
+      }
+
+      int clip(int value) {
+         return value < 0 ? 0 : (value > max_ ? max_ : value);
+      }
+   }
+
+   /**
+    * Computes sums over the rows yStart (inclusive) to yEnd (exclusive).
+    */
+   private interface BandKernel {
+      void apply(Plane plane, int yStart, int yEnd, double[] sums);
+   }
+
+   private static double[] sum(Plane plane, boolean parallel, int nrSums, BandKernel kernel) {
+      int nrBands = 1;
+      if (parallel && plane.count() >= PARALLEL_MIN_PIXELS) {
+         nrBands = Math.min(plane.height_, 4 * Runtime.getRuntime().availableProcessors());
+      }
+      final int bands = nrBands;
+      final double[][] partial = new double[bands][nrSums];
+      IntStream range = IntStream.range(0, bands);
+      if (bands > 1) {
+         range = range.parallel();
+      }
+      range.forEach(b -> kernel.apply(plane,
+            (int) ((long) plane.height_ * b / bands),
+            (int) ((long) plane.height_ * (b + 1) / bands), partial[b]));
+      double[] result = new double[nrSums];
+      for (double[] band : partial) {
+         for (int i = 0; i < nrSums; i++) {
+            result[i] += band[i];
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Sum and sum of squares of the pixel values.
+    */
+   private static double[] moments(Plane plane, boolean parallel) {
+      return sum(plane, parallel, 2, (p, yStart, yEnd, sums) -> {
+         final int[] row = p.newRow();
+         final int w = p.width_;
+         long sum = 0;
+         long sumOfSquares = 0;
+         for (int y = yStart; y < yEnd; y++) {
+            p.load(y, row);
+            for (int x = 1; x <= w; x++) {
+               long v = row[x];
+               sum += v;
+               sumOfSquares += v * v;
+            }
+         }
+         sums[0] = sum;
+         sums[1] = sumOfSquares;
+      });
+   }
+
+   // Standard deviation as calculated by ImageJ's ImageStatistics
+   private static double stdDev(double n, double sum, double sumOfSquares) {
+      double variance = (n * sumOfSquares - sum * sum) / n;
+      return variance > 0 ? Math.sqrt(variance / (n - 1.0)) : 0.0;
+   }
+
+   /**
+    * Mean intensity, see {@link ImgSharpnessAnalysis#computeMean}.
+    *
+    * @param pixels byte[] or short[] with the pixels of the image
+    * @param width Width of the image
+    * @param height Height of the image
+    * @param roi Region to score, or null for the whole image
+    * @param parallel Whether large images may be scored on several cores
+    * @return Mean intensity
+    */
+   public static double mean(Object pixels, int width, int height, Rectangle roi,
+                             boolean parallel) {
+      Plane plane = new Plane(pixels, width, height, roi);
+      return moments(plane, parallel)[0] / plane.count();
+   }
+
+   /**
+    * Standard deviation divided by the mean, see
+    * {@link ImgSharpnessAnalysis#computeNormalizedStdDev}.
+    */
+   public static double normalizedStdDev(Object pixels, int width, int height, Rectangle roi,
+                                         boolean parallel) {
+      Plane plane = new Plane(pixels, width, height, roi);
+      double[] moments = moments(plane, parallel);
+      double n = plane.count();
+      return stdDev(n, moments[0], moments[1]) / (moments[0] / n);
+   }
+
+   /**
+    * Variance divided by the mean, see
+    * {@link ImgSharpnessAnalysis#computeNormalizedVariance}.
+    */
+   public static double normalizedVariance(Object pixels, int width, int height, Rectangle roi,
+                                           boolean parallel) {
+      Plane plane = new Plane(pixels, width, height, roi);
+      double[] moments = moments(plane, parallel);
+      double n = plane.count();
+      double stdDev = stdDev(n, moments[0], moments[1]);
+      return (stdDev * stdDev) / (moments[0] / n);
+   }
+
+   /**
+    * Mean of the Sobel edge map divided by the mean intensity, see
+    * {@link ImgSharpnessAnalysis#computeEdges}.
+    */
+   public static double edges(Object pixels, int width, int height, Rectangle roi,
+                              boolean parallel) {
+      Plane plane = new Plane(pixels, width, height, roi);
+      double[] sums = sum(plane, parallel, 2, (p, yStart, yEnd, result) -> {
+         int[] above = p.newRow();
+         int[] center = p.newRow();
+         int[] below = p.newRow();
+         p.load(yStart - 1, above);
+         p.load(yStart, center);
+         long intensity = 0;
+         long edges = 0;
+         for (int y = yStart; y < yEnd; y++) {
+            p.load(y + 1, below);
+            intensity += rowSum(center, p.width_);
+            edges += sobelSum(above, center, below, p.width_, p.max_);
+            int[] recycled = above;
+            above = center;
+            center = below;
+            below = recycled;
+         }
+         result[0] = intensity;
+         result[1] = edges;
+      });
+      return sums[1] / sums[0];
+   }
+
+   /**
+    * Mean of the Sobel edge map of the sharpened image divided by the mean
+    * intensity, see {@link ImgSharpnessAnalysis#computeSharpEdges}.
+    */
+   public static double sharpEdges(Object pixels, int width, int height, Rectangle roi,
+                                   boolean parallel) {
+      Plane plane = new Plane(pixels, width, height, roi);
+      double[] sums = sum(plane, parallel, 2, (p, yStart, yEnd, result) -> {
+         final RowFilter sharpen = new RowFilter(p, SharpnessKernels::sharpenRow);
+         int[] above = sharpen.filter(yStart - 1, p.newRow());
+         int[] center = sharpen.filter(yStart, p.newRow());
+         int[] below = p.newRow();
+         long intensity = 0;
+         long edges = 0;
+         for (int y = yStart; y < yEnd; y++) {
+            // The filter still holds the source of row y
+            intensity += rowSum(sharpen.center(), p.width_);
+            sharpen.filter(y + 1, below);
+            edges += sobelSum(above, center, below, p.width_, p.max_);
+            int[] recycled = above;
+            above = center;
+            center = below;
+            below = recycled;
+         }
+         result[0] = intensity;
+         result[1] = edges;
+      });
+      return sums[1] / sums[0];
+   }
+
+   /**
+    * Sum of the squared semi-Laplacian, see
+    * {@link ImgSharpnessAnalysis#computeRedondo}.
+    */
+   public static double redondo(Object pixels, int width, int height, Rectangle roi,
+                                boolean parallel) {
+      Plane plane = new Plane(pixels, width, height, roi);
+      if (plane.width_ < 3 || plane.height_ < 3) {
+         return 0.0;
+      }
+      return sum(plane, parallel, 1, (p, yStart, yEnd, result) -> {
+         // Only rows and columns with neighbors on both sides count
+         yStart = Math.max(1, yStart);
+         yEnd = Math.min(p.height_ - 1, yEnd);
+         if (yStart >= yEnd) {
+            return;
+         }
+         int[] above = p.newRow();
+         int[] center = p.newRow();
+         int[] below = p.newRow();
+         p.load(yStart - 1, above);
+         p.load(yStart, center);
+         final int w = p.width_;
+         long sum = 0;
+         for (int y = yStart; y < yEnd; y++) {
+            p.load(y + 1, below);
+            for (int x = 2; x < w; x++) {
+               // Left neighbor as center, see computeRedondo
+               long v = center[x + 1] + above[x] + below[x] - 3L * center[x - 1];
+               sum += v * v;
+            }
+            int[] recycled = above;
+            above = center;
+            center = below;
+            below = recycled;
+         }
+         result[0] = sum;
+      })[0];
+   }
+
+   /**
+    * Sum of the squared Sobel gradients in x and y, see
+    * {@link ImgSharpnessAnalysis#computeTenengrad}.  As in ImageJ's
+    * convolve3x3, negative gradients are clipped to 0.
+    */
+   public static double tenengrad(Object pixels, int width, int height, Rectangle roi,
+                                  boolean parallel) {
+      Plane plane = new Plane(pixels, width, height, roi);
+      return sum(plane, parallel, 1, (p, yStart, yEnd, result) -> {
+         int[] above = p.newRow();
+         int[] center = p.newRow();
+         int[] below = p.newRow();
+         p.load(yStart - 1, above);
+         p.load(yStart, center);
+         final int w = p.width_;
+         long sum = 0;
+         for (int y = yStart; y < yEnd; y++) {
+            p.load(y + 1, below);
+            for (int x = 1; x <= w; x++) {
+               long gx = p.clip(above[x + 1] - above[x - 1]
+                     + 2 * (center[x + 1] - center[x - 1])
+                     + below[x + 1] - below[x - 1]);
+               long gy = p.clip(above[x - 1] + 2 * above[x] + above[x + 1]
+                     - below[x - 1] - 2 * below[x] - below[x + 1]);
+               sum += gx * gx + gy * gy;
+            }
+            int[] recycled = above;
+            above = center;
+            center = below;
+            below = recycled;
+         }
+         result[0] = sum;
+      })[0];
+   }
+
+   /**
+    * Volath's autocorrelation, see {@link ImgSharpnessAnalysis#computeVolath}.
+    */
+   public static double volath(Object pixels, int width, int height, Rectangle roi,
+                               boolean parallel) {
+      Plane plane = new Plane(pixels, width, height, roi);
+      return sum(plane, parallel, 1, (p, yStart, yEnd, result) -> {
+         final int[] row = p.newRow();
+         final int w = p.width_;
+         long sum = 0;
+         for (int y = yStart; y < yEnd; y++) {
+            p.load(y, row);
+            // Pixel i is at row[i + 1]; the first sum starts at i = 1
+            for (int x = 2; x < w; x++) {
+               sum += (long) row[x] * row[x + 1];
+            }
+            for (int x = 1; x < w - 1; x++) {
+               sum -= (long) row[x] * row[x + 2];
+            }
+         }
+         result[0] = sum;
+      })[0];
+   }
+
+   /**
+    * Volath's autocorrelation minus the squared mean, see
+    * {@link ImgSharpnessAnalysis#computeVolath5}.
+    */
+   public static double volath5(Object pixels, int width, int height, Rectangle roi,
+                                boolean parallel) {
+      Plane plane = new Plane(pixels, width, height, roi);
+      double[] sums = sum(plane, parallel, 2, (p, yStart, yEnd, result) -> {
+         final int[] row = p.newRow();
+         final int w = p.width_;
+         long sum = 0;
+         long products = 0;
+         for (int y = yStart; y < yEnd; y++) {
+            p.load(y, row);
+            sum += rowSum(row, w);
+            for (int x = 1; x < w; x++) {
+               products += (long) row[x] * row[x + 1];
+            }
+         }
+         result[0] = sum;
+         result[1] = products;
+      });
+      double mean = sums[0] / plane.count();
+      return sums[1] - ((plane.width_ - 1) * plane.height_ * mean * mean);
+   }
+
+   /**
+    * Sum of the diagonal edge magnitudes of the 3x3 median filtered image,
+    * see {@link ImgSharpnessAnalysis#computeMedianEdges}.  As in ImageJ's
+    * convolve3x3, negative edges are clipped to 0.  ImageJ's medianFilter
+    * sets the outer pixels of 8-bit images to 0, and leaves 16-bit images
+    * as they are; the same is done here.
+    */
+   public static double medianEdges(Object pixels, int width, int height, Rectangle roi,
+                                    boolean parallel) {
+      Plane plane = new Plane(pixels, width, height, roi);
+      final boolean filter = pixels instanceof byte[];
+      return sum(plane, parallel, 1, (p, yStart, yEnd, result) -> {
+         final RowFilter median = new RowFilter(p, filter
+               ? SharpnessKernels::medianRow : SharpnessKernels::copyRow);
+         int[] above = medianFiltered(median, p, filter, yStart - 1, p.newRow());
+         int[] center = medianFiltered(median, p, filter, yStart, p.newRow());
+         int[] below = p.newRow();
+         final int w = p.width_;
+         double sum = 0.0;
+         for (int y = yStart; y < yEnd; y++) {
+            medianFiltered(median, p, filter, y + 1, below);
+            for (int x = 1; x <= w; x++) {
+               // Kernels {2, 1, 0, 1, 0, -1, 0, -1, -2} and {0, 1, 2, -1, 0, 1, -2, -1, 0}
+               long d1 = p.clip(2 * above[x - 1] + above[x] + center[x - 1]
+                     - center[x + 1] - below[x] - 2 * below[x + 1]);
+               long d2 = p.clip(above[x] + 2 * above[x + 1] - center[x - 1]
+                     + center[x + 1] - 2 * below[x - 1] - below[x]);
+               sum += Math.sqrt(d1 * d1 + d2 * d2);
+            }
+            int[] recycled = above;
+            above = center;
+            center = below;
+            below = recycled;
+         }
+         result[0] = sum;
+      })[0];
+   }
+
+   private static int[] medianFiltered(RowFilter median, Plane plane, boolean filter, int y,
+                                       int[] out) {
+      median.filter(y, out);
+      y = plane.clampY(y);
+      if (filter && (y == 0 || y == plane.height_ - 1)) {
+         Arrays.fill(out, 0);
+      }
+      return out;
+   }
+
+   private static long rowSum(int[] row, int width) {
+      long sum = 0;
+      for (int x = 1; x <= width; x++) {
+         sum += row[x];
+      }
+      return sum;
+   }
+
+   /**
+    * Sum of ImageJ's findEdges (3x3 Sobel, truncated and clipped) over one row.
+    */
+   private static long sobelSum(int[] above, int[] center, int[] below, int width, int max) {
+      long sum = 0;
+      for (int x = 1; x <= width; x++) {
+         double sum1 = above[x - 1] + 2 * above[x] + above[x + 1]
+               - below[x - 1] - 2 * below[x] - below[x + 1];
+         double sum2 = above[x - 1] + 2 * center[x - 1] + below[x - 1]
+               - above[x + 1] - 2 * center[x + 1] - below[x + 1];
+         int edge = (int) Math.sqrt(sum1 * sum1 + sum2 * sum2);
+         sum += edge > max ? max : edge;
+      }
+      return sum;
+   }
+
+   /**
+    * Filters one row from the three source rows around it.
+    */
+   private interface RowOperation {
+      void apply(int[] above, int[] center, int[] below, int[] out, Plane plane);
+   }
+
+   /**
+    * First pass of a two pass kernel: produces filtered rows, with the edge
+    * pixels replicated, from a sliding window of three source rows.  When
+    * rows are requested in increasing order, each source row is loaded once.
+    * Rows outside the region are the filtered edge rows, as when ImageJ
+    * filters the filtered image again.
+    */
+   private static final class RowFilter {
+      private final Plane plane_;
+      private final RowOperation operation_;
+      private int[] above_;
+      private int[] center_;
+      private int[] below_;
+      private int y_ = Integer.MIN_VALUE;
+
+      RowFilter(Plane plane, RowOperation operation) {
+         plane_ = plane;
+         operation_ = operation;
+         above_ = plane.newRow();
+         center_ = plane.newRow();
+         below_ = plane.newRow();
+      }
+
+      /**
+       * Source row of the row filtered last.
+       */
+      int[] center() {
+         return center_;
+      }
+
+      /**
+       * Filters row y into out.
+       *
+       * @return out
+       */
+      int[] filter(int y, int[] out) {
+         y = plane_.clampY(y);
+         if (y == y_ + 1) {
+            int[] recycled = above_;
+            above_ = center_;
+            center_ = below_;
+            below_ = recycled;
+            plane_.load(y + 1, below_);
+         } else if (y != y_) {
+            plane_.load(y - 1, above_);
+            plane_.load(y, center_);
+            plane_.load(y + 1, below_);
+         }
+         y_ = y;
+         operation_.apply(above_, center_, below_, out, plane_);
+         out[0] = out[1];
+         out[plane_.width_ + 1] = out[plane_.width_];
+         return out;
+      }
+   }
+
+   /**
+    * ImageJ's sharpen: kernel {-1, -1, -1, -1, 12, -1, -1, -1, -1}, divided
+    * by 4 with rounding as in convolve3x3, and clipped.
+    */
+   private static void sharpenRow(int[] above, int[] center, int[] below, int[] out,
+                                  Plane plane) {
+      for (int x = 1; x <= plane.width_; x++) {
+         int sum = 12 * center[x]
+               - above[x - 1] - above[x] - above[x + 1]
+               - center[x - 1] - center[x + 1]
+               - below[x - 1] - below[x] - below[x + 1];
+         out[x] = plane.clip((sum + 2) / 4);
+      }
+   }
+
+   private static void copyRow(int[] above, int[] center, int[] below, int[] out,
+                               Plane plane) {
+      System.arraycopy(center, 1, out, 1, plane.width_);
+   }
+
+   /**
+    * 3x3 median, with a sorting network that only does the comparisons
+    * needed for the middle element.  The first and last pixel are 0.
+    */
+   private static void medianRow(int[] above, int[] center, int[] below, int[] out,
+                                 Plane plane) {
+      for (int x = 1; x <= plane.width_; x++) {
+         int p0 = above[x - 1];
+         int p1 = above[x];
+         int p2 = above[x + 1];
+         int p3 = center[x - 1];
+         int p4 = center[x];
+         int p5 = center[x + 1];
+         int p6 = below[x - 1];
+         int p7 = below[x];
+         int p8 = below[x + 1];
+         int t;
+         // Paeth's median of 9 network (Graphics Gems)
+         if (p1 > p2) {
+            t = p1;
+            p1 = p2;
+            p2 = t;
+         }
+         if (p4 > p5) {
+            t = p4;
+            p4 = p5;
+            p5 = t;
+         }
+         if (p7 > p8) {
+            t = p7;
+            p7 = p8;
+            p8 = t;
+         }
+         if (p0 > p1) {
+            t = p0;
+            p0 = p1;
+            p1 = t;
+         }
+         if (p3 > p4) {
+            t = p3;
+            p3 = p4;
+            p4 = t;
+         }
+         if (p6 > p7) {
+            t = p6;
+            p6 = p7;
+            p7 = t;
+         }
+         if (p1 > p2) {
+            t = p1;
+            p1 = p2;
+            p2 = t;
+         }
+         if (p4 > p5) {
+            t = p4;
+            p4 = p5;
+            p5 = t;
+         }
+         if (p7 > p8) {
+            t = p7;
+            p7 = p8;
+            p8 = t;
+         }
+         if (p0 > p3) {
+            p3 = p0;
+         }
+         if (p5 > p8) {
+            p5 = p8;
+         }
+         if (p4 > p7) {
+            t = p4;
+            p4 = p7;
+            p7 = t;
+         }
+         if (p3 > p6) {
+            p6 = p3;
+         }
+         if (p1 > p4) {
+            p4 = p1;
+         }
+         if (p2 > p5) {
+            p2 = p5;
+         }
+         if (p4 > p7) {
+            p4 = p7;
+         }
+         if (p4 > p2) {
+            t = p4;
+            p4 = p2;
+            p2 = t;
+         }
+         if (p6 > p4) {
+            p4 = p6;
+         }
+         if (p4 > p2) {
+            p4 = p2;
+         }
+         out[x] = p4;
+      }
+      out[1] = 0;
+      out[plane.width_] = 0;
+   }
+}
@@ -0,0 +1,127 @@
+package org.micromanager.imageprocessing;
+
+import ij.process.ImageProcessor;
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Scores the planes of a stack on several cores while they are being read, so
+ * that reading the next plane overlaps with scoring the previous ones.
+ *
+ * <p>Each plane is scored on a single core (see
+ * {@link ImgSharpnessAnalysis#setParallel}), and the planes are scored in
+ * parallel.  At most two planes per core wait to be scored; {@link #submit}
+ * blocks until one of those is done, so that the planes that are held in
+ * memory stay limited.  A SharpnessStackScorer is used from one thread, and
+ * has to be closed to stop its threads.</p>
+ */
+public final class SharpnessStackScorer implements AutoCloseable {
+   private final ImgSharpnessAnalysis analysis_;
+   private final ExecutorService executor_;
+   private final int maxPending_;
+   private final ArrayDeque<Integer> pendingIndices_ = new ArrayDeque<>();
+   private final ArrayDeque<Future<Double>> pending_ = new ArrayDeque<>();
+   private final SortedMap<Integer, Double> scores_ = new TreeMap<>();
+
+   /**
+    * Creates the threads.
+    *
+    * @param analysis Method and settings to score with; later changes to it
+    *                 are not used
+    */
+   public SharpnessStackScorer(ImgSharpnessAnalysis analysis) {
+      analysis_ = analysis.copy();
+      analysis_.setParallel(false);
+      int nrThreads = Runtime.getRuntime().availableProcessors();
+      executor_ = Executors.newFixedThreadPool(nrThreads, r -> {
+         Thread thread = new Thread(r, "Sharpness scorer");
+         thread.setDaemon(true);
+         return thread;
+      });
+      maxPending_ = 2 * nrThreads;
+   }
+
+   /**
+    * Scores an 8 or 16-bit plane, see {@link ImgSharpnessAnalysis#compute(Object, int, int,
+    * Rectangle)}.  The pixels must not change until the plane is scored.
+    *
+    * @param index Index of the plane in the stack
+    * @param pixels byte[] or short[] with the pixels of the plane
+    * @param width Width of the plane
+    * @param height Height of the plane
+    * @param roi Region to score, or null for the whole plane
+    * @throws InterruptedException when interrupted while waiting for room
+    */
+   public void submit(int index, Object pixels, int width, int height, Rectangle roi)
+         throws InterruptedException {
+      submit(index, () -> analysis_.compute(pixels, width, height, roi));
+   }
+
+   /**
+    * Scores a plane of any type, see {@link ImgSharpnessAnalysis#compute(ImageProcessor)}.
+    *
+    * @param index Index of the plane in the stack
+    * @param proc Pixels of the plane
+    * @throws InterruptedException when interrupted while waiting for room
+    */
+   public void submit(int index, ImageProcessor proc) throws InterruptedException {
+      submit(index, () -> analysis_.compute(proc));
+   }
+
+   private void submit(int index, Callable<Double> task)
+         throws InterruptedException {
+      while (pending_.size() >= maxPending_) {
+         collectOldest();
+      }
+      pending_.addLast(executor_.submit(task));
+      pendingIndices_.addLast(index);
+   }
+
+   private void collectOldest() throws InterruptedException {
+      Future<Double> future = pending_.removeFirst();
+      int index = pendingIndices_.removeFirst();
+      try {
+         scores_.put(index, future.get());
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+         if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw new RuntimeException(cause);
+      }
+   }
+
+   /**
+    * Waits until all submitted planes are scored.
+    *
+    * @return Scores by plane index
+    * @throws InterruptedException when interrupted while waiting
+    */
+   public SortedMap<Integer, Double> getScores() throws InterruptedException {
+      while (!pending_.isEmpty()) {
+         collectOldest();
+      }
+      return new TreeMap<>(scores_);
+   }
+
+   /**
+    * Stops the threads; planes that were not scored yet are dropped.
+    */
+   @Override
+   public void close() {
+      for (Future<Double> future : pending_) {
+         future.cancel(true);
+      }
+      executor_.shutdownNow();
+   }
+}
@@ -0,0 +1,101 @@
+package org.micromanager.imageprocessing;
+
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times every sharpness method on a 16-bit image three ways: with the ImageJ
+ * based code in {@link ImgSharpnessAnalysis}, with {@link SharpnessKernels} on
+ * one thread, and with the kernels split in bands over all cores.  The best
+ * of several runs is reported.
+ *
+ * <p>Usage: SharpnessKernelsBenchmark [width height runs]</p>
+ */
+public final class SharpnessKernelsBenchmark {
+
+   private SharpnessKernelsBenchmark() {
+   }
+
+   /**
+    * Smooth pattern with noise, so that the edge filters have work to do.
+    */
+   private static ShortProcessor makeImage(int width, int height) {
+      ShortProcessor proc = new ShortProcessor(width, height);
+      Random random = new Random(1);
+      for (int i = 0; i < width * height; i++) {
+         int x = i % width;
+         int y = i / width;
+         proc.set(i, 1000 + (int) (500 * Math.sin(x / 30.0) * Math.cos(y / 20.0))
+               + random.nextInt(200));
+      }
+      return proc;
+   }
+
+   private static double imageJScore(ImgSharpnessAnalysis.Method method, ImageProcessor proc) {
+      switch (method) {
+         case Edges:
+            return ImgSharpnessAnalysis.computeEdges(proc, true);
+         case StdDev:
+            return ImgSharpnessAnalysis.computeNormalizedStdDev(proc);
+         case Mean:
+            return ImgSharpnessAnalysis.computeMean(proc);
+         case NormalizedVariance:
+            return ImgSharpnessAnalysis.computeNormalizedVariance(proc);
+         case SharpEdges:
+            return ImgSharpnessAnalysis.computeSharpEdges(proc, true);
+         case Redondo:
+            return ImgSharpnessAnalysis.computeRedondo(proc);
+         case Volath:
+            return ImgSharpnessAnalysis.computeVolath(proc);
+         case Volath5:
+            return ImgSharpnessAnalysis.computeVolath5(proc);
+         case MedianEdges:
+            return ImgSharpnessAnalysis.computeMedianEdges(proc, true);
+         case Tenengrad:
+            return ImgSharpnessAnalysis.computeTenengrad(proc, true);
+         default:
+            throw new AssertionError(method.name());
+      }
+   }
+
+   public static void main(String[] args) {
+      int width = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+      int height = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+      int runs = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+      ShortProcessor proc = makeImage(width, height);
+      ImgSharpnessAnalysis analysis = new ImgSharpnessAnalysis();
+      System.out.println(String.format(Locale.US, "%d x %d pixels, %d cores, best of %d runs",
+            width, height, Runtime.getRuntime().availableProcessors(), runs));
+      for (ImgSharpnessAnalysis.Method method : ImgSharpnessAnalysis.Method.values()) {
+         if (method == ImgSharpnessAnalysis.Method.FFTBandpass) {
+            // Same code either way
+            continue;
+         }
+         analysis.setComputationMethod(method);
+         double imageJMs = Double.MAX_VALUE;
+         double kernelMs = Double.MAX_VALUE;
+         double bandedMs = Double.MAX_VALUE;
+         for (int run = 0; run < runs; run++) {
+            // The ImageJ code works in place, so give it a copy (not timed)
+            ImageProcessor copy = proc.duplicate();
+            long start = System.nanoTime();
+            imageJScore(method, copy);
+            long imageJDone = System.nanoTime();
+            analysis.setParallel(false);
+            analysis.compute(proc.getPixels(), width, height, null);
+            long kernelDone = System.nanoTime();
+            analysis.setParallel(true);
+            analysis.compute(proc.getPixels(), width, height, null);
+            long bandedDone = System.nanoTime();
+            imageJMs = Math.min(imageJMs, (imageJDone - start) / 1e6);
+            kernelMs = Math.min(kernelMs, (kernelDone - imageJDone) / 1e6);
+            bandedMs = Math.min(bandedMs, (bandedDone - kernelDone) / 1e6);
+         }
+         System.out.println(String.format(Locale.US,
+               "%-20s ImageJ %8.1f ms  kernel %8.1f ms  banded %8.1f ms",
+               method, imageJMs, kernelMs, bandedMs));
+      }
+   }
+}
@@ -0,0 +1,229 @@
+package org.micromanager.imageprocessing;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.awt.Rectangle;
+import java.util.Random;
+import java.util.SortedMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the array kernels in {@link SharpnessKernels} give the same
+ * scores as the ImageJ based methods in {@link ImgSharpnessAnalysis}.
+ */
+public class SharpnessKernelsTest {
+
+   private static final ImgSharpnessAnalysis.Method[] KERNEL_METHODS = {
+         ImgSharpnessAnalysis.Method.Edges,
+         ImgSharpnessAnalysis.Method.StdDev,
+         ImgSharpnessAnalysis.Method.Mean,
+         ImgSharpnessAnalysis.Method.NormalizedVariance,
+         ImgSharpnessAnalysis.Method.SharpEdges,
+         ImgSharpnessAnalysis.Method.Redondo,
+         ImgSharpnessAnalysis.Method.Volath,
+         ImgSharpnessAnalysis.Method.Volath5,
+         ImgSharpnessAnalysis.Method.MedianEdges,
+         ImgSharpnessAnalysis.Method.Tenengrad};
+
+   /**
+    * Smooth blobs with noise, and a few saturated and black pixels so that
+    * clipping is exercised.
+    */
+   private static ImageProcessor makeImage(boolean sixteenBit, int width, int height, long seed) {
+      Random random = new Random(seed);
+      int max = sixteenBit ? 65535 : 255;
+      double[] values = new double[width * height];
+      for (int i = 0; i < 30; i++) {
+         double cx = random.nextDouble() * width;
+         double cy = random.nextDouble() * height;
+         double sigma = 1 + random.nextDouble() * 6;
+         double amplitude = random.nextDouble() * max * 0.6;
+         for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+               double dx = x - cx;
+               double dy = y - cy;
+               values[y * width + x] += amplitude
+                     * Math.exp(-(dx * dx + dy * dy) / (2 * sigma * sigma));
+            }
+         }
+      }
+      ImageProcessor proc = sixteenBit ? new ShortProcessor(width, height)
+            : new ByteProcessor(width, height);
+      for (int i = 0; i < values.length; i++) {
+         double v = values[i] + max * 0.05 + random.nextGaussian() * max * 0.02;
+         if (random.nextInt(200) == 0) {
+            v = random.nextBoolean() ? 0 : max;
+         }
+         proc.set(i, (int) Math.max(0, Math.min(max, v)));
+      }
+      return proc;
+   }
+
+   private static double legacyScore(ImgSharpnessAnalysis.Method method, ImageProcessor proc) {
+      // The ImageJ methods may modify their input
+      proc = proc.duplicate();
+      switch (method) {
+         case Edges:
+            return ImgSharpnessAnalysis.computeEdges(proc, false);
+         case StdDev:
+            return ImgSharpnessAnalysis.computeNormalizedStdDev(proc);
+         case Mean:
+            return ImgSharpnessAnalysis.computeMean(proc);
+         case NormalizedVariance:
+            return ImgSharpnessAnalysis.computeNormalizedVariance(proc);
+         case SharpEdges:
+            return ImgSharpnessAnalysis.computeSharpEdges(proc, false);
+         case Redondo:
+            return ImgSharpnessAnalysis.computeRedondo(proc);
+         case Volath:
+            return ImgSharpnessAnalysis.computeVolath(proc);
+         case Volath5:
+            return ImgSharpnessAnalysis.computeVolath5(proc);
+         case MedianEdges:
+            return ImgSharpnessAnalysis.computeMedianEdges(proc, false);
+         case Tenengrad:
+            return ImgSharpnessAnalysis.computeTenengrad(proc, false);
+         default:
+            throw new AssertionError(method.name());
+      }
+   }
+
+   private static double kernelScore(ImgSharpnessAnalysis.Method method, ImageProcessor proc,
+                                     Rectangle roi, boolean parallel) {
+      ImgSharpnessAnalysis analysis = new ImgSharpnessAnalysis();
+      analysis.setComputationMethod(method);
+      analysis.setParallel(parallel);
+      return analysis.compute(proc.getPixels(), proc.getWidth(), proc.getHeight(), roi);
+   }
+
+   private static void assertSameScore(String message, double expected, double actual) {
+      Assert.assertEquals(message, expected, actual, 1e-9 * Math.max(1.0, Math.abs(expected)));
+   }
+
+   private static void checkAllMethods(ImageProcessor proc) {
+      for (ImgSharpnessAnalysis.Method method : KERNEL_METHODS) {
+         double expected = legacyScore(method, proc);
+         String message = method + " " + proc.getBitDepth() + "-bit "
+               + proc.getWidth() + "x" + proc.getHeight();
+         assertSameScore(message, expected, kernelScore(method, proc, null, false));
+         assertSameScore(message + " parallel", expected,
+               kernelScore(method, proc, null, true));
+      }
+   }
+
+   @Test
+   public void eightBitScoresMatchImageJ() {
+      checkAllMethods(makeImage(false, 67, 45, 1));
+      checkAllMethods(makeImage(false, 3, 3, 2));
+   }
+
+   @Test
+   public void sixteenBitScoresMatchImageJ() {
+      checkAllMethods(makeImage(true, 67, 45, 3));
+      checkAllMethods(makeImage(true, 5, 4, 4));
+   }
+
+   @Test
+   public void largeImagesMatchImageJInBands() {
+      // Large enough to be split in bands
+      checkAllMethods(makeImage(true, 640, 512, 5));
+   }
+
+   @Test
+   public void roiScoresMatchCroppedImage() {
+      ImageProcessor proc = makeImage(true, 80, 60, 6);
+      Rectangle roi = new Rectangle(13, 7, 41, 29);
+      proc.setRoi(roi);
+      ImageProcessor cropped = proc.crop();
+      proc.resetRoi();
+      for (ImgSharpnessAnalysis.Method method : KERNEL_METHODS) {
+         assertSameScore(method.name(), legacyScore(method, cropped),
+               kernelScore(method, proc, roi, false));
+      }
+   }
+
+   @Test
+   public void tinyImagesMatchImageJ() {
+      // Images and ROIs narrower or lower than 3 pixels go through ImageJ
+      for (int width = 1; width <= 4; width++) {
+         for (int height = 1; height <= 4; height++) {
+            ImageProcessor proc = makeImage(width * height % 2 == 0, width, height,
+                  10 * width + height);
+            checkAllMethods(proc);
+            ImgSharpnessAnalysis analysis = new ImgSharpnessAnalysis();
+            for (ImgSharpnessAnalysis.Method method : KERNEL_METHODS) {
+               analysis.setComputationMethod(method);
+               assertSameScore(method + " " + width + "x" + height,
+                     legacyScore(method, proc), analysis.compute(proc.duplicate()));
+            }
+         }
+      }
+      ImageProcessor proc = makeImage(true, 40, 30, 11);
+      Rectangle roi = new Rectangle(5, 3, 1, 20);
+      proc.setRoi(roi);
+      ImageProcessor cropped = proc.crop();
+      proc.resetRoi();
+      short[] before = ((short[]) proc.getPixels()).clone();
+      for (ImgSharpnessAnalysis.Method method : KERNEL_METHODS) {
+         assertSameScore(method + " narrow ROI", legacyScore(method, cropped),
+               kernelScore(method, proc, roi, false));
+      }
+      Assert.assertArrayEquals(before, (short[]) proc.getPixels());
+   }
+
+   @Test
+   public void computeUsesKernelsForProcessors() {
+      ImageProcessor proc = makeImage(false, 50, 40, 7);
+      ImgSharpnessAnalysis analysis = new ImgSharpnessAnalysis();
+      for (ImgSharpnessAnalysis.Method method : KERNEL_METHODS) {
+         analysis.setComputationMethod(method);
+         ImageProcessor copy = proc.duplicate();
+         assertSameScore(method.name(), legacyScore(method, proc), analysis.compute(copy));
+         // The input is never modified
+         Assert.assertArrayEquals((byte[]) proc.getPixels(), (byte[]) copy.getPixels());
+      }
+   }
+
+   @Test
+   public void fftBandpassMatchesImageJ() {
+      ImageProcessor proc = makeImage(true, 64, 64, 8);
+      ImgSharpnessAnalysis analysis = new ImgSharpnessAnalysis();
+      analysis.setComputationMethod(ImgSharpnessAnalysis.Method.FFTBandpass);
+      assertSameScore("FFTBandpass", ImgSharpnessAnalysis.computeFFTBandpass(proc.duplicate(),
+                  analysis.getFFTLowerCutoff(), analysis.getFFTUpperCutoff()),
+            analysis.compute(proc.getPixels(), 64, 64, null));
+   }
+
+   @Test
+   public void stackScorerScoresEveryPlane() throws InterruptedException {
+      ImgSharpnessAnalysis analysis = new ImgSharpnessAnalysis();
+      analysis.setComputationMethod(ImgSharpnessAnalysis.Method.Redondo);
+      ImageProcessor[] planes = new ImageProcessor[25];
+      for (int i = 0; i < planes.length; i++) {
+         planes[i] = makeImage(true, 60, 50, 100 + i);
+      }
+      SortedMap<Integer, Double> scores;
+      try (SharpnessStackScorer scorer = new SharpnessStackScorer(analysis)) {
+         for (int i = 0; i < planes.length; i++) {
+            if (i % 2 == 0) {
+               scorer.submit(i, planes[i]);
+            } else {
+               scorer.submit(i, planes[i].getPixels(), 60, 50, null);
+            }
+         }
+         scores = scorer.getScores();
+      }
+      Assert.assertEquals(planes.length, scores.size());
+      for (int i = 0; i < planes.length; i++) {
+         assertSameScore("Plane " + i, legacyScore(ImgSharpnessAnalysis.Method.Redondo,
+               planes[i]), scores.get(i));
+      }
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void sizeMustMatchPixels() {
+      SharpnessKernels.mean(new short[100], 10, 11, null, false);
+   }
+}
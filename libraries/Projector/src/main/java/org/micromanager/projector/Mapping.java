@@ -22,6 +22,8 @@ public class Mapping {
    private final Rectangle cameraROI_;
    // Binning of the camera when the mapping was generated
    private final int cameraBinning_;
+   // Built on first use; cells are looked up for every transformed point
+   private volatile MappingCellIndex cellIndex_;
 
    private Mapping(Map<Polygon, AffineTransform> transformMap,
          AffineTransform approximateTransform, Rectangle cameraROI,
@@ -87,4 +89,13 @@ public class Mapping {
       return cameraBinning_;
    }
 
+   MappingCellIndex getCellIndex() {
+      MappingCellIndex index = cellIndex_;
+      if (index == null) {
+         index = new MappingCellIndex(transformMap_);
+         cellIndex_ = index;
+      }
+      return index;
+   }
+
 }
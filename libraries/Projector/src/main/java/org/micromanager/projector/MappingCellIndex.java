@@ -0,0 +1,133 @@
+package org.micromanager.projector;
+
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.Map;
+import org.micromanager.projector.internal.Utils;
+
+/**
+ * Grid over the cells of a {@link Mapping}, so that the cell containing a camera point
+ * can be found by testing only the few cells that overlap the point's grid bucket
+ * instead of all of them.
+ *
+ * <p>Gives the same answers as testing every cell in the iteration order of
+ * {@link Mapping#getMap()}: the candidates in each bucket are kept in that order,
+ * and points outside all cells use the cell with the nearest center, as before.</p>
+ *
+ * @author Nico
+ */
+final class MappingCellIndex {
+
+   private final Polygon[] cells_;
+   private final AffineTransform[] transforms_;
+   private final Point2D.Double[] centers_;
+   private final double minX_;
+   private final double minY_;
+   private final double bucketWidth_;
+   private final double bucketHeight_;
+   private final int nrColumns_;
+   private final int nrRows_;
+   // per bucket, indices into cells_ in map iteration order
+   private final int[][] buckets_;
+
+   MappingCellIndex(Map<Polygon, AffineTransform> map) {
+      int n = map.size();
+      cells_ = new Polygon[n];
+      transforms_ = new AffineTransform[n];
+      centers_ = new Point2D.Double[n];
+      Rectangle union = null;
+      int i = 0;
+      for (Map.Entry<Polygon, AffineTransform> entry : map.entrySet()) {
+         cells_[i] = entry.getKey();
+         transforms_[i] = entry.getValue();
+         centers_[i] = Utils.meanPosition2D(Utils.getVertices(cells_[i]));
+         Rectangle bounds = cells_[i].getBounds();
+         union = union == null ? new Rectangle(bounds) : union.union(bounds);
+         i++;
+      }
+      if (union == null || union.isEmpty()) {
+         union = new Rectangle(0, 0, 1, 1);
+      }
+      // about one cell per bucket for the regular grids the Calibrator produces
+      int side = Math.max(1, (int) Math.ceil(Math.sqrt(n)));
+      minX_ = union.x;
+      minY_ = union.y;
+      nrColumns_ = side;
+      nrRows_ = side;
+      bucketWidth_ = Math.max(1.0, (double) union.width / nrColumns_);
+      bucketHeight_ = Math.max(1.0, (double) union.height / nrRows_);
+
+      int[] counts = new int[nrColumns_ * nrRows_];
+      int[][] lists = new int[counts.length][];
+      for (int c = 0; c < n; c++) {
+         Rectangle b = cells_[c].getBounds();
+         int c0 = column(b.x);
+         int c1 = column(b.x + b.width);
+         int r0 = row(b.y);
+         int r1 = row(b.y + b.height);
+         for (int r = r0; r <= r1; r++) {
+            for (int col = c0; col <= c1; col++) {
+               int bucket = r * nrColumns_ + col;
+               if (lists[bucket] == null) {
+                  lists[bucket] = new int[4];
+               } else if (counts[bucket] == lists[bucket].length) {
+                  lists[bucket] = Arrays.copyOf(lists[bucket], 2 * counts[bucket]);
+               }
+               lists[bucket][counts[bucket]++] = c;
+            }
+         }
+      }
+      buckets_ = new int[counts.length][];
+      for (int b = 0; b < counts.length; b++) {
+         buckets_[b] = lists[b] == null ? new int[0] : Arrays.copyOf(lists[b], counts[b]);
+      }
+   }
+
+   /**
+    * Returns the transform of the cell containing the point, or of the cell whose
+    * center is closest to the point when no cell contains it.
+    *
+    * @throws RuntimeException when the mapping has no cells
+    */
+   AffineTransform transformFor(double x, double y) {
+      double fx = Math.floor((x - minX_) / bucketWidth_);
+      double fy = Math.floor((y - minY_) / bucketHeight_);
+      if (fx >= 0 && fx < nrColumns_ && fy >= 0 && fy < nrRows_) {
+         for (int c : buckets_[(int) fy * nrColumns_ + (int) fx]) {
+            if (cells_[c].contains(x, y)) {
+               return transforms_[c];
+            }
+         }
+      }
+      // The point isn't inside any cell, so search for the closest cell
+      // and use the AffineTransform from that.
+      double minDistance = Double.MAX_VALUE;
+      int best = -1;
+      for (int c = 0; c < centers_.length; c++) {
+         double distance = centers_[c].distance(x, y);
+         if (minDistance > distance) {
+            best = c;
+            minDistance = distance;
+         }
+      }
+      if (best < 0) {
+         throw new RuntimeException("Unable to map point to device.");
+      }
+      return transforms_[best];
+   }
+
+   private int column(double x) {
+      return clamp((int) Math.floor((x - minX_) / bucketWidth_), nrColumns_);
+   }
+
+   private int row(double y) {
+      return clamp((int) Math.floor((y - minY_) / bucketHeight_), nrRows_);
+   }
+
+   private static int clamp(int value, int size) {
+      return Math.max(0, Math.min(size - 1, value));
+   }
+}
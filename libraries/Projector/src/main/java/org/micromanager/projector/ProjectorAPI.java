@@ -106,6 +106,35 @@ public class ProjectorAPI {
       return ProjectorActions.transformROIs(rois, mapping, cameraROI, cameraBinning);
    }
 
+   /**
+    * Transforms FloatPolygons from camera to projection device coordinates.
+    *
+    * @param roiPolygons   Polygons in camera coordinates
+    * @param mapping       Mapping between camera and projector coordinates
+    * @param cameraROI     current ROI of the camera.  Will be ignored when null
+    * @param cameraBinning current binning of the camera.  Assumed to be 1 when null
+    * @return Transformed polygons
+    */
+   public List<FloatPolygon> transformFloatPolygons(List<FloatPolygon> roiPolygons,
+         Mapping mapping, Rectangle cameraROI, Integer cameraBinning) {
+      return ProjectorActions.transformFloatPolygons(roiPolygons, mapping, cameraROI,
+            cameraBinning);
+   }
+
+   /**
+    * Transforms a list of points from camera to projector coordinates.
+    *
+    * @param mapping       Mapping between camera and projector coordinates
+    * @param points        Points in camera coordinates
+    * @param cameraROI     current ROI of the camera.  Will be ignored when null
+    * @param cameraBinning current binning of the camera.  Assumed to be 1 when null
+    * @return Points in projector coordinates
+    */
+   public List<Point2D.Double> transformPoints(Mapping mapping, List<Point2D.Double> points,
+         Rectangle cameraROI, Integer cameraBinning) {
+      return ProjectorActions.transformPoints(mapping, points, cameraROI, cameraBinning);
+   }
+
    /**
     * Transform a point in camera coordinates to projector coordinates, given the mapping, which
     * contains a Map of polygon cells to AffineTransforms.
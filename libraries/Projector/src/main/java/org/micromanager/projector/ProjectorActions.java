@@ -11,14 +11,14 @@ import java.awt.Polygon;
 import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.stream.IntStream;
 import mmcorej.CMMCore;
 import org.micromanager.Studio;
 import org.micromanager.internal.utils.ReportingUtils;
 import org.micromanager.projector.internal.MappingStorage;
 import org.micromanager.projector.internal.ProjectorControlForm;
-import org.micromanager.projector.internal.Utils;
 import org.micromanager.projector.internal.devices.Galvo;
 import org.micromanager.projector.internal.devices.SLM;
 import org.micromanager.propertymap.MutablePropertyMapView;
@@ -136,6 +136,7 @@ public abstract class ProjectorActions {
 
    /**
     * Transform the Roi polygons with the given nonlinear mapping.
+    * All vertices of all polygons are transformed in parallel.
     *
     * @param roiPolygons Polygons to be transformed
     * @param mapping     Contains information about the camera/device mapping
@@ -145,31 +146,89 @@ public abstract class ProjectorActions {
     */
    public static List<FloatPolygon> transformRoiPolygons(
          Polygon[] roiPolygons, Mapping mapping, Rectangle cameraROI, Integer cameraBinning) {
+      List<Point2D.Double> imagePoints = new ArrayList<>();
+      for (Polygon roiPolygon : roiPolygons) {
+         for (int i = 0; i < roiPolygon.npoints; ++i) {
+            imagePoints.add(new Point2D.Double(roiPolygon.xpoints[i], roiPolygon.ypoints[i]));
+         }
+      }
       ArrayList<FloatPolygon> transformedROIs = new ArrayList<>();
+      List<Point2D.Double> targeterPoints;
+      try {
+         targeterPoints = transformPoints(mapping, imagePoints, cameraROI, cameraBinning);
+      } catch (Exception ex) {
+         ReportingUtils.showError(ex);
+         return transformedROIs;
+      }
+      int index = 0;
       for (Polygon roiPolygon : roiPolygons) {
          FloatPolygon targeterPolygon = new FloatPolygon();
-         try {
-            Point2D targeterPoint;
-            for (int i = 0; i < roiPolygon.npoints; ++i) {
-               Point2D.Double imagePoint = new Point2D.Double(
-                     roiPolygon.xpoints[i], roiPolygon.ypoints[i]);
-               // targeterPoint = transformAndMirrorPoint(mapping, imagePoint);
-               targeterPoint = transformPoint(mapping, imagePoint, cameraROI, cameraBinning);
-               if (targeterPoint == null) {
-                  throw new Exception();
-               }
-               targeterPolygon.addPoint((float) targeterPoint.getX(),
-                     (float) targeterPoint.getY());
-            }
-            transformedROIs.add(targeterPolygon);
-         } catch (Exception ex) {
-            ReportingUtils.showError(ex);
-            break;
+         for (int i = 0; i < roiPolygon.npoints; ++i) {
+            Point2D targeterPoint = targeterPoints.get(index++);
+            targeterPolygon.addPoint((float) targeterPoint.getX(),
+                  (float) targeterPoint.getY());
          }
+         transformedROIs.add(targeterPolygon);
       }
       return transformedROIs;
    }
 
+   /**
+    * Transforms FloatPolygons (for instance the output of ImageJ's
+    * Roi.getFloatPolygon()) from camera to projection device coordinates.
+    * All vertices of all polygons are transformed in parallel.
+    *
+    * @param roiPolygons   Polygons in camera coordinates
+    * @param mapping       Contains information about the camera/device mapping
+    * @param cameraROI     current ROI of the camera.  Will be ignored when null
+    * @param cameraBinning current binning of the camera.  Assumed to be 1 when null
+    * @return List of polygons in projection device coordinates
+    */
+   public static List<FloatPolygon> transformFloatPolygons(
+         List<FloatPolygon> roiPolygons, Mapping mapping, Rectangle cameraROI,
+         Integer cameraBinning) {
+      List<Point2D.Double> imagePoints = new ArrayList<>();
+      for (FloatPolygon roiPolygon : roiPolygons) {
+         for (int i = 0; i < roiPolygon.npoints; ++i) {
+            imagePoints.add(new Point2D.Double(roiPolygon.xpoints[i], roiPolygon.ypoints[i]));
+         }
+      }
+      List<Point2D.Double> targeterPoints = transformPoints(mapping, imagePoints,
+            cameraROI, cameraBinning);
+      List<FloatPolygon> transformedROIs = new ArrayList<>(roiPolygons.size());
+      int index = 0;
+      for (FloatPolygon roiPolygon : roiPolygons) {
+         FloatPolygon targeterPolygon = new FloatPolygon();
+         for (int i = 0; i < roiPolygon.npoints; ++i) {
+            Point2D.Double targeterPoint = targeterPoints.get(index++);
+            targeterPolygon.addPoint((float) targeterPoint.x, (float) targeterPoint.y);
+         }
+         transformedROIs.add(targeterPolygon);
+      }
+      return transformedROIs;
+   }
+
+   /**
+    * Transforms a list of points from camera to projection device coordinates, in
+    * parallel.  Unlike {@link #transformPoint}, the input points are not modified.
+    *
+    * @param mapping       Contains information about the camera/device mapping
+    * @param points        Points in camera coordinates
+    * @param cameraROI     current ROI of the camera.  Will be ignored when null
+    * @param cameraBinning current binning of the camera.  Assumed to be 1 when null
+    * @return Points in projection device coordinates, in the same order as the input
+    */
+   public static List<Point2D.Double> transformPoints(Mapping mapping,
+         List<Point2D.Double> points, Rectangle cameraROI, Integer cameraBinning) {
+      final MappingCellIndex cellIndex = mapping.getCellIndex();
+      Point2D.Double[] result = new Point2D.Double[points.size()];
+      IntStream.range(0, result.length).parallel().forEach(i -> {
+         Point2D.Double pt = new Point2D.Double(points.get(i).x, points.get(i).y);
+         result[i] = transformPoint(mapping, cellIndex, pt, cameraROI, cameraBinning);
+      });
+      return Arrays.asList(result);
+   }
+
 
    /**
     * Converts an array of ImageJ Rois to an array of Polygons. Handles EllipseRois and compound
@@ -201,6 +260,13 @@ public abstract class ProjectorActions {
     */
    public static Point2D.Double transformPoint(Mapping mapping,
          Point2D.Double pt, Rectangle cameraROI, Integer cameraBinning) {
+      return transformPoint(mapping, mapping.getCellIndex(), pt, cameraROI, cameraBinning);
+   }
+
+   // Adjusts pt for the difference between the current camera ROI/binning and those
+   // during calibration, and applies the transform of the cell the point falls in.
+   private static Point2D.Double transformPoint(Mapping mapping, MappingCellIndex cellIndex,
+         Point2D.Double pt, Rectangle cameraROI, Integer cameraBinning) {
       if (cameraROI != null) {
          if (cameraBinning == null) {
             cameraBinning = 1;
@@ -209,29 +275,7 @@ public abstract class ProjectorActions {
          pt.x = (pt.x + cameraROI.x - mapping.getCameraROI().getX()) * factor;
          pt.y = (pt.y + cameraROI.y - mapping.getCameraROI().getY()) * factor;
       }
-      Set<Polygon> set = mapping.getMap().keySet();
-      // First find out if the given point is inside a cell, and if so,
-      // transform it with that cell's AffineTransform.
-      for (Polygon poly : set) {
-         if (poly.contains(pt)) {
-            return (Point2D.Double) mapping.getMap().get(poly).transform(pt, null);
-         }
-      }
-      // The point isn't inside any cell, so search for the closest cell
-      // and use the AffineTransform from that.
-      double minDistance = Double.MAX_VALUE;
-      Polygon bestPoly = null;
-      for (Polygon poly : set) {
-         double distance = Utils.meanPosition2D(Utils.getVertices(poly)).distance(pt.x, pt.y);
-         if (minDistance > distance) {
-            bestPoly = poly;
-            minDistance = distance;
-         }
-      }
-      if (bestPoly == null) {
-         throw new RuntimeException("Unable to map point to device.");
-      }
-      return (Point2D.Double) mapping.getMap().get(bestPoly).transform(pt, null);
+      return (Point2D.Double) cellIndex.transformFor(pt.x, pt.y).transform(pt, null);
    }
 
    /**
@@ -261,10 +305,12 @@ public abstract class ProjectorActions {
       int slmWidth = (int) slm.getXRange();
       int slmHeight = (int) slm.getYRange();
       byte[] outputImage = new byte[slmWidth * slmHeight];
-      for (int x = 0; x < width; x++) {
-         for (int y = 0; y < height; y++) {
+      final MappingCellIndex cellIndex = mapping.getCellIndex();
+      // Rows are independent; concurrent writes to outputImage all store the same value
+      IntStream.range(0, height).parallel().forEach(y -> {
+         for (int x = 0; x < width; x++) {
             if (inputImage[x + y * width] != 0) {
-               Point2D.Double rp = transformPoint(mapping,
+               Point2D.Double rp = transformPoint(mapping, cellIndex,
                      new Point2D.Double(x, y), cameraROI, cameraBinning);
                int xt = (int) rp.x;
                int yt = (int) rp.y;
@@ -273,7 +319,7 @@ public abstract class ProjectorActions {
                }
             }
          }
-      }
+      });
       slm.displaySLMImage(outputImage);
    }
 
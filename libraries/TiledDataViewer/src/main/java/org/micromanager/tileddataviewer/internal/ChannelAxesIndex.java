@@ -0,0 +1,111 @@
+package org.micromanager.tileddataviewer.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.micromanager.tileddataviewer.TiledDataViewerDataSource;
+
+/**
+ * Index from channel to the axes that occur in images of that channel.
+ *
+ * <p>Not all axes apply to every channel (a maximum intensity projection, for example,
+ * has no z axis), so the viewer needs to know which axes exist for a channel before it
+ * requests an image. Scanning {@link TiledDataViewerDataSource#getImageKeys()} for this
+ * on every repaint gets slow once a dataset has tens of thousands of images.
+ * This index is seeded from the image keys once, and then kept up to date from
+ * {@link TiledDataViewer#newImageArrived(HashMap)}, so that lookups do not depend on
+ * the size of the dataset.</p>
+ */
+public final class ChannelAxesIndex {
+
+   // Sources that do not tell the viewer about new images are indexed again at
+   // most this often when an unknown channel is asked for
+   private static final long MIN_REBUILD_INTERVAL_MS = 1000;
+
+   private final ConcurrentHashMap<Object, ChannelAxes> channels_ = new ConcurrentHashMap<>();
+   private volatile boolean seeded_ = false;
+   private long lastRebuildMs_ = 0;
+   private volatile boolean hasImages_ = false;
+
+   /**
+    * Axes seen in the images of one channel.
+    */
+   public static final class ChannelAxes {
+      private final Set<String> axes_ = ConcurrentHashMap.newKeySet();
+
+      private void add(Map<String, Object> key) {
+         axes_.addAll(key.keySet());
+      }
+
+      /**
+       * Names of all axes that occur in at least one image of this channel.
+       */
+      public Set<String> getAxes() {
+         return Collections.unmodifiableSet(axes_);
+      }
+   }
+
+   /**
+    * Record the axes of a newly arrived image.
+    *
+    * @param axes the axes positions of the image
+    */
+   public void add(Map<String, Object> axes) {
+      hasImages_ = true;
+      Object channel = axes.get(TiledDataViewer.CHANNEL_AXIS);
+      if (channel != null) {
+         channels_.computeIfAbsent(channel, (c) -> new ChannelAxes()).add(axes);
+      }
+   }
+
+   /**
+    * Index all images currently in the data source, unless this was done before.
+    */
+   public void seedIfNeeded(TiledDataViewerDataSource data) {
+      if (!seeded_) {
+         rebuild(data);
+      }
+   }
+
+   /**
+    * Index all images currently in the data source.  Axes recorded earlier are kept.
+    */
+   public synchronized void rebuild(TiledDataViewerDataSource data) {
+      for (HashMap<String, Object> key : data.getImageKeys()) {
+         add(key);
+      }
+      seeded_ = true;
+      lastRebuildMs_ = System.currentTimeMillis();
+   }
+
+   /**
+    * Index all images currently in the data source, unless that was done less than
+    * a second ago.  For sources that add images without telling the viewer; a
+    * channel that has no images at all is asked for on every repaint, and should
+    * not cause a scan of all image keys each time.
+    */
+   public synchronized void rebuildIfStale(TiledDataViewerDataSource data) {
+      if (System.currentTimeMillis() - lastRebuildMs_ >= MIN_REBUILD_INTERVAL_MS) {
+         rebuild(data);
+      }
+   }
+
+   /**
+    * Axes seen in images of the given channel.
+    *
+    * @param channel value of the channel axis
+    * @return the axes of this channel, or null if no image of this channel is known
+    */
+   public ChannelAxes getChannel(Object channel) {
+      return channel == null ? null : channels_.get(channel);
+   }
+
+   /**
+    * Whether any image at all has been recorded.
+    */
+   public boolean hasImages() {
+      return hasImages_;
+   }
+}
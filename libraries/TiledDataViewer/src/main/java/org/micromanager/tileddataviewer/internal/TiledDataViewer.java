@@ -91,6 +91,7 @@ public class TiledDataViewer implements TiledDataViewerAPI {
    private String preferencesKey_ = "";
    private TiledDataViewerDataSource dataSource_;
    private DisplayModel displayModel_;
+   private final ChannelAxesIndex channelAxesIndex_ = new ChannelAxesIndex();
 
    public TiledDataViewer(TiledDataViewerDataSource cache,
                           TiledDataViewerAcqInterface acq,
@@ -287,6 +288,7 @@ public class TiledDataViewer implements TiledDataViewerAPI {
     * @param axesPositions Hashmap of axis labels to positions
     */
    public void newImageArrived(HashMap<String, Object> axesPositions) {
+      channelAxesIndex_.add(axesPositions);
       try {
 
          displayModel_.updateDisplayBounds();
@@ -794,6 +796,13 @@ public class TiledDataViewer implements TiledDataViewerAPI {
       return dataSource_;
    }
 
+   /**
+    * Which axes occur in the images of each channel, kept up to date as images arrive.
+    */
+   public ChannelAxesIndex getChannelAxesIndex() {
+      return channelAxesIndex_;
+   }
+
    @Override
    public int[] getBounds() {
       return dataSource_.getBounds();
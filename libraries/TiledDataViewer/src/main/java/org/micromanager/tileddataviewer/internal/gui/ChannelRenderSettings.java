@@ -1,6 +1,8 @@
 package org.micromanager.tileddataviewer.internal.gui;
 
 import java.awt.Color;
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * Rendering parameters for one channel, derived from MM DisplaySettings.
@@ -41,4 +43,27 @@ public final class ChannelRenderSettings {
       this.componentMin = componentMin;
       this.componentMax = componentMax;
    }
+
+   @Override
+   public boolean equals(Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (!(o instanceof ChannelRenderSettings)) {
+         return false;
+      }
+      ChannelRenderSettings other = (ChannelRenderSettings) o;
+      return contrastMin == other.contrastMin && contrastMax == other.contrastMax
+            && Double.compare(gamma, other.gamma) == 0 && active == other.active
+            && Objects.equals(color, other.color)
+            && Arrays.equals(componentMin, other.componentMin)
+            && Arrays.equals(componentMax, other.componentMax);
+   }
+
+   @Override
+   public int hashCode() {
+      int result = Objects.hash(contrastMin, contrastMax, gamma, color, active);
+      result = 31 * result + Arrays.hashCode(componentMin);
+      return 31 * result + Arrays.hashCode(componentMax);
+   }
 }
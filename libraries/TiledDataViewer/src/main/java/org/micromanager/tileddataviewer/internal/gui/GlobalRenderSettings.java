@@ -1,5 +1,7 @@
 package org.micromanager.tileddataviewer.internal.gui;
 
+import java.util.Objects;
+
 /**
  * Global rendering parameters derived from MM DisplaySettings.
  */
@@ -18,4 +20,24 @@ public final class GlobalRenderSettings {
       this.composite = composite;
       this.logHistogram = logHistogram;
    }
+
+   @Override
+   public boolean equals(Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (!(o instanceof GlobalRenderSettings)) {
+         return false;
+      }
+      GlobalRenderSettings other = (GlobalRenderSettings) o;
+      return autostretch == other.autostretch && ignoreOutliers == other.ignoreOutliers
+            && Double.compare(percentToIgnore, other.percentToIgnore) == 0
+            && composite == other.composite && logHistogram == other.logHistogram;
+   }
+
+   @Override
+   public int hashCode() {
+      return Objects.hash(autostretch, ignoreOutliers, percentToIgnore, composite,
+            logHistogram);
+   }
 }
@@ -6,7 +6,9 @@ import java.awt.Toolkit;
 import java.awt.image.DirectColorModel;
 import java.awt.image.IndexColorModel;
 import java.awt.image.MemoryImageSource;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -14,9 +16,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 import mmcorej.TaggedImage;
 import mmcorej.org.json.JSONObject;
 import org.micromanager.tileddataviewer.TiledDataViewerDataSource;
+import org.micromanager.tileddataviewer.internal.ChannelAxesIndex;
 import org.micromanager.tileddataviewer.internal.TiledDataViewer;
 import org.micromanager.tileddataviewer.internal.gui.contrast.HistogramUtils;
 import org.micromanager.tileddataviewer.internal.gui.contrast.LUT;
@@ -43,6 +47,8 @@ public class ImageMaker {
    private MemoryImageSource imageSource_;
    DirectColorModel rgbCM_ = new DirectColorModel(24, 0xff0000, 0xff00, 0xff);
    private JSONObject latestTags_;
+   // channels blended into rgbPixels_ by the last render
+   private List<TiledDataViewerImageProcessor> compositedLayers_ = new ArrayList<>();
    private TiledDataViewer display_;
    private boolean closed_ = false;
 
@@ -87,16 +93,23 @@ public class ImageMaker {
       // have to apply to every channel (for example, a maximum intensity projection doesn't
       // have z axis). So search through all axes currently stored for this channel, and
       // delete any axes from the request that arent present
-      Set<HashMap<String, Object>> allImageKeys = data_.getImageKeys();
-      HashSet<String> axesInChannel = new HashSet<String>();
-      // If some axes aren't provided,
-      for (HashMap<String, Object> key : allImageKeys) {
-         if ((key.containsKey("channel") && axes.containsKey("channel")
-                  && key.get("channel").equals(axes.get("channel")))) {
-            axesInChannel.addAll(key.keySet());
-         } else if (!axes.containsKey("channel")) {
-            axesInChannel.addAll(axes.keySet());
+      ChannelAxesIndex index = display_.getChannelAxesIndex();
+      index.seedIfNeeded(data_);
+      Set<String> axesInChannel;
+      if (axes.containsKey(TiledDataViewer.CHANNEL_AXIS)) {
+         ChannelAxesIndex.ChannelAxes channel =
+               index.getChannel(axes.get(TiledDataViewer.CHANNEL_AXIS));
+         if (channel == null) {
+            // Images may have been added to the data source without the viewer being told
+            index.rebuildIfStale(data_);
+            channel = index.getChannel(axes.get(TiledDataViewer.CHANNEL_AXIS));
          }
+         axesInChannel = channel == null ? Collections.<String>emptySet() : channel.getAxes();
+      } else if (index.hasImages()) {
+         // no channel requested: keep all requested axes
+         axesInChannel = new HashSet<>(axes.keySet());
+      } else {
+         axesInChannel = Collections.emptySet();
       }
 
       String[] requestedAxes = axes.keySet().toArray(new String[0]);
@@ -231,128 +244,41 @@ public class ImageMaker {
             }
          }
 
-         boolean firstActive = true;
-         Arrays.fill(rgbPixels_, 0);
-         int redValue;
-         int greenValue;
-         int blueValue;
-         for (String c : channelProcessors_.keySet()) {
-            if (!getChannelSettings(c).active) {
+         // Bring the 8 bit image and LUT of every active channel up to date. Channels
+         // whose pixels and settings did not change since the last render are skipped.
+         boolean changed = remakeDisplayImage;
+         List<TiledDataViewerImageProcessor> layers = new ArrayList<>();
+         for (Map.Entry<String, TiledDataViewerImageProcessor> entry
+                  : channelProcessors_.entrySet()) {
+            if (!getChannelSettings(entry.getKey()).active) {
                continue;
             }
-            String channelName = c;
-            if (getChannelSettings(channelName).active) {
-               //get the appropriate pixels from the data view
-
-               //recompute 8 bit image
-               channelProcessors_.get(c).recompute();
-                  {
-                     // Check the eightBitImage buffers as well as the LUT tables: both are
-                     // dereferenced below, but they become null independently. changePixels()
-                     // clears eightBitImage while leaving reds populated from an earlier
-                     // render, and recompute() returns early (without calling create8BitImage)
-                     // when no pixels have arrived yet -- so a "reds != null" test alone lets a
-                     // null eightBitImage through and NPEs in the pixel loop. Seen when zooming
-                     // during a live explore acquisition. The RGB subclass overrides
-                     // isRenderable() to check all three component processors.
-                     if (!channelProcessors_.get(c).isRenderable(imageWidth_ * imageHeight_)) {
-                        continue; // No pixels yet
-                     }
-                  }
-               if (firstActive) {
-                  if (channelProcessors_.get(c) instanceof TiledDataViewerImageProcessorRGB) {
-                     byte[] bytesR = ((TiledDataViewerImageProcessorRGB) channelProcessors_.get(c))
-                              .rProcessor_
-                              .eightBitImage;
-                     byte[] bytesG = ((TiledDataViewerImageProcessorRGB) channelProcessors_.get(c))
-                              .gProcessor_
-                              .eightBitImage;
-                     byte[] bytesB = ((TiledDataViewerImageProcessorRGB) channelProcessors_.get(c))
-                              .bProcessor_
-                              .eightBitImage;
-                     for (int p = 0; p < imageWidth_ * imageHeight_; p++) {
-                        redValue = ((TiledDataViewerImageProcessorRGB) channelProcessors_.get(c))
-                                 .rProcessor_
-                                 .reds[bytesR[p] & 0xff];
-                        greenValue = ((TiledDataViewerImageProcessorRGB) channelProcessors_.get(c))
-                                 .gProcessor_
-                                 .greens[bytesG[p] & 0xff];
-                        blueValue = ((TiledDataViewerImageProcessorRGB) channelProcessors_.get(c))
-                                 .bProcessor_
-                                 .blues[bytesB[p] & 0xff];
-                        rgbPixels_[p] = redValue | greenValue | blueValue;
-                     }
-                  } else {
-                     byte[] bytes = channelProcessors_.get(c).eightBitImage;
-                     for (int p = 0; p < imageWidth_ * imageHeight_; p++) {
-                        redValue = channelProcessors_.get(c).reds[bytes[p] & 0xff];
-                        greenValue = channelProcessors_.get(c).greens[bytes[p] & 0xff];
-                        blueValue = channelProcessors_.get(c).blues[bytes[p] & 0xff];
-                        rgbPixels_[p] = redValue | greenValue | blueValue;
-                     }
-                  }
-                  firstActive = false;
-               } else {
-                  //add subsequent channels onto the first one
-                  int pixel;
-                  if (channelProcessors_.get(c) instanceof TiledDataViewerImageProcessorRGB) {
-                     byte[] bytesR = ((TiledDataViewerImageProcessorRGB) channelProcessors_.get(c))
-                              .rProcessor_
-                              .eightBitImage;
-                     byte[] bytesG = ((TiledDataViewerImageProcessorRGB) channelProcessors_.get(c))
-                              .gProcessor_
-                              .eightBitImage;
-                     byte[] bytesB = ((TiledDataViewerImageProcessorRGB) channelProcessors_.get(c))
-                              .bProcessor_
-                              .eightBitImage;
-                     for (int p = 0; p < imageWidth_ * imageHeight_; p++) {
-                        pixel = rgbPixels_[p];
-                        redValue = (pixel & 0x00ff0000) + ((TiledDataViewerImageProcessorRGB)
-                                 channelProcessors_.get(c)).rProcessor_.reds[bytesR[p] & 0xff];
-                        greenValue = (pixel & 0x0000ff00) + ((TiledDataViewerImageProcessorRGB)
-                                 channelProcessors_.get(c)).gProcessor_.greens[bytesG[p] & 0xff];
-                        blueValue = (pixel & 0x000000ff) + ((TiledDataViewerImageProcessorRGB)
-                                 channelProcessors_.get(c)).bProcessor_.blues[bytesB[p] & 0xff];
-
-                        if (redValue > 16711680) {
-                           redValue = 16711680;
-                        }
-                        if (greenValue > 65280) {
-                           greenValue = 65280;
-                        }
-                        if (blueValue > 255) {
-                           blueValue = 255;
-                        }
-                        rgbPixels_[p] = redValue | greenValue | blueValue;
-                     }
-                  } else {
-                     byte[] bytes = channelProcessors_.get(c).eightBitImage;
-                     for (int p = 0; p < imageWidth_ * imageHeight_; p++) {
-                        pixel = rgbPixels_[p];
-                        redValue = (pixel & 0x00ff0000) + channelProcessors_.get(c)
-                                 .reds[bytes[p] & 0xff];
-                        greenValue = (pixel & 0x0000ff00) + channelProcessors_.get(c)
-                                 .greens[bytes[p] & 0xff];
-                        blueValue = (pixel & 0x000000ff) + channelProcessors_.get(c)
-                                 .blues[bytes[p] & 0xff];
-
-                        if (redValue > 16711680) {
-                           redValue = 16711680;
-                        }
-                        if (greenValue > 65280) {
-                           greenValue = 65280;
-                        }
-                        if (blueValue > 255) {
-                           blueValue = 255;
-                        }
-                        rgbPixels_[p] = redValue | greenValue | blueValue;
-                     }
-                  }
-               }
+            TiledDataViewerImageProcessor processor = entry.getValue();
+            if (processor.recompute()) {
+               changed = true;
+            }
+            // Check the eightBitImage buffers as well as the LUT tables: both are
+            // dereferenced below, but they become null independently. changePixels()
+            // clears eightBitImage while leaving reds populated from an earlier
+            // render, and recompute() returns early (without calling create8BitImage)
+            // when no pixels have arrived yet -- so a "reds != null" test alone lets a
+            // null eightBitImage through and NPEs in the pixel loop. Seen when zooming
+            // during a live explore acquisition. The RGB subclass overrides
+            // isRenderable() to check all three component processors.
+            if (processor.isRenderable(imageWidth_ * imageHeight_)) {
+               layers.add(processor);
             }
-
          }
-
+         if (!layers.equals(compositedLayers_)) {
+            changed = true;
+         }
+         compositedLayers_ = layers;
+         if (changed || imageSource_ == null) {
+            composite(layers);
+         } else {
+            // Nothing changed since the last render, rgbPixels_ is still valid
+            return displayImage_;
+         }
 
          if (imageSource_ == null || remakeDisplayImage) {
             imageSource_ = new MemoryImageSource(imageWidth_, imageHeight_, rgbCM_,
@@ -370,6 +296,88 @@ public class ImageMaker {
       return displayImage_;
    }
 
+   /**
+    * Additively blends the given channels into rgbPixels_, clipping each color
+    * component at 255.  The lookup tables and 8 bit buffers of each channel are
+    * resolved once, and bands of rows are blended in parallel.
+    */
+   private void composite(List<TiledDataViewerImageProcessor> layers) {
+      final int nrLayers = layers.size();
+      final byte[][] rBytes = new byte[nrLayers][];
+      final byte[][] gBytes = new byte[nrLayers][];
+      final byte[][] bBytes = new byte[nrLayers][];
+      final int[][] reds = new int[nrLayers][];
+      final int[][] greens = new int[nrLayers][];
+      final int[][] blues = new int[nrLayers][];
+      for (int i = 0; i < nrLayers; i++) {
+         TiledDataViewerImageProcessor processor = layers.get(i);
+         if (processor instanceof TiledDataViewerImageProcessorRGB) {
+            TiledDataViewerImageProcessorRGB rgb = (TiledDataViewerImageProcessorRGB) processor;
+            rBytes[i] = rgb.rProcessor_.eightBitImage;
+            gBytes[i] = rgb.gProcessor_.eightBitImage;
+            bBytes[i] = rgb.bProcessor_.eightBitImage;
+            reds[i] = rgb.rProcessor_.reds;
+            greens[i] = rgb.gProcessor_.greens;
+            blues[i] = rgb.bProcessor_.blues;
+         } else {
+            rBytes[i] = processor.eightBitImage;
+            gBytes[i] = processor.eightBitImage;
+            bBytes[i] = processor.eightBitImage;
+            reds[i] = processor.reds;
+            greens[i] = processor.greens;
+            blues[i] = processor.blues;
+         }
+      }
+      final int[] rgbPixels = rgbPixels_;
+      final int width = imageWidth_;
+      final int height = imageHeight_;
+      final int nrBands = Math.max(1, Math.min(height,
+               Runtime.getRuntime().availableProcessors() * 4));
+      IntStream.range(0, nrBands).parallel().forEach((band) -> {
+         final int start = (int) ((long) height * band / nrBands) * width;
+         final int end = (int) ((long) height * (band + 1) / nrBands) * width;
+         for (int p = start; p < end; p++) {
+            int redValue = 0;
+            int greenValue = 0;
+            int blueValue = 0;
+            for (int i = 0; i < nrLayers; i++) {
+               redValue += reds[i][rBytes[i][p] & 0xff];
+               greenValue += greens[i][gBytes[i][p] & 0xff];
+               blueValue += blues[i][bBytes[i][p] & 0xff];
+            }
+            if (redValue > 16711680) {
+               redValue = 16711680;
+            }
+            if (greenValue > 65280) {
+               greenValue = 65280;
+            }
+            if (blueValue > 255) {
+               blueValue = 255;
+            }
+            rgbPixels[p] = redValue | greenValue | blueValue;
+         }
+      });
+   }
+
+   /**
+    * Whether two pixel arrays as returned by the data source hold the same data.
+    */
+   private static boolean samePixels(Object a, Object b) {
+      if (a == null || b == null) {
+         return false;
+      }
+      if (a instanceof short[] && b instanceof short[]) {
+         return Arrays.equals((short[]) a, (short[]) b);
+      }
+      if (a instanceof byte[] && b instanceof byte[]) {
+         return Arrays.equals((byte[]) a, (byte[]) b);
+      }
+      if (a instanceof int[] && b instanceof int[]) {
+         return Arrays.equals((int[]) a, (int[]) b);
+      }
+      return false;
+   }
+
    public static LUT makeLUT(Color color, double gamma) {
       int r = color.getRed();
       int g = color.getGreen();
@@ -426,6 +434,7 @@ public class ImageMaker {
       private TiledDataViewerImageProcessor rProcessor_;
       private TiledDataViewerImageProcessor bProcessor_;
       private TiledDataViewerImageProcessor gProcessor_;
+      private Object packedPixels_;
 
       public TiledDataViewerImageProcessorRGB(int w, int h, String name) {
          super(w, h, name);
@@ -436,6 +445,13 @@ public class ImageMaker {
 
       public void changePixels(Object pix, int w, int h) {
          if (pix != null) {
+            if (w == width && h == height && samePixels(packedPixels_, pix)) {
+               return;
+            }
+            packedPixels_ = pix;
+            width = w;
+            height = h;
+            pixelsChanged_ = true;
             byte[] rPix = new byte[w * h];
             byte[] gPix = new byte[w * h];
             byte[] bPix = new byte[w * h];
@@ -484,9 +500,19 @@ public class ImageMaker {
                bProcessor_.rawHistogram};
       }
 
-      public void recompute() {
+      @Override
+      public boolean recompute() {
          ChannelRenderSettings rs = getChannelSettings(channelName_);
          final GlobalRenderSettings gs = globalRenderSettings_;
+         if (!needsRecompute(rs, gs) && isRenderable(width * height)) {
+            return false;
+         }
+         for (TiledDataViewerImageProcessor component
+                  : new TiledDataViewerImageProcessor[] {rProcessor_, gProcessor_, bProcessor_}) {
+            if (component.rawHistogram != null) {
+               Arrays.fill(component.rawHistogram, 0);
+            }
+         }
          contrastMin_ = rs.contrastMin;
          contrastMax_ = rs.contrastMax;
          // Apply per-component scaling from white-balance settings when available.
@@ -500,7 +526,7 @@ public class ImageMaker {
          gProcessor_.create8BitImage();
          bProcessor_.create8BitImage();
          if (rProcessor_.rawHistogram == null) {
-            return; // No pixels yet — nothing to recompute
+            return false; // No pixels yet — nothing to recompute
          }
          rawHistogram = new int[rProcessor_.rawHistogram.length];
          for (int i = 0; i < rawHistogram.length; i++) {
@@ -545,6 +571,8 @@ public class ImageMaker {
          rProcessor_.splitLUTRGB();
          gProcessor_.splitLUTRGB();
          bProcessor_.splitLUTRGB();
+         markRendered(rs, gs);
+         return true;
       }
 
       private void processHistogram(int[] rawHistogram, GlobalRenderSettings gs) {
@@ -612,6 +640,10 @@ public class ImageMaker {
       int[] greens = null;
       int[] rawHistogram = null;
       final String channelName_;
+      // Inputs of the last recompute(), to skip recomputing when nothing changed
+      boolean pixelsChanged_ = true;
+      ChannelRenderSettings renderedSettings_ = null;
+      GlobalRenderSettings renderedGlobalSettings_ = null;
 
       public TiledDataViewerImageProcessor(int w, int h, String name) {
          width = w;
@@ -620,11 +652,31 @@ public class ImageMaker {
       }
 
       public void changePixels(Object pix, int w, int h) {
+         if (w == width && h == height && samePixels(pixels, pix)) {
+            // Same data as last time (e.g. a re-render for a contrast change in
+            // another channel), so the 8 bit image and histogram are still valid
+            return;
+         }
          pixels = pix;
          rawHistogram = pixels instanceof short[] ? new int[65536] : new int[256];
          width = w;
          height = h;
          eightBitImage = null;
+         pixelsChanged_ = true;
+      }
+
+      /**
+       * Whether the 8 bit image needs to be recomputed for the given settings.
+       */
+      boolean needsRecompute(ChannelRenderSettings rs, GlobalRenderSettings gs) {
+         return pixelsChanged_ || !rs.equals(renderedSettings_)
+                  || !gs.equals(renderedGlobalSettings_);
+      }
+
+      void markRendered(ChannelRenderSettings rs, GlobalRenderSettings gs) {
+         pixelsChanged_ = false;
+         renderedSettings_ = rs;
+         renderedGlobalSettings_ = gs;
       }
 
       /**
@@ -643,7 +695,13 @@ public class ImageMaker {
                   && reds != null && greens != null && blues != null;
       }
 
-      public void recompute() {
+      /**
+       * Recomputes the 8 bit image, histogram and LUT of this channel.
+       *
+       * @return false if nothing needed to be done, because neither the pixels nor
+       *     the render settings changed since the last call
+       */
+      public boolean recompute() {
          // No pixels have been supplied for this channel yet (changePixels not called),
          // so rawHistogram is null. This happens when a channel processor has been created
          // during channel registration but a redraw (e.g. a canvas resize) fires before the
@@ -652,10 +710,14 @@ public class ImageMaker {
          // throws NPE in processHistogram and aborts the whole render (which also prevents
          // the Inspector from finishing channel setup).
          if (pixels == null || rawHistogram == null) {
-            return;
+            return false;
          }
          ChannelRenderSettings rs = getChannelSettings(channelName_);
          final GlobalRenderSettings gs = globalRenderSettings_;
+         if (!needsRecompute(rs, gs) && eightBitImage != null) {
+            return false;
+         }
+         Arrays.fill(rawHistogram, 0);
          contrastMin_ = rs.contrastMin;
          contrastMax_ = rs.contrastMax;
          create8BitImage();
@@ -677,6 +739,8 @@ public class ImageMaker {
          }
          lut = makeLUT(rs.color, rs.gamma);
          splitLUTRGB();
+         markRendered(rs, gs);
+         return true;
       }
 
       private void processHistogram(int[] rawHistogram, GlobalRenderSettings gs) {
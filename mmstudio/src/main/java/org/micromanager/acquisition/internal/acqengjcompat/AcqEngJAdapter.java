@@ -107,6 +107,7 @@ public class AcqEngJAdapter implements AcquisitionEngine, MMAcquistionControlCal
    private Pipeline curPipeline_;
    private long nextWakeTime_ = -1;
    private long lastFrameIndex_ = -1;
+   private HookOverheadMonitor hookMonitor_;
    private ArrayList<RunnablePlusIndices> runnables_ = new ArrayList<>();
 
    private class RunnablePlusIndices {
@@ -240,6 +241,9 @@ public class AcqEngJAdapter implements AcquisitionEngine, MMAcquistionControlCal
          AcqEngJMDADataSink sink = new AcqEngJMDADataSink(studio_.events(), this);
          currentAcquisition_ = new Acquisition(sink);
          currentAcquisition_.setDebugMode(core_.debugLogEnabled());
+         hookMonitor_ = new HookOverheadMonitor();
+         currentAcquisition_.addHook(hookMonitor_.eventCounter(),
+               AcquisitionAPI.BEFORE_HARDWARE_HOOK);
 
          loadRunnables(acquisitionSettings);
 
@@ -272,7 +276,7 @@ public class AcqEngJAdapter implements AcquisitionEngine, MMAcquistionControlCal
                || sequenceSettings_.acqOrderMode() == AcqOrderMode.POS_TIME_SLICE_CHANNEL) {
             // Pos_time ordered acquisitions need their timelapse minimum start time to be
             // adjusted for each position.  The only place to do that seems to be a hardware hook.
-            currentAcquisition_.addHook(timeLapseHook(acquisitionSettings),
+            addTimedHook(timeLapseHook(acquisitionSettings),
                   AcquisitionAPI.BEFORE_HARDWARE_HOOK);
          }
 
@@ -285,10 +289,10 @@ public class AcqEngJAdapter implements AcquisitionEngine, MMAcquistionControlCal
          }
          boolean hasZOffsets = chSpecs.stream().anyMatch(t -> t.zOffset() != 0);
          if (sequenceSettings.useSlices() || (sequenceSettings.useChannels() && hasZOffsets)) {
-            currentAcquisition_.addHook(zPositionHook(acquisitionSettings,
+            addTimedHook(zPositionHook(acquisitionSettings,
                   Acquisition.BEFORE_HARDWARE_HOOK, null),
                   AcquisitionAPI.BEFORE_HARDWARE_HOOK);
-            currentAcquisition_.addHook(zPositionHook(acquisitionSettings,
+            addTimedHook(zPositionHook(acquisitionSettings,
                         Acquisition.AFTER_EXPOSURE_HOOK, null),
                   AcquisitionAPI.AFTER_EXPOSURE_HOOK);
          }
@@ -296,9 +300,9 @@ public class AcqEngJAdapter implements AcquisitionEngine, MMAcquistionControlCal
          // These hooks make sure that continuous-focus is off when running a Z stack.
          if (studio_.core().isContinuousFocusEnabled()
                  && ((MMStudio) studio_).settings().getUnlockAutofocusDuringZStack()) {
-            currentAcquisition_.addHook(continuousFocusHookBefore(acquisitionSettings),
+            addTimedHook(continuousFocusHookBefore(acquisitionSettings),
                   AcquisitionAPI.BEFORE_HARDWARE_HOOK);
-            currentAcquisition_.addHook(continuousFocusHookAfter(acquisitionSettings),
+            addTimedHook(continuousFocusHookAfter(acquisitionSettings),
                   AcquisitionAPI.AFTER_EXPOSURE_HOOK);
          }
 
@@ -308,27 +312,27 @@ public class AcqEngJAdapter implements AcquisitionEngine, MMAcquistionControlCal
          // AcqEngJ does not have hooks for this, so move the XY stage and other stages in the
          // positionlist ourselves inside the autofocusHookBefore function.
          if (sequenceSettings_.useAutofocus()) {
-            currentAcquisition_.addHook(autofocusHook(sequenceSettings_.skipAutofocusCount()),
+            addTimedHook(autofocusHook(sequenceSettings_.skipAutofocusCount()),
                   AcquisitionAPI.BEFORE_Z_DRIVE_HOOK);
             // add a hook to update the Z drive positions based on the position found in the i
             // previous round after autofocussing.
-            currentAcquisition_.addHook(adjustZDrivesHook(), AcquisitionAPI.BEFORE_Z_DRIVE_HOOK);
+            addTimedHook(adjustZDrivesHook(), AcquisitionAPI.BEFORE_Z_DRIVE_HOOK);
          }
 
          // Hooks to keep shutter open between channel and/or slices if desired
          if (((sequenceSettings.useChannels() && sequenceSettings.keepShutterOpenChannels())
                || (sequenceSettings.useSlices() && sequenceSettings.keepShutterOpenSlices()))
                && core_.getAutoShutter()) {
-            currentAcquisition_.addHook(shutterHookBefore(acquisitionSettings),
+            addTimedHook(shutterHookBefore(acquisitionSettings),
                   AcquisitionAPI.AFTER_HARDWARE_HOOK);
-            currentAcquisition_.addHook(shutterHookAfter(acquisitionSettings),
+            addTimedHook(shutterHookAfter(acquisitionSettings),
                   AcquisitionAPI.AFTER_EXPOSURE_HOOK);
          }
 
          if (sequenceSettings.useChannels()) {
             String channelGroup = core_.getChannelGroup();
             String channel = core_.getCurrentConfig(channelGroup);
-            currentAcquisition_.addHook(restoreChannelHook(channelGroup, channel),
+            addTimedHook(restoreChannelHook(channelGroup, channel),
                   AcquisitionAPI.AFTER_EXPOSURE_HOOK);
          }
 
@@ -362,13 +366,13 @@ public class AcqEngJAdapter implements AcquisitionEngine, MMAcquistionControlCal
                   }
                }
             }
-            currentAcquisition_.addHook(restorePositionHook(msp),
+            addTimedHook(restorePositionHook(msp),
                     AcquisitionAPI.AFTER_EXPOSURE_HOOK);
          }
          // This hook is used to update the time of the next wake up call
          if (sequenceSettings.useFrames()) {
             lastFrameIndex_ = -1;
-            currentAcquisition_.addHook(updateNextWakeHook(acquisitionSettings),
+            addTimedHook(updateNextWakeHook(acquisitionSettings),
                   AcquisitionAPI.AFTER_HARDWARE_HOOK);
          }
 
@@ -532,7 +536,7 @@ public class AcqEngJAdapter implements AcquisitionEngine, MMAcquistionControlCal
     */
    private void loadRunnables(SequenceSettings acquisitionSettings) {
       for (RunnablePlusIndices r : runnables_) {
-         currentAcquisition_.addHook(new AcquisitionHook() {
+         addTimedHook(new AcquisitionHook() {
             @Override
             public AcquisitionEvent run(AcquisitionEvent event) {
                if (event.isAcquisitionFinishedEvent()) {
@@ -736,6 +740,14 @@ public class AcqEngJAdapter implements AcquisitionEngine, MMAcquistionControlCal
 
    }
 
+   /**
+    * Adds the hook to the current acquisition, timing its calls so that the hook
+    * overhead can be reported when the acquisition ends.
+    */
+   private void addTimedHook(AcquisitionHook hook, int when) {
+      currentAcquisition_.addHook(hookMonitor_.timed(hook), when);
+   }
+
    protected Function<AcquisitionEvent, AcquisitionEvent> acqEventMonitor(
            SequenceSettings acquisitionSettings) {
       return null;
@@ -914,10 +926,13 @@ public class AcqEngJAdapter implements AcquisitionEngine, MMAcquistionControlCal
     */
    public AcquisitionHook adjustZDrivesHook() {
       return new AcquisitionHook() {
+         // The focus device does not change during an acquisition, so look it up once
+         // rather than asking the core for every event.
+         private final String zDevice = core_.getFocusDevice();
+
          @Override
          public AcquisitionEvent run(AcquisitionEvent event) {
             String posName = event.getTags().get(AcqEngMetadata.POS_NAME);
-            String zDevice = core_.getFocusDevice();
             MultiStagePosition msp = posName == null ? null : positionMap_.get(posName);
             boolean adjusted = false;
             if (msp != null) {
@@ -1957,6 +1972,10 @@ public class AcqEngJAdapter implements AcquisitionEngine, MMAcquistionControlCal
       if (event.getStore().equals(curStore_)) {
          curStore_ = null;
          curPipeline_ = null;
+         if (hookMonitor_ != null) {
+            studio_.logs().logMessage(hookMonitor_.report());
+            hookMonitor_ = null;
+         }
          if (currentAcquisition_ != null) {
             try {
                currentAcquisition_.checkForExceptions();
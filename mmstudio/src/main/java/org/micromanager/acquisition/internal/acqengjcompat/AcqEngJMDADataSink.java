@@ -41,6 +41,8 @@ public final class AcqEngJMDADataSink implements AcqEngJDataSink {
    private final EventManager studioEvents_;
    private boolean somethingAcquired_ = false;
    private boolean finished_ = false;
+   // Only written by the thread calling putImage
+   private volatile long failedImages_ = 0;
    private AcqEngJAdapter engine_;
 
    public AcqEngJMDADataSink(EventManager studioEvents, AcqEngJAdapter engine) {
@@ -95,6 +97,7 @@ public final class AcqEngJMDADataSink implements AcqEngJDataSink {
       if (finished_) {
          return null;
       }
+      boolean inserted = false;
       try {
          AcqEngJAdapter.addMMImageMetadata(tagged.tags);
          DefaultImage image = new DefaultImage(tagged);
@@ -140,6 +143,7 @@ public final class AcqEngJMDADataSink implements AcqEngJDataSink {
 
          try {
             pipeline_.insertImage(image);
+            inserted = true;
          } catch (PipelineErrorException e) {
             // These TODOs inherited from DefaultTaggedImageSink
             // TODO: make showing the dialog optional.
@@ -162,9 +166,21 @@ public final class AcqEngJMDADataSink implements AcqEngJDataSink {
       } catch (Exception ex2) {
          ReportingUtils.logError(ex2);
       }
+      if (!inserted) {
+         failedImages_++;
+      }
       return null;
    }
 
+   /**
+    * Number of images handed to putImage that did not make it into the pipeline
+    * because of an error.  Errors are logged rather than thrown, so that the
+    * acquisition can continue.
+    */
+   public long getFailedImageCount() {
+      return failedImages_;
+   }
+
    @Override
    public boolean anythingAcquired() {
       return somethingAcquired_;
@@ -0,0 +1,165 @@
+package org.micromanager.acquisition.internal.acqengjcompat;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import org.micromanager.acqj.api.AcquisitionHook;
+import org.micromanager.acqj.main.AcquisitionEvent;
+
+/**
+ * Keeps track of the time spent in acquisition hooks, and of how many images AcqEngJ
+ * acquired per hardware event, for each acquisition (identified by the
+ * {@link AcqEngJAdapter#ACQ_IDENTIFIER} tag of the events).
+ *
+ * <p>AcqEngJ merges consecutive events that the hardware can sequence (same exposure,
+ * sequenceable channel and stage properties) into a single event, and hooks run once for
+ * such a burst rather than once per image.  The report therefore gives an estimate of the
+ * hook overhead that sequencing saved, as well as the hook calls that were skipped because
+ * the event belonged to another acquisition.</p>
+ */
+public final class HookOverheadMonitor {
+
+   // Acquisition indices start at 0
+   private static final Integer NO_ACQUISITION = -1;
+
+   private final Map<Integer, Stats> stats_ = new TreeMap<>();
+
+   private static final class Stats {
+      long hardwareEvents_ = 0;
+      long sequencedEvents_ = 0;
+      long images_ = 0;
+      long hookCalls_ = 0;
+      long hookNs_ = 0;
+      long skippedHookCalls_ = 0;
+   }
+
+   /**
+    * Returns the index of the acquisition the event belongs to.
+    *
+    * @param event Event to examine.
+    * @return Value of the ACQ_IDENTIFIER tag, or -1 when the event does not have one.
+    */
+   public static Integer acquisitionIndex(AcquisitionEvent event) {
+      String id = event.getTags() == null ? null
+            : event.getTags().get(AcqEngJAdapter.ACQ_IDENTIFIER);
+      if (id == null) {
+         return NO_ACQUISITION;
+      }
+      try {
+         return Integer.valueOf(id);
+      } catch (NumberFormatException nfe) {
+         return NO_ACQUISITION;
+      }
+   }
+
+   /**
+    * Wraps the hook so that the time spent in it is recorded.
+    *
+    * @param hook Hook to be timed.
+    * @return Hook doing the same as the input, while keeping time.
+    */
+   public AcquisitionHook timed(final AcquisitionHook hook) {
+      return new AcquisitionHook() {
+         @Override
+         public AcquisitionEvent run(AcquisitionEvent event) {
+            long start = System.nanoTime();
+            AcquisitionEvent result = hook.run(event);
+            recordHookCall(acquisitionIndex(event), System.nanoTime() - start);
+            return result;
+         }
+
+         @Override
+         public void close() {
+            hook.close();
+         }
+      };
+   }
+
+   /**
+    * Hook that counts hardware events and the images in them.  Should be added
+    * at a point that is run once for every event that reaches the hardware, such as
+    * AcquisitionAPI.BEFORE_HARDWARE_HOOK.
+    *
+    * @return The Hook.
+    */
+   public AcquisitionHook eventCounter() {
+      return new AcquisitionHook() {
+         @Override
+         public AcquisitionEvent run(AcquisitionEvent event) {
+            if (!event.isAcquisitionFinishedEvent()) {
+               int images = event.getSequence() == null ? 1 : event.getSequence().size();
+               recordHardwareEvent(acquisitionIndex(event), images);
+            }
+            return event;
+         }
+
+         @Override
+         public void close() {
+         }
+      };
+   }
+
+   private synchronized Stats stats(Integer acqIndex) {
+      Stats s = stats_.get(acqIndex);
+      if (s == null) {
+         s = new Stats();
+         stats_.put(acqIndex, s);
+      }
+      return s;
+   }
+
+   private synchronized void recordHookCall(Integer acqIndex, long ns) {
+      Stats s = stats(acqIndex);
+      s.hookCalls_++;
+      s.hookNs_ += ns;
+   }
+
+   private synchronized void recordHardwareEvent(Integer acqIndex, int images) {
+      Stats s = stats(acqIndex);
+      s.hardwareEvents_++;
+      s.images_ += images;
+      if (images > 1) {
+         s.sequencedEvents_++;
+      }
+   }
+
+   /**
+    * Records that hooks were not called for an event, because the event did not
+    * belong to the acquisition of these hooks.
+    *
+    * @param acqIndex Acquisition the event belonged to.
+    * @param calls    Number of hook calls that were skipped.
+    */
+   public synchronized void recordSkippedHookCalls(Integer acqIndex, int calls) {
+      stats(acqIndex).skippedHookCalls_ += calls;
+   }
+
+   /**
+    * Summary of the hook overhead per acquisition.  The saved overhead is estimated as the
+    * hook time per hardware event times the number of images that did not need their own
+    * hardware event, plus the mean time of a hook call times the number of skipped calls.
+    *
+    * @return Human readable report, one line per acquisition.
+    */
+   public synchronized String report() {
+      StringBuilder sb = new StringBuilder("Acquisition hook overhead:");
+      for (Map.Entry<Integer, Stats> entry : stats_.entrySet()) {
+         Stats s = entry.getValue();
+         double nsPerEvent = s.hardwareEvents_ == 0 ? 0.0
+               : (double) s.hookNs_ / s.hardwareEvents_;
+         double nsPerCall = s.hookCalls_ == 0 ? 0.0 : (double) s.hookNs_ / s.hookCalls_;
+         double savedNs = nsPerEvent * Math.max(0, s.images_ - s.hardwareEvents_)
+               + nsPerCall * s.skippedHookCalls_;
+         String name = NO_ACQUISITION.equals(entry.getKey()) ? "untagged events"
+               : "acquisition " + entry.getKey();
+         sb.append(String.format(Locale.US,
+               "%n  %s: %d images in %d hardware events (%d sequenced), "
+                     + "%d hook calls took %.1f ms (%.3f ms per event), "
+                     + "%d hook calls skipped, estimated %.1f ms saved",
+               name, s.images_, s.hardwareEvents_, s.sequencedEvents_,
+               s.hookCalls_, s.hookNs_ / 1.0e6, nsPerEvent / 1.0e6,
+               s.skippedHookCalls_, savedNs / 1.0e6));
+      }
+      return sb.toString();
+   }
+}
@@ -57,6 +57,7 @@ import org.micromanager.acquisition.internal.DefaultAcquisitionStartedEvent;
 import org.micromanager.acquisition.internal.MMAcquisition;
 import org.micromanager.acquisition.internal.acqengjcompat.AcqEngJAdapter;
 import org.micromanager.acquisition.internal.acqengjcompat.AcqEngJUtils;
+import org.micromanager.acquisition.internal.acqengjcompat.HookOverheadMonitor;
 import org.micromanager.acquisition.internal.acqengjcompat.MDAAcqEventModules;
 import org.micromanager.acquisition.internal.acqengjcompat.multimda.MDASettingData;
 import org.micromanager.data.DataProvider;
@@ -105,6 +106,7 @@ public class MultiAcqEngJAdapter extends AcqEngJAdapter {
 
    private long nextWakeTime_ = -1;
    private long lastFrameIndex_ = -1;
+   private HookOverheadMonitor hookMonitor_;
 
    private ArrayList<RunnablePlusIndices> runnables_ = new ArrayList<>();
 
@@ -227,6 +229,9 @@ public class MultiAcqEngJAdapter extends AcqEngJAdapter {
          MultiAcqEngJMDADataSink sink = new MultiAcqEngJMDADataSink(studio_.events());
          currentMultiMDA_ = new Acquisition(sink);
          currentMultiMDA_.setDebugMode(core_.debugLogEnabled());
+         hookMonitor_ = new HookOverheadMonitor();
+         currentMultiMDA_.addHook(hookMonitor_.eventCounter(),
+               AcquisitionAPI.BEFORE_HARDWARE_HOOK);
 
          loadRunnables(sequenceSettings);
 
@@ -282,9 +287,10 @@ public class MultiAcqEngJAdapter extends AcqEngJAdapter {
          // and adjustZDrivesHook rewrites the event's Z to the autofocused position so
          // the Z drive is not sent to the raw (absolute) zStack origin.
          if (basicSettings.useAutofocus()) {
-            currentMultiMDA_.addHook(autofocusHook(basicSettings.skipAutofocusCount()),
+            currentMultiMDA_.addHook(hookMonitor_.timed(
+                        autofocusHook(basicSettings.skipAutofocusCount())),
                   AcquisitionAPI.BEFORE_Z_DRIVE_HOOK);
-            currentMultiMDA_.addHook(adjustZDrivesHook(),
+            currentMultiMDA_.addHook(hookMonitor_.timed(adjustZDrivesHook()),
                   AcquisitionAPI.BEFORE_Z_DRIVE_HOOK);
          }
 
@@ -293,21 +299,28 @@ public class MultiAcqEngJAdapter extends AcqEngJAdapter {
          // returns its initial -1 and the alert shows a large negative number.
          if (timeLapseSettings_.useFrames()) {
             lastFrameIndex_ = -1;
-            currentMultiMDA_.addHook(updateNextWakeHook(timeLapseSettings_),
+            currentMultiMDA_.addHook(hookMonitor_.timed(updateNextWakeHook(timeLapseSettings_)),
                   AcquisitionAPI.AFTER_HARDWARE_HOOK);
          }
 
+         // Hooks to move back the ZStage to its original position after a Z stack.
+         // Each event only goes to the hooks of its own acquisition.
+         PerAcquisitionHook zBefore = new PerAcquisitionHook(hookMonitor_);
+         PerAcquisitionHook zAfter = new PerAcquisitionHook(hookMonitor_);
          for (int i = 0; i < sequenceSettings.size(); i++) {
-            // Hook to move back the ZStage to its original position after a Z stack
             if (sequenceSettings.get(i).useSlices()) {
-               currentMultiMDA_.addHook(zPositionHook(sequenceSettings.get(i),
-                           AcquisitionAPI.BEFORE_HARDWARE_HOOK, i),
-                     AcquisitionAPI.BEFORE_HARDWARE_HOOK);
-               currentMultiMDA_.addHook(zPositionHook(sequenceSettings.get(i),
-                           Acquisition.AFTER_EXPOSURE_HOOK, i),
-                     AcquisitionAPI.AFTER_EXPOSURE_HOOK);
+               zBefore.add(i, zPositionHook(sequenceSettings.get(i),
+                     AcquisitionAPI.BEFORE_HARDWARE_HOOK, i));
+               zAfter.add(i, zPositionHook(sequenceSettings.get(i),
+                     Acquisition.AFTER_EXPOSURE_HOOK, i));
             }
          }
+         if (!zBefore.isEmpty()) {
+            currentMultiMDA_.addHook(hookMonitor_.timed(zBefore),
+                  AcquisitionAPI.BEFORE_HARDWARE_HOOK);
+            currentMultiMDA_.addHook(hookMonitor_.timed(zAfter),
+                  AcquisitionAPI.AFTER_EXPOSURE_HOOK);
+         }
 
          // Read for events
          currentMultiMDA_.start();
@@ -353,7 +366,7 @@ public class MultiAcqEngJAdapter extends AcqEngJAdapter {
     */
    private void loadRunnables(List<SequenceSettings> acquisitionSettingList) {
       for (RunnablePlusIndices r : runnables_) {
-         currentMultiMDA_.addHook(new AcquisitionHook() {
+         currentMultiMDA_.addHook(hookMonitor_.timed(new AcquisitionHook() {
             @Override
             public AcquisitionEvent run(AcquisitionEvent event) {
                int acqIndex = 0;
@@ -385,7 +398,7 @@ public class MultiAcqEngJAdapter extends AcqEngJAdapter {
             public void close() {
                // Runnable interface doesn't provide anything for close...
             }
-         }, Acquisition.AFTER_HARDWARE_HOOK);
+         }), Acquisition.AFTER_HARDWARE_HOOK);
          // TODO: does current API expect this to be before or after hardware? after camera?
          //  during event generation?
       }
@@ -1260,6 +1273,10 @@ public class MultiAcqEngJAdapter extends AcqEngJAdapter {
          currentMultiMDA_ = null;
          endedStores_.clear();
       }
+      if (hookMonitor_ != null) {
+         studio_.logs().logMessage(hookMonitor_.report());
+         hookMonitor_ = null;
+      }
       // All stores have ended: restore original Z position and autofocus if applicable.
       // Done outside the lock to avoid holding it during core/hardware calls.
       if (isFocusStageAvailable()) {
@@ -0,0 +1,79 @@
+package org.micromanager.acquisition.internal.acqengjcompat.multimda.acqengj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.micromanager.acqj.api.AcquisitionHook;
+import org.micromanager.acqj.main.AcquisitionEvent;
+import org.micromanager.acquisition.internal.acqengjcompat.HookOverheadMonitor;
+
+/**
+ * Single hook that passes each event only to the hooks of the acquisition the event
+ * belongs to.
+ *
+ * <p>In a Multi-MDA, every acquisition adds its own hooks at the same hook point, and each
+ * of these used to look at the acquisition identifier of every event to decide whether it
+ * had anything to do.  With many acquisitions that adds up to many hook calls per event.
+ * Here the identifier is read once per event, and only the hooks of that acquisition run.
+ * Events without an identifier (such as the acquisition finished event) go to all hooks,
+ * in the order the acquisitions were added.</p>
+ */
+final class PerAcquisitionHook implements AcquisitionHook {
+
+   private final Map<Integer, List<AcquisitionHook>> hooks_ = new TreeMap<>();
+   private final HookOverheadMonitor monitor_;
+   private int nrHooks_ = 0;
+
+   PerAcquisitionHook(HookOverheadMonitor monitor) {
+      monitor_ = monitor;
+   }
+
+   /**
+    * Adds a hook that will only see events of the given acquisition.
+    *
+    * @param acqIndex index of the acquisition in the Multi-MDA
+    * @param hook     Hook to run for events of that acquisition
+    */
+   void add(int acqIndex, AcquisitionHook hook) {
+      hooks_.computeIfAbsent(acqIndex, (i) -> new ArrayList<>()).add(hook);
+      nrHooks_++;
+   }
+
+   boolean isEmpty() {
+      return nrHooks_ == 0;
+   }
+
+   @Override
+   public AcquisitionEvent run(AcquisitionEvent event) {
+      if (event.getTags() == null
+            || !event.getTags().containsKey(MultiAcqEngJAdapter.ACQ_IDENTIFIER)) {
+         for (List<AcquisitionHook> hooks : hooks_.values()) {
+            for (AcquisitionHook hook : hooks) {
+               event = hook.run(event);
+            }
+         }
+         return event;
+      }
+      Integer acqIndex = HookOverheadMonitor.acquisitionIndex(event);
+      List<AcquisitionHook> hooks = hooks_.get(acqIndex);
+      int nrRun = 0;
+      if (hooks != null) {
+         for (AcquisitionHook hook : hooks) {
+            event = hook.run(event);
+         }
+         nrRun = hooks.size();
+      }
+      monitor_.recordSkippedHookCalls(acqIndex, nrHooks_ - nrRun);
+      return event;
+   }
+
+   @Override
+   public void close() {
+      for (List<AcquisitionHook> hooks : hooks_.values()) {
+         for (AcquisitionHook hook : hooks) {
+            hook.close();
+         }
+      }
+   }
+}
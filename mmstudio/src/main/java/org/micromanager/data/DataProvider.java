@@ -111,6 +111,20 @@ public interface DataProvider extends Closeable {
     */
    List<Image> getImagesIgnoringAxes(Coords coords, String... ignoreTheseAxes) throws IOException;
 
+   /**
+    * Returns a table with the elapsed time, exposure and stage position of
+    * every image, that can be queried without loading the images themselves
+    * (where the storage allows).
+    *
+    * <p>The default implementation loads the images the first time their
+    * values are requested, and returns the same table on every call.</p>
+    *
+    * @return Metadata table for the images of this DataProvider
+    */
+   default MetadataTable getMetadataTable() {
+      return ImageMetadataTable.of(this);
+   }
+
    /**
     * A dataProvider is frozen when no more images can be added.
     *
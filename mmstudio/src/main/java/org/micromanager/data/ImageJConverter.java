@@ -37,6 +37,25 @@ public interface ImageJConverter {
     */
    ImageProcessor createProcessor(Image image);
 
+   /**
+    * Create an ImageProcessor that shares its pixel array with the provided
+    * Image, without copying it.
+    *
+    * <p>Images are immutable, so the processor must be treated as read-only:
+    * ImageJ writes straight into the pixel array, and changing it would change
+    * the Image (and every copy of it in Datastores and displays).  Operations
+    * that return a new processor, such as crop(), rotateRight(), resize() and
+    * convertToFloat() (for non-float processors), are fine.  To modify the
+    * pixels in place, call duplicate() on the processor first, so that the
+    * copy is only made when it is needed.</p>
+    *
+    * @param image Micro-Manager Image object
+    * @return ImageJ ImageProcessor sharing the pixels of the input Image
+    */
+   default ImageProcessor createSharedProcessor(Image image) {
+      return createProcessor(image);
+   }
+
    /**
     * Create an ImageProcessor whose image pixel data is derived from a
     * single component of the provided Image. Use this to e.g. extract out
@@ -62,4 +81,23 @@ public interface ImageJConverter {
     */
    Image createImage(ImageProcessor processor, Coords coords,
                      Metadata metadata);
+
+   /**
+    * Create a new Image that takes over the pixel array of the provided
+    * ImageProcessor, without copying it.  Use this for processors created
+    * by your own code (for instance the result of crop() or rotateRight() on
+    * a processor from createSharedProcessor()), that are not used after this
+    * call: any later change to the processor's pixels would change the Image.
+    *
+    * @param processor ImageProcessor whose pixel array will become the pixel
+    *                  data of the result image.
+    * @param coords    Coordinates for the new image.
+    * @param metadata  Metadata to use to create the new Image.
+    * @return an Image using the pixel data of the processor and the given
+    *     coordinates and metadata.
+    */
+   default Image wrapProcessor(ImageProcessor processor, Coords coords,
+                               Metadata metadata) {
+      return createImage(processor, coords, metadata);
+   }
 }
@@ -0,0 +1,89 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API
+//-----------------------------------------------------------------------------
+//
+// COPYRIGHT:    Regents of the University of California, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * MetadataTable of DataProviders that do not have their own (see
+ * {@link DataProvider#getMetadataTable()}).  Reads the metadata of an image
+ * by loading it, the first time one of its values is requested.
+ *
+ * <p>One table is kept per provider, so that values are read only once.  The
+ * table refers to its provider weakly, so that it does not keep the provider
+ * (and itself) from being garbage collected.</p>
+ */
+final class ImageMetadataTable implements MetadataTable {
+   private static final Map<DataProvider, ImageMetadataTable> TABLES = new WeakHashMap<>();
+   private static final Column[] COLUMNS = Column.values();
+
+   private final WeakReference<DataProvider> provider_;
+   private final Map<Coords, double[]> values_ = new HashMap<>();
+
+   private ImageMetadataTable(DataProvider provider) {
+      provider_ = new WeakReference<>(provider);
+   }
+
+   /**
+    * Returns the table of the given provider, creating it the first time.
+    */
+   static synchronized MetadataTable of(DataProvider provider) {
+      return TABLES.computeIfAbsent(provider, ImageMetadataTable::new);
+   }
+
+   @Override
+   public double getValue(Coords coords, Column column) throws IOException {
+      synchronized (values_) {
+         double[] values = values_.get(coords);
+         if (values != null) {
+            return values[column.ordinal()];
+         }
+      }
+      DataProvider provider = provider_.get();
+      if (provider == null || !provider.hasImage(coords)) {
+         return Double.NaN;
+      }
+      Image image = provider.getImage(coords);
+      if (image == null) {
+         return Double.NaN;
+      }
+      double[] values = new double[COLUMNS.length];
+      for (Column c : COLUMNS) {
+         values[c.ordinal()] = c.getValue(image.getMetadata());
+      }
+      synchronized (values_) {
+         values_.put(coords, values);
+      }
+      return values[column.ordinal()];
+   }
+
+   @Override
+   public double[] getValues(List<Coords> coords, Column column) throws IOException {
+      double[] result = new double[coords.size()];
+      for (int i = 0; i < result.length; i++) {
+         result[i] = getValue(coords.get(i), column);
+      }
+      return result;
+   }
+}
@@ -0,0 +1,103 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API
+//-----------------------------------------------------------------------------
+//
+// COPYRIGHT:    Regents of the University of California, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Table with a few numerical metadata values of every image in a
+ * DataProvider, indexed by Coords.  Use this instead of loading Images
+ * when only these values are needed (for instance the time stamps of all
+ * images in a time series), since it avoids reading pixel data from disk.
+ * Obtain the table of a DataProvider with
+ * {@link DataProvider#getMetadataTable()}.
+ */
+public interface MetadataTable {
+   /**
+    * The metadata values kept in the table.
+    */
+   enum Column {
+      /** See {@link Metadata#getElapsedTimeMs(double)}. */
+      ELAPSED_TIME_MS,
+      /** See {@link Metadata#getExposureMs()}. */
+      EXPOSURE_MS,
+      /** See {@link Metadata#getXPositionUm()}. */
+      X_POSITION_UM,
+      /** See {@link Metadata#getYPositionUm()}. */
+      Y_POSITION_UM,
+      /** See {@link Metadata#getZPositionUm()}. */
+      Z_POSITION_UM;
+
+      /**
+       * Returns the value of this column in the given metadata.
+       *
+       * @param metadata Metadata of an image, may be null.
+       * @return The value, or NaN if the metadata do not contain it.
+       */
+      public double getValue(Metadata metadata) {
+         if (metadata == null) {
+            return Double.NaN;
+         }
+         Double value;
+         switch (this) {
+            case ELAPSED_TIME_MS:
+               return metadata.getElapsedTimeMs(Double.NaN);
+            case EXPOSURE_MS:
+               value = metadata.getExposureMs();
+               break;
+            case X_POSITION_UM:
+               value = metadata.getXPositionUm();
+               break;
+            case Y_POSITION_UM:
+               value = metadata.getYPositionUm();
+               break;
+            case Z_POSITION_UM:
+               value = metadata.getZPositionUm();
+               break;
+            default:
+               value = null;
+               break;
+         }
+         return value == null ? Double.NaN : value;
+      }
+   }
+
+   /**
+    * Returns the value of the given column for the image at the given coords.
+    *
+    * @param coords Coords of the image.
+    * @param column Metadata value to return.
+    * @return The value, or NaN if there is no such image, or if its metadata
+    *     did not contain the value.
+    * @throws IOException when error occurs loading the metadata from storage
+    */
+   double getValue(Coords coords, Column column) throws IOException;
+
+   /**
+    * Returns the values of the given column for the images at the given coords.
+    *
+    * @param coords Coords of the images.
+    * @param column Metadata value to return.
+    * @return Array with one value for each Coords in the list, in the same order.
+    *     Unknown values are NaN.
+    * @throws IOException when error occurs loading the metadata from storage
+    */
+   double[] getValues(List<Coords> coords, Column column) throws IOException;
+}
@@ -0,0 +1,185 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API implementation
+//-----------------------------------------------------------------------------
+//
+// COPYRIGHT:    Regents of the University of California, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.micromanager.data.Coords;
+
+/**
+ * Index of the Coords of the images in a Storage, that answers the
+ * getImagesMatching() and getImagesIgnoringAxes() queries of the Storage
+ * interface without looking at every image.
+ *
+ * <p>For each combination of ignored axes that is asked for, the index keeps
+ * a map from the Coords with those axes removed to the Coords of all images
+ * that match.  Such a map is built (once, by going through all Coords) the
+ * first time that combination is queried, and from then on is kept up to
+ * date by add() and remove(), so that a query takes time proportional to the
+ * number of images it returns.  Only the most recently used combinations are
+ * kept, since there are typically only a few (channel for composites, z for
+ * projections and orthogonal views, etc.).</p>
+ *
+ * <p>All methods are synchronized.</p>
+ */
+public final class CoordsIndex {
+   private static final int MAX_NR_VIEWS = 16;
+
+   private final Set<Coords> allCoords_ = new LinkedHashSet<>();
+   private final Set<String> axesInUse_ = new TreeSet<>();
+   // Key: sorted list of ignored axes
+   private final Map<List<String>, Map<Coords, List<Coords>>> views_ =
+         new LinkedHashMap<List<String>, Map<Coords, List<Coords>>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                  Map.Entry<List<String>, Map<Coords, List<Coords>>> eldest) {
+               return size() > MAX_NR_VIEWS;
+            }
+         };
+
+   /**
+    * Adds the coords of a new image.  Adding coords that are already present
+    * has no effect.
+    *
+    * @param coords Coords of the image.
+    */
+   public synchronized void add(Coords coords) {
+      if (!allCoords_.add(coords)) {
+         return;
+      }
+      axesInUse_.addAll(coords.getAxes());
+      for (Map.Entry<List<String>, Map<Coords, List<Coords>>> view : views_.entrySet()) {
+         addToView(view.getValue(), view.getKey(), coords);
+      }
+   }
+
+   /**
+    * Removes the coords of an image that was deleted.
+    *
+    * @param coords Coords of the image.
+    */
+   public synchronized void remove(Coords coords) {
+      if (!allCoords_.remove(coords)) {
+         return;
+      }
+      for (Map.Entry<List<String>, Map<Coords, List<Coords>>> view : views_.entrySet()) {
+         Coords key = project(coords, view.getKey());
+         List<Coords> matches = view.getValue().get(key);
+         if (matches != null) {
+            matches.remove(coords);
+            if (matches.isEmpty()) {
+               view.getValue().remove(key);
+            }
+         }
+      }
+   }
+
+   /**
+    * Removes all coords.
+    */
+   public synchronized void clear() {
+      allCoords_.clear();
+      axesInUse_.clear();
+      views_.clear();
+   }
+
+   public synchronized boolean contains(Coords coords) {
+      return allCoords_.contains(coords);
+   }
+
+   public synchronized int size() {
+      return allCoords_.size();
+   }
+
+   /**
+    * Returns the axes with a non-zero index in any of the coords.
+    *
+    * @return Axes in use, sorted.
+    */
+   public synchronized Set<String> getAxesInUse() {
+      return new TreeSet<>(axesInUse_);
+   }
+
+   /**
+    * Returns all coords that are equal to the given coords after removing
+    * the given axes from them.
+    *
+    * @param coords          Coords to match, without the ignored axes.
+    * @param ignoreTheseAxes Axes to remove before comparing.
+    * @return Matching coords, in the order in which they were added.
+    */
+   public synchronized List<Coords> getCoordsIgnoringAxes(Coords coords,
+                                                          String... ignoreTheseAxes) {
+      // Axes that no coords use do not change anything
+      TreeSet<String> ignored = new TreeSet<>();
+      for (String axis : ignoreTheseAxes) {
+         if (axesInUse_.contains(axis)) {
+            ignored.add(axis);
+         }
+      }
+      if (ignored.isEmpty()) {
+         return allCoords_.contains(coords)
+               ? Collections.singletonList(coords) : Collections.emptyList();
+      }
+      List<String> key = new ArrayList<>(ignored);
+      Map<Coords, List<Coords>> view = views_.get(key);
+      if (view == null) {
+         view = new HashMap<>();
+         for (Coords c : allCoords_) {
+            addToView(view, key, c);
+         }
+         views_.put(key, view);
+      }
+      List<Coords> matches = view.get(project(coords, key));
+      return matches == null ? Collections.emptyList() : new ArrayList<>(matches);
+   }
+
+   /**
+    * Returns all coords that have the same index as the given coords along
+    * each axis of the given coords.  Other axes can have any index.
+    *
+    * @param coords Coords to match.
+    * @return Matching coords, in the order in which they were added.
+    */
+   public synchronized List<Coords> getCoordsMatching(Coords coords) {
+      List<String> ignored = new ArrayList<>();
+      for (String axis : axesInUse_) {
+         if (!coords.getAxes().contains(axis)) {
+            ignored.add(axis);
+         }
+      }
+      return getCoordsIgnoringAxes(coords, ignored.toArray(new String[0]));
+   }
+
+   private static void addToView(Map<Coords, List<Coords>> view, List<String> ignored,
+                                 Coords coords) {
+      view.computeIfAbsent(project(coords, ignored), k -> new ArrayList<>(4)).add(coords);
+   }
+
+   private static Coords project(Coords coords, List<String> ignored) {
+      return coords.copyRemovingAxes(ignored.toArray(new String[0]));
+   }
+}
@@ -0,0 +1,317 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API implementation
+//-----------------------------------------------------------------------------
+//
+// COPYRIGHT:    Regents of the University of California, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.micromanager.data.Coords;
+import org.micromanager.data.Datastore;
+import org.micromanager.data.Image;
+import org.micromanager.data.Storage;
+import org.micromanager.data.SummaryMetadata;
+import org.micromanager.data.internal.multipagetiff.StorageMultipageTiff;
+import org.micromanager.data.internal.ndtiff.NDTiffAdapter;
+import org.micromanager.internal.UserCancelledException;
+
+/**
+ * Copies the images of one Datastore into another, as used by "Save As" and
+ * Datastore duplication.
+ *
+ * <p>Images are read in a fixed order (position, time, slice, channel), which
+ * is the order in which the file-based storages wrote them, so reads are
+ * mostly sequential on disk.  A reader thread reads and decodes the next few
+ * images while the caller writes the current one, and the caller receives the
+ * images in order, so the target storage is written sequentially.  The
+ * file-based storages do not support reading from several threads at once
+ * (StorageMultipageTiff shares and closes file channels between reads), so
+ * there is only one reader thread.</p>
+ *
+ * <p>When the source is a finished dataset on disk in the same format as the
+ * target, and saving it would give its files the same names, copyFiles()
+ * copies the files as they are, without decoding and re-encoding any
+ * image.</p>
+ */
+final class DatasetCopier {
+   // Number of images read ahead of the one that is being written
+   private static final int READ_AHEAD = 4;
+
+   /**
+    * Receives the copied images, in order, on the thread calling copy().
+    */
+   interface ImageSink {
+      void putImage(Image image) throws IOException;
+   }
+
+   /**
+    * Is told about progress after each image.  Can cancel the copy by
+    * throwing a UserCancelledException.
+    */
+   interface ProgressListener {
+      void imagesCopied(int nrCopied) throws UserCancelledException;
+   }
+
+   private DatasetCopier() {
+   }
+
+   /**
+    * Returns the coordinates of all images in the store ordered by stage position,
+    * time point, z slice, and channel.  This is the order expected by ImageJ
+    * ("xyczt"), by the OME metadata writer, and by FileSet.writeImage(), which
+    * assumes that time points are written sequentially.
+    *
+    * @param store Datastore with images.
+    * @return Sorted list of coords of all images in the store.
+    */
+   static List<Coords> orderedCoords(Datastore store) {
+      ArrayList<Coords> result = new ArrayList<>(Math.max(0, store.getNumImages()));
+      for (Coords coords : store.getUnorderedImageCoords()) {
+         result.add(coords);
+      }
+      result.sort(Comparator.comparingInt(Coords::getStagePosition)
+            .thenComparingInt(Coords::getT)
+            .thenComparingInt(Coords::getZ)
+            .thenComparingInt(Coords::getChannel));
+      return result;
+   }
+
+   /**
+    * Copies the images at the given coords from the source into the sink.
+    *
+    * @param source   Datastore to read images from.
+    * @param coords   Images to copy, in the order they should arrive in the sink.
+    * @param sink     Receives the images on the calling thread.
+    * @param listener Informed after each image, may be null.
+    * @throws IOException            When reading or writing an image failed.
+    * @throws UserCancelledException When the listener cancelled the copy.
+    */
+   static void copy(final Datastore source, List<Coords> coords, ImageSink sink,
+                    ProgressListener listener) throws IOException, UserCancelledException {
+      int nrCopied = 0;
+      if (!readsAhead(source)) {
+         for (Coords c : coords) {
+            sink.putImage(checkImage(source.getImage(c), c));
+            nrCopied++;
+            if (listener != null) {
+               listener.imagesCopied(nrCopied);
+            }
+         }
+         return;
+      }
+      ExecutorService reader = Executors.newSingleThreadExecutor(r -> {
+         Thread t = new Thread(r, "Dataset copy reader");
+         t.setDaemon(true);
+         return t;
+      });
+      Deque<Future<Image>> readAhead = new ArrayDeque<>(READ_AHEAD);
+      Deque<Coords> readAheadCoords = new ArrayDeque<>(READ_AHEAD);
+      Iterator<Coords> it = coords.iterator();
+      try {
+         while (it.hasNext() || !readAhead.isEmpty()) {
+            while (it.hasNext() && readAhead.size() < READ_AHEAD) {
+               final Coords c = it.next();
+               readAhead.add(reader.submit(() -> source.getImage(c)));
+               readAheadCoords.add(c);
+            }
+            sink.putImage(checkImage(getResult(readAhead.poll()), readAheadCoords.poll()));
+            nrCopied++;
+            if (listener != null) {
+               listener.imagesCopied(nrCopied);
+            }
+         }
+      } finally {
+         reader.shutdownNow();
+      }
+   }
+
+   /**
+    * Storages report images that they failed to read as null.
+    */
+   private static Image checkImage(Image image, Coords coords) throws IOException {
+      if (image == null) {
+         throw new IOException("Failed to read image at " + coords);
+      }
+      return image;
+   }
+
+   private static Image getResult(Future<Image> future) throws IOException {
+      try {
+         return future.get();
+      } catch (InterruptedException ie) {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while reading images", ie);
+      } catch (ExecutionException ee) {
+         Throwable cause = ee.getCause();
+         if (cause instanceof IOException) {
+            throw (IOException) cause;
+         }
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+         throw new IOException(cause);
+      }
+   }
+
+   /**
+    * Images in RAM need no decoding, so reading them on another thread only
+    * adds overhead.
+    */
+   private static boolean readsAhead(Datastore source) {
+      return !(source instanceof DefaultDatastore
+            && ((DefaultDatastore) source).storage_ instanceof StorageRAM);
+   }
+
+   /**
+    * Returns the format in which the storage keeps its data on disk, or null
+    * if the storage is not file-based.
+    */
+   static Datastore.SaveMode getSaveMode(Storage storage) {
+      if (storage instanceof StorageMultipageTiff) {
+         return Datastore.SaveMode.MULTIPAGE_TIFF;
+      } else if (storage instanceof NDTiffAdapter) {
+         return Datastore.SaveMode.ND_TIFF;
+      } else if (storage instanceof StorageSinglePlaneTiffSeries) {
+         return Datastore.SaveMode.SINGLEPLANE_TIFF_SERIES;
+      }
+      return null;
+   }
+
+   /**
+    * Whether the dataset of the store can be saved in the given format by
+    * copying its files: the store has to be frozen (so that its files are
+    * complete), its storage has to keep the data on disk in that format, and
+    * saving has to give the files the names that they already have.
+    *
+    * @param store Datastore to be saved.
+    * @param mode  Format to save in.
+    * @param path  Destination directory.
+    * @return True when copyFiles() can be used instead of copying images.
+    */
+   static boolean canCopyFiles(DefaultDatastore store, Datastore.SaveMode mode, String path) {
+      String sourcePath = store.getSavePath();
+      if (!store.isFrozen() || sourcePath == null || mode != getSaveMode(store.storage_)) {
+         return false;
+      }
+      File source = new File(sourcePath);
+      File target = new File(path);
+      return source.isDirectory() && !target.exists()
+            && !target.getAbsoluteFile().toPath().startsWith(
+                  source.getAbsoluteFile().toPath())
+            && keepsFileNames(store, mode, source, target);
+   }
+
+   /**
+    * Whether saving in the given format would name the files as they are
+    * named in the source directory.  Single plane TIFF series are named after
+    * the coords only.  Multipage TIFF files start with the prefix in the
+    * summary metadata, or with the name of the directory when there is none.
+    * NDTiff files start with the name of the directory, and are listed by
+    * name in the index, so they cannot be renamed after copying either.
+    */
+   static boolean keepsFileNames(Datastore store, Datastore.SaveMode mode,
+                                 File source, File target) {
+      if (mode == Datastore.SaveMode.SINGLEPLANE_TIFF_SERIES
+            || source.getName().equals(target.getName())) {
+         return true;
+      }
+      if (mode == Datastore.SaveMode.MULTIPAGE_TIFF) {
+         SummaryMetadata summary = store.getSummaryMetadata();
+         return summary != null && summary.getPrefix() != null
+               && !summary.getPrefix().isEmpty();
+      }
+      return false;
+   }
+
+   /**
+    * Returns the number of files in the directory and its subdirectories.
+    */
+   static long countFiles(Path directory) throws IOException {
+      try (Stream<Path> paths = Files.walk(directory)) {
+         return paths.filter(Files::isRegularFile).count();
+      }
+   }
+
+   /**
+    * Recursively copies the directory at source to the new directory target.
+    *
+    * @param source   Existing directory.
+    * @param target   Directory to be created.
+    * @param listener Informed after each file, may be null.
+    * @throws IOException            When a file could not be copied.
+    * @throws UserCancelledException When the listener cancelled the copy.
+    */
+   static void copyFiles(final Path source, final Path target,
+                         final ProgressListener listener)
+         throws IOException, UserCancelledException {
+      final AtomicInteger nrCopied = new AtomicInteger();
+      try {
+         Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+                  throws IOException {
+               Files.createDirectories(target.resolve(source.relativize(dir)));
+               return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                  throws IOException {
+               Files.copy(file, target.resolve(source.relativize(file)),
+                     StandardCopyOption.COPY_ATTRIBUTES);
+               if (listener != null) {
+                  try {
+                     listener.imagesCopied(nrCopied.incrementAndGet());
+                  } catch (UserCancelledException uce) {
+                     throw new CancelledCopyException(uce);
+                  }
+               }
+               return FileVisitResult.CONTINUE;
+            }
+         });
+      } catch (CancelledCopyException cce) {
+         throw (UserCancelledException) cce.getCause();
+      }
+   }
+
+   // Carries a UserCancelledException through Files.walkFileTree
+   private static final class CancelledCopyException extends IOException {
+      private static final long serialVersionUID = 3867246251941392641L;
+
+      CancelledCopyException(UserCancelledException cause) {
+         super(cause);
+      }
+   }
+}
@@ -1,8 +1,7 @@
 package org.micromanager.data.internal;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import javax.swing.JFrame;
@@ -16,6 +15,7 @@ import org.micromanager.data.Storage;
 import org.micromanager.data.SummaryMetadata;
 import org.micromanager.data.internal.multipagetiff.StorageMultipageTiff;
 import org.micromanager.data.internal.ndtiff.NDTiffAdapter;
+import org.micromanager.internal.UserCancelledException;
 
 /**
  * TODO: Not sure if Swingworker is the best implementation.
@@ -30,6 +30,10 @@ public class DefaultDataSaver extends SwingWorker<Void, Void> {
    private final String path_;
    private final DefaultDatastore duplicate_;
    private final Storage saver_;
+   // Whether we save by copying the files of the store instead of its images
+   private final boolean copyFiles_;
+   // Set once all images have been saved
+   private volatile boolean saved_ = false;
 
    /**
     * Takes care of most of the dirty work saving data to various targets.
@@ -49,8 +53,12 @@ public class DefaultDataSaver extends SwingWorker<Void, Void> {
       path_ = path;
 
       duplicate_ = new DefaultDatastore(this.studio);
+      copyFiles_ = DatasetCopier.canCopyFiles(store_, mode, path_);
 
-      if (mode == Datastore.SaveMode.MULTIPAGE_TIFF) {
+      if (copyFiles_) {
+         // The dataset is on disk in the requested format already
+         saver_ = null;
+      } else if (mode == Datastore.SaveMode.MULTIPAGE_TIFF) {
          JFrame frame = null;
          if (studio != null) {
             frame = studio.app().getMainWindow();
@@ -73,6 +81,44 @@ public class DefaultDataSaver extends SwingWorker<Void, Void> {
 
    @Override
    protected Void doInBackground() throws IOException {
+      try {
+         if (copyFiles_) {
+            File source = new File(store_.getSavePath());
+            final double multiplier = 100.0 / Math.max(1, DatasetCopier.countFiles(
+                  source.toPath()));
+            DatasetCopier.copyFiles(source.toPath(), new File(path_).toPath(),
+                  nrCopied -> updateProgress(nrCopied, multiplier));
+            store_.setSavePath(path_);
+            store_.freeze();
+         } else if (!copyImages()) {
+            return null;
+         }
+      } catch (UserCancelledException uce) {
+         return null;
+      }
+      // Save our annotations now.
+      for (Annotation annotation : store_.getAnnotations().values()) {
+         annotation.save();
+      }
+      saved_ = true;
+
+      return null;
+   }
+
+   private void updateProgress(int nrCopied, double multiplier)
+         throws UserCancelledException {
+      if (isCancelled()) {
+         throw new UserCancelledException();
+      }
+      setProgress(Math.min(100, (int) (nrCopied * multiplier)));
+   }
+
+   /**
+    * Saves the images of the store one by one in the new storage.
+    *
+    * @return false when the new storage did not become ready.
+    */
+   private boolean copyImages() throws IOException, UserCancelledException {
       SummaryMetadata summary = store_.getSummaryMetadata();
       if (summary == null) {
          // Create dummy summary metadata just for saving.
@@ -91,73 +137,15 @@ public class DefaultDataSaver extends SwingWorker<Void, Void> {
       duplicate_.setStorage(saver_);
       duplicate_.setSummaryMetadata(fSummary);
 
-      // Copy images ordered by stage position index.
+      // Copy images ordered by stage position index, time point, slice and channel.
       // Doing otherwise causes errors when trying to write the OMEMetadata
       // (we get an ArrayIndexOutOfBoundsException when calling
       // MetadataTools.populateMetadata() in
-      // org.micromanager.data.internal.multipagetiff.OMEMetadata).
-      // Ideally we'd fix the OME metadata writer to be able to handle
-      // images in arbitrary order, but that would require understanding
-      // that code...
-      // We also need to sort by frame (and while we're at it, sort by
-      // z and channel as well), since FileSet.writeImage() assumes that
-      // timepoints are written sequentially and can potentially cause
-      // invalid metadata if they are not.     
-
-      // To have data opened correctly in ImageJ, they need to be ordered 
-      // in Time, Slice, Channel order (which ImageJ calls "xyctz" order)
-      final List<String> orderedAxes = new ArrayList<>();
-      String[] imageJOrderedAxes = new String[] {Coords.T, Coords.Z, Coords.C};
-      for (String axis : imageJOrderedAxes) {
-         if (store_.getAxes().contains(axis)) {
-            orderedAxes.add(axis);
-         }
-      }
-
-      ArrayList<Coords> tmp = new ArrayList<>();
-      for (Coords coords : store_.getUnorderedImageCoords()) {
-         tmp.add(coords);
-      }
-      Collections.sort(tmp, (Coords a, Coords b) -> {
-         int p1 = a.getStagePosition();
-         int p2 = b.getStagePosition();
-         if (p1 != p2) {
-            return p1 < p2 ? -1 : 1;
-         }
-
-         for (String axis : orderedAxes) {
-            switch (axis) {
-               case Coords.P:
-                  break;
-               case Coords.T:
-                  int t1 = a.getT();
-                  int t2 = b.getT();
-                  if (t1 != t2) {
-                     return t1 < t2 ? -1 : 1;
-                  }
-                  break;
-               case Coords.Z:
-                  int z1 = a.getZ();
-                  int z2 = b.getZ();
-                  if (z1 != z2) {
-                     return z1 < z2 ? -1 : 1;
-                  }
-                  break;
-               case Coords.C:
-                  int c1 = a.getChannel();
-                  int c2 = b.getChannel();
-                  if (c1 != c2) {
-                     return c1 < c2 ? -1 : 1;
-                  }
-                  break;
-               default:
-                  break;
-            }
-         }
-         return 1;
-      });
-      int counter = 0;
-      double multiplier = 100.0 / tmp.size();
+      // org.micromanager.data.internal.multipagetiff.OMEMetadata), and
+      // FileSet.writeImage() assumes that timepoints are written sequentially.
+      // This is also the "xyczt" order in which ImageJ expects the data.
+      List<Coords> coordsList = DatasetCopier.orderedCoords(store_);
+      final double multiplier = 100.0 / Math.max(1, coordsList.size());
       // Before we can put images into the new storage, we have to be sure that the SummaryMeta-
       // data are there.  We set it before, but that function is asynchronous internally.
       // I do not see ways other than polling.  Alternatively, the bus used to post
@@ -182,13 +170,10 @@ public class DefaultDataSaver extends SwingWorker<Void, Void> {
          if (studio != null) {
             studio.logs().showError("Failed to save data");
          }
-         return null;
-      }
-      for (Coords coords : tmp) {
-         duplicate_.putImage(store_.getImage(coords));
-         counter++;
-         setProgress((int) (counter * multiplier));
+         return false;
       }
+      DatasetCopier.copy(store_, coordsList, duplicate_::putImage,
+            nrCopied -> updateProgress(nrCopied, multiplier));
 
       // We set the save path and freeze *both* datastores; our own because
       // we should not be modified post-saving, and the other because it
@@ -198,16 +183,15 @@ public class DefaultDataSaver extends SwingWorker<Void, Void> {
       duplicate_.setSavePath(path_);
       duplicate_.freeze();
       duplicate_.close();
-      // Save our annotations now.
-      for (Annotation annotation : store_.getAnnotations().values()) {
-         annotation.save();
-      }
-
-      return null;
+      return true;
    }
 
    @Override
    protected void done() {
+      if (isCancelled()) {
+         // get() would throw a CancellationException, and nothing was saved
+         return;
+      }
       setProgress(100);
       try {
          get();
@@ -215,9 +199,10 @@ public class DefaultDataSaver extends SwingWorker<Void, Void> {
          if (studio != null) {
             studio.logs().showError(e, "Failed to save to " + path_);
          }
+         return;
       }
 
-      if (studio != null) {
+      if (studio != null && saved_) {
          studio.alerts().postAlert("Finished saving", this.getClass(), path_);
       }
    }
@@ -39,6 +39,7 @@ import org.micromanager.data.Datastore;
 import org.micromanager.data.DatastoreFrozenException;
 import org.micromanager.data.DatastoreRewriteException;
 import org.micromanager.data.Image;
+import org.micromanager.data.MetadataTable;
 import org.micromanager.data.Storage;
 import org.micromanager.data.SummaryMetadata;
 import org.micromanager.internal.UserCancelledException;
@@ -94,6 +95,7 @@ public class DefaultDatastore implements Datastore {
    protected PrioritizedEventBus syncBus_;
    protected AtomicBoolean isFrozen_ = new AtomicBoolean(false);
    protected final Studio studio_;
+   protected final DefaultMetadataTable metadataTable_ = new DefaultMetadataTable(this);
 
    private String savePath_ = null;
    private boolean haveSetSummary_ = false;
@@ -117,20 +119,17 @@ public class DefaultDatastore implements Datastore {
    public void copyFrom(Datastore alt, ProgressMonitor monitor)
          throws IOException, UserCancelledException {
       copiedFromStore_ = alt;
-      int imageCount = 0;
       try {
          setSummaryMetadata(alt.getSummaryMetadata());
          setName(alt.getName() + " - Copy");
-         for (Coords coords : alt.getUnorderedImageCoords()) {
-            putImage(alt.getImage(coords));
-            imageCount++;
-            if (monitor != null) {
-               if (monitor.isCanceled()) {
-                  throw new UserCancelledException();
-               }
-               monitor.setProgress(imageCount);
-            }
-         }
+         // Read in storage order with read-ahead, write on this thread
+         DatasetCopier.copy(alt, DatasetCopier.orderedCoords(alt), this::putImage,
+               monitor == null ? null : imageCount -> {
+                  if (monitor.isCanceled()) {
+                     throw new UserCancelledException();
+                  }
+                  monitor.setProgress(imageCount);
+               });
       } catch (DatastoreFrozenException e) {
          studio_.logs().logError("Can't copy from datastore: we're frozen");
       } catch (DatastoreRewriteException e) {
@@ -255,6 +254,7 @@ public class DefaultDatastore implements Datastore {
       if (storage_ != null) {
          storage_.putImage(image);
       }
+      metadataTable_.add(coords, image.getMetadata());
       // Note: the store may be very busy saving data, so consumers of this message
       // should use as few resources as possible.  Note that the bus is asynchronous,
       // so we do not have to wait for processing to finish.
@@ -410,11 +410,19 @@ public class DefaultDatastore implements Datastore {
             if (storage_ != null) {
                storage_.freeze();
             }
+            if (DefaultMetadataTable.isPersisted(this)) {
+               metadataTable_.save(new File(getSavePath()));
+            }
             bus_.post(new DefaultDatastoreFrozenEvent());
          }
       }
    }
 
+   @Override
+   public MetadataTable getMetadataTable() {
+      return metadataTable_;
+   }
+
    @Override
    public boolean isFrozen() {
       return isFrozen_.get();
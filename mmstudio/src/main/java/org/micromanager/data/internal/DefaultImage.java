@@ -232,15 +232,17 @@ public final class DefaultImage implements Image {
       metadata_ = (DefaultMetadata) metadata;
       coords_ = coords;
 
+      // Wraps (does not copy) the array of the source
+      Object pixels = source.getRawPixels();
       int bytesPerComponent = 0;
-      if (source.getRawPixels() instanceof byte[]) {
+      if (pixels instanceof byte[]) {
          bytesPerComponent = 1;
-      } else if (source.getRawPixels() instanceof short[]) {
+      } else if (pixels instanceof short[]) {
          bytesPerComponent = 2;
-      } else if (source.getRawPixels() instanceof float[]) {
+      } else if (pixels instanceof float[]) {
          bytesPerComponent = 4;
       }
-      rawPixels_ = BufferTools.wrapArray(source.getRawPixels(), bytesPerComponent);
+      rawPixels_ = BufferTools.wrapArray(pixels, bytesPerComponent);
 
       if (rawPixels_.capacity() == 0) {
          throw new IllegalArgumentException("Pixel data has length 0.");
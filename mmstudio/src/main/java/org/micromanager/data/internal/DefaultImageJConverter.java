@@ -47,6 +47,11 @@ public final class DefaultImageJConverter implements ImageJConverter {
       return createProcessor(image, true);
    }
 
+   @Override
+   public ImageProcessor createSharedProcessor(Image image) {
+      return createProcessor(image, false);
+   }
+
    public static ImageProcessor createProcessor(Image image, boolean shouldCopy) {
       int width = image.getWidth();
       int height = image.getHeight();
@@ -127,9 +132,27 @@ public final class DefaultImageJConverter implements ImageJConverter {
    @Override
    public Image createImage(ImageProcessor processor, Coords coords,
                             Metadata metadata) {
+      return createImage(processor, coords, metadata, true);
+   }
+
+   @Override
+   public Image wrapProcessor(ImageProcessor processor, Coords coords,
+                              Metadata metadata) {
+      return createImage(processor, coords, metadata, false);
+   }
+
+   /**
+    * Creates an Image with the pixels of the processor.
+    *
+    * @param shouldCopy when false, the Image uses the pixel array of the
+    *                   processor directly
+    * @return the new Image, or null if the processor type is not supported
+    */
+   public static Image createImage(ImageProcessor processor, Coords coords,
+                                   Metadata metadata, boolean shouldCopy) {
       Object pixels = processor.getPixels();
-      int bytesPerPixel = -1;
-      int numComponents = -1;
+      int bytesPerPixel;
+      int numComponents;
       if (processor instanceof ByteProcessor) {
          bytesPerPixel = 1;
          numComponents = 1;
@@ -142,13 +165,23 @@ public final class DefaultImageJConverter implements ImageJConverter {
       } else if (processor instanceof ColorProcessor) {
          bytesPerPixel = 4;
          numComponents = 3;
-
+         // This conversion already makes a new array
          pixels = ImageUtils.convertRGB32IntToBytes((int[]) processor.getPixels());
+         shouldCopy = false;
       } else {
          ReportingUtils.logError("Unrecognized processor type " + processor.getClass().getName());
+         return null;
+      }
+      if (shouldCopy) {
+         if (pixels instanceof byte[]) {
+            pixels = ((byte[]) pixels).clone();
+         } else if (pixels instanceof short[]) {
+            pixels = ((short[]) pixels).clone();
+         } else if (pixels instanceof float[]) {
+            pixels = ((float[]) pixels).clone();
+         }
       }
-      return studio_.data().createImage(pixels,
-            processor.getWidth(), processor.getHeight(), bytesPerPixel,
-            numComponents, coords, metadata);
+      return new DefaultImage(pixels, processor.getWidth(), processor.getHeight(),
+            bytesPerPixel, numComponents, coords, metadata);
    }
 }
@@ -0,0 +1,271 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API implementation
+//-----------------------------------------------------------------------------
+//
+// COPYRIGHT:    Regents of the University of California, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data.internal;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.micromanager.data.Coordinates;
+import org.micromanager.data.Coords;
+import org.micromanager.data.DataProvider;
+import org.micromanager.data.Image;
+import org.micromanager.data.Metadata;
+import org.micromanager.data.MetadataTable;
+import org.micromanager.data.internal.multipagetiff.StorageMultipageTiff;
+import org.micromanager.data.internal.ndtiff.NDTiffAdapter;
+import org.micromanager.internal.utils.ReportingUtils;
+
+/**
+ * MetadataTable that keeps each column in a primitive array, with a map from
+ * Coords to the row of the image.
+ *
+ * <p>DefaultDatastore adds the metadata of every image it receives, so that
+ * the table of an acquisition is complete without ever reading from disk.
+ * When the datastore is frozen, the table is saved as FILE_NAME next to the
+ * data of multipage TIFF and NDTiff datasets, and it is read back the first
+ * time a value is requested after the dataset is opened.  Values of images
+ * that are not in the table are read on demand: from the TIFF metadata alone
+ * for multipage TIFF datasets, by loading the image for other storages.</p>
+ */
+public final class DefaultMetadataTable implements MetadataTable {
+   public static final String FILE_NAME = "metadata_table.txt";
+   private static final Column[] COLUMNS = Column.values();
+   private static final int INITIAL_CAPACITY = 256;
+
+   private final DataProvider provider_;
+   private final Map<Coords, Integer> coordsToRow_ = new HashMap<>();
+   // Coords of each row, null for removed rows
+   private final ArrayList<Coords> rowToCoords_ = new ArrayList<>();
+   private final double[][] columns_ = new double[COLUMNS.length][INITIAL_CAPACITY];
+   private int nrRows_ = 0;
+   private boolean triedLoading_ = false;
+
+   /**
+    * Creates an empty table for the images of the provider.
+    *
+    * @param provider Source of metadata of images that are not in the table yet.
+    */
+   public DefaultMetadataTable(DataProvider provider) {
+      provider_ = provider;
+   }
+
+   /**
+    * Adds (or replaces) the values of the image at the given coords.
+    *
+    * @param coords   Coords of the image.
+    * @param metadata Metadata of the image.
+    */
+   public void add(Coords coords, Metadata metadata) {
+      double[] values = new double[COLUMNS.length];
+      for (Column column : COLUMNS) {
+         values[column.ordinal()] = column.getValue(metadata);
+      }
+      add(coords, values);
+   }
+
+   private synchronized void add(Coords coords, double[] values) {
+      Integer row = coordsToRow_.get(coords);
+      if (row == null) {
+         row = nrRows_++;
+         if (row == columns_[0].length) {
+            for (int c = 0; c < columns_.length; c++) {
+               columns_[c] = Arrays.copyOf(columns_[c], 2 * row);
+            }
+         }
+         coordsToRow_.put(coords, row);
+         rowToCoords_.add(coords);
+      }
+      for (int c = 0; c < columns_.length; c++) {
+         columns_[c][row] = values[c];
+      }
+   }
+
+   /**
+    * Removes the values of the image at the given coords.
+    *
+    * @param coords Coords of the image that was deleted.
+    */
+   public synchronized void remove(Coords coords) {
+      Integer row = coordsToRow_.remove(coords);
+      if (row != null) {
+         rowToCoords_.set(row, null);
+      }
+   }
+
+   @Override
+   public double getValue(Coords coords, Column column) throws IOException {
+      synchronized (this) {
+         if (!triedLoading_) {
+            triedLoading_ = true;
+            load();
+         }
+         Integer row = coordsToRow_.get(coords);
+         if (row != null) {
+            return columns_[column.ordinal()][row];
+         }
+      }
+      if (!provider_.hasImage(coords)) {
+         return Double.NaN;
+      }
+      Metadata metadata = readMetadata(coords);
+      if (metadata == null) {
+         return Double.NaN;
+      }
+      add(coords, metadata);
+      return column.getValue(metadata);
+   }
+
+   @Override
+   public double[] getValues(List<Coords> coords, Column column) throws IOException {
+      double[] result = new double[coords.size()];
+      for (int i = 0; i < result.length; i++) {
+         result[i] = getValue(coords.get(i), column);
+      }
+      return result;
+   }
+
+   private Metadata readMetadata(Coords coords) throws IOException {
+      if (provider_ instanceof DefaultDatastore
+            && ((DefaultDatastore) provider_).storage_ instanceof StorageMultipageTiff) {
+         return ((StorageMultipageTiff) ((DefaultDatastore) provider_).storage_)
+               .getMetadata(coords);
+      }
+      Image image = provider_.getImage(coords);
+      return image == null ? null : image.getMetadata();
+   }
+
+   /**
+    * Whether the table of this datastore should be saved with its data.
+    */
+   static boolean isPersisted(DefaultDatastore store) {
+      return store.getSavePath() != null
+            && (store.storage_ instanceof StorageMultipageTiff
+            || store.storage_ instanceof NDTiffAdapter);
+   }
+
+   /**
+    * Saves the table in the directory of the dataset, unless a table was
+    * saved there already, or the table does not have a row for every image.
+    *
+    * @param directory Directory of the dataset.
+    */
+   synchronized void save(File directory) {
+      File file = new File(directory, FILE_NAME);
+      if (coordsToRow_.isEmpty() || coordsToRow_.size() != provider_.getNumImages()
+            || file.exists()) {
+         return;
+      }
+      try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+         writer.write("Coords");
+         for (Column column : COLUMNS) {
+            writer.write('\t');
+            writer.write(column.name());
+         }
+         writer.write('\n');
+         for (int row = 0; row < nrRows_; row++) {
+            Coords coords = rowToCoords_.get(row);
+            if (coords == null) {
+               continue;
+            }
+            StringBuilder line = new StringBuilder(128);
+            for (String axis : coords.getAxes()) {
+               if (line.length() > 0) {
+                  line.append(',');
+               }
+               line.append(axis).append('=').append(coords.getIndex(axis));
+            }
+            for (double[] column : columns_) {
+               line.append('\t').append(column[row]);
+            }
+            writer.write(line.append('\n').toString());
+         }
+      } catch (IOException ioe) {
+         ReportingUtils.logError(ioe, "Failed to save metadata table in " + directory);
+      }
+   }
+
+   /**
+    * Reads the table saved with the dataset, if there is one.
+    */
+   private void load() {
+      if (!(provider_ instanceof DefaultDatastore)
+            || !isPersisted((DefaultDatastore) provider_)) {
+         return;
+      }
+      File file = new File(((DefaultDatastore) provider_).getSavePath(), FILE_NAME);
+      if (file.exists()) {
+         read(file);
+      }
+   }
+
+   /**
+    * Adds the rows of a table file written by save() that are not in the
+    * table yet.
+    *
+    * @param file Table file.
+    */
+   synchronized void read(File file) {
+      try (BufferedReader reader = Files.newBufferedReader(file.toPath(),
+            StandardCharsets.UTF_8)) {
+         String[] header = reader.readLine().split("\t");
+         // Map columns in the file to our columns, the file may be from another version
+         int[] fileColumns = new int[COLUMNS.length];
+         Arrays.fill(fileColumns, -1);
+         for (int i = 1; i < header.length; i++) {
+            for (Column column : COLUMNS) {
+               if (column.name().equals(header[i])) {
+                  fileColumns[column.ordinal()] = i;
+               }
+            }
+         }
+         String line;
+         while ((line = reader.readLine()) != null) {
+            String[] fields = line.split("\t");
+            Coords.Builder builder = Coordinates.builder();
+            if (!fields[0].isEmpty()) {
+               for (String index : fields[0].split(",")) {
+                  int separator = index.indexOf('=');
+                  builder.index(index.substring(0, separator),
+                        Integer.parseInt(index.substring(separator + 1)));
+               }
+            }
+            double[] values = new double[COLUMNS.length];
+            for (int c = 0; c < values.length; c++) {
+               values[c] = fileColumns[c] < 0 || fileColumns[c] >= fields.length
+                     ? Double.NaN : Double.parseDouble(fields[fileColumns[c]]);
+            }
+            Coords coords = builder.build();
+            if (!coordsToRow_.containsKey(coords)) {
+               add(coords, values);
+            }
+         }
+      } catch (IOException | RuntimeException ex) {
+         // Values will be read from the images instead
+         ReportingUtils.logError(ex, "Failed to read metadata table " + file);
+      }
+   }
+}
@@ -104,6 +104,7 @@ public final class DefaultRewritableDatastore extends DefaultDatastore
    public void deleteImage(Coords coords) throws IOException {
       Image image = getImage(coords);
       ((RewritableStorage) storage_).deleteImage(coords);
+      metadataTable_.remove(coords);
       bus_.post(new DefaultImageDeletedEvent(image, this));
    }
 
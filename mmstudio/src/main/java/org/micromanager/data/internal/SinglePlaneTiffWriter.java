@@ -0,0 +1,312 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API implementation
+//-----------------------------------------------------------------------------
+//
+// COPYRIGHT:    University of California, San Francisco, 2015
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data.internal;
+
+import ij.ImageJ;
+import ij.io.FileInfo;
+import ij.io.TiffEncoder;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.micromanager.data.Coords;
+import org.micromanager.data.Image;
+import org.micromanager.internal.utils.ReportingUtils;
+
+/**
+ * Writes single plane TIFF files for StorageSinglePlaneTiffSeries on a small pool of
+ * background threads, so that the caller (usually the acquisition pipeline) does not wait
+ * for the file system.
+ *
+ * <p>Files are encoded directly from the raw pixel buffer of the Image with ImageJ's
+ * TiffEncoder, producing the same files that ImageJ's FileSaver writes for an ImagePlus
+ * (including the JSON metadata as "Info" property and the spatial calibration), without
+ * creating ImageProcessors and ImagePlus objects.  The amount of image data waiting to be
+ * written is bounded: write() blocks when too much data is in flight.  Images that have not
+ * been written yet can be retrieved with getPending(), since their files are not complete.</p>
+ */
+final class SinglePlaneTiffWriter {
+   private static final long MAX_BYTES_IN_FLIGHT = 256L * 1024L * 1024L;
+   private static final int MAX_THREADS = 4;
+   private static final int BUFFER_SIZE = 1 << 16;
+
+   private final ExecutorService executor_;
+   private final Map<Coords, Image> pending_ = new ConcurrentHashMap<>();
+   private final Object lock_ = new Object();
+   private long bytesInFlight_ = 0;
+   private int nrInFlight_ = 0;
+   private int nrFailed_ = 0;
+
+   SinglePlaneTiffWriter() {
+      int nrThreads = Math.max(1, Math.min(MAX_THREADS,
+            Runtime.getRuntime().availableProcessors() / 2));
+      final AtomicInteger threadNr = new AtomicInteger();
+      executor_ = Executors.newFixedThreadPool(nrThreads, r -> {
+         Thread t = new Thread(r, "Single plane TIFF writer " + threadNr.incrementAndGet());
+         t.setDaemon(true);
+         return t;
+      });
+   }
+
+   /**
+    * Calibration values written in the TIFF, as ImageJ does for an ImagePlus with
+    * the calibration that StorageSinglePlaneTiffSeries applies.
+    */
+   static final class Calibration {
+      private final double pixelSizeUm_;
+      private final double frameIntervalS_;
+      private final double zStepUm_;
+
+      /**
+       * Calibration.
+       *
+       * @param pixelSizeUm Pixel size in microns, or null or 0 when not calibrated.
+       * @param intervalMs  Interval between time points in ms, or null.
+       * @param zStepUm     Z step in microns, or null.
+       */
+      Calibration(Double pixelSizeUm, Double intervalMs, Double zStepUm) {
+         pixelSizeUm_ = pixelSizeUm == null ? 0.0 : pixelSizeUm;
+         frameIntervalS_ = intervalMs == null ? 0.0 : intervalMs / 1000.0;
+         zStepUm_ = zStepUm == null ? 1.0 : zStepUm;
+      }
+
+      boolean isCalibrated() {
+         return pixelSizeUm_ > 0;
+      }
+   }
+
+   /**
+    * Queues the image to be written to the given file.  Blocks while too much image
+    * data is waiting to be written.
+    *
+    * @param image        Image to be written.
+    * @param file         Destination.  Its directory should exist.
+    * @param metadataJSON Stored as ImageJ "Info" property.
+    * @param calibration  Spatial and temporal calibration.
+    */
+   void write(final Image image, final File file, final String metadataJSON,
+              final Calibration calibration) {
+      final long bytes = (long) image.getWidth() * image.getHeight()
+            * image.getBytesPerPixel();
+      synchronized (lock_) {
+         // always allow one image, even if it is larger than the limit
+         while (nrInFlight_ > 0 && bytesInFlight_ + bytes > MAX_BYTES_IN_FLIGHT) {
+            try {
+               lock_.wait();
+            } catch (InterruptedException ie) {
+               Thread.currentThread().interrupt();
+               break;
+            }
+         }
+         bytesInFlight_ += bytes;
+         nrInFlight_++;
+      }
+      pending_.put(image.getCoords(), image);
+      executor_.submit(() -> {
+         boolean success = false;
+         try {
+            writeTiff(image, file, metadataJSON, calibration);
+            success = true;
+         } catch (IOException | RuntimeException ex) {
+            ReportingUtils.logError(ex, "Failed to write " + file.getPath());
+         } finally {
+            pending_.remove(image.getCoords(), image);
+            synchronized (lock_) {
+               bytesInFlight_ -= bytes;
+               nrInFlight_--;
+               if (!success) {
+                  nrFailed_++;
+               }
+               lock_.notifyAll();
+            }
+         }
+      });
+   }
+
+   /**
+    * Returns the image at the given coordinates if it has not been written yet.
+    */
+   Image getPending(Coords coords) {
+      return pending_.get(coords);
+   }
+
+   /**
+    * Waits until all queued images are written.
+    *
+    * @return Number of images that could not be written since the last call.
+    */
+   int flush() {
+      synchronized (lock_) {
+         while (nrInFlight_ > 0) {
+            try {
+               lock_.wait();
+            } catch (InterruptedException ie) {
+               Thread.currentThread().interrupt();
+               break;
+            }
+         }
+         int failed = nrFailed_;
+         nrFailed_ = 0;
+         return failed;
+      }
+   }
+
+   /**
+    * Writes all queued images, and stops the writer threads.
+    *
+    * @return Number of images that could not be written.
+    */
+   int close() {
+      int failed = flush();
+      executor_.shutdown();
+      try {
+         executor_.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException ie) {
+         Thread.currentThread().interrupt();
+      }
+      return failed;
+   }
+
+   /**
+    * Encodes the image as ImageJ TIFF and writes it to file.
+    */
+   static void writeTiff(Image image, File file, String metadataJSON,
+                         Calibration calibration) throws IOException {
+      FileInfo fi = createFileInfo(image, metadataJSON, calibration);
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file),
+            BUFFER_SIZE)) {
+         new TiffEncoder(fi).write(out);
+      }
+   }
+
+   static FileInfo createFileInfo(Image image, String metadataJSON,
+                                  Calibration calibration) {
+      int width = image.getWidth();
+      int height = image.getHeight();
+      int bytesPerPixel = image.getBytesPerPixel();
+      int numComponents = image.getNumComponents();
+      Object pixels = image.getRawPixels();
+      FileInfo fi = new FileInfo();
+      fi.width = width;
+      fi.height = height;
+      fi.nImages = 1;
+      fi.intelByteOrder = ij.Prefs.intelByteOrder;
+      String minMax = null;
+      if (numComponents == 3 && bytesPerPixel == 4) {
+         // 32-bit RGB, stored as B-G-R-A bytes
+         int[] rgbPixels = new int[width * height];
+         byte[] rawPixels = (byte[]) pixels;
+         for (int i = 0; i < rgbPixels.length; i++) {
+            rgbPixels[i] = (rawPixels[4 * i + 3] << (Byte.SIZE * 3));
+            rgbPixels[i] |= (rawPixels[4 * i + 2] & 0xFF) << (Byte.SIZE * 2);
+            rgbPixels[i] |= (rawPixels[4 * i + 1] & 0xFF) << (Byte.SIZE * 1);
+            rgbPixels[i] |= (rawPixels[4 * i] & 0xFF);
+         }
+         fi.fileType = FileInfo.RGB;
+         fi.pixels = rgbPixels;
+      } else if (numComponents == 1 && bytesPerPixel == 1) {
+         fi.fileType = FileInfo.GRAY8;
+         fi.pixels = pixels;
+      } else if (numComponents == 1 && bytesPerPixel == 2) {
+         fi.fileType = FileInfo.GRAY16_UNSIGNED;
+         fi.pixels = pixels;
+         minMax = minMax16((short[]) pixels);
+      } else if (numComponents == 1 && bytesPerPixel == 4) {
+         fi.fileType = FileInfo.GRAY32_FLOAT;
+         fi.pixels = pixels;
+         minMax = minMax32((float[]) pixels);
+      } else {
+         throw new IllegalArgumentException(String.format(
+               "Unexpected image format with %d bytes per pixel and %d components",
+               bytesPerPixel, numComponents));
+      }
+
+      // Same description string that ImageJ's FileSaver creates for a single image
+      StringBuilder description = new StringBuilder(100);
+      description.append("ImageJ=").append(ImageJ.VERSION).append('\n');
+      if (calibration.isCalibrated()) {
+         fi.unit = "\u00B5m";
+         fi.pixelWidth = calibration.pixelSizeUm_;
+         fi.pixelHeight = calibration.pixelSizeUm_;
+         fi.pixelDepth = calibration.zStepUm_;
+         description.append("unit=\\u00B5m\n");
+         if (calibration.frameIntervalS_ != 0.0) {
+            fi.frameInterval = calibration.frameIntervalS_;
+            description.append("finterval=").append(format(calibration.frameIntervalS_))
+                  .append('\n');
+         }
+      }
+      if (minMax != null) {
+         description.append(minMax);
+      }
+      description.append((char) 0);
+      fi.description = description.toString();
+      fi.info = metadataJSON;
+      return fi;
+   }
+
+   private static String minMax16(short[] pixels) {
+      int min = 65535;
+      int max = 0;
+      for (short p : pixels) {
+         int value = p & 0xffff;
+         if (value < min) {
+            min = value;
+         }
+         if (value > max) {
+            max = value;
+         }
+      }
+      if (pixels.length == 0) {
+         min = 0;
+      }
+      return "min=" + (double) min + "\nmax=" + (double) max + "\n";
+   }
+
+   private static String minMax32(float[] pixels) {
+      float min = Float.MAX_VALUE;
+      float max = -Float.MAX_VALUE;
+      for (float value : pixels) {
+         if (!Float.isInfinite(value)) {
+            if (value < min) {
+               min = value;
+            }
+            if (value > max) {
+               max = value;
+            }
+         }
+      }
+      return "min=" + (double) min + "\nmax=" + (double) max + "\n";
+   }
+
+   // ImageJ writes whole numbers without decimals
+   private static String format(double value) {
+      if (value == Math.rint(value) && Math.abs(value) < 1.0e9) {
+         return Long.toString((long) value);
+      }
+      return Double.toString(value);
+   }
+}
@@ -31,7 +31,6 @@ import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.stream.JsonReader;
 import ij.ImagePlus;
-import ij.io.FileSaver;
 import ij.io.Opener;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
@@ -40,8 +39,9 @@ import ij.process.ImageProcessor;
 import ij.process.ShortProcessor;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
 import java.io.Writer;
 import java.util.ArrayList;
@@ -52,8 +52,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -80,18 +78,26 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
    private static final HashSet<String> ALLOWED_AXES = new HashSet<>(
          Arrays.asList(Coords.CHANNEL, Coords.T, Coords.Z,
                Coords.STAGE_POSITION));
+   // Gson instances are thread safe, and expensive to create
+   private static final Gson GSON = new GsonBuilder().disableHtmlEscaping()
+         .setPrettyPrinting().create();
+   // Metadata files are flushed and synced to disk at most this often
+   private static final long METADATA_SYNC_INTERVAL_MS = 2000;
+   private static final int METADATA_STREAM_BUFFER_SIZE = 1 << 16;
    private final DefaultDatastore store_;
    private final String dir_;
    private boolean firstElement_;
    private boolean amLoading_;
    private final HashMap<Integer, Writer> metadataStreams_;
+   private final HashMap<Integer, FileOutputStream> metadataFiles_;
+   private long lastMetadataSyncMs_;
+   private SinglePlaneTiffWriter tiffWriter_;
    private boolean isDatasetWritable_;
    private SummaryMetadata summaryMetadata_ = (new DefaultSummaryMetadata.Builder()).build();
    private final ConcurrentHashMap<Coords, String> coordsToFilename_;
-   private Map<Coords, List<Coords>> coordsIndexedMissingC_;
+   private final CoordsIndex coordsIndex_;
    private final HashMap<Integer, String> positionIndexToName_;
    private final ArrayList<String> orderedChannelNames_;
-   private final Set<String> axesInUse_;
    private Coords maxIndices_;
    private boolean isMultiPosition_;
    private Image firstImage_;
@@ -119,12 +125,12 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
       store_.registerForEvents(this, 0);
       coordsToFilename_ = new ConcurrentHashMap<>();
       metadataStreams_ = new HashMap<>();
+      metadataFiles_ = new HashMap<>();
       positionIndexToName_ = new HashMap<>();
       orderedChannelNames_ = new ArrayList<>();
-      axesInUse_ = new TreeSet<>();
       maxIndices_ = new DefaultCoords.Builder().build();
       amLoading_ = false;
-      coordsIndexedMissingC_ = new HashMap<>();
+      coordsIndex_ = new CoordsIndex();
       isMultiPosition_ = true;
 
       // Note: this will throw an error if there is no existing data set
@@ -210,12 +216,11 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
          NonPropertyMapJSONFormats.metadata().addToGson(jo,
                ((DefaultMetadata) imgMetadata).toPropertyMap());
 
-         Gson gson = new GsonBuilder().disableHtmlEscaping()
-               .setPrettyPrinting().create();
-         String metadataJSON = gson.toJson(jo);
+         String metadataJSON = GSON.toJson(jo);
 
          saveImageFile(image, dir_, fileName, metadataJSON);
          writeFrameMetadata(image, metadataJSON, fileName);
+         syncMetadataStreams(false);
       }
 
       // Update our Coords indices
@@ -225,15 +230,10 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
          // isn't?  See the above code that branches based on amLoading_.
          coordsToFilename_.put(coords, fileName);
       }
-      Coords coordsNoC = image.getCoords().copyRemovingAxes(Coords.C);
-      if (!coordsIndexedMissingC_.containsKey(coordsNoC)) {
-         coordsIndexedMissingC_.put(coordsNoC, new ArrayList<>(4));
-      }
-      coordsIndexedMissingC_.get(coordsNoC).add(image.getCoords());
+      coordsIndex_.add(coords);
 
       // Update our tracking of the max index along each axis.
       for (String axis : coords.getAxes()) {
-         axesInUse_.add(axis);
          if (coords.getIndex(axis) > maxIndices_.getIndex(axis)) {
             maxIndices_ = maxIndices_.copyBuilder().index(
                   axis, coords.getIndex(axis)).build();
@@ -243,6 +243,7 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
 
    @Override
    public void freeze() {
+      closeTiffWriter();
       closeMetadataStreams();
       isDatasetWritable_ = false;
       saveComments();
@@ -258,6 +259,13 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
 
    @Override
    public Image getImage(Coords coords) {
+      if (tiffWriter_ != null) {
+         // The file of an image that is still queued for writing is incomplete
+         Image pending = tiffWriter_.getPending(coords);
+         if (pending != null) {
+            return pending;
+         }
+      }
       if (coordsToFilename_.get(coords) == null) {
          // We don't have that image.
          ReportingUtils.logError("Asked for image at " + coords + " that we don't know about");
@@ -342,17 +350,8 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
    @Override
    public List<Image> getImagesMatching(Coords coords) {
       ArrayList<Image> result = new ArrayList<>();
-      for (Coords altCoords : coordsToFilename_.keySet()) {
-         boolean canUse = true;
-         for (String axis : coords.getAxes()) {
-            if (coords.getIndex(axis) != altCoords.getIndex(axis)) {
-               canUse = false;
-               break;
-            }
-         }
-         if (canUse) {
-            result.add(getImage(altCoords));
-         }
+      for (Coords altCoords : coordsIndex_.getCoordsMatching(coords)) {
+         result.add(getImage(altCoords));
       }
       return result;
    }
@@ -360,40 +359,9 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
    @Override
    public List<Image> getImagesIgnoringAxes(Coords coords, String... ignoreTheseAxes)
          throws IOException {
-      if (coordsToFilename_ == null) {
-         return null;
-      }
-      // Optimization: traversing large HashMaps is costly, so avoid that when there is no need
-      // without this, there is noticeable slowdown for one axis data > ~10,000 images.
-      // An alternative optimization approach is to keep collections of coords
-      // for all possible ignoredAxes.  There is more upfront work involved but may be
-      // needed for fast multi-camera imaging.
       List<Image> result = new ArrayList<>();
-      boolean haveIgnoredAxes = false;
-      for (String axis : ignoreTheseAxes) {
-         if (axesInUse_.contains(axis)) {
-            haveIgnoredAxes = true;
-            break;
-         }
-      }
-      if (!haveIgnoredAxes) {
-         result.add(getImage(coords));
-      } else {
-         // special case: if the ignored axis is C, use a special index to find the Coords
-         // otherwise, the search will be very expensive (which will  be the case for other
-         // axes) and result in noticaeble slowodwns with large datasetsz
-         if (ignoreTheseAxes[0].equals(Coords.CHANNEL)) {
-            for (Coords tmpCoords : coordsIndexedMissingC_.get(coords)) {
-               result.add(getImage(tmpCoords));
-            }
-         } else { // brute force it.  This will be slow with large data sets
-            for (Coords altCoords : coordsToFilename_.keySet()) {
-               Coords strippedAltCoords = altCoords.copyRemovingAxes(ignoreTheseAxes);
-               if (coords.equals(strippedAltCoords)) {
-                  result.add(getImage(altCoords));
-               }
-            }
-         }
+      for (Coords altCoords : coordsIndex_.getCoordsIgnoringAxes(coords, ignoreTheseAxes)) {
+         result.add(getImage(altCoords));
       }
       return result;
    }
@@ -500,9 +468,7 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
          JsonObject jo = new JsonObject();
          NonPropertyMapJSONFormats.coords().addToGson(jo,
                ((DefaultCoords) image.getCoords()).toPropertyMap());
-         Gson gson = new GsonBuilder().disableHtmlEscaping()
-               .setPrettyPrinting().create();
-         writeJSONMetadata(pos, gson.toJson(jo), coordsKey);
+         writeJSONMetadata(pos, GSON.toJson(jo), coordsKey);
 
          String mdKey = "Metadata-" + fileName;
          writeJSONMetadata(pos, metadataJSON, mdKey);
@@ -523,13 +489,35 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
          }
          metadataStream.write("\"" + title + "\": ");
          metadataStream.write(json);
-         metadataStream.flush();
          firstElement_ = false;
       } catch (IOException e) {
          ReportingUtils.logError(e);
       }
    }
 
+   /**
+    * Flushes the metadata files and syncs them to disk, so that the metadata
+    * of a crashed acquisition is mostly preserved.  Writing through to the
+    * disk after every image is very slow on network drives, so unless forced,
+    * this only happens once every METADATA_SYNC_INTERVAL_MS.
+    */
+   private void syncMetadataStreams(boolean force) {
+      long now = System.currentTimeMillis();
+      if (!force && now - lastMetadataSyncMs_ < METADATA_SYNC_INTERVAL_MS) {
+         return;
+      }
+      lastMetadataSyncMs_ = now;
+      for (Map.Entry<Integer, Writer> entry : metadataStreams_.entrySet()) {
+         try {
+            entry.getValue().flush();
+            metadataFiles_.get(entry.getKey()).getFD().sync();
+         } catch (IOException e) {
+            ReportingUtils.logError(e, "Failed to sync metadata for position "
+                  + entry.getKey());
+         }
+      }
+   }
+
 
    private void saveImageFile(Image image, String path, String tiffFileName,
                               String metadataJSON) {
@@ -538,96 +526,26 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
       } else {
          ImageSizeChecker.checkImageSizes(firstImage_, image);
       }
-      try {
-         int width = image.getWidth();
-         int height = image.getHeight();
-         Object pixels = image.getRawPixels();
-         int bytesPerPixel = image.getBytesPerPixel();
-         int numComponents = image.getNumComponents();
-         ImageProcessor proc;
-         if (numComponents == 3 && bytesPerPixel == 4) {
-            // 32-bit RGB
-            proc = new ColorProcessor(width, height);
-            int[] rgbPixels = new int[width * height];
-            byte[] rawPixels = (byte[]) pixels;
-            for (int i = 0; i < width * height; i++) {
-               rgbPixels[i] = (rawPixels[4 * i + 3] << (Byte.SIZE * 3));
-               rgbPixels[i] |= (rawPixels[4 * i + 2] & 0xFF) << (Byte.SIZE * 2);
-               rgbPixels[i] |= (rawPixels[4 * i + 1] & 0xFF) << (Byte.SIZE * 1);
-               rgbPixels[i] |= (rawPixels[4 * i] & 0xFF);
-            }
-            ((ColorProcessor) proc).setPixels(rgbPixels);
-         } else if (numComponents == 1 && bytesPerPixel == 1) {
-            // Byte
-            proc = new ByteProcessor(width, height);
-            proc.setPixels((byte[]) pixels);
-         } else if (numComponents == 1 && bytesPerPixel == 2) {
-            // Short
-            proc = new ShortProcessor(width, height);
-            proc.setPixels((short[]) pixels);
-         } else if (numComponents == 1 && bytesPerPixel == 4) {
-            // Float
-            proc = new FloatProcessor(width, height);
-            proc.setPixels((float[]) pixels);
-         } else {
-            throw new IllegalArgumentException(String.format(
-                  "Unexpected image format with %d bytes per pixel and %d components",
-                  bytesPerPixel, numComponents));
-         }
-         saveImageProcessor(proc, image, path, tiffFileName, metadataJSON);
-      } catch (IllegalArgumentException ex) {
-         ReportingUtils.logError(ex);
-      }
-   }
-
-
-   private void saveImageProcessor(ImageProcessor ip, Image image,
-                                   String path, String tiffFileName, String metadataJSON) {
-      // TODO: why is this check here?
-      if (ip == null) {
-         return;
+      if (tiffWriter_ == null) {
+         tiffWriter_ = new SinglePlaneTiffWriter();
       }
-      ImagePlus imp = new ImagePlus(path + "/" + tiffFileName, ip);
-      applyPixelSizeCalibration(imp, image.getMetadata());
-      saveImagePlus(imp, image, path, tiffFileName, metadataJSON);
+      SinglePlaneTiffWriter.Calibration calibration = new SinglePlaneTiffWriter.Calibration(
+            image.getMetadata().getPixelSizeUm(), summaryMetadata_.getWaitInterval(),
+            summaryMetadata_.getZStepUm());
+      tiffWriter_.write(image, new File(path, tiffFileName), metadataJSON, calibration);
    }
 
-   private void applyPixelSizeCalibration(final ImagePlus ip,
-                                          Metadata metadata) {
-      Double pixSizeUm = metadata.getPixelSizeUm();
-      if (pixSizeUm != null && pixSizeUm > 0) {
-         ij.measure.Calibration cal = new ij.measure.Calibration();
-         cal.setUnit("um");
-         cal.pixelWidth = pixSizeUm;
-         cal.pixelHeight = pixSizeUm;
-         if (summaryMetadata_.getWaitInterval() != null) {
-            cal.frameInterval = summaryMetadata_.getWaitInterval() / 1000.0;
-         }
-         if (summaryMetadata_.getZStepUm() != null) {
-            cal.pixelDepth = summaryMetadata_.getZStepUm();
+   private void closeTiffWriter() {
+      if (tiffWriter_ != null) {
+         int nrFailed = tiffWriter_.close();
+         tiffWriter_ = null;
+         if (nrFailed > 0) {
+            ReportingUtils.showError("Failed to save " + nrFailed + " images to " + dir_);
          }
-         ip.setCalibration(cal);
       }
    }
 
 
-   /**
-    * Saves an ImageJ ImagePlus object.
-    *
-    * @param imp          The ImagePlus to be saved.
-    * @param image        Not used
-    * @param path         Location on disk to save to.
-    * @param tiffFileName Temporary name to be sued.
-    * @param metadataJSON Metadata in JSON format
-    */
-   public void saveImagePlus(ImagePlus imp, Image image,
-                             String path, String tiffFileName, String metadataJSON) {
-      imp.setProperty("Info", metadataJSON);
-
-      FileSaver fs = new FileSaver(imp);
-      fs.saveAsTiff(path + "/" + tiffFileName);
-   }
-
    private void openNewDataSet(Image image) throws IOException, Exception {
       String posName = image.getMetadata().getPositionName("");
       int pos = image.getCoords().getStagePosition();
@@ -646,8 +564,11 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
       positionIndexToName_.put(pos, posName);
       JavaUtils.createDirectory(dir_ + "/" + posName);
       firstElement_ = true;
-      Writer metadataStream = new BufferedWriter(new FileWriter(dir_ + "/"
-            + posName + "/metadata.txt"));
+      FileOutputStream metadataFile = new FileOutputStream(dir_ + "/"
+            + posName + "/metadata.txt");
+      Writer metadataStream = new BufferedWriter(new OutputStreamWriter(metadataFile),
+            METADATA_STREAM_BUFFER_SIZE);
+      metadataFiles_.put(pos, metadataFile);
       metadataStreams_.put(pos, metadataStream);
       metadataStream.write("{" + "\n");
       // TODO: this method of extracting the date is extremely hacky and
@@ -667,21 +588,33 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
       PropertyMap formatPmap = ((DefaultImage) image).formatToPropertyMap();
       PropertyKey.IJ_TYPE.storeInGsonObject(formatPmap, jo);
       PropertyKey.PIXEL_TYPE.storeInGsonObject(formatPmap, jo);
-      Gson gson = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
-      writeJSONMetadata(pos, gson.toJson(jo), "Summary");
+      writeJSONMetadata(pos, GSON.toJson(jo), "Summary");
+      syncMetadataStreams(true);
    }
 
+   /**
+    * Finishes the metadata files, and syncs them to disk before closing them.
+    */
    private void closeMetadataStreams() {
       if (isDatasetWritable_) {
-         try {
-            for (Writer metadataStream : metadataStreams_.values()) {
-               metadataStream.write("\n}\n");
-               metadataStream.close();
+         for (Map.Entry<Integer, Writer> entry : metadataStreams_.entrySet()) {
+            try {
+               entry.getValue().write("\n}\n");
+               entry.getValue().flush();
+               metadataFiles_.get(entry.getKey()).getFD().sync();
+            } catch (IOException ex) {
+               ReportingUtils.logError(ex, "Failed to finish metadata for position "
+                     + entry.getKey());
+            }
+            try {
+               entry.getValue().close();
+            } catch (IOException ex) {
+               ReportingUtils.logError(ex);
             }
-         } catch (IOException ex) {
-            ReportingUtils.logError(ex);
          }
       }
+      metadataStreams_.clear();
+      metadataFiles_.clear();
    }
 
    private void openExistingDataSet() throws IOException {
@@ -867,22 +800,12 @@ public final class StorageSinglePlaneTiffSeries implements Storage {
    @Subscribe
    public void onNewSummaryMetadata(DataProviderHasNewSummaryMetadataEvent event) {
       summaryMetadata_ = event.getSummaryMetadata();
-
-      // setSummaryMetadata must be called before adding images to the store, so use this moment
-      // to smartly initialize several HashMaps
-      Coords dims = summaryMetadata_.getIntendedDimensions();
-      int nrImagesNoC = 1;
-      for (String axis : dims.getAxes()) {
-         if (!axis.equals(Coords.CHANNEL)) {
-            nrImagesNoC *= dims.getIndex(axis);
-         }
-      }
-      coordsIndexedMissingC_ = new HashMap<>(nrImagesNoC);
    }
 
    @Override
    public void close() {
+      closeTiffWriter();
       saveComments();
-      coordsIndexedMissingC_ = null;
+      coordsIndex_.clear();
    }
 }
\ No newline at end of file
@@ -514,11 +514,35 @@ public final class MultipageTiffReader {
       return (DefaultImage) readImage(data);
    }
 
-   private Image readImage(IFDData data) throws IOException {
-      ByteBuffer pixelBuffer = getLargeBuffer((int) data.bytesPerImage, byteOrder_);
-      pixelBuffer.rewind();
+   /**
+    * Reads only the metadata of the image with given Coords, without reading
+    * its pixels.
+    *
+    * @param coords Coords indicating which image's metadata should be retrieved.
+    * @return Metadata of the image, or null if the image or its metadata were not found.
+    * @throws IOException When reading fails
+    */
+   public Metadata readMetadata(Coords coords) throws IOException {
+      if (!coordsToOffset_.containsKey(coords)) {
+         return null;
+      }
+      if (fileChannel_ == null) {
+         createFileChannel(false);
+      }
+      if (fileChannel_ == null) {
+         ReportingUtils.logError("Attempted to read metadata on FileChannel that is null");
+         return null;
+      }
+      JsonElement mdGson = readMetadataGson(readIFD(coordsToOffset_.get(coords)));
+      if (mdGson == null) {
+         return null;
+      }
+      return DefaultMetadata.fromPropertyMap(
+            NonPropertyMapJSONFormats.metadata().fromGson(mdGson));
+   }
+
+   private JsonElement readMetadataGson(IFDData data) throws IOException {
       ByteBuffer mdBuffer = ByteBuffer.allocate((int) data.mdLength).order(byteOrder_);
-      fileChannel_.read(pixelBuffer, data.pixelOffset);
       fileChannel_.read(mdBuffer, data.mdOffset);
 
       String mdJSON = getString(mdBuffer);
@@ -530,13 +554,23 @@ public final class MultipageTiffReader {
       JsonParser parser = new JsonParser();
       JsonReader reader = new JsonReader(new StringReader(mdJSON));
       reader.setLenient(true);
-      JsonElement mdGson = null;
       try {
-         mdGson = parser.parse(reader);
+         return parser.parse(reader);
       } catch (JsonSyntaxException jse) {
          ReportingUtils.logError(jse, "Error parsing image metadata.");
          return null;
       }
+   }
+
+   private Image readImage(IFDData data) throws IOException {
+      ByteBuffer pixelBuffer = getLargeBuffer((int) data.bytesPerImage, byteOrder_);
+      pixelBuffer.rewind();
+      fileChannel_.read(pixelBuffer, data.pixelOffset);
+
+      JsonElement mdGson = readMetadataGson(data);
+      if (mdGson == null) {
+         return null;
+      }
 
       try {
          PropertyMap formatPmap = NonPropertyMapJSONFormats.imageFormat()
@@ -28,14 +28,12 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -50,8 +48,10 @@ import org.micromanager.data.DataProvider;
 import org.micromanager.data.DataProviderHasNewSummaryMetadataEvent;
 import org.micromanager.data.Datastore;
 import org.micromanager.data.Image;
+import org.micromanager.data.Metadata;
 import org.micromanager.data.Storage;
 import org.micromanager.data.SummaryMetadata;
+import org.micromanager.data.internal.CoordsIndex;
 import org.micromanager.data.internal.DefaultCoords;
 import org.micromanager.data.internal.DefaultDatastore;
 import org.micromanager.data.internal.DefaultImage;
@@ -113,9 +113,8 @@ public final class StorageMultipageTiff implements Storage {
    // Map of image Coords to files
    private Map<Coords, MultipageTiffReader> coordsToReader_;
    private MultipageTiffReader lastReader_;
-   private Map<Coords, List<Coords>> coordsIndexedMissingC_;
-   // Cache the axes that are in use
-   private final Set<String> axesInUse_;
+   // Index of the Coords of all images, written and pending
+   private final CoordsIndex coordsIndex_;
    // Keeps track of our maximum extent along each axis.
    private Coords maxIndices_;
 
@@ -157,7 +156,7 @@ public final class StorageMultipageTiff implements Storage {
       store_.setSavePath(directory_);
       store_.setName(new File(directory_).getName());
       coordsToReader_ = new HashMap<>();
-      axesInUse_ = new TreeSet<>();
+      coordsIndex_ = new CoordsIndex();
 
       if (amInWriteMode_) {
          positionToFileSet_ = new HashMap<>();
@@ -307,15 +306,9 @@ public final class StorageMultipageTiff implements Storage {
          }
          Set<Coords> readerCoords = reader.getIndexKeys();
          if (readerCoords != null) {
-            coordsIndexedMissingC_ = new HashMap<>();
             for (Coords coords : readerCoords) {
                coordsToReader_.put(coords, reader);
-               axesInUse_.addAll(coords.getAxes());
-               final Coords coordsNoC = coords.copyRemovingAxes(Coords.C);
-               if (!coordsIndexedMissingC_.containsKey(coordsNoC)) {
-                  coordsIndexedMissingC_.put(coordsNoC, new ArrayList<>(ALLOWED_AXES.size()));
-               }
-               coordsIndexedMissingC_.get(coordsNoC).add(coords);
+               coordsIndex_.add(coords);
                lastFrameOpenedDataSet_ = Math.max(coords.getT(),
                      lastFrameOpenedDataSet_);
                if (firstImage_ == null) {
@@ -334,7 +327,6 @@ public final class StorageMultipageTiff implements Storage {
       DefaultImage image = (DefaultImage) newImage;
       // Require images to only have time/channel/z/position axes.
       for (String axis : image.getCoords().getAxes()) {
-         axesInUse_.add(axis);
          if (!ALLOWED_AXES.contains(axis)) {
             ReportingUtils.showError(
                   "Multipage TIFF storage cannot handle images with axis \""
@@ -355,11 +347,7 @@ public final class StorageMultipageTiff implements Storage {
          ReportingUtils.showError(e, "Failed to write image at " + image.getCoords());
       }
       // index the coords
-      Coords coordsNoC = image.getCoords().copyRemovingAxes(Coords.C);
-      if (!coordsIndexedMissingC_.containsKey(coordsNoC)) {
-         coordsIndexedMissingC_.put(coordsNoC, new ArrayList<>(ALLOWED_AXES.size()));
-      }
-      coordsIndexedMissingC_.get(coordsNoC).add(image.getCoords());
+      coordsIndex_.add(image.getCoords());
    }
 
    @Override
@@ -603,17 +591,6 @@ public final class StorageMultipageTiff implements Storage {
       summaryMetadataString_ = NonPropertyMapJSONFormats.summaryMetadata()
             .toJSON(summary.toPropertyMap());
 
-      // setSummaryMetadata must be called before adding images to the store, so use this moment
-      // to smartly initialize several HashMaps
-      Coords dims = summaryMetadata_.getIntendedDimensions();
-      int nrImagesNoC = 1;
-      for (String axis : dims.getAxes()) {
-         if (!axis.equals(Coords.CHANNEL)) {
-            nrImagesNoC *= dims.getIndex(axis);
-         }
-      }
-      coordsIndexedMissingC_ = new HashMap<>(nrImagesNoC);
-
       // TODO: under what circumstances can coordsToReader_ already contain data?
       Map<Coords, MultipageTiffReader> oldImageMap = coordsToReader_;
       coordsToReader_ = new HashMap<>();
@@ -929,18 +906,7 @@ public final class StorageMultipageTiff implements Storage {
 
    @Override
    public List<Image> getImagesMatching(Coords coords) {
-      List<String> ignoredAxes = new ArrayList<>();
-      for (String axis : axesInUse_) {
-         if (!coords.getAxes().contains(axis)) {
-            ignoredAxes.add(axis);
-         }
-      }
-      try {
-         return getImagesIgnoringAxes(coords, ignoredAxes.toArray(new String[0]));
-      } catch (IOException ex) {
-         ReportingUtils.logError(ex, "Failed to read image at " + coords);
-         return null;
-      }
+      return readImages(coordsIndex_.getCoordsMatching(coords));
    }
 
    // NOTE: getImagesIgnoringAxes() calls readImage() directly on each reader, bypassing
@@ -950,58 +916,32 @@ public final class StorageMultipageTiff implements Storage {
    @Override
    public List<Image> getImagesIgnoringAxes(Coords coords, String... ignoreTheseAxes)
          throws IOException {
-      HashSet<Image> result = new HashSet<>();
-      synchronized (coordsToPendingImage_) {
-         for (Coords imageCoords : coordsToPendingImage_.keySet()) {
-            if (coords.equals(imageCoords.copyRemovingAxes(ignoreTheseAxes))) {
-               result.add(coordsToPendingImage_.get(imageCoords));
-            }
-         }
-      }
-      // Optimization: traversing large HashMaps is costly, so avoid that when there is no need
-      // without this, there is noticeable slowdown for one axis data > ~10,000 images.
-      // An alternative optimization approach is to keep collections of coords
-      // for all possible ignoredAxes.  There is more upfront work involved but may be
-      // needed for fast multi-camera imaging.
-      boolean haveIgnoredAxes = false;
-      for (String axis : ignoreTheseAxes) {
-         if (axesInUse_.contains(axis)) {
-            haveIgnoredAxes = true;
-            break;
+      return readImages(coordsIndex_.getCoordsIgnoringAxes(coords, ignoreTheseAxes));
+   }
+
+   private List<Image> readImages(List<Coords> coordsList) {
+      List<Image> result = new ArrayList<>(coordsList.size());
+      for (Coords imageCoords : coordsList) {
+         Image image;
+         synchronized (coordsToPendingImage_) {
+            image = coordsToPendingImage_.get(imageCoords);
          }
-      }
-      if (!haveIgnoredAxes) {
-         result.add(coordsToReader_.get(coords).readImage(coords));
-      } else {
-         // special case: if the ignored axis is C, use a special index to find the Coords
-         // otherwise, the search will be very expensive (which will  be the case for other
-         // axes) and result in noticaeble slowodwns with large datasetsz
-         if (ignoreTheseAxes[0].equals(Coords.CHANNEL)
-               && coordsIndexedMissingC_.containsKey(coords)) {
-            for (Coords tmpCoords : coordsIndexedMissingC_.get(coords)) {
-               result.add(coordsToReader_.get(tmpCoords).readImage(tmpCoords));
+         if (image == null) {
+            MultipageTiffReader reader = coordsToReader_.get(imageCoords);
+            if (reader == null) {
+               continue;
             }
-         } else {
-            // Brute force it.  This will be slow with large data sets
-            // Note that coordsToReader_ can be modified at the same time,
-            // catch ConcurrentModificationException rather than incur the cost
-            // of a lock that could slow down insertions
             try {
-               for (Coords imageCoords : coordsToReader_.keySet()) {
-                  if (coords.equals(imageCoords.copyRemovingAxes(ignoreTheseAxes))) {
-                     try {
-                        result.add(coordsToReader_.get(imageCoords).readImage(imageCoords));
-                     } catch (IOException ex) {
-                        ReportingUtils.logError("Failed to read image at " + imageCoords);
-                     }
-                  }
-               }
-            } catch (ConcurrentModificationException cme) {
-               ReportingUtils.logError(cme, "coordsToReader_ was modified while iterating");
+               image = reader.readImage(imageCoords);
+            } catch (IOException ex) {
+               ReportingUtils.logError("Failed to read image at " + imageCoords);
             }
          }
+         if (image != null) {
+            result.add(image);
+         }
       }
-      return new ArrayList<>(result);
+      return result;
    }
 
 
@@ -1033,6 +973,31 @@ public final class StorageMultipageTiff implements Storage {
       }
    }
 
+   /**
+    * Returns the metadata of the image at the given coords, without reading
+    * its pixels from disk.
+    *
+    * @param coords Coordinates of the image.
+    * @return Metadata of the image, or null if it could not be read.
+    */
+   public Metadata getMetadata(Coords coords) {
+      synchronized (coordsToPendingImage_) {
+         if (coordsToPendingImage_.containsKey(coords)) {
+            return coordsToPendingImage_.get(coords).getMetadata();
+         }
+      }
+      MultipageTiffReader mptReader = coordsToReader_.get(coords);
+      if (mptReader == null) {
+         return null;
+      }
+      try {
+         return mptReader.readMetadata(coords);
+      } catch (IOException ex) {
+         ReportingUtils.logError(ex, "Failed to read metadata at " + coords);
+         return null;
+      }
+   }
+
    @Override
    public Image getAnyImage() {
       return firstImage_;
@@ -7,9 +7,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
@@ -24,6 +22,7 @@ import org.micromanager.data.Image;
 import org.micromanager.data.Metadata;
 import org.micromanager.data.Storage;
 import org.micromanager.data.SummaryMetadata;
+import org.micromanager.data.internal.CoordsIndex;
 import org.micromanager.data.internal.DefaultDatastore;
 import org.micromanager.data.internal.DefaultImage;
 import org.micromanager.data.internal.DefaultMetadata;
@@ -50,12 +49,9 @@ public class NDTiffAdapter implements Storage {
    private NDTiffAPI storage_;
    private DefaultDatastore store_;
    private SummaryMetadata summaryMetadata_ = (new DefaultSummaryMetadata.Builder()).build();
-   // ShadowList of Coords in the datastore.  In read mode derived from the storage, in write mode
+   // Index of the Coords in the datastore.  In read mode derived from the storage, in write mode
    // added whenever an image is added
-   private final List<Coords> coords_;
-   // ShadowList of Coords indexed by Coords missing channel.
-   // In read mode derived from the storage, in write mode added whenever an image is added
-   private final Map<Coords, List<Coords>> coordsIndexedMissingC_;
+   private final CoordsIndex coordsIndex_;
 
    /**
     * Constructor of NDTiffAdapter.
@@ -74,8 +70,7 @@ public class NDTiffAdapter implements Storage {
 
       store_.setSavePath(dir);
       store_.setName(new File(dir).getName());
-      coords_ = new ArrayList<>();
-      coordsIndexedMissingC_ = new HashMap<>();
+      coordsIndex_ = new CoordsIndex();
 
       // If not writing, wait until summary metadata set to create storage
       if (!amInWriteMode) {
@@ -85,12 +80,7 @@ public class NDTiffAdapter implements Storage {
    }
 
    private void addCoordsToIndex(Coords coords) {
-      coords_.add(coords);
-      Coords coordMissingC = coords.copyRemovingAxes(Coords.C);
-      if (!coordsIndexedMissingC_.containsKey(coordMissingC)) {
-         coordsIndexedMissingC_.put(coordMissingC, new LinkedList<>());
-      }
-      coordsIndexedMissingC_.get(coordMissingC).add(coords);
+      coordsIndex_.add(coords);
    }
 
    public static boolean isNDTiffDataSet(String dir) {
@@ -239,26 +229,14 @@ public class NDTiffAdapter implements Storage {
       };
    }
 
-   /**
-    * This implementation only check for an exact match. It does not actually return a list
-    * of all images that match the given coordinates, as I am not quite sure how to implement that.
-    *
-    * @param coords Coordinates specifying images to match
-    * @return List of images matching the coordinates
-    * @throws IOException can always happen.
-    */
    @Override
    public List<Image> getImagesMatching(Coords coords) throws IOException {
-      List<Image> imageList = new LinkedList<>();
+      List<Image> imageList = new ArrayList<>();
       if (storage_ == null) {
          return imageList;
       }
-      HashMap<String, Object> ndTiffCoords = coordsToHashMap(coords);
-      if (storage_.hasImage(ndTiffCoords)) {
-         TaggedImage ti = addEssentialImageMetadata(storage_.getImage(ndTiffCoords), ndTiffCoords);
-         Image img = new DefaultImage(ti, hashMapToCoords(ndTiffCoords),
-                 studioMetadataFromJSON(ti.tags));
-         imageList.add(img);
+      for (Coords match : coordsIndex_.getCoordsMatching(coords)) {
+         imageList.add(getImage(match));
       }
       return imageList;
    }
@@ -266,36 +244,15 @@ public class NDTiffAdapter implements Storage {
    @Override
    public List<Image> getImagesIgnoringAxes(
            Coords coords, String... ignoreTheseAxes) throws IOException {
-      // This is obviously wrong, but not quite sure what to do at this point....
-      if (ignoreTheseAxes.length == 0) {
-         return getImagesMatching(coords);
-      } else if (ignoreTheseAxes.length == 1 && ignoreTheseAxes[0].equals(Coords.C)) {
-         Coords matchCoord = coords.copyRemovingAxes(Coords.C);
-         List<Coords> coords1 = coordsIndexedMissingC_.get(matchCoord);
-         final List<Image> result = new ArrayList<>();
-         coords1.forEach(coords2 -> {
-            try {
-               result.add(getImagesMatching(coords2).get(0));
-            } catch (IOException e) {
-               throw new RuntimeException(e);
-            }
-         });
-         return result;
-      } else {
-         Coords matchCoord = coords.copyRemovingAxes(ignoreTheseAxes);
-         final List<Image> result = new ArrayList<>();
-         getUnorderedImageCoords().iterator().forEachRemaining(
-               coords1 -> {
-                  if (coords1.copyRemovingAxes(ignoreTheseAxes).equals(matchCoord)) {
-                     try {
-                        result.add(getImage(coords1));
-                     } catch (IOException e) {
-                        throw new RuntimeException(e);
-                     }
-                  }
-               });
+      List<Image> result = new ArrayList<>();
+      if (storage_ == null) {
          return result;
       }
+      Coords matchCoord = coords.copyRemovingAxes(ignoreTheseAxes);
+      for (Coords match : coordsIndex_.getCoordsIgnoringAxes(matchCoord, ignoreTheseAxes)) {
+         result.add(getImage(match));
+      }
+      return result;
    }
 
    @Override
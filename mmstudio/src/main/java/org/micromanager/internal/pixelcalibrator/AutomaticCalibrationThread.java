@@ -21,11 +21,6 @@
 
 package org.micromanager.internal.pixelcalibrator;
 
-import boofcv.alg.misc.GImageStatistics;
-import boofcv.alg.misc.PixelMath;
-import boofcv.core.image.GConvertImage;
-import boofcv.struct.image.GrayF32;
-import boofcv.struct.image.GrayU16;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.process.FloatProcessor;
@@ -45,9 +40,8 @@ import org.micromanager.display.DisplayWindow;
 import org.micromanager.internal.utils.MathFunctions;
 import org.micromanager.internal.utils.NumberUtils;
 import org.micromanager.internal.utils.ReportingUtils;
-import org.micromanager.internal.utils.imageanalysis.AnalysisWindows2D;
-import org.micromanager.internal.utils.imageanalysis.BoofCVImageConverter;
 import org.micromanager.internal.utils.imageanalysis.ImageUtils;
+import org.micromanager.internal.utils.imageanalysis.PhaseCorrelator;
 
 /**
  * Runs the automatic pixel size calibration routine.
@@ -61,9 +55,8 @@ public class AutomaticCalibrationThread extends CalibrationThread {
    private final RectangleOverlay overlay_;
 
    private DisplayWindow liveWin_;
-   private ImageProcessor referenceImage_;
-   private GrayF32 windowImage_; // normalized window used for apodization
-   private final boolean useWindow_ = false;
+   // Holds the transform of the reference image
+   private PhaseCorrelator correlator_;
 
    private Point2D.Double xy0_;
 
@@ -135,35 +128,31 @@ public class AutomaticCalibrationThread extends CalibrationThread {
 
 
    /**
-    * Measures the displacement between two images by cross-correlating,
-    * and then finding the maximum value.
-    * Accurate to one pixel only.  ???  Seems accurate to 0.1 pixel...
+    * Measures the displacement between two images of the same size (a power
+    * of 2) by phase correlation, with sub-pixel accuracy.
+    *
+    * @param proc1 reference image
+    * @param proc2 image to compare with the reference
+    * @param display whether to show the correlation
+    * @return displacement that moves the content of proc2 back onto proc1
     */
    public static Point2D.Double measureDisplacement(ImageProcessor proc1,
                                                     ImageProcessor proc2, boolean display) {
-      // Increasing the box size will make finding the procedure more robust with respect to errors.
-      final int boxSize = 64;
-      final int halfBoxSize = boxSize / 2;
-      ImageProcessor result = ImageUtils.crossCorrelate(proc1, proc2);
-      ImageProcessor resultCenter = getSubImage(result,
-            result.getWidth() / 2 - halfBoxSize,
-            result.getHeight() / 2 - halfBoxSize,
-            boxSize,
-            boxSize);
-      resultCenter.setInterpolationMethod(ImageProcessor.BICUBIC);
-      ImageProcessor resultCenterScaled = resultCenter.resize(
-            resultCenter.getWidth() * 10);
-      ImagePlus img = new ImagePlus("Cal" + index_, resultCenterScaled);
-      index_++;
-      // TODO: use a (Gaussian?) fit rather than finding the maximum
-      // doing so may even make it unnecessary to blow up the box 10 fold
-      Point p = ImageUtils.findMaxPixel(img);
-      Point d = new Point(p.x - img.getWidth() / 2, p.y - img.getHeight() / 2);
-      Point2D.Double d2 = new Point2D.Double(d.x / 10., d.y / 10.);
+      PhaseCorrelator correlator = new PhaseCorrelator(proc1.getWidth(), proc1.getHeight());
+      correlator.setReference(proc1.convertToFloat().getPixels());
+      return measureDisplacement(correlator, proc2, display);
+   }
+
+   private static Point2D.Double measureDisplacement(PhaseCorrelator correlator,
+                                                     ImageProcessor proc, boolean display) {
+      Point2D.Double shift = correlator.measureShift(proc.convertToFloat().getPixels());
       if (display) {
-         img.show();
+         FloatProcessor correlation = new FloatProcessor(correlator.getWidth(),
+               correlator.getHeight(), correlator.getCorrelation());
+         new ImagePlus("Cal" + index_, correlation).show();
       }
-      return d2;
+      index_++;
+      return new Point2D.Double(-shift.x, -shift.y);
    }
 
    private Point2D.Double measureDisplacement(double x1, double y1, Point2D.Double d,
@@ -178,19 +167,8 @@ public class AutomaticCalibrationThread extends CalibrationThread {
             sideSmall, sideSmall);
       ImageProcessor foundImage = getSubImage(snap,
             guessRect.x, guessRect.y, guessRect.width, guessRect.height);
-      foundImage = subtractMinimum(foundImage);
-      if (useWindow_) {
-         foundImage = multiply(foundImage, windowImage_);
-      }
       overlay_.set(guessRect);
-      /*
-      ImagePlus tmp = new ImagePlus("reference", referenceImage_);
-      tmp.show();
-      ImagePlus tmp2 = new ImagePlus("found", foundImage);
-      tmp2.show();
-      */
-      Point2D.Double dChange = measureDisplacement(referenceImage_,
-            foundImage, display);
+      Point2D.Double dChange = measureDisplacement(correlator_, foundImage, display);
       return new Point2D.Double(d.x + dChange.x, d.y + dChange.y);
    }
 
@@ -296,35 +274,13 @@ public class AutomaticCalibrationThread extends CalibrationThread {
    }
 
    /**
-    * Multiplies two ImageProcessors.
-    *
-    * @param input  First ImageProcessor to be multiplied.
-    * @param input2 Second ImageProcessor to be multiplies.
-    * @return pixel by pixel multiplication of the two ImageProcessors.
+    * Uses the center of the given image as reference for the following
+    * measurements.
     */
-   public static ImageProcessor multiply(ImageProcessor input, GrayF32 input2) {
-      // TODO: check input and output sizes
-      GrayF32 floatInputAsBoofCV = new GrayF32(input.getWidth(), input.getHeight());
-      GConvertImage.convert(BoofCVImageConverter.convert(input, false), floatInputAsBoofCV);
-      GrayF32 outputBoofCV = new GrayF32(input.getWidth(), input.getHeight());
-      PixelMath.multiply(input2, floatInputAsBoofCV, outputBoofCV);
-      return BoofCVImageConverter.convert(outputBoofCV, false);
-   }
-
-   /**
-    * Creates a new ImageProcessor with the minimum value of the input subtracted from all
-    * input pixel values.
-    *
-    * @param input Input ImageProcessor
-    * @return ImageProcessor with the minimum of the input pixels subtracted from all pixels.
-    */
-   public static ImageProcessor subtractMinimum(ImageProcessor input) {
-      GrayU16 shortInputAsBoofCV = new GrayU16(input.getWidth(), input.getHeight());
-      GConvertImage.convert(BoofCVImageConverter.convert(input, false), shortInputAsBoofCV);
-      double min = GImageStatistics.min(shortInputAsBoofCV);
-      GrayU16 resultAsBoofCV = new GrayU16(input.getWidth(), input.getHeight());
-      PixelMath.minus(shortInputAsBoofCV, (int) min, resultAsBoofCV);
-      return BoofCVImageConverter.convert(resultAsBoofCV, false);
+   private void setReference(ImageProcessor baseImage) {
+      ImageProcessor reference = getSubImage(baseImage, (-sideSmall / 2 + w / 2),
+            (-sideSmall / 2 + h / 2), sideSmall, sideSmall);
+      correlator_.setReference(reference.getPixels());
    }
 
    private int smallestPowerOf2LessThanOrEqualTo(int x) {
@@ -361,17 +317,9 @@ public class AutomaticCalibrationThread extends CalibrationThread {
       int wSmall = smallestPowerOf2LessThanOrEqualTo(w / 4);
       int hSmall = smallestPowerOf2LessThanOrEqualTo(h / 4);
       sideSmall = Math.min(wSmall, hSmall);
-      referenceImage_ = getSubImage(baseImage, (-sideSmall / 2 + w / 2),
-            (-sideSmall / 2 + h / 2), sideSmall, sideSmall);
-      referenceImage_ = subtractMinimum(referenceImage_);
-
-      if (useWindow_) {
-         float[] windowPixels = AnalysisWindows2D.hanWindow1DA(sideSmall);
-         windowImage_ = new GrayF32();
-         windowImage_.setData(windowPixels);
-         windowImage_.reshape(sideSmall, sideSmall);
-         referenceImage_ = multiply(referenceImage_, windowImage_);
-      }
+      // The FFT tables and window are made once, all measurements use this size
+      correlator_ = new PhaseCorrelator(sideSmall, sideSmall);
+      setReference(baseImage);
 
 
       Map<Point2D.Double, Point2D.Double> pointPairs = new HashMap<>();
@@ -382,12 +330,7 @@ public class AutomaticCalibrationThread extends CalibrationThread {
 
       // Re-acquire the reference image, since we may not be exactly where 
       // we started from after having called runSearch().
-      referenceImage_ = getSubImage(baseImage, (-sideSmall / 2 + w / 2),
-            (-sideSmall / 2 + h / 2), sideSmall, sideSmall);
-      referenceImage_ = subtractMinimum(referenceImage_);
-      if (useWindow_) {
-         referenceImage_ = multiply(referenceImage_, windowImage_);
-      }
+      setReference(baseImage);
 
       pp = runSearch(0, 0.1, simulate);
       pointPairs.put(pp.getFirst(), pp.getSecond());
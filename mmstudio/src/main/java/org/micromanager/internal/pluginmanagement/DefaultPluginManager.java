@@ -21,8 +21,10 @@ package org.micromanager.internal.pluginmanagement;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
@@ -47,6 +49,15 @@ import org.micromanager.quickaccess.QuickAccessPlugin;
 
 /**
  * Implementation of the {@link PluginManager} API.
+ *
+ * <p>Plugin classes are discovered on a background thread at startup, using
+ * a {@link PluginIndexCache} so that JARs that did not change since the
+ * previous start are not scanned again.  MenuPlugins are instantiated on that
+ * thread too, since many of them register for events such as
+ * StartupCompleteEvent in setContext().  Other plugins are only instantiated
+ * when the plugins of their type are first asked for.  The Plugins menu is
+ * built from the names recorded in the cache, so it does not depend on the
+ * MenuPlugins having been instantiated yet.</p>
  */
 public final class DefaultPluginManager implements PluginManager {
 
@@ -72,8 +83,18 @@ public final class DefaultPluginManager implements PluginManager {
    private final Studio studio_;
    private final Thread loadingThread_;
    private final SharedPluginClassLoader pluginClassLoader_;
-   private final Map<Class<?>, List<MMGenericPlugin>> pluginTypeToPlugins_ =
-         new HashMap<>();
+   private final PluginIndexCache indexCache_;
+   // All fields below are guarded by this.
+   private final Map<Class<?>, List<Class<?>>> pluginTypeToClasses_ = new HashMap<>();
+   private final Map<Class<?>, MMGenericPlugin> pluginClassToInstance_ = new HashMap<>();
+   private final Set<Class<?>> failedClasses_ = new HashSet<>();
+   // Types that were asked for; their plugins are instantiated as they are found
+   private final Set<Class<?>> requestedTypes_ = new HashSet<>();
+   // Held while constructing a plugin class, so that it is constructed once
+   private final Map<Class<?>, Object> constructionLocks_ = new HashMap<>();
+   // Plugin classes that the current thread is constructing
+   private final ThreadLocal<Set<Class<?>>> constructing_ =
+         ThreadLocal.withInitial(HashSet::new);
 
    public DefaultPluginManager(Studio studio) {
       studio_ = studio;
@@ -84,9 +105,12 @@ public final class DefaultPluginManager implements PluginManager {
       pluginClassLoader_ = new SharedPluginClassLoader(
             studio_.getClass().getClassLoader());
 
+      indexCache_ = PluginIndexCache.loadDefault();
       for (Class<?> classType : VALID_CLASSES) {
-         pluginTypeToPlugins_.put(classType, new ArrayList<>());
+         pluginTypeToClasses_.put(classType, new ArrayList<>());
       }
+      // MenuPlugins may rely on seeing the events posted during startup
+      requestedTypes_.add(MenuPlugin.class);
       loadingThread_ = new Thread(this::loadPlugins, "Plugin loading thread");
       loadingThread_.start();
    }
@@ -143,12 +167,12 @@ public final class DefaultPluginManager implements PluginManager {
       String dir = System.getProperty("org.micromanager.plugin.path",
             System.getProperty("user.dir") + "/mmplugins");
       ReportingUtils.logMessage("Searching for plugins in " + dir);
-      pluginClasses.addAll(PluginFinder.findPlugins(pluginClassLoader_, dir));
+      pluginClasses.addAll(PluginFinder.findPlugins(pluginClassLoader_, dir, indexCache_));
 
       dir = System.getProperty("org.micromanager.autofocus.path",
             System.getProperty("user.dir") + "/mmautofocus");
       ReportingUtils.logMessage("Searching for plugins in " + dir);
-      pluginClasses.addAll(PluginFinder.findPlugins(pluginClassLoader_, dir));
+      pluginClasses.addAll(PluginFinder.findPlugins(pluginClassLoader_, dir, indexCache_));
 
       ReportingUtils.logMessage("Searching for plugins in MMStudio's class loader");
       // We need to use our normal class loader to load stuff from the MMJ_.jar
@@ -158,26 +182,101 @@ public final class DefaultPluginManager implements PluginManager {
             studio_.getClass().getClassLoader()));
 
       loadPlugins(pluginClasses);
+      indexCache_.save();
 
       ReportingUtils.logMessage("Plugin loading took "
             + (System.currentTimeMillis() - startTime) + "ms");
    }
 
    /**
-    * Insert the provided plugins into the pluginTypeToPlugins_ structure,
-    * instantiate them, add them to menus, etc.
+    * Insert the provided plugin classes into the pluginTypeToClasses_
+    * structure, and instantiate those of the types that were already asked
+    * for.
     */
    private void loadPlugins(List<Class<?>> pluginClasses) {
-      for (Class<?> pluginClass : pluginClasses) {
-         try {
+      List<Class<?>> requested;
+      synchronized (this) {
+         for (Class<?> pluginClass : pluginClasses) {
             // Ignore any SciJava plugins that are not MM plugins.
             if (!MMGenericPlugin.class.isAssignableFrom(pluginClass)) {
                continue;
             }
+            ReportingUtils.logMessage("Found plugin class " + pluginClass.getName());
+            for (Class<?> type : VALID_CLASSES) {
+               if (type.isAssignableFrom(pluginClass)) {
+                  pluginTypeToClasses_.get(type).add(pluginClass);
+               }
+            }
+         }
+         requested = new ArrayList<>(requestedTypes_);
+      }
+      for (Class<?> type : requested) {
+         getPlugins(type);
+      }
+   }
+
+   /**
+    * Return the plugins of the given type, instantiating those that were not
+    * instantiated yet.
+    */
+   private <T> HashMap<String, T> getPlugins(Class<T> type) {
+      List<Class<?>> pluginClasses;
+      synchronized (this) {
+         requestedTypes_.add(type);
+         pluginClasses = new ArrayList<>(pluginTypeToClasses_.get(type));
+      }
+      HashMap<String, T> result = new HashMap<>();
+      List<MMGenericPlugin> created = new ArrayList<>();
+      for (Class<?> pluginClass : pluginClasses) {
+         MMGenericPlugin plugin = getInstance(pluginClass, created);
+         if (plugin != null) {
+            result.put(pluginClass.getName(), type.cast(plugin));
+         }
+      }
+      postNewPluginEvents(created);
+      return result;
+   }
 
-            MMGenericPlugin plugin = (MMGenericPlugin) pluginClass.newInstance();
-            ReportingUtils.logMessage("Found plugin " + plugin);
-            addPlugin(plugin);
+   /**
+    * Return the single instance of the plugin class, creating it if needed.
+    * The plugin constructor is not called while holding our lock, since it
+    * may well call back into the PluginManager (possibly on another thread),
+    * but only while holding a lock for the class, so that concurrent callers
+    * wait for the one instance instead of creating their own.
+    *
+    * @param created new instances are added to this list
+    * @return the instance, or null if the class could not be instantiated, or
+    *     is being instantiated by the current thread
+    */
+   private MMGenericPlugin getInstance(Class<?> pluginClass, List<MMGenericPlugin> created) {
+      Object constructionLock;
+      synchronized (this) {
+         MMGenericPlugin plugin = pluginClassToInstance_.get(pluginClass);
+         if (plugin != null || failedClasses_.contains(pluginClass)) {
+            return plugin;
+         }
+         constructionLock = constructionLocks_.computeIfAbsent(pluginClass, c -> new Object());
+      }
+      if (constructing_.get().contains(pluginClass)) {
+         // The constructor asks for plugins of its own type
+         return null;
+      }
+      MMGenericPlugin plugin = null;
+      synchronized (constructionLock) {
+         synchronized (this) {
+            // Another thread may have been first
+            if (pluginClassToInstance_.containsKey(pluginClass)
+                  || failedClasses_.contains(pluginClass)) {
+               return pluginClassToInstance_.get(pluginClass);
+            }
+         }
+         constructing_.get().add(pluginClass);
+         try {
+            plugin = (MMGenericPlugin) pluginClass.newInstance();
+            if (plugin instanceof MMPlugin) { // Legacy plugin base class
+               ((MMPlugin) plugin).setContext(studio_);
+            }
+            ReportingUtils.logMessage("Instantiated plugin " + plugin);
          } catch (InstantiationException e) {
             ReportingUtils.logError(e, "Error instantiating plugin class " + pluginClass);
          } catch (IllegalAccessException e) {
@@ -186,24 +285,32 @@ public final class DefaultPluginManager implements PluginManager {
          } catch (NoClassDefFoundError e) {
             ReportingUtils.logError(e,
                   "Dependency not found for plugin class " + pluginClass);
+         } catch (RuntimeException e) {
+            ReportingUtils.logError(e, "Error in constructor of plugin class " + pluginClass);
+         } finally {
+            constructing_.get().remove(pluginClass);
+         }
+         synchronized (this) {
+            constructionLocks_.remove(pluginClass);
+            if (plugin == null) {
+               failedClasses_.add(pluginClass);
+               return null;
+            }
+            pluginClassToInstance_.put(pluginClass, plugin);
          }
       }
+      created.add(plugin);
+      return plugin;
    }
 
-   /**
-    * Load the provided plugin. We set its context, add it to our
-    * pluginTypeToPlugins_ map, and post a NewPluginEvent.
-    */
-   private void addPlugin(final MMGenericPlugin plugin) {
-      if (plugin instanceof MMPlugin) { // Legacy plugin base class
-         ((MMPlugin) plugin).setContext(studio_);
+   private void postNewPluginEvents(List<MMGenericPlugin> plugins) {
+      for (MMGenericPlugin plugin : plugins) {
+         studio_.events().post(new NewPluginEvent(plugin));
       }
-      for (Class<?> pluginClass : VALID_CLASSES) {
-         if (pluginClass.isInstance(plugin)) {
-            pluginTypeToPlugins_.get(pluginClass).add(plugin);
-         }
-      }
-      studio_.events().post(new NewPluginEvent(plugin));
+   }
+
+   private synchronized List<Class<?>> getPluginClasses(Class<?> type) {
+      return new ArrayList<>(pluginTypeToClasses_.get(type));
    }
 
    /**
@@ -229,82 +336,46 @@ public final class DefaultPluginManager implements PluginManager {
 
    @Override
    public HashMap<String, ProcessorPlugin> getProcessorPlugins() {
-      HashMap<String, ProcessorPlugin> result = new HashMap<>();
-      for (MMGenericPlugin plugin : pluginTypeToPlugins_.get(ProcessorPlugin.class)) {
-         result.put(plugin.getClass().getName(), (ProcessorPlugin) plugin);
-      }
-      return result;
+      return getPlugins(ProcessorPlugin.class);
    }
 
    @Override
    public HashMap<String, OverlayPlugin> getOverlayPlugins() {
-      HashMap<String, OverlayPlugin> result = new HashMap<>();
-      for (MMGenericPlugin plugin : pluginTypeToPlugins_.get(OverlayPlugin.class)) {
-         result.put(plugin.getClass().getName(), (OverlayPlugin) plugin);
-      }
-      return result;
+      return getPlugins(OverlayPlugin.class);
    }
 
    @Override
    public HashMap<String, IntroPlugin> getIntroPlugins() {
-      HashMap<String, IntroPlugin> result = new HashMap<>();
-      for (MMGenericPlugin plugin : pluginTypeToPlugins_.get(IntroPlugin.class)) {
-         result.put(plugin.getClass().getName(), (IntroPlugin) plugin);
-      }
-      return result;
+      return getPlugins(IntroPlugin.class);
    }
 
    @Override
    public HashMap<String, MenuPlugin> getMenuPlugins() {
-      HashMap<String, MenuPlugin> result = new HashMap<>();
-      for (MMGenericPlugin plugin : pluginTypeToPlugins_.get(MenuPlugin.class)) {
-         result.put(plugin.getClass().getName(), (MenuPlugin) plugin);
-      }
-      return result;
+      return getPlugins(MenuPlugin.class);
    }
 
    @Override
    public HashMap<String, AutofocusPlugin> getAutofocusPlugins() {
-      HashMap<String, AutofocusPlugin> result = new HashMap<>();
-      for (MMGenericPlugin plugin : pluginTypeToPlugins_.get(AutofocusPlugin.class)) {
-         result.put(plugin.getClass().getName(), (AutofocusPlugin) plugin);
-      }
-      return result;
+      return getPlugins(AutofocusPlugin.class);
    }
 
    @Override
    public HashMap<String, QuickAccessPlugin> getQuickAccessPlugins() {
-      HashMap<String, QuickAccessPlugin> result = new HashMap<>();
-      for (MMGenericPlugin plugin : pluginTypeToPlugins_.get(QuickAccessPlugin.class)) {
-         result.put(plugin.getClass().getName(), (QuickAccessPlugin) plugin);
-      }
-      return result;
+      return getPlugins(QuickAccessPlugin.class);
    }
 
    @Override
    public HashMap<String, InspectorPanelPlugin> getInspectorPlugins() {
-      HashMap<String, InspectorPanelPlugin> result = new HashMap<>();
-      for (MMGenericPlugin plugin : pluginTypeToPlugins_.get(InspectorPanelPlugin.class)) {
-         result.put(plugin.getClass().getName(), (InspectorPanelPlugin) plugin);
-      }
-      return result;
+      return getPlugins(InspectorPanelPlugin.class);
    }
 
    public HashMap<String, AcquisitionDialogPlugin> getAcquisitionDialogPlugins() {
-      HashMap<String, AcquisitionDialogPlugin> result = new HashMap<>();
-      for (MMGenericPlugin plugin : pluginTypeToPlugins_.get(AcquisitionDialogPlugin.class)) {
-         result.put(plugin.getClass().getName(), (AcquisitionDialogPlugin) plugin);
-      }
-      return result;
+      return getPlugins(AcquisitionDialogPlugin.class);
    }
 
    @Override
    public HashMap<String, DisplayGearMenuPlugin> getDisplayGearMenuPlugins() {
-      HashMap<String, DisplayGearMenuPlugin> result = new HashMap<>();
-      for (MMGenericPlugin plugin : pluginTypeToPlugins_.get(DisplayGearMenuPlugin.class)) {
-         result.put(plugin.getClass().getName(), (DisplayGearMenuPlugin) plugin);
-      }
-      return result;
+      return getPlugins(DisplayGearMenuPlugin.class);
    }
 
    /**
@@ -315,23 +386,43 @@ public final class DefaultPluginManager implements PluginManager {
     */
    @Override
    public HashMap<String, DataViewerGearMenuPlugin> getDataViewerGearMenuPlugins() {
-      HashMap<String, DataViewerGearMenuPlugin> result = new HashMap<>();
-      for (MMGenericPlugin plugin : pluginTypeToPlugins_.get(DataViewerGearMenuPlugin.class)) {
-         result.put(plugin.getClass().getName(), (DataViewerGearMenuPlugin) plugin);
-      }
-      return result;
+      return getPlugins(DataViewerGearMenuPlugin.class);
+   }
+
+   private MenuPlugin getMenuPlugin(Class<?> pluginClass) {
+      List<MMGenericPlugin> created = new ArrayList<>();
+      MenuPlugin plugin = (MenuPlugin) getInstance(pluginClass, created);
+      postNewPluginEvents(created);
+      return plugin;
    }
 
    public void createPluginMenu(JMenuBar menuBar) {
       JMenu menu = new SortedMenu("Plugins");
       menuBar.add(menu);
       HashMap<String, JMenu> subMenus = new HashMap<>();
-      for (final MenuPlugin plugin : getMenuPlugins().values()) {
-         // Add it to the menu.
-         addSubMenuItem(menu, subMenus, plugin.getSubMenu(), plugin.getName(),
-               plugin::onPluginSelected
-         );
+      for (final Class<?> pluginClass : getPluginClasses(MenuPlugin.class)) {
+         String[] entry = indexCache_.getMenuEntry(pluginClass);
+         if (entry == null) {
+            MenuPlugin plugin = getMenuPlugin(pluginClass);
+            if (plugin == null) {
+               continue;
+            }
+            entry = new String[] {plugin.getSubMenu(), plugin.getName()};
+            indexCache_.putMenuEntry(pluginClass, entry[0], entry[1]);
+         }
+         // Add it to the menu; the plugin may still be being instantiated on
+         // the loading thread, in which case selecting it waits for that.
+         addSubMenuItem(menu, subMenus, entry[0], entry[1], () -> {
+            MenuPlugin plugin = getMenuPlugin(pluginClass);
+            if (plugin == null) {
+               ReportingUtils.showError("Unable to load plugin " + pluginClass.getName()
+                     + "; see the CoreLog for details");
+               return;
+            }
+            plugin.onPluginSelected();
+         });
       }
+      indexCache_.save();
       // Add a single menu item for On-The-Fly Image Processing that opens the Pipeline Frame
       JMenuItem processorItem = new JMenuItem(PROCESSOR_MENU);
       processorItem.addActionListener(
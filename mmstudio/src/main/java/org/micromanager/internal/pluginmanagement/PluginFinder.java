@@ -25,6 +25,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import org.micromanager.internal.utils.ReportingUtils;
@@ -76,16 +77,23 @@ public final class PluginFinder {
     * method for each) before instantiating any plugin, so that a plugin in one directory can
     * reference classes from a plugin in another directory regardless of discovery order.
     *
+    * <p>JARs for which {@code cache} has a record that is still valid are not scanned; the class
+    * names in the record are used instead. JARs that are scanned are recorded in the cache.
+    *
     * @param loader the shared plugin class loader to add the discovered JARs to
     * @param root   the directory (or jar file) to search for plugin JARs
+    * @param cache  class names found in previous scans, may be null
     * @return the @Plugin-annotated classes found under {@code root}, loaded by {@code loader}
     */
-   public static List<Class<?>> findPlugins(SharedPluginClassLoader loader, String root) {
+   static List<Class<?>> findPlugins(SharedPluginClassLoader loader, String root,
+                                     PluginIndexCache cache) {
+      List<File> jars = new ArrayList<>();
       List<URL> jarURLs = new ArrayList<>();
       for (String jarPath : findPaths(root, ".jar")) {
          try {
-            URL jarURL = new File(jarPath).toURI().toURL();
-            jarURLs.add(jarURL);
+            File jar = new File(jarPath);
+            jarURLs.add(jar.toURI().toURL());
+            jars.add(jar);
          } catch (MalformedURLException e) {
             ReportingUtils.logError("Unable to generate URL from path " + jarPath + "; skipping");
          }
@@ -93,13 +101,30 @@ public final class PluginFinder {
 
       // Add the plugin JARs to the shared loader so the classes we discover (and any classes
       // they reference in sibling plugins) resolve through it. SciJava discovery itself runs on a
-      // throwaway loader scoped to just these JARs (see findPluginsInUrls), so it does not pick up
-      // @Plugin index files from every JAR on the parent class path.
+      // throwaway loader scoped to the JAR being scanned (see findPluginsInUrls), so it does not
+      // pick up @Plugin index files from every JAR on the parent class path.
       try {
          for (URL jarURL : jarURLs) {
             loader.addURL(jarURL);
          }
-         return findPluginsInUrls(loader, jarURLs);
+         List<String> classNames = new ArrayList<>();
+         int nrScanned = 0;
+         for (int i = 0; i < jars.size(); i++) {
+            List<String> jarClassNames = cache == null ? null
+                  : cache.getClassNames(jars.get(i));
+            if (jarClassNames == null) {
+               jarClassNames = findPluginsInUrls(loader,
+                     Collections.singletonList(jarURLs.get(i)));
+               nrScanned++;
+               if (cache != null) {
+                  cache.putClassNames(jars.get(i), jarClassNames);
+               }
+            }
+            classNames.addAll(jarClassNames);
+         }
+         ReportingUtils.logMessage("Scanned " + nrScanned + " of " + jars.size()
+               + " JARs at " + root);
+         return loadClasses(loader, classNames);
       } catch (Throwable e) {
          ReportingUtils.logError(e, "Unable to load JARs at " + root);
          return new ArrayList<>();
@@ -107,16 +132,15 @@ public final class PluginFinder {
    }
 
    /**
-    * Discover @Plugin-annotated classes contained in the given JARs, loading them through the
-    * shared loader.
+    * Discover @Plugin-annotated classes contained in the given JARs.
     *
-    * <p>Discovery is scoped to {@code jarURLs} (the JARs just added) by running SciJava's index
-    * scan on a throwaway loader over only those URLs, then loading the resulting classes by name
-    * from the shared loader so they end up on the shared loader, visible to all other plugins.
+    * <p>Discovery is scoped to {@code jarURLs} by running SciJava's index scan on a throwaway
+    * loader over only those URLs. The caller loads the resulting classes by name from the shared
+    * loader so they end up on the shared loader, visible to all other plugins.
     */
-   private static List<Class<?>> findPluginsInUrls(SharedPluginClassLoader sharedLoader,
-                                                    List<URL> jarURLs) {
-      ArrayList<Class<?>> result = new ArrayList<>();
+   private static List<String> findPluginsInUrls(SharedPluginClassLoader sharedLoader,
+                                                 List<URL> jarURLs) {
+      ArrayList<String> result = new ArrayList<>();
       URLClassLoader discoveryLoader = new URLClassLoader(jarURLs.toArray(new URL[0]),
             sharedLoader.getParent()) {
          @Override
@@ -136,13 +160,7 @@ public final class PluginFinder {
          PluginIndex index = new PluginIndex(finder);
          index.discover();
          for (PluginInfo<?> info : index.getAll()) {
-            String className = info.getClassName();
-            try {
-               // Load the real class through the shared loader so it is visible to other plugins.
-               result.add(Class.forName(className, false, sharedLoader));
-            } catch (ClassNotFoundException | NoClassDefFoundError e) {
-               ReportingUtils.logError(e, "Unable to load plugin class " + className);
-            }
+            result.add(info.getClassName());
          }
       } finally {
          try {
@@ -154,6 +172,23 @@ public final class PluginFinder {
       return result;
    }
 
+   /**
+    * Load the named classes through the shared loader, without initializing them.
+    */
+   private static List<Class<?>> loadClasses(SharedPluginClassLoader sharedLoader,
+                                             List<String> classNames) {
+      ArrayList<Class<?>> result = new ArrayList<>();
+      for (String className : classNames) {
+         try {
+            // Load the real class through the shared loader so it is visible to other plugins.
+            result.add(Class.forName(className, false, sharedLoader));
+         } catch (ClassNotFoundException | NoClassDefFoundError e) {
+            ReportingUtils.logError(e, "Unable to load plugin class " + className);
+         }
+      }
+      return result;
+   }
+
    public static List<Class<?>> findPluginsWithLoader(ClassLoader loader) {
       ArrayList<Class<?>> result = new ArrayList<>();
       DefaultPluginFinder finder = new DefaultPluginFinder(loader);
@@ -0,0 +1,257 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     mmstudio
+//-----------------------------------------------------------------------------
+//
+// COPYRIGHT:    Regents of the University of California, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.internal.pluginmanagement;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.micromanager.internal.utils.JavaUtils;
+import org.micromanager.internal.utils.ReportingUtils;
+
+/**
+ * On-disk record of the plugin classes found in each plugin JAR, and of the
+ * menu entries of the MenuPlugins in them, so that JARs that did not change
+ * since the previous start do not have to be scanned, and the Plugins menu
+ * can be built without instantiating every MenuPlugin.
+ *
+ * <p>Records are keyed by the absolute path of the JAR and are only used
+ * when the size and modification time of the JAR are still the same as when
+ * the record was made.  A record that no longer matches is dropped, so the
+ * JAR is scanned again and its menu entries are collected again.</p>
+ *
+ * <p>All methods are synchronized.</p>
+ */
+final class PluginIndexCache {
+   static final String FILE_NAME = "plugin_index.json";
+   // Increment when the meaning of the records changes
+   private static final int VERSION = 1;
+   private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+   private static final class JarRecord {
+      long size;
+      long modified;
+      // Null when the JAR was not scanned, only seen as the source of a menu plugin
+      List<String> classes;
+      // Class name to {sub menu, name}
+      Map<String, String[]> menus = new HashMap<>();
+   }
+
+   private static final class Contents {
+      int version = VERSION;
+      Map<String, JarRecord> jars = new HashMap<>();
+   }
+
+   private final File file_;
+   private final Map<String, JarRecord> jars_;
+   private boolean modified_ = false;
+
+   private PluginIndexCache(File file, Map<String, JarRecord> jars) {
+      file_ = file;
+      jars_ = jars;
+   }
+
+   /**
+    * Returns the cache kept in the application data directory, or an empty
+    * cache that is not saved when that directory is unknown.
+    *
+    * @return Cache with the records of the previous start.
+    */
+   static PluginIndexCache loadDefault() {
+      String path = System.getProperty("org.micromanager.plugin.index");
+      if (path == null) {
+         String dir = JavaUtils.getApplicationDataPath();
+         if (dir == null) {
+            return load(null);
+         }
+         path = new File(dir, FILE_NAME).getPath();
+      }
+      return load(new File(path));
+   }
+
+   /**
+    * Reads the cache from the given file.  A missing or unreadable file
+    * results in an empty cache.
+    *
+    * @param file File to read from, and to save to.  May be null, in which
+    *             case the cache starts empty and is never saved.
+    * @return The cache.
+    */
+   static PluginIndexCache load(File file) {
+      if (file != null && file.isFile()) {
+         try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            Contents contents = GSON.fromJson(reader, new TypeToken<Contents>() { }.getType());
+            if (contents != null && contents.version == VERSION && contents.jars != null) {
+               return new PluginIndexCache(file, contents.jars);
+            }
+         } catch (IOException | JsonParseException e) {
+            ReportingUtils.logError(e, "Ignoring unreadable plugin index " + file);
+         }
+      }
+      return new PluginIndexCache(file, new HashMap<>());
+   }
+
+   /**
+    * Returns the names of the plugin classes in the JAR, if it was scanned
+    * before and did not change since.
+    *
+    * @param jar Plugin JAR.
+    * @return Class names, or null when the JAR has to be scanned.
+    */
+   synchronized List<String> getClassNames(File jar) {
+      JarRecord record = getRecord(jar, false);
+      return record == null || record.classes == null ? null : new ArrayList<>(record.classes);
+   }
+
+   /**
+    * Records the names of the plugin classes found by scanning the JAR.
+    *
+    * @param jar        Plugin JAR.
+    * @param classNames Names of the plugin classes in the JAR.
+    */
+   synchronized void putClassNames(File jar, List<String> classNames) {
+      JarRecord record = getRecord(jar, true);
+      if (record != null) {
+         record.classes = new ArrayList<>(classNames);
+         modified_ = true;
+      }
+   }
+
+   /**
+    * Returns the sub menu and name of a MenuPlugin, as recorded the last
+    * time it was instantiated, if its JAR did not change since.
+    *
+    * @param pluginClass MenuPlugin class.
+    * @return Array with the sub menu and the name, or null when unknown.
+    */
+   synchronized String[] getMenuEntry(Class<?> pluginClass) {
+      JarRecord record = getRecord(getJar(pluginClass), false);
+      if (record == null) {
+         return null;
+      }
+      String[] entry = record.menus.get(pluginClass.getName());
+      return entry == null || entry.length != 2 ? null : entry.clone();
+   }
+
+   /**
+    * Records the sub menu and name of a MenuPlugin.
+    *
+    * @param pluginClass MenuPlugin class.
+    * @param subMenu     Value returned by its getSubMenu().
+    * @param name        Value returned by its getName().
+    */
+   synchronized void putMenuEntry(Class<?> pluginClass, String subMenu, String name) {
+      JarRecord record = getRecord(getJar(pluginClass), true);
+      if (record != null) {
+         record.menus.put(pluginClass.getName(), new String[] {subMenu, name});
+         modified_ = true;
+      }
+   }
+
+   /**
+    * Writes the cache to its file if it changed, leaving out JARs that no
+    * longer exist.
+    */
+   synchronized void save() {
+      if (file_ == null || !modified_) {
+         return;
+      }
+      Contents contents = new Contents();
+      for (Map.Entry<String, JarRecord> entry : jars_.entrySet()) {
+         if (new File(entry.getKey()).isFile()) {
+            contents.jars.put(entry.getKey(), entry.getValue());
+         }
+      }
+      try {
+         File dir = file_.getAbsoluteFile().getParentFile();
+         if (dir != null) {
+            dir.mkdirs();
+         }
+         // Write next to the file and move, so that a crash never leaves half a file
+         File temp = new File(dir, file_.getName() + ".tmp");
+         try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            GSON.toJson(contents, writer);
+         }
+         Files.move(temp.toPath(), file_.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         modified_ = false;
+      } catch (IOException e) {
+         ReportingUtils.logError(e, "Failed to save plugin index " + file_);
+      }
+   }
+
+   /**
+    * Returns the record of the JAR, or null if there is none that matches
+    * the current size and modification time of the JAR.  With create set,
+    * an outdated or missing record is replaced by an empty one.
+    */
+   private JarRecord getRecord(File jar, boolean create) {
+      if (jar == null || !jar.isFile()) {
+         return null;
+      }
+      String key = jar.getAbsolutePath();
+      long size = jar.length();
+      long modified = jar.lastModified();
+      JarRecord record = jars_.get(key);
+      if (record != null && (record.size != size || record.modified != modified
+            || record.menus == null)) {
+         jars_.remove(key);
+         modified_ = true;
+         record = null;
+      }
+      if (record == null && create) {
+         record = new JarRecord();
+         record.size = size;
+         record.modified = modified;
+         jars_.put(key, record);
+      }
+      return record;
+   }
+
+   /**
+    * Returns the JAR the class was loaded from, or null if it was not
+    * loaded from a JAR.
+    */
+   private static File getJar(Class<?> pluginClass) {
+      CodeSource source = pluginClass.getProtectionDomain().getCodeSource();
+      URL location = source == null ? null : source.getLocation();
+      if (location == null || !"file".equals(location.getProtocol())) {
+         return null;
+      }
+      try {
+         File file = new File(location.toURI());
+         return file.getName().endsWith(".jar") ? file : null;
+      } catch (URISyntaxException | IllegalArgumentException e) {
+         return null;
+      }
+   }
+}
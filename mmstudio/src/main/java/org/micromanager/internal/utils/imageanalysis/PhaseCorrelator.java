@@ -0,0 +1,385 @@
+package org.micromanager.internal.utils.imageanalysis;
+
+import java.awt.geom.Point2D;
+
+/**
+ * Measures the translation between two images of the same size by phase
+ * correlation (https://en.wikipedia.org/wiki/Phase_correlation), with
+ * sub-pixel accuracy.
+ *
+ * <p>Both images are multiplied with a Hann window, to suppress the artefacts
+ * caused by the image edges.  The normalized cross-power spectrum is weighted
+ * with a Gaussian, which removes the high frequencies that carry mostly noise,
+ * and makes the correlation peak a Gaussian of PEAK_SIGMA pixels.  The peak
+ * position then follows directly from the logarithm of the highest value and
+ * its neighbors in x and y, without upsampling or iterative fitting.  Since the
+ * window does not move with the image content, it pulls the peak towards zero
+ * shift; the image is therefore measured a second time with its window moved
+ * by the shift found the first time.</p>
+ *
+ * <p>The FFT tables, the window and the spectral weights are calculated once,
+ * when the PhaseCorrelator is created, and the transform of the reference image
+ * is kept until a new reference is set, so that measuring a series of images
+ * against the same reference only transforms each new image (twice).  Width
+ * and height have to be powers of 2.  A PhaseCorrelator re-uses its buffers,
+ * and can therefore only be used by one thread at a time.</p>
+ */
+public final class PhaseCorrelator {
+   /**
+    * Width (sigma, in pixels) of the correlation peak.  Narrower peaks keep
+    * more of the high frequencies, which are mostly noise in microscope
+    * images.
+    */
+   public static final double PEAK_SIGMA = 1.5;
+
+   private final int width_;
+   private final int height_;
+   private final Fft rowFft_;
+   private final Fft columnFft_;
+   // Hann window in x and y
+   private final double[] windowX_;
+   private final double[] windowY_;
+   // Gaussian weights of the cross-power spectrum
+   private final float[] spectrumWeights_;
+   private final double weightSum_;
+   // Transform of the reference, null until set
+   private double[] refRe_;
+   private double[] refIm_;
+   // Work buffers
+   private final double[] pixels_;
+   private final double[] re_;
+   private final double[] im_;
+   private final double[] columnRe_;
+   private final double[] columnIm_;
+   private double peakValue_;
+
+   /**
+    * Creates a PhaseCorrelator for images of the given size.
+    *
+    * @param width Width of the images, a power of 2
+    * @param height Height of the images, a power of 2
+    * @throws IllegalArgumentException when width or height is not a power of 2
+    */
+   public PhaseCorrelator(int width, int height) {
+      if (!isPowerOf2(width) || !isPowerOf2(height)) {
+         throw new IllegalArgumentException(
+               "Image size must be a power of 2, not " + width + "x" + height);
+      }
+      width_ = width;
+      height_ = height;
+      rowFft_ = new Fft(width);
+      columnFft_ = height == width ? rowFft_ : new Fft(height);
+      windowX_ = hann(width, 0);
+      windowY_ = hann(height, 0);
+      spectrumWeights_ = new float[width * height];
+      final double scale = -2 * Math.PI * Math.PI * PEAK_SIGMA * PEAK_SIGMA;
+      double weightSum = 0;
+      for (int y = 0; y < height; y++) {
+         double fy = (double) signedShift(y, height) / height;
+         for (int x = 0; x < width; x++) {
+            double fx = (double) signedShift(x, width) / width;
+            spectrumWeights_[y * width + x] = (float) Math.exp(scale * (fx * fx + fy * fy));
+            weightSum += spectrumWeights_[y * width + x];
+         }
+      }
+      weightSum_ = weightSum;
+      pixels_ = new double[width * height];
+      re_ = new double[width * height];
+      im_ = new double[width * height];
+      columnRe_ = new double[height];
+      columnIm_ = new double[height];
+   }
+
+   private static boolean isPowerOf2(int n) {
+      return n > 1 && (n & (n - 1)) == 0;
+   }
+
+   /**
+    * Hann window moved by the given (fractional) number of pixels, 0 where
+    * it was moved out of the image.
+    */
+   private static double[] hann(int size, double shift) {
+      double[] hann = new double[size];
+      for (int i = 0; i < size; i++) {
+         double x = i - shift;
+         if (x > 0 && x < size) {
+            hann[i] = 0.5 * (1 - Math.cos(2 * Math.PI * x / size));
+         }
+      }
+      return hann;
+   }
+
+   public int getWidth() {
+      return width_;
+   }
+
+   public int getHeight() {
+      return height_;
+   }
+
+   /**
+    * Sets the image that following measurements are compared to.
+    *
+    * @param pixels byte[] or short[] (both unsigned), or float[] of width * height
+    */
+   public void setReference(Object pixels) {
+      load(pixels);
+      transform(0, 0);
+      refRe_ = re_.clone();
+      refIm_ = im_.clone();
+   }
+
+   /**
+    * Measures how far the content of the given image is shifted relative to
+    * the reference, i.e. image(x, y) is approximately
+    * reference(x - shift.x, y - shift.y).  Shifts are found up to half the
+    * width and height in either direction.
+    *
+    * @param pixels byte[] or short[] (both unsigned), or float[] of width * height
+    * @return Shift in pixels
+    * @throws IllegalStateException when no reference was set
+    */
+   public Point2D.Double measureShift(Object pixels) {
+      if (refRe_ == null) {
+         throw new IllegalStateException("No reference image set");
+      }
+      load(pixels);
+      transform(0, 0);
+      Point2D.Double shift = peakPosition(correlate());
+      // The window does not move with the content, which pulls the peak
+      // towards zero shift.  Measure again with the window of this image
+      // moved by the shift found, so that both windows cover the same
+      // content.
+      transform(shift.x, shift.y);
+      return peakPosition(correlate());
+   }
+
+   private Point2D.Double peakPosition(int peak) {
+      final int px = peak % width_;
+      final int py = peak / width_;
+      final int row = py * width_;
+      final double center = re_[peak];
+      double dx = subPixel(center, re_[row + (px + 1) % width_],
+            re_[row + (px + width_ - 1) % width_]);
+      double dy = subPixel(center, re_[((py + 1) % height_) * width_ + px],
+            re_[((py + height_ - 1) % height_) * width_ + px]);
+      // The inverse transform is not scaled, the peak of identical images is
+      // the sum of the weights
+      peakValue_ = center / weightSum_;
+      return new Point2D.Double(signedShift(px, width_) + dx, signedShift(py, height_) + dy);
+   }
+
+   // Peaks beyond half the size are negative shifts
+   private static int signedShift(int position, int size) {
+      return position > size / 2 ? position - size : position;
+   }
+
+   /**
+    * Calculates the phase correlation of the transformed image in the work
+    * buffers with the reference, leaving it in re_.
+    *
+    * @return Index of the highest value
+    */
+   private int correlate() {
+      // Normalized cross-power spectrum: image times the complex conjugate
+      // of the reference, only the phase difference is kept, and weighted
+      for (int i = 0; i < re_.length; i++) {
+         double re = re_[i] * refRe_[i] + im_[i] * refIm_[i];
+         double im = im_[i] * refRe_[i] - re_[i] * refIm_[i];
+         double magnitude = Math.sqrt(re * re + im * im);
+         if (magnitude > 0) {
+            double weight = spectrumWeights_[i] / magnitude;
+            re_[i] = re * weight;
+            im_[i] = im * weight;
+         } else {
+            re_[i] = 0;
+            im_[i] = 0;
+         }
+      }
+      fft2D(true);
+      int peak = 0;
+      for (int i = 1; i < re_.length; i++) {
+         if (re_[i] > re_[peak]) {
+            peak = i;
+         }
+      }
+      return peak;
+   }
+
+   /**
+    * Height of the phase correlation peak of the last measurement, 1 for
+    * identical images and close to 0 when nothing matched.
+    */
+   public double getPeakValue() {
+      return peakValue_;
+   }
+
+   /**
+    * Returns the phase correlation of the last measurement, with zero shift
+    * in the center of the image (at width / 2, height / 2).
+    *
+    * @return New array of width * height values
+    */
+   public float[] getCorrelation() {
+      float[] result = new float[width_ * height_];
+      final double scale = 1.0 / weightSum_;
+      for (int y = 0; y < height_; y++) {
+         int sourceRow = ((y + height_ / 2) % height_) * width_;
+         for (int x = 0; x < width_; x++) {
+            result[y * width_ + x] =
+                  (float) (re_[sourceRow + (x + width_ / 2) % width_] * scale);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Sub-pixel offset of the peak from the values at the peak and its two
+    * neighbors.  The logarithm of a Gaussian is a parabola, whose vertex is
+    * exact for a Gaussian peak.  Falls back to a parabola through the values
+    * themselves when a neighbor is not positive.
+    */
+   private static double subPixel(double center, double plus, double minus) {
+      if (center <= 0) {
+         return 0;
+      }
+      double offset;
+      if (plus > 0 && minus > 0) {
+         double logCenter = Math.log(center);
+         double logPlus = Math.log(plus);
+         double logMinus = Math.log(minus);
+         offset = 0.5 * (logPlus - logMinus) / (2 * logCenter - logPlus - logMinus);
+      } else {
+         offset = 0.5 * (plus - minus) / (2 * center - plus - minus);
+      }
+      // Only happens for a flat top, i.e. no peak at all
+      return Double.isNaN(offset) ? 0 : Math.max(-0.5, Math.min(0.5, offset));
+   }
+
+   private void load(Object pixels) {
+      final int length = width_ * height_;
+      if (pixels instanceof byte[] && ((byte[]) pixels).length == length) {
+         byte[] in = (byte[]) pixels;
+         for (int i = 0; i < length; i++) {
+            pixels_[i] = in[i] & 0xff;
+         }
+      } else if (pixels instanceof short[] && ((short[]) pixels).length == length) {
+         short[] in = (short[]) pixels;
+         for (int i = 0; i < length; i++) {
+            pixels_[i] = in[i] & 0xffff;
+         }
+      } else if (pixels instanceof float[] && ((float[]) pixels).length == length) {
+         float[] in = (float[]) pixels;
+         for (int i = 0; i < length; i++) {
+            pixels_[i] = in[i];
+         }
+      } else {
+         throw new IllegalArgumentException("Expected byte[], short[] or float[] of "
+               + width_ + "x" + height_ + " pixels");
+      }
+   }
+
+   /**
+    * Multiplies the loaded pixels with the window moved by the given number
+    * of pixels, after subtracting their mean under the window so that
+    * nothing is left at zero frequency, and transforms into the work buffers.
+    */
+   private void transform(double shiftX, double shiftY) {
+      double[] windowX = shiftX == 0 ? windowX_ : hann(width_, shiftX);
+      double[] windowY = shiftY == 0 ? windowY_ : hann(height_, shiftY);
+      double sum = 0;
+      double weights = 0;
+      for (int y = 0; y < height_; y++) {
+         for (int x = 0; x < width_; x++) {
+            int i = y * width_ + x;
+            double weight = windowX[x] * windowY[y];
+            re_[i] = weight;
+            sum += weight * pixels_[i];
+            weights += weight;
+         }
+      }
+      final double mean = weights > 0 ? sum / weights : 0;
+      for (int i = 0; i < re_.length; i++) {
+         re_[i] *= pixels_[i] - mean;
+         im_[i] = 0;
+      }
+      fft2D(false);
+   }
+
+   private void fft2D(boolean inverse) {
+      for (int y = 0; y < height_; y++) {
+         rowFft_.transform(re_, im_, y * width_, inverse);
+      }
+      for (int x = 0; x < width_; x++) {
+         for (int y = 0; y < height_; y++) {
+            columnRe_[y] = re_[y * width_ + x];
+            columnIm_[y] = im_[y * width_ + x];
+         }
+         columnFft_.transform(columnRe_, columnIm_, 0, inverse);
+         for (int y = 0; y < height_; y++) {
+            re_[y * width_ + x] = columnRe_[y];
+            im_[y * width_ + x] = columnIm_[y];
+         }
+      }
+   }
+
+   /**
+    * In-place radix-2 complex FFT of one length, with the bit reversal
+    * permutation and the twiddle factors calculated up front.  Neither
+    * direction is scaled.
+    */
+   private static final class Fft {
+      private final int n_;
+      private final int[] reverse_;
+      private final double[] cos_;
+      private final double[] sin_;
+
+      Fft(int n) {
+         n_ = n;
+         reverse_ = new int[n];
+         int bits = Integer.numberOfTrailingZeros(n);
+         for (int i = 0; i < n; i++) {
+            reverse_[i] = Integer.reverse(i) >>> (32 - bits);
+         }
+         cos_ = new double[n / 2];
+         sin_ = new double[n / 2];
+         for (int i = 0; i < n / 2; i++) {
+            cos_[i] = Math.cos(2 * Math.PI * i / n);
+            sin_[i] = Math.sin(2 * Math.PI * i / n);
+         }
+      }
+
+      void transform(double[] re, double[] im, int offset, boolean inverse) {
+         for (int i = 0; i < n_; i++) {
+            int j = reverse_[i];
+            if (j > i) {
+               double t = re[offset + i];
+               re[offset + i] = re[offset + j];
+               re[offset + j] = t;
+               t = im[offset + i];
+               im[offset + i] = im[offset + j];
+               im[offset + j] = t;
+            }
+         }
+         final double sign = inverse ? 1 : -1;
+         for (int size = 2; size <= n_; size *= 2) {
+            final int half = size / 2;
+            final int step = n_ / size;
+            for (int start = 0; start < n_; start += size) {
+               for (int k = 0; k < half; k++) {
+                  final double wr = cos_[k * step];
+                  final double wi = sign * sin_[k * step];
+                  final int a = offset + start + k;
+                  final int b = a + half;
+                  final double tr = re[b] * wr - im[b] * wi;
+                  final double ti = re[b] * wi + im[b] * wr;
+                  re[b] = re[a] - tr;
+                  im[b] = im[a] - ti;
+                  re[a] += tr;
+                  im[a] += ti;
+               }
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,281 @@
+package org.micromanager.acquisition.internal.acqengjcompat.speedtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import mmcorej.TaggedImage;
+import org.micromanager.acquisition.internal.acqengjcompat.AcqEngJMDADataSink;
+import org.micromanager.data.Datastore;
+import org.micromanager.data.Processor;
+import org.micromanager.data.Storage;
+import org.micromanager.data.internal.DefaultDatastore;
+import org.micromanager.data.internal.DefaultSummaryMetadata;
+import org.micromanager.data.internal.StorageRAM;
+import org.micromanager.data.internal.StorageSinglePlaneTiffSeries;
+import org.micromanager.data.internal.multipagetiff.StorageMultipageTiff;
+import org.micromanager.data.internal.ndtiff.NDTiffAdapter;
+import org.micromanager.data.internal.pipeline.DefaultPipeline;
+import org.micromanager.events.EventManager;
+
+/**
+ * Measures the throughput of the acquisition data path (AcqEngJMDADataSink, DefaultPipeline,
+ * Datastore and Storage) using frames from a {@link SimulatedCore}, so that it can be run
+ * without a microscope or native libraries.
+ *
+ * <p>For each save mode, frames are generated at the configured rate and handed to the
+ * data sink from a single thread, as AcqEngJ does. Reported are the sustained frame rate
+ * (frames stored divided by the time from the first frame until the data were on disk),
+ * frames dropped because the camera buffer was full, frames the data sink failed to store,
+ * occupancy of the camera buffer, and percentiles of the latency between frame generation
+ * and return from putImage for the frames that were stored.</p>
+ *
+ * <p>Usage: PipelineBenchmark directory [width height bitDepth framesPerSecond
+ * numFrames bufferFrames]</p>
+ *
+ * @author nico
+ */
+public final class PipelineBenchmark {
+
+   private static final long SAMPLE_INTERVAL_MS = 2;
+
+   /**
+    * Measurements of one run.
+    */
+   public static final class Result {
+      private final String saveMode_;
+      private final long framesGenerated_;
+      private final long framesStored_;
+      private final long framesDropped_;
+      private final long framesFailed_;
+      private final double seconds_;
+      private final double meanQueueOccupancy_;
+      private final int maxQueueOccupancy_;
+      private final int queueCapacity_;
+      private final long[] latenciesNs_;
+
+      private Result(String saveMode, long framesGenerated, long framesStored,
+            long framesDropped, long framesFailed, double seconds, double meanQueueOccupancy,
+            int maxQueueOccupancy, int queueCapacity, long[] latenciesNs) {
+         saveMode_ = saveMode;
+         framesGenerated_ = framesGenerated;
+         framesStored_ = framesStored;
+         framesDropped_ = framesDropped;
+         framesFailed_ = framesFailed;
+         seconds_ = seconds;
+         meanQueueOccupancy_ = meanQueueOccupancy;
+         maxQueueOccupancy_ = maxQueueOccupancy;
+         queueCapacity_ = queueCapacity;
+         latenciesNs_ = latenciesNs;
+         Arrays.sort(latenciesNs_);
+      }
+
+      public String getSaveMode() {
+         return saveMode_;
+      }
+
+      public long getFramesStored() {
+         return framesStored_;
+      }
+
+      public long getFramesDropped() {
+         return framesDropped_;
+      }
+
+      /**
+       * Frames that reached the data sink, but could not be stored.
+       */
+      public long getFramesFailed() {
+         return framesFailed_;
+      }
+
+      public double getFramesPerSecond() {
+         return seconds_ > 0 ? framesStored_ / seconds_ : 0.0;
+      }
+
+      /**
+       * Latency from frame generation until putImage returned, in milliseconds.
+       *
+       * @param percentile between 0 and 100
+       */
+      public double getLatencyMs(double percentile) {
+         if (latenciesNs_.length == 0) {
+            return Double.NaN;
+         }
+         int index = (int) Math.ceil(percentile / 100.0 * latenciesNs_.length) - 1;
+         index = Math.max(0, Math.min(latenciesNs_.length - 1, index));
+         return latenciesNs_[index] / 1.0e6;
+      }
+
+      @Override
+      public String toString() {
+         return String.format(Locale.US,
+               "%-24s %7.1f fps, %d/%d frames stored, %d dropped, %d failed, camera buffer"
+                     + " %.1f%% mean, %d/%d max, latency ms p50 %.2f p90 %.2f p99 %.2f max %.2f",
+               saveMode_, getFramesPerSecond(), framesStored_, framesGenerated_,
+               framesDropped_, framesFailed_, queueCapacity_ > 0
+                     ? 100.0 * meanQueueOccupancy_ / queueCapacity_ : 0.0,
+               maxQueueOccupancy_, queueCapacity_, getLatencyMs(50), getLatencyMs(90),
+               getLatencyMs(99), getLatencyMs(100));
+      }
+   }
+
+   private PipelineBenchmark() {
+   }
+
+   /**
+    * Runs one benchmark.
+    *
+    * @param core      simulated core, configured with image size, bit depth, frame rate and
+    *                  buffer capacity
+    * @param saveMode  how to save the data, or null to keep the data in RAM
+    * @param directory directory in which to create the dataset; ignored for RAM
+    * @param numFrames number of frames to acquire
+    * @return measurements
+    */
+   public static Result run(final SimulatedCore core, Datastore.SaveMode saveMode,
+         String directory, int numFrames) throws IOException, InterruptedException {
+      final String name = saveMode == null ? "RAM" : saveMode.toString();
+      DefaultDatastore store = new DefaultDatastore(null);
+      store.setStorage(createStorage(store, saveMode,
+            new File(directory, name + "_" + System.currentTimeMillis()).getPath()));
+      DefaultPipeline pipeline = new DefaultPipeline(new ArrayList<Processor>(), store, false);
+      AcqEngJMDADataSink sink = new AcqEngJMDADataSink(NO_EVENTS, null);
+      sink.setDatastore(store);
+      sink.setPipeline(pipeline);
+      try {
+         pipeline.insertSummaryMetadata(new DefaultSummaryMetadata.Builder()
+               .prefix(name).build());
+      } catch (Exception e) {
+         throw new IOException(e);
+      }
+
+      final int capacity = core.getBufferTotalCapacity();
+      final long[] occupancy = new long[3]; // sum, samples, max
+      final Thread sampler = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+               int used = core.getRemainingImageCount();
+               synchronized (occupancy) {
+                  occupancy[0] += used;
+                  occupancy[1]++;
+                  occupancy[2] = Math.max(occupancy[2], used);
+               }
+               try {
+                  Thread.sleep(SAMPLE_INTERVAL_MS);
+               } catch (InterruptedException ie) {
+                  return;
+               }
+            }
+         }
+      }, "Benchmark queue sampler");
+      sampler.setDaemon(true);
+
+      long[] latencies = new long[numFrames];
+      int stored = 0;
+      long firstFrameNs = -1;
+      sampler.start();
+      core.startSequenceAcquisition(numFrames);
+      try {
+         while (true) {
+            TaggedImage tagged = core.popNextTaggedImage(100, TimeUnit.MILLISECONDS);
+            if (tagged == null) {
+               if (!core.isSequenceRunning() && core.getRemainingImageCount() == 0) {
+                  break;
+               }
+               continue;
+            }
+            long createdNs = tagged.tags.optLong(SimulatedCore.TIME_NS_TAG, System.nanoTime());
+            if (firstFrameNs < 0) {
+               firstFrameNs = createdNs;
+            }
+            long failedBefore = sink.getFailedImageCount();
+            sink.putImage(tagged);
+            if (sink.getFailedImageCount() == failedBefore) {
+               latencies[stored++] = System.nanoTime() - createdNs;
+            }
+         }
+         sink.finish();
+         store.freeze();
+      } finally {
+         core.stopSequenceAcquisition();
+         sampler.interrupt();
+         sampler.join();
+         store.close();
+      }
+      double seconds = firstFrameNs < 0 ? 0.0 : (System.nanoTime() - firstFrameNs) / 1.0e9;
+      double meanOccupancy = occupancy[1] > 0 ? (double) occupancy[0] / occupancy[1] : 0.0;
+      return new Result(name, core.getFramesGenerated(), stored, core.getFramesDropped(),
+            sink.getFailedImageCount(), seconds, meanOccupancy, (int) occupancy[2], capacity,
+            Arrays.copyOf(latencies, stored));
+   }
+
+   private static Storage createStorage(DefaultDatastore store, Datastore.SaveMode saveMode,
+         String path) throws IOException {
+      if (saveMode == null) {
+         return new StorageRAM(store);
+      }
+      switch (saveMode) {
+         case SINGLEPLANE_TIFF_SERIES:
+            return new StorageSinglePlaneTiffSeries(store, path, true);
+         case MULTIPAGE_TIFF:
+            return new StorageMultipageTiff(null, store, path, true, true, false);
+         case ND_TIFF:
+            return new NDTiffAdapter(store, path, true);
+         default:
+            throw new IllegalArgumentException("Unknown save mode " + saveMode);
+      }
+   }
+
+   /**
+    * Runs the benchmark for RAM and every save mode, and prints the results.
+    */
+   public static void main(String[] args) throws Exception {
+      if (args.length < 1) {
+         System.out.println("Usage: PipelineBenchmark directory [width height bitDepth "
+               + "framesPerSecond numFrames bufferFrames]");
+         return;
+      }
+      String directory = args[0];
+      int width = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+      int height = args.length > 2 ? Integer.parseInt(args[2]) : 2048;
+      int bitDepth = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+      double fps = args.length > 4 ? Double.parseDouble(args[4]) : 100.0;
+      int numFrames = args.length > 5 ? Integer.parseInt(args[5]) : 1000;
+      int bufferFrames = args.length > 6 ? Integer.parseInt(args[6]) : 100;
+
+      System.out.println("Simulated camera: " + width + "x" + height + ", " + bitDepth
+            + " bit, " + fps + " fps, " + numFrames + " frames, buffer of "
+            + bufferFrames + " frames");
+      List<Datastore.SaveMode> modes = new ArrayList<>();
+      modes.add(null);
+      modes.addAll(Arrays.asList(Datastore.SaveMode.values()));
+      for (Datastore.SaveMode mode : modes) {
+         SimulatedCore core = new SimulatedCore();
+         core.setImageSize(width, height);
+         core.setImageBitDepth(bitDepth);
+         core.setFrameRate(fps);
+         core.setBufferCapacity(bufferFrames);
+         System.out.println(run(core, mode, directory, numFrames));
+      }
+   }
+
+   // The data sink posts an acquisition ended event; nobody listens here
+   private static final EventManager NO_EVENTS = new EventManager() {
+      @Override
+      public void registerForEvents(Object obj) {
+      }
+
+      @Override
+      public void unregisterForEvents(Object obj) {
+      }
+
+      @Override
+      public void post(Object event) {
+      }
+   };
+}
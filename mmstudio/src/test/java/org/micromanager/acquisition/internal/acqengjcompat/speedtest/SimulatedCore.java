@@ -0,0 +1,351 @@
+package org.micromanager.acquisition.internal.acqengjcompat.speedtest;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import mmcorej.TaggedImage;
+import mmcorej.org.json.JSONException;
+import mmcorej.org.json.JSONObject;
+import org.micromanager.acqj.main.AcqEngMetadata;
+
+/**
+ * Pure Java stand-in for the parts of CMMCore used to acquire image sequences, so that
+ * the acquisition data path can be exercised and timed without native code or devices.
+ *
+ * <p>The simulated camera produces frames of the configured size and bit depth at a
+ * fixed rate into a bounded buffer, like the circular buffer of the Core. When the
+ * buffer is full, frames are dropped and counted, rather than stopping the sequence.
+ * Frames are tagged with the metadata AcqEngJ would add (image format and time axis),
+ * and with the System.nanoTime() at which they were generated ({@link #TIME_NS_TAG}),
+ * so that consumers can measure latency. A simulated XY and Z stage, and a property
+ * store, accept the calls an acquisition would make.</p>
+ *
+ * @author nico
+ */
+public final class SimulatedCore {
+
+   public static final String CAMERA = "SimulatedCamera";
+   public static final String XY_STAGE = "SimulatedXYStage";
+   public static final String Z_STAGE = "SimulatedZStage";
+   /**
+    * Image tag holding the System.nanoTime() at which the simulated camera created the frame.
+    */
+   public static final String TIME_NS_TAG = "SimulatedCore-TimeNs";
+
+   // number of different noise frames, so that images are not all identical
+   private static final int NR_PATTERNS = 4;
+
+   private final Map<String, Map<String, String>> properties_ = new ConcurrentHashMap<>();
+   private int width_ = 512;
+   private int height_ = 512;
+   private int bitDepth_ = 16;
+   private double framesPerSecond_ = 100.0;
+   private ArrayBlockingQueue<TaggedImage> buffer_ = new ArrayBlockingQueue<>(100);
+   private Object[] patterns_;
+
+   private final long startNs_ = System.nanoTime();
+   private volatile Thread cameraThread_;
+   private volatile boolean stopRequested_ = false;
+   private final AtomicLong framesGenerated_ = new AtomicLong();
+   private final AtomicLong framesDropped_ = new AtomicLong();
+
+   // stage positions in um, and when the current moves will be done
+   private double xyStageSpeedUmPerS_ = 10000.0;
+   private double zStageSpeedUmPerS_ = 1000.0;
+   private double x_ = 0.0;
+   private double y_ = 0.0;
+   private double z_ = 0.0;
+   private long xyDoneNs_ = 0;
+   private long zDoneNs_ = 0;
+
+   // ---- Camera ----
+
+   /**
+    * Sets the size of the images the simulated camera generates.
+    */
+   public synchronized void setImageSize(int width, int height) {
+      checkNotRunning();
+      width_ = width;
+      height_ = height;
+      patterns_ = null;
+   }
+
+   /**
+    * Sets the bit depth of the generated images.  Up to 8 bits images are stored
+    * as bytes, up to 16 as shorts.
+    */
+   public synchronized void setImageBitDepth(int bitDepth) {
+      checkNotRunning();
+      if (bitDepth < 1 || bitDepth > 16) {
+         throw new IllegalArgumentException("Bit depth should be between 1 and 16");
+      }
+      bitDepth_ = bitDepth;
+      patterns_ = null;
+   }
+
+   /**
+    * Sets the rate at which the simulated camera generates frames during a sequence.
+    */
+   public synchronized void setFrameRate(double framesPerSecond) {
+      checkNotRunning();
+      if (!(framesPerSecond > 0.0)) {
+         throw new IllegalArgumentException("Frame rate should be larger than 0");
+      }
+      framesPerSecond_ = framesPerSecond;
+   }
+
+   /**
+    * Sets the number of frames the buffer between camera and consumer can hold.
+    */
+   public synchronized void setBufferCapacity(int frames) {
+      checkNotRunning();
+      buffer_ = new ArrayBlockingQueue<>(frames);
+   }
+
+   public long getImageWidth() {
+      return width_;
+   }
+
+   public long getImageHeight() {
+      return height_;
+   }
+
+   public long getBytesPerPixel() {
+      return bitDepth_ <= 8 ? 1 : 2;
+   }
+
+   public long getImageBitDepth() {
+      return bitDepth_;
+   }
+
+   public int getBufferTotalCapacity() {
+      return buffer_.size() + buffer_.remainingCapacity();
+   }
+
+   public int getBufferFreeCapacity() {
+      return buffer_.remainingCapacity();
+   }
+
+   public int getRemainingImageCount() {
+      return buffer_.size();
+   }
+
+   public long getFramesGenerated() {
+      return framesGenerated_.get();
+   }
+
+   /**
+    * Number of frames that were generated while the buffer was full, and were lost.
+    */
+   public long getFramesDropped() {
+      return framesDropped_.get();
+   }
+
+   /**
+    * Generates a single image.
+    */
+   public synchronized TaggedImage snapImage() {
+      return createFrame(0, System.nanoTime());
+   }
+
+   /**
+    * Starts generating the given number of frames at the configured rate, in a
+    * background thread.
+    */
+   public synchronized void startSequenceAcquisition(final int numImages) {
+      checkNotRunning();
+      buffer_.clear();
+      framesGenerated_.set(0);
+      framesDropped_.set(0);
+      stopRequested_ = false;
+      if (patterns_ == null) {
+         patterns_ = createPatterns();
+      }
+      final long intervalNs = (long) (1.0e9 / framesPerSecond_);
+      cameraThread_ = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            long next = System.nanoTime();
+            for (int frame = 0; frame < numImages && !stopRequested_; frame++) {
+               long wait = next - System.nanoTime();
+               if (wait > 0) {
+                  LockSupport.parkNanos(wait);
+               }
+               TaggedImage image = createFrame(frame, System.nanoTime());
+               framesGenerated_.incrementAndGet();
+               if (!buffer_.offer(image)) {
+                  framesDropped_.incrementAndGet();
+               }
+               next += intervalNs;
+            }
+            cameraThread_ = null;
+         }
+      }, "Simulated camera");
+      cameraThread_.setDaemon(true);
+      cameraThread_.start();
+   }
+
+   public void stopSequenceAcquisition() {
+      stopRequested_ = true;
+      Thread camera = cameraThread_;
+      if (camera != null) {
+         try {
+            camera.join();
+         } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+
+   public boolean isSequenceRunning() {
+      return cameraThread_ != null;
+   }
+
+   /**
+    * Removes the oldest frame from the buffer, waiting for at most the given time.
+    *
+    * @return the frame, or null when no frame arrived in time
+    */
+   public TaggedImage popNextTaggedImage(long timeout, TimeUnit unit)
+         throws InterruptedException {
+      return buffer_.poll(timeout, unit);
+   }
+
+   private void checkNotRunning() {
+      if (cameraThread_ != null) {
+         throw new IllegalStateException("Sequence acquisition is running");
+      }
+   }
+
+   // Called from the camera thread while a sequence runs, otherwise with the lock held
+   private TaggedImage createFrame(int frame, long timeNs) {
+      if (patterns_ == null) {
+         patterns_ = createPatterns();
+      }
+      Object pattern = patterns_[frame % NR_PATTERNS];
+      Object pixels;
+      if (pattern instanceof byte[]) {
+         pixels = ((byte[]) pattern).clone();
+      } else {
+         pixels = ((short[]) pattern).clone();
+      }
+      try {
+         JSONObject tags = new JSONObject();
+         tags.put("Width", width_);
+         tags.put("Height", height_);
+         tags.put("PixelType", bitDepth_ <= 8 ? "GRAY8" : "GRAY16");
+         tags.put("BitDepth", bitDepth_);
+         tags.put("Camera", CAMERA);
+         tags.put("ElapsedTime-ms", (timeNs - startNs_) / 1.0e6);
+         tags.put("XPositionUm", getXPosition());
+         tags.put("YPositionUm", getYPosition());
+         tags.put("ZPositionUm", getPosition());
+         tags.put(TIME_NS_TAG, timeNs);
+         AcqEngMetadata.createAxes(tags);
+         AcqEngMetadata.setAxisPosition(tags, AcqEngMetadata.TIME_AXIS, frame);
+         return new TaggedImage(pixels, tags);
+      } catch (JSONException je) {
+         throw new RuntimeException(je);
+      }
+   }
+
+   private Object[] createPatterns() {
+      Random random = new Random(0);
+      Object[] patterns = new Object[NR_PATTERNS];
+      int max = (1 << bitDepth_) - 1;
+      for (int p = 0; p < NR_PATTERNS; p++) {
+         if (bitDepth_ <= 8) {
+            byte[] pixels = new byte[width_ * height_];
+            for (int i = 0; i < pixels.length; i++) {
+               pixels[i] = (byte) random.nextInt(max + 1);
+            }
+            patterns[p] = pixels;
+         } else {
+            short[] pixels = new short[width_ * height_];
+            for (int i = 0; i < pixels.length; i++) {
+               pixels[i] = (short) random.nextInt(max + 1);
+            }
+            patterns[p] = pixels;
+         }
+      }
+      return patterns;
+   }
+
+   // ---- Stages ----
+
+   /**
+    * Sets the speed of the simulated stages, used to decide how long they stay busy
+    * after a move.
+    */
+   public synchronized void setStageSpeeds(double xyUmPerS, double zUmPerS) {
+      xyStageSpeedUmPerS_ = xyUmPerS;
+      zStageSpeedUmPerS_ = zUmPerS;
+   }
+
+   public synchronized void setXYPosition(double x, double y) {
+      double distance = Math.max(Math.abs(x - x_), Math.abs(y - y_));
+      xyDoneNs_ = System.nanoTime() + (long) (1.0e9 * distance / xyStageSpeedUmPerS_);
+      x_ = x;
+      y_ = y;
+   }
+
+   public synchronized double getXPosition() {
+      return x_;
+   }
+
+   public synchronized double getYPosition() {
+      return y_;
+   }
+
+   public synchronized void setPosition(double z) {
+      zDoneNs_ = System.nanoTime() + (long) (1.0e9 * Math.abs(z - z_) / zStageSpeedUmPerS_);
+      z_ = z;
+   }
+
+   public synchronized double getPosition() {
+      return z_;
+   }
+
+   public synchronized boolean deviceBusy(String label) {
+      long now = System.nanoTime();
+      if (XY_STAGE.equals(label)) {
+         return now < xyDoneNs_;
+      } else if (Z_STAGE.equals(label)) {
+         return now < zDoneNs_;
+      }
+      return false;
+   }
+
+   /**
+    * Waits until the given device finished its last move.
+    */
+   public void waitForDevice(String label) throws InterruptedException {
+      while (deviceBusy(label)) {
+         Thread.sleep(1);
+      }
+   }
+
+   // ---- Properties ----
+
+   public void setProperty(String device, String property, String value) {
+      properties_.computeIfAbsent(device, (d) -> new ConcurrentHashMap<>()).put(property, value);
+   }
+
+   public String getProperty(String device, String property) {
+      Map<String, String> deviceProperties = properties_.get(device);
+      String value = deviceProperties == null ? null : deviceProperties.get(property);
+      if (value == null) {
+         throw new IllegalArgumentException("No property " + property + " on " + device);
+      }
+      return value;
+   }
+
+   public boolean hasProperty(String device, String property) {
+      Map<String, String> deviceProperties = properties_.get(device);
+      return deviceProperties != null && deviceProperties.containsKey(property);
+   }
+}
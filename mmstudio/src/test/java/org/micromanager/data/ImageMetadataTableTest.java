@@ -0,0 +1,63 @@
+package org.micromanager.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.micromanager.data.internal.DefaultImage;
+import org.micromanager.data.internal.DefaultMetadata;
+
+/**
+ * Tests for the MetadataTable of DataProviders without one of their own.
+ */
+public class ImageMetadataTableTest {
+   private static final Coords IMAGE = Coordinates.builder().t(3).build();
+
+   /**
+    * Provider with one image at IMAGE, that counts how often it is loaded.
+    */
+   private static DataProvider provider(AtomicInteger loads) {
+      return (DataProvider) Proxy.newProxyInstance(DataProvider.class.getClassLoader(),
+            new Class<?>[] {DataProvider.class}, (proxy, method, args) -> {
+               switch (method.getName()) {
+                  case "hashCode":
+                     return System.identityHashCode(proxy);
+                  case "equals":
+                     return proxy == args[0];
+                  case "hasImage":
+                     return IMAGE.equals(args[0]);
+                  case "getImage":
+                     loads.incrementAndGet();
+                     return new DefaultImage(new byte[1], 1, 1, 1, 1, IMAGE,
+                           new DefaultMetadata.Builder().exposureMs(12.5).build());
+                  default:
+                     throw new UnsupportedOperationException(method.getName());
+               }
+            });
+   }
+
+   @Test
+   public void tableIsKeptPerProvider() throws IOException {
+      AtomicInteger loads = new AtomicInteger();
+      DataProvider provider = provider(loads);
+      MetadataTable table = ImageMetadataTable.of(provider);
+      assertSame(table, ImageMetadataTable.of(provider));
+      assertNotSame(table, ImageMetadataTable.of(provider(new AtomicInteger())));
+
+      assertEquals(12.5, table.getValue(IMAGE, MetadataTable.Column.EXPOSURE_MS), 0.0);
+      assertTrue(Double.isNaN(table.getValue(IMAGE, MetadataTable.Column.X_POSITION_UM)));
+      assertEquals(12.5, ImageMetadataTable.of(provider)
+            .getValue(IMAGE, MetadataTable.Column.EXPOSURE_MS), 0.0);
+      // The image was loaded once for all values
+      assertEquals(1, loads.get());
+      // No image, no load
+      assertTrue(Double.isNaN(table.getValue(Coordinates.builder().t(4).build(),
+            MetadataTable.Column.EXPOSURE_MS)));
+      assertEquals(1, loads.get());
+   }
+}
@@ -0,0 +1,70 @@
+package org.micromanager.data.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.micromanager.data.Coords;
+
+/**
+ * Compares the CoordsIndex queries with a brute force search.
+ */
+public class CoordsIndexTest {
+
+   private static Coords coords(int c, int t, int z) {
+      return new DefaultCoords.Builder().channel(c).time(t).z(z).build();
+   }
+
+   private static List<Coords> bruteForce(List<Coords> all, Coords coords,
+                                          String... ignoreTheseAxes) {
+      List<Coords> result = new ArrayList<>();
+      for (Coords c : all) {
+         if (c.copyRemovingAxes(ignoreTheseAxes).equals(coords)) {
+            result.add(c);
+         }
+      }
+      return result;
+   }
+
+   @Test
+   public void testIgnoringAxes() {
+      CoordsIndex index = new CoordsIndex();
+      List<Coords> all = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+         for (int z = 0; z < 3; z++) {
+            for (int c = 0; c < 2; c++) {
+               all.add(coords(c, t, z));
+               index.add(coords(c, t, z));
+            }
+         }
+      }
+      Coords query = coords(0, 2, 1).copyRemovingAxes(Coords.C);
+      Assert.assertEquals(bruteForce(all, query, Coords.C),
+            index.getCoordsIgnoringAxes(query, Coords.C));
+      query = coords(1, 0, 0).copyRemovingAxes(Coords.T, Coords.Z);
+      Assert.assertEquals(bruteForce(all, query, Coords.T, Coords.Z),
+            index.getCoordsIgnoringAxes(query, Coords.T, Coords.Z));
+      Assert.assertEquals(4 * 3, index.getCoordsMatching(coords(1, 0, 0)).size());
+
+      // Views are maintained after they were built
+      Coords extra = coords(2, 2, 1);
+      all.add(extra);
+      index.add(extra);
+      query = extra.copyRemovingAxes(Coords.C);
+      Assert.assertEquals(bruteForce(all, query, Coords.C),
+            index.getCoordsIgnoringAxes(query, Coords.C));
+      all.remove(extra);
+      index.remove(extra);
+      Assert.assertEquals(bruteForce(all, query, Coords.C),
+            index.getCoordsIgnoringAxes(query, Coords.C));
+   }
+
+   @Test
+   public void testUnusedAxes() {
+      CoordsIndex index = new CoordsIndex();
+      Coords c = coords(0, 1, 0);
+      index.add(c);
+      Assert.assertEquals(1, index.getCoordsIgnoringAxes(c, Coords.Z).size());
+      Assert.assertTrue(index.getCoordsIgnoringAxes(coords(0, 2, 0), Coords.Z).isEmpty());
+   }
+}
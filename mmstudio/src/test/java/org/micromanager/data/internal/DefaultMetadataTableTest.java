@@ -0,0 +1,119 @@
+package org.micromanager.data.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.micromanager.data.Coordinates;
+import org.micromanager.data.Coords;
+import org.micromanager.data.DataProvider;
+import org.micromanager.data.Metadata;
+import org.micromanager.data.MetadataTable.Column;
+
+/**
+ * Tests that a DefaultMetadataTable read back from its file has the values
+ * that were saved.
+ */
+public class DefaultMetadataTableTest {
+   @Rule
+   public final TemporaryFolder folder = new TemporaryFolder();
+
+   /**
+    * Provider with the given number of images, that fails when images are
+    * requested, so that all values have to come from the table.
+    */
+   private static DataProvider provider(int numImages) {
+      return (DataProvider) Proxy.newProxyInstance(DataProvider.class.getClassLoader(),
+            new Class<?>[] {DataProvider.class}, (proxy, method, args) -> {
+               switch (method.getName()) {
+                  case "getNumImages":
+                     return numImages;
+                  case "hasImage":
+                     return false;
+                  default:
+                     throw new UnsupportedOperationException(method.getName());
+               }
+            });
+   }
+
+   private static Metadata metadata(Double elapsed, Double exposure, Double x, Double y,
+                                    Double z) {
+      return new DefaultMetadata.Builder().elapsedTimeMs(elapsed).exposureMs(exposure)
+            .xPositionUm(x).yPositionUm(y).zPositionUm(z).build();
+   }
+
+   @Test
+   public void savedTableReadsBackTheSameValues() throws IOException {
+      List<Coords> coords = new ArrayList<>();
+      List<Metadata> metadata = new ArrayList<>();
+      for (int t = 0; t < 3; t++) {
+         for (int c = 0; c < 2; c++) {
+            coords.add(Coordinates.builder().t(t).c(c).z(t + c).p(1).build());
+            metadata.add(metadata(1000.0 * t + 0.1 * c, 10.0 + c, -1234.5678 + t,
+                  9876.54321e-3, 1.0 / 3.0));
+         }
+      }
+      // Axes other than the standard ones, no axes at all, and missing values
+      coords.add(Coordinates.builder().index("row", 2).index("column", 11).build());
+      metadata.add(metadata(null, 5.0, null, Double.MAX_VALUE, -0.0));
+      coords.add(Coordinates.builder().build());
+      metadata.add(metadata(Double.MIN_VALUE, null, null, null, null));
+      Coords removed = Coordinates.builder().t(9).build();
+
+      DefaultMetadataTable saved = new DefaultMetadataTable(provider(coords.size()));
+      for (int i = 0; i < coords.size(); i++) {
+         saved.add(coords.get(i), metadata.get(i));
+      }
+      saved.add(removed, metadata(1.0, 1.0, 1.0, 1.0, 1.0));
+      saved.remove(removed);
+      // Replaced values are saved, not the first ones
+      saved.add(coords.get(0), metadata(-5.0, 2.5, 3.0, 4.0, 5.0));
+      metadata.set(0, metadata(-5.0, 2.5, 3.0, 4.0, 5.0));
+      saved.save(folder.getRoot());
+
+      DefaultMetadataTable read = new DefaultMetadataTable(provider(coords.size()));
+      read.read(new File(folder.getRoot(), DefaultMetadataTable.FILE_NAME));
+      for (Column column : Column.values()) {
+         for (int i = 0; i < coords.size(); i++) {
+            assertEquals(coords.get(i) + " " + column, column.getValue(metadata.get(i)),
+                  read.getValue(coords.get(i), column), 0.0);
+         }
+         assertTrue(Double.isNaN(read.getValue(removed, column)));
+      }
+      double[] elapsed = read.getValues(coords, Column.ELAPSED_TIME_MS);
+      assertEquals(coords.size(), elapsed.length);
+      assertEquals(-5.0, elapsed[0], 0.0);
+   }
+
+   @Test
+   public void unknownColumnsAreSkippedAndMissingOnesAreNaN() throws IOException {
+      File file = folder.newFile(DefaultMetadataTable.FILE_NAME);
+      Files.write(file.toPath(), Arrays.asList(
+            "Coords\tFOCUS_SCORE\tEXPOSURE_MS",
+            "time=1,channel=0\t0.5\t20.0"), StandardCharsets.UTF_8);
+      DefaultMetadataTable table = new DefaultMetadataTable(provider(1));
+      table.read(file);
+      Coords coords = Coordinates.builder().t(1).c(0).build();
+      assertEquals(20.0, table.getValue(coords, Column.EXPOSURE_MS), 0.0);
+      assertTrue(Double.isNaN(table.getValue(coords, Column.ELAPSED_TIME_MS)));
+   }
+
+   @Test
+   public void incompleteTableIsNotSaved() {
+      DefaultMetadataTable table = new DefaultMetadataTable(provider(2));
+      table.add(Coordinates.builder().t(0).build(), metadata(1.0, 1.0, 1.0, 1.0, 1.0));
+      table.save(folder.getRoot());
+      assertFalse(new File(folder.getRoot(), DefaultMetadataTable.FILE_NAME).exists());
+   }
+}
@@ -0,0 +1,108 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API implementation
+//-----------------------------------------------------------------------------
+//
+// COPYRIGHT:    Regents of the University of California, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data.internal;
+
+import ij.process.ImageProcessor;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import org.micromanager.data.Image;
+
+/**
+ * Measures time and allocation per frame of a chain of processors that each
+ * go from Image to ImageJ processor and back, as ImageFlipper, SplitView,
+ * RatioImaging and ChannelCorrector do.
+ *
+ * <p>The chain is run twice: with the copying conversions
+ * (createProcessor() and createImage()), and with the sharing ones
+ * (createSharedProcessor() and wrapProcessor()).  Each chain has stages that
+ * only read the pixels (a mean), that make a new processor (rotation and
+ * crop), and that pass the image on unchanged.  Allocation is reported in
+ * frames, i.e. the number of full-frame arrays allocated per input frame.</p>
+ *
+ * <p>Usage: ImageJBridgeBenchmark [width height numFrames]</p>
+ */
+public final class ImageJBridgeBenchmark {
+
+   private ImageJBridgeBenchmark() {
+   }
+
+   private static Image stage(Image image, boolean share, int stageNr) {
+      ImageProcessor proc = DefaultImageJConverter.createProcessor(image, !share);
+      switch (stageNr % 4) {
+         case 0:
+            // Read only
+            if (proc.getStats().mean < 0) {
+               throw new AssertionError();
+            }
+            break;
+         case 1:
+            proc = proc.rotateRight();
+            break;
+         case 2:
+            proc.setRoi(0, 0, proc.getWidth(), proc.getHeight() - 1);
+            proc = proc.crop();
+            break;
+         default:
+            // Pass through
+            break;
+      }
+      return DefaultImageJConverter.createImage(proc, image.getCoords(),
+            image.getMetadata(), !share);
+   }
+
+   /**
+    * Runs the chain over the frames and prints the results.
+    */
+   static void run(int width, int height, int numFrames, int numStages, boolean share) {
+      com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+      long threadId = Thread.currentThread().getId();
+      Image input = new DefaultImage(new short[width * height], width, height, 2, 1,
+            null, null);
+      long frameBytes = 2L * width * height;
+      long startBytes = threads.getThreadAllocatedBytes(threadId);
+      long startNs = System.nanoTime();
+      for (int frame = 0; frame < numFrames; frame++) {
+         Image image = input;
+         for (int s = 0; s < numStages; s++) {
+            image = stage(image, share, s);
+         }
+      }
+      double ms = (System.nanoTime() - startNs) / 1e6;
+      long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+      System.out.println(String.format(Locale.US,
+            "%s: %.2f ms/frame, %.1f frames allocated per frame, %.1f MB/s allocated",
+            share ? "Sharing" : "Copying", ms / numFrames,
+            bytes / (double) frameBytes / numFrames, bytes / 1e3 / ms));
+   }
+
+   public static void main(String[] args) {
+      int width = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+      int height = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+      int numFrames = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+      int numStages = 4;
+      System.out.println(width + "x" + height + " 16 bit, " + numStages + " stages, "
+            + numFrames + " frames");
+      // Warm up
+      run(width, height, Math.max(1, numFrames / 10), numStages, false);
+      run(width, height, Math.max(1, numFrames / 10), numStages, true);
+      run(width, height, numFrames, numStages, false);
+      run(width, height, numFrames, numStages, true);
+   }
+}
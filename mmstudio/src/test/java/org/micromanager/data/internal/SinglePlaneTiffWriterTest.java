@@ -0,0 +1,145 @@
+package org.micromanager.data.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import ij.ImagePlus;
+import ij.io.FileSaver;
+import ij.measure.Calibration;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.micromanager.data.Coordinates;
+import org.micromanager.data.Image;
+
+/**
+ * Checks that SinglePlaneTiffWriter writes the same files as ImageJ's
+ * FileSaver, which StorageSinglePlaneTiffSeries used before.
+ */
+public class SinglePlaneTiffWriterTest {
+   private static final int WIDTH = 23;
+   private static final int HEIGHT = 17;
+   private static final String METADATA = "{\n  \"Camera\": \"Cam\",\n  \"Width\": 23\n}";
+
+   @Rule
+   public final TemporaryFolder folder = new TemporaryFolder();
+
+   private static Image image(int bytesPerPixel, int numComponents, long seed) {
+      Random random = new Random(seed);
+      Object pixels;
+      if (numComponents == 3) {
+         byte[] bytes = new byte[WIDTH * HEIGHT * 4];
+         random.nextBytes(bytes);
+         pixels = bytes;
+      } else if (bytesPerPixel == 1) {
+         byte[] bytes = new byte[WIDTH * HEIGHT];
+         random.nextBytes(bytes);
+         pixels = bytes;
+      } else if (bytesPerPixel == 2) {
+         short[] shorts = new short[WIDTH * HEIGHT];
+         for (int i = 0; i < shorts.length; i++) {
+            shorts[i] = (short) random.nextInt(65536);
+         }
+         pixels = shorts;
+      } else {
+         float[] floats = new float[WIDTH * HEIGHT];
+         for (int i = 0; i < floats.length; i++) {
+            floats[i] = (float) random.nextGaussian() * 1000.0f;
+         }
+         pixels = floats;
+      }
+      return new DefaultImage(pixels, WIDTH, HEIGHT, bytesPerPixel, numComponents,
+            Coordinates.builder().t(0).build(), new DefaultMetadata.Builder().build());
+   }
+
+   /**
+    * How StorageSinglePlaneTiffSeries saved images before it used
+    * SinglePlaneTiffWriter.
+    */
+   private static void saveWithFileSaver(Image image, File file, Double pixelSizeUm,
+                                         Double intervalMs, Double zStepUm) {
+      ImageProcessor proc;
+      if (image.getNumComponents() == 3) {
+         int[] rgbPixels = new int[WIDTH * HEIGHT];
+         byte[] rawPixels = (byte[]) image.getRawPixels();
+         for (int i = 0; i < rgbPixels.length; i++) {
+            rgbPixels[i] = (rawPixels[4 * i + 3] << (Byte.SIZE * 3));
+            rgbPixels[i] |= (rawPixels[4 * i + 2] & 0xFF) << (Byte.SIZE * 2);
+            rgbPixels[i] |= (rawPixels[4 * i + 1] & 0xFF) << (Byte.SIZE * 1);
+            rgbPixels[i] |= (rawPixels[4 * i] & 0xFF);
+         }
+         proc = new ColorProcessor(WIDTH, HEIGHT, rgbPixels);
+      } else if (image.getBytesPerPixel() == 1) {
+         proc = new ByteProcessor(WIDTH, HEIGHT, (byte[]) image.getRawPixels());
+      } else if (image.getBytesPerPixel() == 2) {
+         proc = new ShortProcessor(WIDTH, HEIGHT, (short[]) image.getRawPixels(), null);
+      } else {
+         proc = new FloatProcessor(WIDTH, HEIGHT, (float[]) image.getRawPixels());
+      }
+      ImagePlus imp = new ImagePlus(file.getPath(), proc);
+      if (pixelSizeUm != null && pixelSizeUm > 0) {
+         Calibration cal = new Calibration();
+         cal.setUnit("um");
+         cal.pixelWidth = pixelSizeUm;
+         cal.pixelHeight = pixelSizeUm;
+         if (intervalMs != null) {
+            cal.frameInterval = intervalMs / 1000.0;
+         }
+         if (zStepUm != null) {
+            cal.pixelDepth = zStepUm;
+         }
+         imp.setCalibration(cal);
+      }
+      imp.setProperty("Info", METADATA);
+      new FileSaver(imp).saveAsTiff(file.getPath());
+   }
+
+   private void check(Image image, Double pixelSizeUm, Double intervalMs, Double zStepUm)
+         throws IOException {
+      File expected = folder.newFile();
+      File actual = folder.newFile();
+      saveWithFileSaver(image, expected, pixelSizeUm, intervalMs, zStepUm);
+      SinglePlaneTiffWriter.writeTiff(image, actual, METADATA,
+            new SinglePlaneTiffWriter.Calibration(pixelSizeUm, intervalMs, zStepUm));
+      assertArrayEquals(image.getBytesPerPixel() + " bytes, " + image.getNumComponents()
+                  + " components, pixel size " + pixelSizeUm + ", interval " + intervalMs
+                  + ", z step " + zStepUm,
+            Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+   }
+
+   private void checkCalibrations(Image image) throws IOException {
+      check(image, null, null, null);
+      check(image, 0.0, 500.0, 1.0);
+      check(image, 0.108, null, null);
+      check(image, 0.108, 1500.0, 0.25);
+      check(image, 1.0, 2000.0, null);
+   }
+
+   @Test
+   public void eightBitMatchesFileSaver() throws IOException {
+      checkCalibrations(image(1, 1, 1));
+   }
+
+   @Test
+   public void sixteenBitMatchesFileSaver() throws IOException {
+      checkCalibrations(image(2, 1, 2));
+   }
+
+   @Test
+   public void floatMatchesFileSaver() throws IOException {
+      checkCalibrations(image(4, 1, 3));
+   }
+
+   @Test
+   public void rgbMatchesFileSaver() throws IOException {
+      checkCalibrations(image(4, 3, 4));
+   }
+}
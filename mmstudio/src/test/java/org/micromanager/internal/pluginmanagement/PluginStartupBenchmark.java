@@ -0,0 +1,179 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     mmstudio
+//-----------------------------------------------------------------------------
+//
+// COPYRIGHT:    Regents of the University of California, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.internal.pluginmanagement;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.micromanager.MenuPlugin;
+import org.micromanager.Studio;
+
+/**
+ * Measures plugin discovery at startup over a synthetic plugin directory, with
+ * and without the {@link PluginIndexCache}.
+ *
+ * <p>The directory is filled with JARs that each contain a SciJava plugin
+ * index naming {@link BenchmarkPlugin}, and a number of filler entries so
+ * that opening a JAR costs about as much as opening a real plugin.  Reported
+ * are the time to discover the plugins when every JAR is scanned (first
+ * start, or all JARs changed), and when the cache written by the first run is
+ * used (every later start).</p>
+ *
+ * <p>Usage: PluginStartupBenchmark directory [numJars entriesPerJar runs]</p>
+ */
+public final class PluginStartupBenchmark {
+   private static final String INDEX_ENTRY = "META-INF/json/org.scijava.plugin.Plugin";
+
+   /**
+    * Plugin named by the index of every synthetic JAR.  It is found through
+    * the parent class loader, so the JARs do not need to contain classes.
+    */
+   public static final class BenchmarkPlugin implements MenuPlugin {
+      @Override
+      public String getSubMenu() {
+         return "Benchmark";
+      }
+
+      @Override
+      public void onPluginSelected() {
+      }
+
+      @Override
+      public void setContext(Studio studio) {
+      }
+
+      @Override
+      public String getName() {
+         return "Benchmark plugin";
+      }
+
+      @Override
+      public String getHelpText() {
+         return "";
+      }
+
+      @Override
+      public String getVersion() {
+         return "1.0";
+      }
+
+      @Override
+      public String getCopyright() {
+         return "";
+      }
+   }
+
+   private PluginStartupBenchmark() {
+   }
+
+   /**
+    * Writes the synthetic plugin JARs into the directory.
+    */
+   static void createJars(File directory, int numJars, int entriesPerJar) throws IOException {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+         throw new IOException("Unable to create " + directory);
+      }
+      byte[] index = ("{\"class\":\"" + BenchmarkPlugin.class.getName()
+            + "\",\"values\":{\"type\":\"" + MenuPlugin.class.getName() + "\"}}")
+            .getBytes(StandardCharsets.UTF_8);
+      byte[] filler = new byte[2048];
+      for (int i = 0; i < numJars; i++) {
+         File jar = new File(directory, String.format(Locale.US, "plugin%05d.jar", i));
+         try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry(INDEX_ENTRY));
+            out.write(index);
+            out.closeEntry();
+            for (int e = 0; e < entriesPerJar; e++) {
+               out.putNextEntry(new ZipEntry(String.format(Locale.US,
+                     "org/example/plugin%05d/Class%04d.class", i, e)));
+               out.write(filler);
+               out.closeEntry();
+            }
+         }
+      }
+   }
+
+   /**
+    * Discovers the plugins in the directory and returns the time it took.
+    *
+    * @param useCache whether to read and write the cache, or scan every JAR.
+    * @return Milliseconds spent, including loading and saving the cache.
+    */
+   static double discover(File directory, File cacheFile, boolean useCache, int numJars) {
+      long start = System.nanoTime();
+      PluginIndexCache cache = useCache ? PluginIndexCache.load(cacheFile) : null;
+      try (SharedPluginClassLoader loader = new SharedPluginClassLoader(
+            PluginStartupBenchmark.class.getClassLoader())) {
+         List<Class<?>> classes = PluginFinder.findPlugins(loader, directory.getPath(), cache);
+         if (classes.size() != numJars) {
+            throw new IllegalStateException("Found " + classes.size() + " plugins in "
+                  + numJars + " JARs");
+         }
+      } catch (IOException e) {
+         throw new IllegalStateException(e);
+      }
+      if (cache != null) {
+         cache.save();
+      }
+      return (System.nanoTime() - start) / 1e6;
+   }
+
+   /**
+    * Creates the synthetic directory, then prints the discovery time without
+    * cache, on the first start with a cache (which writes it), and on later
+    * starts with a cache.
+    */
+   public static void main(String[] args) throws Exception {
+      if (args.length < 1) {
+         System.out.println("Usage: PluginStartupBenchmark directory "
+               + "[numJars entriesPerJar runs]");
+         return;
+      }
+      File root = new File(args[0]);
+      int numJars = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+      int entriesPerJar = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+      int runs = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+      File jars = new File(root, "mmplugins");
+      File cacheFile = new File(root, PluginIndexCache.FILE_NAME);
+      createJars(jars, numJars, entriesPerJar);
+      if (cacheFile.exists() && !cacheFile.delete()) {
+         throw new IOException("Unable to delete " + cacheFile);
+      }
+      System.out.println(numJars + " JARs with " + entriesPerJar + " entries each");
+
+      // Warm up class loading of the discovery code itself
+      discover(jars, cacheFile, false, numJars);
+      for (int run = 0; run < runs; run++) {
+         System.out.println(String.format(Locale.US, "Scanning all JARs: %.1f ms",
+               discover(jars, cacheFile, false, numJars)));
+      }
+      System.out.println(String.format(Locale.US, "First start, writing cache: %.1f ms",
+            discover(jars, cacheFile, true, numJars)));
+      for (int run = 0; run < runs; run++) {
+         System.out.println(String.format(Locale.US, "Start with cache: %.1f ms",
+               discover(jars, cacheFile, true, numJars)));
+      }
+   }
+}
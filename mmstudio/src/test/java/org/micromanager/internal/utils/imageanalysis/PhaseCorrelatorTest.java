@@ -0,0 +1,144 @@
+package org.micromanager.internal.utils.imageanalysis;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class PhaseCorrelatorTest {
+   private static final int SIZE = 128;
+
+   /**
+    * Renders randomly placed Gaussian spots, with all of them moved by
+    * (shiftX, shiftY), so that sub-pixel shifts are exact.
+    */
+   private static float[] spots(long seed, double shiftX, double shiftY, double noise) {
+      Random random = new Random(seed);
+      float[] pixels = new float[SIZE * SIZE];
+      for (int i = 0; i < 80; i++) {
+         double cx = random.nextDouble() * (SIZE + 40) - 20 + shiftX;
+         double cy = random.nextDouble() * (SIZE + 40) - 20 + shiftY;
+         double amplitude = 100 + random.nextDouble() * 900;
+         double sigma = 1.5 + random.nextDouble() * 3;
+         int reach = (int) Math.ceil(5 * sigma);
+         for (int y = Math.max(0, (int) cy - reach);
+               y < Math.min(SIZE, (int) cy + reach); y++) {
+            for (int x = Math.max(0, (int) cx - reach);
+                  x < Math.min(SIZE, (int) cx + reach); x++) {
+               double dx = x - cx;
+               double dy = y - cy;
+               pixels[y * SIZE + x] += amplitude
+                     * Math.exp(-(dx * dx + dy * dy) / (2 * sigma * sigma));
+            }
+         }
+      }
+      Random noiseSource = new Random(seed * 31 + (long) (1000 * shiftX + 77 * shiftY));
+      for (int i = 0; i < pixels.length; i++) {
+         pixels[i] += 100 + noise * noiseSource.nextGaussian();
+      }
+      return pixels;
+   }
+
+   private static void assertShift(PhaseCorrelator correlator, long seed,
+         double shiftX, double shiftY, double noise, double delta) {
+      Point2D.Double shift = correlator.measureShift(spots(seed, shiftX, shiftY, noise));
+      assertEquals(shiftX, shift.x, delta);
+      assertEquals(shiftY, shift.y, delta);
+   }
+
+   @Test
+   public void identicalImagesHaveNoShift() {
+      PhaseCorrelator correlator = new PhaseCorrelator(SIZE, SIZE);
+      float[] pixels = spots(1, 0, 0, 0);
+      correlator.setReference(pixels);
+      Point2D.Double shift = correlator.measureShift(pixels);
+      assertEquals(0.0, shift.x, 1e-6);
+      assertEquals(0.0, shift.y, 1e-6);
+      assertEquals(1.0, correlator.getPeakValue(), 1e-6);
+   }
+
+   @Test
+   public void integerShiftsAreFound() {
+      PhaseCorrelator correlator = new PhaseCorrelator(SIZE, SIZE);
+      for (long seed = 1; seed <= 3; seed++) {
+         correlator.setReference(spots(seed, 0, 0, 0));
+         assertShift(correlator, seed, 3, -5, 0, 0.05);
+         assertShift(correlator, seed, -12, 7, 0, 0.05);
+         assertShift(correlator, seed, 0, 20, 0, 0.05);
+      }
+   }
+
+   @Test
+   public void subPixelShiftsAreFound() {
+      PhaseCorrelator correlator = new PhaseCorrelator(SIZE, SIZE);
+      for (long seed = 1; seed <= 3; seed++) {
+         correlator.setReference(spots(seed, 0, 0, 0));
+         assertShift(correlator, seed, 0.5, 0.25, 0, 0.05);
+         assertShift(correlator, seed, -2.3, 1.7, 0, 0.05);
+         assertShift(correlator, seed, 7.8, -0.4, 0, 0.05);
+         assertShift(correlator, seed, 0.1, -0.9, 0, 0.05);
+      }
+   }
+
+   @Test
+   public void subPixelShiftsAreFoundInNoisyImages() {
+      PhaseCorrelator correlator = new PhaseCorrelator(SIZE, SIZE);
+      for (long seed = 1; seed <= 3; seed++) {
+         correlator.setReference(spots(seed, 0, 0, 20));
+         assertShift(correlator, seed, 0.5, 0.25, 20, 0.1);
+         assertShift(correlator, seed, -4.3, 2.6, 20, 0.1);
+         assertShift(correlator, seed, 9.75, -6.1, 20, 0.1);
+      }
+   }
+
+   @Test
+   public void integerPixelTypesAreAccepted() {
+      PhaseCorrelator correlator = new PhaseCorrelator(SIZE, SIZE);
+      float[] reference = spots(4, 0, 0, 0);
+      float[] moved = spots(4, 2.5, -3.25, 0);
+      short[] shortReference = new short[reference.length];
+      short[] shortMoved = new short[reference.length];
+      byte[] byteReference = new byte[reference.length];
+      byte[] byteMoved = new byte[reference.length];
+      for (int i = 0; i < reference.length; i++) {
+         shortReference[i] = (short) Math.round(reference[i] * 10);
+         shortMoved[i] = (short) Math.round(moved[i] * 10);
+         byteReference[i] = (byte) Math.min(255, Math.round(reference[i] / 8));
+         byteMoved[i] = (byte) Math.min(255, Math.round(moved[i] / 8));
+      }
+      correlator.setReference(shortReference);
+      Point2D.Double shift = correlator.measureShift(shortMoved);
+      assertEquals(2.5, shift.x, 0.05);
+      assertEquals(-3.25, shift.y, 0.05);
+      correlator.setReference(byteReference);
+      shift = correlator.measureShift(byteMoved);
+      assertEquals(2.5, shift.x, 0.1);
+      assertEquals(-3.25, shift.y, 0.1);
+   }
+
+   @Test
+   public void rectangularImagesAreSupported() {
+      PhaseCorrelator correlator = new PhaseCorrelator(SIZE, SIZE / 2);
+      float[] reference = spots(5, 0, 0, 0);
+      float[] moved = spots(5, -1.4, 3.3, 0);
+      // Top half only
+      float[] referenceHalf = new float[SIZE * SIZE / 2];
+      float[] movedHalf = new float[SIZE * SIZE / 2];
+      System.arraycopy(reference, 0, referenceHalf, 0, referenceHalf.length);
+      System.arraycopy(moved, 0, movedHalf, 0, movedHalf.length);
+      correlator.setReference(referenceHalf);
+      Point2D.Double shift = correlator.measureShift(movedHalf);
+      assertEquals(-1.4, shift.x, 0.05);
+      assertEquals(3.3, shift.y, 0.05);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void sizeMustBePowerOf2() {
+      new PhaseCorrelator(100, 128);
+   }
+
+   @Test(expected = IllegalStateException.class)
+   public void referenceIsRequired() {
+      new PhaseCorrelator(SIZE, SIZE).measureShift(new float[SIZE * SIZE]);
+   }
+}
@@ -162,7 +162,7 @@ public class ChannelCorrectorFrame extends JFrame {
       for (ChannelCorrectorPanel ccp : channelCorrectorPanels_) {
          affineTransforms.add(ccp.getAffineTransform());
       }
-      // Note that types other than Nearest Neighbor lead to strange pixel values
+      // Nearest Neighbor keeps the original pixel values
       ImageAffineTransform iat = new ImageAffineTransform(studio_, dataViewer_,
             affineTransforms, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
       iat.apply(settings_.getBoolean(USE_ALL_POS_KEY, false));
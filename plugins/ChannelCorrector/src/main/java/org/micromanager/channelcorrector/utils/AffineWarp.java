@@ -0,0 +1,250 @@
+///////////////////////////////////////////////////////////////////////////////
+//FILE:          AffineWarp.java
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     ChannelCorrector plugin
+//
+//-----------------------------------------------------------------------------
+//
+// COPYRIGHT:    Regents of the University of California 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.channelcorrector.utils;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.AffineTransformOp;
+
+/**
+ * Applies an affine transform to 16-bit pixel arrays of a given size.
+ *
+ * <p>For every output pixel, the location it samples in the input is
+ * calculated once, when the AffineWarp is created, so that all planes of a
+ * channel are transformed with a single lookup (nearest neighbor) or a fixed
+ * set of weights (bilinear, bicubic) per pixel.  Pixel centers are mapped the
+ * same way as AffineTransformOp does, so nearest neighbor gives the same
+ * result as AffineTransformOp.filter(), except for the rare pixel center that
+ * maps to within rounding error of the edge of an input pixel (the location
+ * is calculated in double precision here).  Interpolation is done in floating
+ * point on the 16-bit values, and rounded and clipped to 0-65535.  Output
+ * pixels that sample outside the input are 0.</p>
+ *
+ * <p>The output is cropped to the given width and height in the same pass.
+ * An AffineWarp can be used from several threads at the same time.</p>
+ */
+public final class AffineWarp {
+   private final int interpolationType_;
+   private final int inWidth_;
+   private final int inHeight_;
+   private final int outWidth_;
+   private final int outHeight_;
+   // Per output pixel: index of the input pixel, or -1 if outside
+   private final int[] index_;
+   // Only for bilinear and bicubic, per output pixel: the input pixel with
+   // its center left of and above the sampled location (may be -1), and the
+   // distance from that center
+   private final int[] x_;
+   private final int[] y_;
+   private final float[] fx_;
+   private final float[] fy_;
+
+   /**
+    * Precomputes the sampling positions.
+    *
+    * @param transform Transform from input to output coordinates
+    * @param interpolationType One of the types in AffineTransformOp
+    * @param inWidth Width of the input images
+    * @param inHeight Height of the input images
+    * @param outWidth Width of the output images
+    * @param outHeight Height of the output images
+    * @throws ImageAffineTransformException when the transform can not be inverted
+    */
+   public AffineWarp(AffineTransform transform, int interpolationType,
+                     int inWidth, int inHeight, int outWidth, int outHeight)
+         throws ImageAffineTransformException {
+      if (interpolationType != AffineTransformOp.TYPE_BICUBIC
+            && interpolationType != AffineTransformOp.TYPE_BILINEAR) {
+         interpolationType = AffineTransformOp.TYPE_NEAREST_NEIGHBOR;
+      }
+      interpolationType_ = interpolationType;
+      inWidth_ = inWidth;
+      inHeight_ = inHeight;
+      outWidth_ = outWidth;
+      outHeight_ = outHeight;
+      AffineTransform inverse;
+      try {
+         inverse = transform.createInverse();
+      } catch (NoninvertibleTransformException e) {
+         throw new ImageAffineTransformException("Affine transform can not be inverted");
+      }
+      final int length = outWidth * outHeight;
+      index_ = new int[length];
+      boolean nearest = interpolationType_ == AffineTransformOp.TYPE_NEAREST_NEIGHBOR;
+      x_ = nearest ? null : new int[length];
+      y_ = nearest ? null : new int[length];
+      fx_ = nearest ? null : new float[length];
+      fy_ = nearest ? null : new float[length];
+
+      // The input location of each output pixel center
+      final double[] row = new double[2 * outWidth];
+      for (int y = 0; y < outHeight; y++) {
+         for (int x = 0; x < outWidth; x++) {
+            row[2 * x] = x + 0.5;
+            row[2 * x + 1] = y + 0.5;
+         }
+         inverse.transform(row, 0, row, 0, outWidth);
+         for (int x = 0; x < outWidth; x++) {
+            int i = y * outWidth + x;
+            double sx = row[2 * x];
+            double sy = row[2 * x + 1];
+            if (!(sx >= 0 && sx < inWidth && sy >= 0 && sy < inHeight)) {
+               index_[i] = -1;
+            } else {
+               index_[i] = (int) sy * inWidth + (int) sx;
+               if (!nearest) {
+                  // Relative to the centers of the input pixels
+                  double cx = sx - 0.5;
+                  double cy = sy - 0.5;
+                  x_[i] = (int) Math.floor(cx);
+                  y_[i] = (int) Math.floor(cy);
+                  fx_[i] = (float) (cx - x_[i]);
+                  fy_[i] = (float) (cy - y_[i]);
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Returns the size of the image that AffineTransformOp.filter() creates
+    * for the given transform and input size, i.e. up to the right and bottom
+    * edge of the transformed input.
+    *
+    * @param transform Transform from input to output coordinates
+    * @param inWidth Width of the input image
+    * @param inHeight Height of the input image
+    * @return Width and height, at least 1
+    */
+   public static int[] getOutputSize(AffineTransform transform, int inWidth, int inHeight) {
+      Rectangle2D bounds = transform.createTransformedShape(
+            new Rectangle2D.Double(0, 0, inWidth, inHeight)).getBounds2D();
+      int width = (int) Math.ceil(bounds.getX() + bounds.getWidth());
+      int height = (int) Math.ceil(bounds.getY() + bounds.getHeight());
+      return new int[] {Math.max(1, width), Math.max(1, height)};
+   }
+
+   public int getWidth() {
+      return outWidth_;
+   }
+
+   public int getHeight() {
+      return outHeight_;
+   }
+
+   /**
+    * Transforms one image.
+    *
+    * @param in Input pixels, of the input size given to the constructor
+    * @return New array with the output pixels
+    * @throws ImageAffineTransformException when the input has the wrong size
+    */
+   public short[] warp(short[] in) throws ImageAffineTransformException {
+      if (in.length != inWidth_ * inHeight_) {
+         throw new ImageAffineTransformException("Image size differs from the first image");
+      }
+      short[] out = new short[outWidth_ * outHeight_];
+      if (interpolationType_ == AffineTransformOp.TYPE_NEAREST_NEIGHBOR) {
+         for (int i = 0; i < out.length; i++) {
+            int index = index_[i];
+            if (index >= 0) {
+               out[i] = in[index];
+            }
+         }
+      } else if (interpolationType_ == AffineTransformOp.TYPE_BILINEAR) {
+         for (int i = 0; i < out.length; i++) {
+            if (index_[i] >= 0) {
+               out[i] = toShort(bilinear(in, i));
+            }
+         }
+      } else {
+         for (int i = 0; i < out.length; i++) {
+            if (index_[i] >= 0) {
+               out[i] = toShort(bicubic(in, i));
+            }
+         }
+      }
+      return out;
+   }
+
+   private static short toShort(double value) {
+      if (value <= 0) {
+         return 0;
+      }
+      if (value >= 65535) {
+         return (short) 65535;
+      }
+      return (short) (int) (value + 0.5);
+   }
+
+   // Neighbors outside the image are replaced by the edge pixels
+   private int column(int x) {
+      return x < 0 ? 0 : (x >= inWidth_ ? inWidth_ - 1 : x);
+   }
+
+   private int line(int y) {
+      return y < 0 ? 0 : (y >= inHeight_ ? inHeight_ - 1 : y);
+   }
+
+   private double bilinear(short[] in, int i) {
+      final double fx = fx_[i];
+      final double fy = fy_[i];
+      final int x0 = column(x_[i]);
+      final int x1 = column(x_[i] + 1);
+      final int row0 = line(y_[i]) * inWidth_;
+      final int row1 = line(y_[i] + 1) * inWidth_;
+      double top = (in[row0 + x0] & 0xffff) * (1 - fx) + (in[row0 + x1] & 0xffff) * fx;
+      double bottom = (in[row1 + x0] & 0xffff) * (1 - fx) + (in[row1 + x1] & 0xffff) * fx;
+      return top * (1 - fy) + bottom * fy;
+   }
+
+   /**
+    * Cubic convolution kernel with a = -0.5, as used by Java2D.
+    */
+   private static double cubic(double t) {
+      t = Math.abs(t);
+      if (t <= 1) {
+         return (1.5 * t - 2.5) * t * t + 1;
+      } else if (t < 2) {
+         return ((-0.5 * t + 2.5) * t - 4) * t + 2;
+      }
+      return 0;
+   }
+
+   private double bicubic(short[] in, int i) {
+      final double fx = fx_[i];
+      final double fy = fy_[i];
+      final int x = x_[i];
+      final int y = y_[i];
+      double sum = 0;
+      for (int dy = -1; dy <= 2; dy++) {
+         final int row = line(y + dy) * inWidth_;
+         final double wy = cubic(dy - fy);
+         double rowSum = 0;
+         for (int dx = -1; dx <= 2; dx++) {
+            rowSum += (in[row + column(x + dx)] & 0xffff) * cubic(dx - fx);
+         }
+         sum += rowSum * wy;
+      }
+      return sum;
+   }
+}
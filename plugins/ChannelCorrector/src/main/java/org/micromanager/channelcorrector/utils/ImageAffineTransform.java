@@ -4,19 +4,20 @@
 
 package org.micromanager.channelcorrector.utils;
 
-import ij.ImagePlus;
 import ij.gui.Roi;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ShortProcessor;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
-import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.micromanager.Studio;
 import org.micromanager.data.Coordinates;
 import org.micromanager.data.Coords;
@@ -27,14 +28,22 @@ import org.micromanager.display.DataViewer;
 import org.micromanager.display.DisplayWindow;
 
 /**
+ * Transforms all channels but the first of a dataset so that they overlay the
+ * first channel, and puts the result in a new Datastore.
+ *
+ * <p>The transforms are applied with an {@link AffineWarp} per channel, which
+ * computes the sampling positions once for all images of that channel.
+ * Images are read on the calling thread, since the source storage may not
+ * support reading from several threads at once, and planes are transformed
+ * in parallel.</p>
+ *
  * @author nico
  */
 public class ImageAffineTransform {
    private final Studio studio_;
    private final DataViewer dataViewer_;
-   private final ArrayList<AffineTransformOp> affineTransformOps_;
+   private final List<AffineTransform> affineTransforms_;
    private final int interpolationType_;
-   private final Object renderingHint_;
 
    public ImageAffineTransform(Studio studio, DataViewer dataViewer,
                                ArrayList<AffineTransform> affineTransforms,
@@ -47,41 +56,30 @@ public class ImageAffineTransform {
          interpolationType = AffineTransformOp.TYPE_NEAREST_NEIGHBOR;
       }
       interpolationType_ = interpolationType;
-      affineTransformOps_ = new ArrayList<>(affineTransforms.size());
-      for (AffineTransform aff : affineTransforms) {
-         affineTransformOps_.add(new AffineTransformOp(aff, interpolationType));
-      }
-      // Part of work-around bug in AffineTransformOp
-      Object rh = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
-      if (interpolationType_ == AffineTransformOp.TYPE_BICUBIC) {
-         rh = RenderingHints.VALUE_INTERPOLATION_BICUBIC;
-      } else if (interpolationType_ == AffineTransformOp.TYPE_BILINEAR) {
-         rh = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
-      }
-      renderingHint_ = rh;
+      affineTransforms_ = new ArrayList<>(affineTransforms);
    }
 
    public void apply(boolean allPositions) throws IOException, ImageAffineTransformException {
       final DataProvider dp = dataViewer_.getDataProvider();
       final int maxChan = dp.getNextIndex(Coords.C) - 1;
-      if (maxChan != affineTransformOps_.size()) {
+      if (maxChan != affineTransforms_.size()) {
          studio_.logs().showError("Unexpected difference between viewer and affine transform data");
          return;
       }
       // Calculate eventual width and height
-      Coords.Builder builder = Coordinates.builder().t(0).z(0).p(0).c(0);
-      int minWidth = dp.getAnyImage().getWidth();
-      int minHeight = dp.getAnyImage().getHeight();
-      for (int c = 1; c <= maxChan; c++) {
-         AffineTransformOp affineTransformOp = affineTransformOps_.get(c - 1);
-         Image out = transformImage(dp.getImage(builder.c(c).build()),
-               affineTransformOp);
-         if (out.getWidth() < minWidth) {
-            minWidth = out.getWidth();
-         }
-         if (out.getHeight() < minHeight) {
-            minHeight = out.getHeight();
-         }
+      final int inWidth = dp.getAnyImage().getWidth();
+      final int inHeight = dp.getAnyImage().getHeight();
+      int minWidth = inWidth;
+      int minHeight = inHeight;
+      for (AffineTransform affineTransform : affineTransforms_) {
+         int[] size = AffineWarp.getOutputSize(affineTransform, inWidth, inHeight);
+         minWidth = Math.min(minWidth, size[0]);
+         minHeight = Math.min(minHeight, size[1]);
+      }
+      final List<AffineWarp> warps = new ArrayList<>(maxChan);
+      for (AffineTransform affineTransform : affineTransforms_) {
+         warps.add(new AffineWarp(affineTransform, interpolationType_,
+               inWidth, inHeight, minWidth, minHeight));
       }
       Datastore outStore = studio_.data().createRAMDatastore();
       List<Integer> positions = new ArrayList<>();
@@ -103,27 +101,81 @@ public class ImageAffineTransform {
       newDisplay.setDisplaySettings(dataViewer_.getDisplaySettings());
       studio_.displays().manage(outStore);
 
-      for (Integer p : positions) {
-         for (int t = 0; t < dp.getNextIndex(Coords.T); t++) {
-            for (int z = 0; z < dp.getNextIndex(Coords.Z); z++) {
-               // crop channel 0 image, and add to outStore
-               int pos = p;
-               if (!allPositions) {
-                  pos = 0;
-               }
-               Image inImage = dp.getImage(builder.c(0).z(z).t(t).p(pos).build());
-               outStore.putImage(crop(inImage, 0, 0, minWidth, minHeight));
-               for (int c = 1; c < dp.getNextIndex(Coords.C); c++) {
-                  // transform other channel to channel 0, crop to size and add to store
-                  inImage = dp.getImage(builder.c(c).z(z).t(t).p(pos).build());
-                  outStore.putImage(
-                        transformImage(inImage, affineTransformOps_.get(c - 1), minWidth,
-                              minHeight));
+      // Each task corrects all channels of one plane, read on this thread.
+      // Results are put in the store in order, with a limited number of
+      // tasks ahead.
+      final int nrThreads = Runtime.getRuntime().availableProcessors();
+      final int nrChannels = dp.getNextIndex(Coords.C);
+      final int cropWidth = minWidth;
+      final int cropHeight = minHeight;
+      ExecutorService executor = Executors.newFixedThreadPool(nrThreads);
+      ArrayDeque<Future<List<Image>>> pending = new ArrayDeque<>();
+      try {
+         for (Integer p : positions) {
+            for (int t = 0; t < dp.getNextIndex(Coords.T); t++) {
+               for (int z = 0; z < dp.getNextIndex(Coords.Z); z++) {
+                  int pos = p;
+                  if (!allPositions) {
+                     pos = 0;
+                  }
+                  final Coords.Builder builder = Coordinates.builder().t(t).z(z).p(pos);
+                  final List<Image> inImages = new ArrayList<>(nrChannels);
+                  for (int c = 0; c < nrChannels; c++) {
+                     inImages.add(dp.getImage(builder.c(c).build()));
+                  }
+                  pending.add(executor.submit(() -> {
+                     List<Image> result = new ArrayList<>(nrChannels);
+                     // crop channel 0 image
+                     Image inImage = inImages.get(0);
+                     if (inImage != null) {
+                        result.add(crop(inImage, 0, 0, cropWidth, cropHeight));
+                     }
+                     for (int c = 1; c < nrChannels; c++) {
+                        // transform other channel to channel 0, cropped to size
+                        inImage = inImages.get(c);
+                        if (inImage != null) {
+                           result.add(transformImage(inImage, warps.get(c - 1)));
+                        }
+                     }
+                     return result;
+                  }));
+                  if (pending.size() >= 2 * nrThreads) {
+                     putImages(outStore, pending.remove());
+                  }
                }
             }
          }
+         while (!pending.isEmpty()) {
+            putImages(outStore, pending.remove());
+         }
+      } finally {
+         for (Future<List<Image>> future : pending) {
+            future.cancel(true);
+         }
+         executor.shutdown();
       }
+   }
 
+   private static void putImages(Datastore store, Future<List<Image>> future)
+         throws IOException, ImageAffineTransformException {
+      List<Image> images;
+      try {
+         images = future.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new ImageAffineTransformException("Interrupted while correcting images");
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof IOException) {
+            throw (IOException) cause;
+         } else if (cause instanceof ImageAffineTransformException) {
+            throw (ImageAffineTransformException) cause;
+         }
+         throw new ImageAffineTransformException("Failed to correct images: " + cause);
+      }
+      for (Image image : images) {
+         store.putImage(image);
+      }
    }
 
    public Image crop(Image inImg, int x, int y, int width, int height)
@@ -140,7 +192,7 @@ public class ImageAffineTransform {
       if (ip != null) {
          ip.setRoi(new Roi(x, y, width, height));
          ImageProcessor copyIp = ip.crop();
-         return studio_.data().createImage(copyIp.getPixels(),
+         return studio_.data().wrapImage(copyIp.getPixels(),
                copyIp.getWidth(), copyIp.getHeight(),
                inImg.getBytesPerPixel(), inImg.getNumComponents(),
                inImg.getCoords().copyBuilder().build(),
@@ -161,19 +213,9 @@ public class ImageAffineTransform {
     */
    public Image transformImage(Image inImg, AffineTransformOp aOp
    ) throws ImageAffineTransformException {
-
-      if (inImg.getBytesPerPixel() != 2) {
-         throw new ImageAffineTransformException(
-               "ImageAffineTransform only works with 2 bytes per pixel");
-      }
-
-      ShortProcessor testProc = (ShortProcessor) studio_.data().ij().createProcessor(inImg);
-      BufferedImage bi16 = testProc.get16BitBufferedImage();
-      BufferedImage afBi16 = aOp.filter(bi16, null);
-      ImagePlus p = new ImagePlus("", afBi16);
-
-      return studio_.data().ij()
-            .createImage(p.getProcessor(), inImg.getCoords(), inImg.getMetadata());
+      int[] size = AffineWarp.getOutputSize(aOp.getTransform(),
+            inImg.getWidth(), inImg.getHeight());
+      return transformImage(inImg, aOp, size[0], size[1]);
    }
 
    /**
@@ -189,34 +231,29 @@ public class ImageAffineTransform {
     */
    public Image transformImage(Image inImg, AffineTransformOp aOp, int width, int height
    ) throws ImageAffineTransformException {
+      return transformImage(inImg, new AffineWarp(aOp.getTransform(),
+            aOp.getInterpolationType(), inImg.getWidth(), inImg.getHeight(), width, height));
+   }
 
-      if (inImg.getBytesPerPixel() != 2) {
+   /**
+    * Transforms the image with a precomputed warp, which also sets the size
+    * of the result.
+    *
+    * @param inImg Input Image to be transformed
+    * @param warp  Warp for images of the size of the input image
+    * @return Transformed Image
+    * @throws ImageAffineTransformException when input != 16 bit image, or
+    *                                       has a different size
+    */
+   public Image transformImage(Image inImg, AffineWarp warp)
+         throws ImageAffineTransformException {
+      if (inImg.getBytesPerPixel() != 2 || inImg.getNumComponents() != 1) {
          throw new ImageAffineTransformException(
                "ImageAffineTransform only works with 2 bytes per pixel");
       }
-
-      ShortProcessor testProc = (ShortProcessor) studio_.data().ij().createProcessor(inImg);
-      BufferedImage bi16 = testProc.get16BitBufferedImage();
-      BufferedImage aOpResult = new BufferedImage(bi16.getWidth(),
-            bi16.getHeight(), BufferedImage.TYPE_USHORT_GRAY);
-      aOp.filter(bi16, aOpResult);
-      if (interpolationType_ == AffineTransformOp.TYPE_NEAREST_NEIGHBOR) {
-         aOp.filter(bi16, aOpResult);
-      } else {
-         // work around bug in AffineTransformationOp, see:
-         // http://stackoverflow.com/questions/2428109/java-error-on-bilinear-interpolation-of-16-bit-data
-         // Note: although the image looks alright, histogram values are strangely distorted
-         // presumably, since calculations are done with bytes rather than shorts
-         Graphics2D g = aOpResult.createGraphics();
-         g.transform(aOp.getTransform());
-         g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, renderingHint_);
-         g.drawImage(bi16, null, 0, 0);
-      }
-      ImagePlus p = new ImagePlus("", aOpResult);
-      ImageProcessor destProc = p.getProcessor();
-      destProc.setRoi(0, 0, width, height);
-      destProc = destProc.crop();
-
-      return studio_.data().ij().createImage(destProc, inImg.getCoords(), inImg.getMetadata());
+      // The warp only reads the input pixels
+      short[] pixels = warp.warp((short[]) inImg.getRawPixels());
+      return studio_.data().wrapImage(pixels, warp.getWidth(), warp.getHeight(), 2, 1,
+            inImg.getCoords(), inImg.getMetadata());
    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,152 @@
+package org.micromanager.channelcorrector.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferUShort;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AffineWarp}.
+ */
+public class AffineWarpTest {
+   private static final int WIDTH = 61;
+   private static final int HEIGHT = 47;
+
+   private static short[] randomPixels(long seed) {
+      Random random = new Random(seed);
+      short[] pixels = new short[WIDTH * HEIGHT];
+      for (int i = 0; i < pixels.length; i++) {
+         pixels[i] = (short) random.nextInt(65536);
+      }
+      return pixels;
+   }
+
+   /**
+    * What ImageAffineTransform did before AffineWarp: AffineTransformOp on a
+    * 16-bit BufferedImage of the input size, cropped.
+    */
+   private static short[] transformOp(short[] in, AffineTransform transform,
+                                      int outWidth, int outHeight) {
+      BufferedImage input = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_USHORT_GRAY);
+      short[] inData = ((DataBufferUShort) input.getRaster().getDataBuffer()).getData();
+      System.arraycopy(in, 0, inData, 0, in.length);
+      BufferedImage output = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_USHORT_GRAY);
+      new AffineTransformOp(transform, AffineTransformOp.TYPE_NEAREST_NEIGHBOR)
+            .filter(input, output);
+      short[] outData = ((DataBufferUShort) output.getRaster().getDataBuffer()).getData();
+      short[] result = new short[outWidth * outHeight];
+      for (int y = 0; y < outHeight; y++) {
+         System.arraycopy(outData, y * WIDTH, result, y * outWidth, outWidth);
+      }
+      return result;
+   }
+
+   private static AffineWarp warp(AffineTransform transform, int interpolationType)
+         throws ImageAffineTransformException {
+      int[] size = AffineWarp.getOutputSize(transform, WIDTH, HEIGHT);
+      return new AffineWarp(transform, interpolationType, WIDTH, HEIGHT,
+            Math.min(WIDTH, size[0]), Math.min(HEIGHT, size[1]));
+   }
+
+   private static void assertNearestMatchesTransformOp(AffineTransform transform)
+         throws ImageAffineTransformException {
+      short[] in = randomPixels(1);
+      AffineWarp warp = warp(transform, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
+      short[] expected = transformOp(in, transform, warp.getWidth(), warp.getHeight());
+      short[] actual = warp.warp(in);
+      int differences = 0;
+      for (int i = 0; i < expected.length; i++) {
+         if (expected[i] != actual[i]) {
+            differences++;
+         }
+      }
+      // AffineTransformOp locates pixels in single precision, which may
+      // pick the neighbor of a pixel center that is within rounding error
+      // of an input pixel edge
+      assertTrue(transform + ": " + differences + " pixels differ",
+            differences <= expected.length / 1000);
+   }
+
+   @Test
+   public void nearestNeighborMatchesAffineTransformOp() throws Exception {
+      assertNearestMatchesTransformOp(AffineTransform.getTranslateInstance(-3.3, -1.7));
+      assertNearestMatchesTransformOp(AffineTransform.getScaleInstance(1.04, 0.97));
+      AffineTransform rotation = AffineTransform.getRotateInstance(0.03, 30, 20);
+      rotation.translate(-2.2, 1.4);
+      assertNearestMatchesTransformOp(rotation);
+   }
+
+   @Test
+   public void identityKeepsPixels() throws Exception {
+      short[] in = randomPixels(2);
+      for (int type : new int[] {AffineTransformOp.TYPE_NEAREST_NEIGHBOR,
+            AffineTransformOp.TYPE_BILINEAR, AffineTransformOp.TYPE_BICUBIC}) {
+         assertArrayEquals(in, warp(new AffineTransform(), type).warp(in));
+      }
+   }
+
+   @Test
+   public void bilinearAveragesNeighbors() throws Exception {
+      short[] in = randomPixels(3);
+      // Each output pixel center lies halfway between two input pixel centers
+      AffineWarp warp = warp(AffineTransform.getTranslateInstance(-0.5, 0),
+            AffineTransformOp.TYPE_BILINEAR);
+      short[] out = warp.warp(in);
+      for (int y = 0; y < warp.getHeight(); y++) {
+         for (int x = 0; x < warp.getWidth() - 1; x++) {
+            int left = in[y * WIDTH + x] & 0xffff;
+            int right = in[y * WIDTH + x + 1] & 0xffff;
+            assertEquals((left + right) / 2.0, out[y * warp.getWidth() + x] & 0xffff, 0.5);
+         }
+      }
+   }
+
+   @Test
+   public void bicubicKeepsSixteenBitRange() throws Exception {
+      // A step from 0 to the maximum makes the cubic kernel over- and
+      // undershoot, which has to be clipped instead of wrapping around
+      short[] in = new short[WIDTH * HEIGHT];
+      for (int y = 0; y < HEIGHT; y++) {
+         for (int x = WIDTH / 2; x < WIDTH; x++) {
+            in[y * WIDTH + x] = (short) 65535;
+         }
+      }
+      AffineWarp warp = warp(AffineTransform.getTranslateInstance(-0.3, 0),
+            AffineTransformOp.TYPE_BICUBIC);
+      short[] out = warp.warp(in);
+      int row = (HEIGHT / 2) * warp.getWidth();
+      assertEquals(0, out[row + WIDTH / 2 - 3] & 0xffff);
+      assertEquals(65535, out[row + WIDTH / 2 + 2] & 0xffff);
+      for (int x = 0; x < WIDTH / 2 - 2; x++) {
+         // Values left of the step would be negative without clipping
+         assertTrue(x + ": " + (out[row + x] & 0xffff), (out[row + x] & 0xffff) < 1000);
+      }
+      for (int x = WIDTH / 2 + 1; x < warp.getWidth(); x++) {
+         assertTrue(x + ": " + (out[row + x] & 0xffff), (out[row + x] & 0xffff) > 64535);
+      }
+   }
+
+   @Test
+   public void bicubicKeepsConstantImages() throws Exception {
+      short[] in = new short[WIDTH * HEIGHT];
+      Arrays.fill(in, (short) 40000);
+      AffineTransform transform = AffineTransform.getRotateInstance(0.05, 30, 20);
+      transform.translate(-1.3, -0.6);
+      short[] out = warp(transform, AffineTransformOp.TYPE_BICUBIC).warp(in);
+      for (short value : out) {
+         assertTrue((value & 0xffff) == 0 || (value & 0xffff) == 40000);
+      }
+   }
+
+   @Test(expected = ImageAffineTransformException.class)
+   public void sizeMustMatch() throws Exception {
+      warp(new AffineTransform(), AffineTransformOp.TYPE_BILINEAR).warp(new short[10]);
+   }
+}
@@ -22,18 +22,16 @@
 package org.micromanager.duplicator;
 
 import ij.gui.Roi;
-import ij.process.ImageProcessor;
 import java.awt.Component;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import javax.swing.JOptionPane;
 import javax.swing.SwingWorker;
-import org.micromanager.MultiStagePosition;
 import org.micromanager.Studio;
 import org.micromanager.data.Coords;
 import org.micromanager.data.DataProvider;
@@ -42,10 +40,8 @@ import org.micromanager.data.DatastoreFrozenException;
 import org.micromanager.data.DatastoreRewriteException;
 import org.micromanager.data.Image;
 import org.micromanager.data.SummaryMetadata;
-import org.micromanager.display.ChannelDisplaySettings;
 import org.micromanager.display.DataViewer;
 import org.micromanager.display.DataViewerListener;
-import org.micromanager.display.DisplaySettings;
 import org.micromanager.display.DisplayWindow;
 import org.micromanager.display.internal.displaywindow.DisplayController;
 import org.micromanager.internal.utils.ProgressBar;
@@ -157,6 +153,43 @@ public class DuplicatorExecutor extends SwingWorker<Void, Void> {
       }
    }
 
+   /**
+    * Coords of the images in the subset, in the order of the axes in the
+    * summary metadata of the original (the last axis varying slowest).
+    */
+   private static List<Coords> sortedCoords(DataProvider subset) {
+      final List<String> axisOrder =
+            new ArrayList<>(subset.getSummaryMetadata().getOrderedAxes());
+      Collections.reverse(axisOrder);
+      List<Coords> coords = new ArrayList<>();
+      for (Coords c : subset.getUnorderedImageCoords()) {
+         coords.add(c);
+      }
+      // Sort on the indices looked up once per image, rather than in every comparison.
+      // The last element of each key is the position of the coords in the list.
+      int[][] keys = new int[coords.size()][];
+      for (int i = 0; i < keys.length; i++) {
+         keys[i] = new int[axisOrder.size() + 1];
+         for (int a = 0; a < axisOrder.size(); a++) {
+            keys[i][a] = coords.get(i).getIndex(axisOrder.get(a));
+         }
+         keys[i][axisOrder.size()] = i;
+      }
+      Arrays.sort(keys, (k1, k2) -> {
+         for (int a = 0; a < k1.length - 1; a++) {
+            if (k1[a] != k2[a]) {
+               return k1[a] < k2[a] ? -1 : 1;
+            }
+         }
+         return 0;
+      });
+      List<Coords> result = new ArrayList<>(coords.size());
+      for (int[] key : keys) {
+         result.add(coords.get(key[key.length - 1]));
+      }
+      return result;
+   }
+
    @Override
    protected Void doInBackground() {
       DataProvider oldStore = theWindow_.getDataProvider();
@@ -178,85 +211,23 @@ public class DuplicatorExecutor extends SwingWorker<Void, Void> {
       }
 
       final Datastore newStore = tmpStore;
-      final DisplaySettings originalDisplaySettings = theWindow_.getDisplaySettings();
-      final DisplaySettings.Builder newDisplaySettingsBuilder =
-            theWindow_.getDisplaySettings().copyBuilder();
 
       // TODO: use Overlays instead
       final Roi roi = theWindow_.getImagePlus().getRoi();
-
-      Coords.CoordsBuilder newSizeCoordsBuilder = studio_.data().coordsBuilder();
-      for (String axis : oldStore.getAxes()) {
-         newSizeCoordsBuilder.index(axis, oldStore.getNextIndex(axis) - 1);
-      }
-      SummaryMetadata oldMetadata = oldStore.getSummaryMetadata();
-      List<String> channelNames = oldMetadata.getChannelNameList();
-      if (channels_ != null) {
-         List<ChannelDisplaySettings> channelDisplaySettings = new ArrayList<>();
-         List<String> chNameList = new ArrayList<>();
-         int index = 0;
-         for (Map.Entry<String, Boolean> channel : channels_.entrySet()) {
-            if (channel.getValue()) {
-               chNameList.add(channel.getKey());
-               channelDisplaySettings.add(originalDisplaySettings.getChannelSettings(index));
-            }
-            index++;
-         }
-         channelNames = chNameList;
-         newDisplaySettingsBuilder.channels(channelDisplaySettings);
-      }
-      float nrToBeCopied = 1;
-      if (channels_ != null && !channels_.isEmpty()) {
-         long selectedChannels = channels_.values().stream().filter(v -> v).count();
-         nrToBeCopied *= Math.max(1, selectedChannels);
-      }
-      for (String axis : oldStore.getAxes()) {
-         if (mins_.containsKey(axis)) {
-            int min = mins_.get(axis);
-            int max = maxes_.get(axis);
-            newSizeCoordsBuilder.index(axis, max - min + 1);
-            nrToBeCopied *= (max - min + 1);
-         }
-      }
-
-      Integer width = oldMetadata.getImageWidth();
-      if (roi != null) {
-         width = roi.getBounds().width;
-      }
-      Integer height = oldMetadata.getImageHeight();
-      if (roi != null) {
-         height = roi.getBounds().height;
-      }
+      final SubsetDataProvider subset = new SubsetDataProvider(studio_.data(), oldStore, newName_,
+            mins_, maxes_, channels_, roi == null ? null : roi.getBounds());
+      final SummaryMetadata newMetadata = subset.getSummaryMetadata();
 
       CloseViewerListener closeListener = null;
       int nrCopied = 0;
       boolean success = false;
 
       try {
-         if (width == null || height == null) {
+         if (newMetadata.getImageWidth() == null || newMetadata.getImageHeight() == null) {
             throw new DuplicatorException("Width and/or height is unexpectedly null");
          }
 
-         // assemble SummaryMetadata for the new store
-         SummaryMetadata.Builder metadataBuilder = oldMetadata.copyBuilder();
-         // Copy only the relevant stage positions
-         if (oldMetadata.getStagePositionList() != null
-                 && !oldMetadata.getStagePositionList().isEmpty()) {
-            if (mins_.containsKey(Coords.P) && maxes_.containsKey(Coords.P)) {
-               List<MultiStagePosition> newStagePositionList = new ArrayList<>();
-               for (int p = mins_.get(Coords.P); p <= maxes_.get(Coords.P); p++) {
-                  newStagePositionList.add(oldMetadata.getStagePositionList().get(p));
-               }
-               metadataBuilder.stagePositions(newStagePositionList);
-            }
-         }
-         newSizeCoordsBuilder.channel(channelNames.size());
-         metadataBuilder
-                 .channelNames(channelNames)
-                 .imageWidth(width)
-                 .imageHeight(height)
-                 .intendedDimensions(newSizeCoordsBuilder.build());
-         newStore.setSummaryMetadata(metadataBuilder.build());
+         newStore.setSummaryMetadata(newMetadata);
 
          // The implementations of the store set SummaryMetadata on another thread.
          // This can lead to disasters, so we have to poll to make sure SummaryMetadata is
@@ -282,113 +253,29 @@ public class DuplicatorExecutor extends SwingWorker<Void, Void> {
 
          newStore.setName(newName_);
          final DisplayWindow copyDisplay = studio_.displays().createDisplay(newStore);
-         copyDisplay.setDisplaySettings(newDisplaySettingsBuilder.build());
+         copyDisplay.setDisplaySettings(
+               subset.getDisplaySettings(theWindow_.getDisplaySettings()));
          closeListener = new CloseViewerListener(copyDisplay);
          copyDisplay.addListener(closeListener, 1);
 
-         Iterable<Coords> unorderedImageCoords = oldStore.getUnorderedImageCoords();
-         List<Coords> orderedImageCoords = new ArrayList<>();
-         for (Coords c : unorderedImageCoords) {
-            orderedImageCoords.add(c);
-         }
-         // Defensive copy before reversing to avoid mutating the live metadata list.
-         final List<String> axisOrder =
-               new ArrayList<>(oldStore.getSummaryMetadata().getOrderedAxes());
-         Collections.reverse(axisOrder);
+         List<Coords> orderedImageCoords = sortedCoords(subset);
+         final float nrToBeCopied = Math.max(1, orderedImageCoords.size());
 
-         Collections.sort(orderedImageCoords, new Comparator<Coords>() {
-            @Override
-            public int compare(Coords o1, Coords o2) {
-               for (String axis : axisOrder) {
-                  if (o1.getIndex(axis)  < o2.getIndex(axis)) {
-                     return -1;
-                  }  else if (o1.getIndex(axis) > o2.getIndex(axis)) {
-                     return 1;
-                  }
-               }
-               return 0;
+         // Images are read on this thread: the source storage may not
+         // support reading from several threads at once
+         for (Coords newCoords : orderedImageCoords) {
+            Image newImage = subset.getImage(newCoords);
+            if (closeListener.isCancelled()) {
+               freezeQuietly(newStore);
+               return null;
             }
-         });
-
-         for (Coords oldCoord : orderedImageCoords) {
-            List<String> oldAxes = oldStore.getAxes();
-            boolean copy = !oldAxes.contains(Coords.CHANNEL);
-            for (String axis : oldStore.getAxes()) {
-               if (axis.equals(Coords.CHANNEL)) {
-                  if (channels_ == null) {
-                     copy = true;
-                  } else {
-                     // Walk the ordered channel map to find whether the channel at
-                     // this coord index is selected.  Default false so deselected
-                     // channels are never copied.
-                     copy = false;
-                     int index = 0;
-                     for (Map.Entry<String, Boolean> channel : channels_.entrySet()) {
-                        if (channel.getValue() && oldCoord.getIndex(axis) == index) {
-                           copy = true;
-                           break;
-                        }
-                        index++;
-                     }
-                  }
-               }
-            }
-            for (String axis : oldStore.getAxes()) {
-               if (copy && mins_.containsKey(axis) && maxes_.containsKey(axis)) {
-                  if (oldCoord.getIndex(axis) < (mins_.get(axis))) {
-                     copy = false;
-                  }
-                  if (oldCoord.getIndex(axis) > maxes_.get(axis)) {
-                     copy = false;
-                  }
-               }
-            }
-            if (copy) {
-               Coords.CoordsBuilder newCoordBuilder = oldCoord.copyBuilder();
-               for (String axis : oldCoord.getAxes()) {
-                  if (axis.equals(Coords.CHANNEL)) {
-                     if (channels_ != null && channels_.size() > 0) {
-                        int chIndex = oldCoord.getIndex(axis);
-                        if (chIndex < oldMetadata.getChannelNameList().size()) {
-                           String channelName = oldMetadata.getChannelNameList().get(chIndex);
-                           if (channelNames.contains(channelName)) {
-                              int newIndex = channelNames.indexOf(channelName);
-                              newCoordBuilder.index(axis, newIndex);
-                           }
-                        }
-                     }
-                  }
-                  if (mins_.containsKey(axis)) {
-                     newCoordBuilder.index(axis, oldCoord.getIndex(axis) - mins_.get(axis));
-                  }
-               }
-               Image img = oldStore.getImage(oldCoord);
-               Coords newCoords = newCoordBuilder.build();
-               Image newImgShallow = img.copyAtCoords(newCoords);
-               if (roi != null) {
-                  ImageProcessor ip = studio_.data().ij().createProcessor(img);
-                  if (ip != null) {
-                     ip.setRoi(roi);
-                     ImageProcessor copyIp = ip.crop();
-                     newImgShallow = studio_.data().createImage(copyIp.getPixels(),
-                             copyIp.getWidth(), copyIp.getHeight(),
-                             img.getBytesPerPixel(), img.getNumComponents(),
-                             newCoords, newImgShallow.getMetadata());
-                  } else {
-                     throw new DuplicatorException(
-                           "Unsupported pixel type.  Can only copy 8 or 16 bit images.");
-                  }
-               }
-               if (closeListener.isCancelled()) {
-                  freezeQuietly(newStore);
-                  return null;
-               }
-               newStore.putImage(newImgShallow);
-               nrCopied++;
-               int pct = (int) Math.min(99, (nrCopied / nrToBeCopied) * 100.0);
-               setProgress(Math.max(0, pct));
-
+            if (newImage == null) {
+               continue;
             }
+            newStore.putImage(newImage);
+            nrCopied++;
+            int pct = (int) Math.min(99, (nrCopied / nrToBeCopied) * 100.0);
+            setProgress(Math.max(0, pct));
          }
          if (nrCopied == 0) {
             copyDisplay.close();
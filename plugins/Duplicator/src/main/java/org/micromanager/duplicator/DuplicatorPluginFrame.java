@@ -25,6 +25,7 @@ import static org.micromanager.data.internal.DefaultDatastore.getPreferredSaveMo
 import static org.micromanager.data.internal.DefaultDatastore.setPreferredSaveMode;
 
 import com.google.common.eventbus.Subscribe;
+import ij.gui.Roi;
 import java.awt.Toolkit;
 import java.awt.Window;
 import java.awt.event.ActionEvent;
@@ -111,6 +112,7 @@ public class DuplicatorPluginFrame extends JDialog {
 
    // Keys for profile settings
    private static final String UNSELECTED_CHANNELS = "UnSelectedChannels";
+   private static final String VIRTUAL = "Virtual";
 
    /**
     * Constructs the User Interface for data duplication.
@@ -262,9 +264,13 @@ public class DuplicatorPluginFrame extends JDialog {
       final JLabel fileField = new JLabel("");
       final JButton chooserButton = new JButton("...");
       final JLabel saveMethod = new JLabel("Memory");
+      final JCheckBox virtualBox = new JCheckBox("Virtual (no copy)");
+      virtualBox.setToolTipText("<html>Show the selection without copying the data.<br>"
+            + "Images are read from the original, and cropped, when they are shown.</html>");
       saveBox.addActionListener(e -> {
          fileField.setEnabled(saveBox.isSelected());
          chooserButton.setEnabled(saveBox.isSelected());
+         virtualBox.setEnabled(!saveBox.isSelected());
          if (saveBox.isSelected()) {
             chooseDataLocation(ourFrame, fileField, saveMethod);
          } else {
@@ -277,10 +283,20 @@ public class DuplicatorPluginFrame extends JDialog {
       chooserButton.addActionListener(e -> {
          chooseDataLocation(ourFrame, fileField, saveMethod);
       });
+      virtualBox.addActionListener(e -> {
+         saveBox.setEnabled(!virtualBox.isSelected());
+         saveMethod.setText(virtualBox.isSelected() ? "Virtual" : "Memory");
+      });
+      virtualBox.setSelected(settings.getBoolean(VIRTUAL, false));
+      saveBox.setEnabled(!virtualBox.isSelected());
+      if (virtualBox.isSelected()) {
+         saveMethod.setText("Virtual");
+      }
 
       super.add(saveBox);
       super.add(fileField, "wmin 420, span 2, grow");
       super.add(chooserButton, "wrap");
+      super.add(virtualBox, "span 4, wrap");
 
       JButton okButton = new JButton("OK");
       okButton.addActionListener(new ActionListener() {
@@ -312,6 +328,12 @@ public class DuplicatorPluginFrame extends JDialog {
                channels.put(channelName, true);
             }
             settings.putStringList(UNSELECTED_CHANNELS, unselectedChannels);
+            settings.putBoolean(VIRTUAL, virtualBox.isSelected());
+            if (virtualBox.isSelected()) {
+               showVirtualCopy(nameField.getText(), mins, maxes, channels);
+               cpFrame.dispose();
+               return;
+            }
             Datastore.SaveMode saveMode = null;
             if (saveBox.isSelected()) {
                saveMode = getPreferredSaveMode(studio);
@@ -359,6 +381,21 @@ public class DuplicatorPluginFrame extends JDialog {
       }
    }
 
+   /**
+    * Shows the selection in a new window, without copying any data.
+    * The images are read from the original data when they are shown, so
+    * the new window only works as long as the original data is open.
+    */
+   private void showVirtualCopy(String name, Map<String, Integer> mins,
+                                Map<String, Integer> maxes,
+                                LinkedHashMap<String, Boolean> channels) {
+      Roi roi = ourWindow_.getImagePlus().getRoi();
+      SubsetDataProvider subset = new SubsetDataProvider(studio_.data(), ourProvider_, name,
+            mins, maxes, channels, roi == null ? null : roi.getBounds());
+      DisplayWindow display = studio_.displays().createDisplay(subset);
+      display.setDisplaySettings(subset.getDisplaySettings(ourWindow_.getDisplaySettings()));
+   }
+
    private void chooseDataLocation(DuplicatorPluginFrame ourFrame, JLabel fileField,
                                    JLabel saveMethod) {
       // Almost verbatim copied from the DefaultDatastore.  It would be nice
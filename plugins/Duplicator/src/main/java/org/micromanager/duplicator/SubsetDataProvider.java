@@ -0,0 +1,467 @@
+///////////////////////////////////////////////////////////////////////////////
+//FILE:          SubsetDataProvider.java
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Duplicator plugin
+//-----------------------------------------------------------------------------
+//
+// COPYRIGHT:    Regents of the University of California 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.duplicator;
+
+import com.google.common.eventbus.EventBus;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.micromanager.MultiStagePosition;
+import org.micromanager.data.Coords;
+import org.micromanager.data.DataManager;
+import org.micromanager.data.DataProvider;
+import org.micromanager.data.Image;
+import org.micromanager.data.SummaryMetadata;
+import org.micromanager.display.ChannelDisplaySettings;
+import org.micromanager.display.DisplaySettings;
+
+/**
+ * Read-only view of a range of axis positions, a selection of channels and a
+ * rectangle of the images of another DataProvider.
+ *
+ * <p>Nothing is copied when the view is created.  Coords are translated to
+ * the source when images are requested, and images are cropped when they are
+ * read, so that the view can be displayed right away and only costs memory
+ * for the images that are looked at.  Images that are added to the source
+ * later are part of the view, but no events are posted for them.</p>
+ *
+ * <p>In the view, the index along each axis that has a range starts at 0,
+ * and the selected channels are numbered in their original order.</p>
+ */
+public final class SubsetDataProvider implements DataProvider {
+   private final DataManager data_;
+   private final DataProvider source_;
+   private final String name_;
+   private final Map<String, Integer> mins_;
+   private final Map<String, Integer> maxes_;
+   // Channel index in the view to channel index in the source, or null when
+   // all channels are used
+   private final int[] sourceChannels_;
+   // Channel index in the source to channel index in the view, -1 when not used
+   private final int[] viewChannels_;
+   private final Rectangle roi_;
+   private final SummaryMetadata summaryMetadata_;
+   private final EventBus bus_ = new EventBus();
+
+   /**
+    * Creates the view.
+    *
+    * @param data Used to create coordinates and the cropped images
+    * @param source DataProvider to be viewed
+    * @param name Name of the view
+    * @param mins 0-based first index to use, for the axes that have a range
+    * @param maxes 0-based last index to use, for the axes that have a range
+    * @param channels Names of the channels of the source, in order, with
+    *                 whether they are used.  Null to use all channels.
+    * @param roi Part of the images to use, or null for the whole image
+    */
+   public SubsetDataProvider(DataManager data, DataProvider source, String name,
+                             Map<String, Integer> mins, Map<String, Integer> maxes,
+                             LinkedHashMap<String, Boolean> channels, Rectangle roi) {
+      data_ = data;
+      source_ = source;
+      name_ = name;
+      mins_ = new HashMap<>();
+      maxes_ = new HashMap<>();
+      for (Map.Entry<String, Integer> entry : mins.entrySet()) {
+         if (maxes.containsKey(entry.getKey())) {
+            mins_.put(entry.getKey(), entry.getValue());
+            maxes_.put(entry.getKey(), maxes.get(entry.getKey()));
+         }
+      }
+
+      SummaryMetadata sourceMetadata = source.getSummaryMetadata();
+      List<String> channelNames = sourceMetadata.getChannelNameList();
+      if (channels != null) {
+         List<String> selectedNames = new ArrayList<>();
+         List<Integer> selected = new ArrayList<>();
+         viewChannels_ = new int[channels.size()];
+         int index = 0;
+         for (Map.Entry<String, Boolean> channel : channels.entrySet()) {
+            viewChannels_[index] = -1;
+            if (channel.getValue()) {
+               viewChannels_[index] = selected.size();
+               selected.add(index);
+               selectedNames.add(channel.getKey());
+            }
+            index++;
+         }
+         sourceChannels_ = new int[selected.size()];
+         for (int i = 0; i < sourceChannels_.length; i++) {
+            sourceChannels_[i] = selected.get(i);
+         }
+         channelNames = selectedNames;
+      } else {
+         sourceChannels_ = null;
+         viewChannels_ = null;
+      }
+
+      Integer width = sourceMetadata.getImageWidth();
+      Integer height = sourceMetadata.getImageHeight();
+      if (roi != null && width != null && height != null) {
+         roi = roi.intersection(new Rectangle(0, 0, width, height));
+         if (roi.width == width && roi.height == height) {
+            roi = null;
+         }
+      }
+      if (roi != null) {
+         width = roi.width;
+         height = roi.height;
+      }
+      roi_ = roi;
+
+      Coords.CoordsBuilder newSizeCoordsBuilder = data_.coordsBuilder();
+      for (String axis : source.getAxes()) {
+         newSizeCoordsBuilder.index(axis, source.getNextIndex(axis) - 1);
+      }
+      for (Map.Entry<String, Integer> entry : mins_.entrySet()) {
+         newSizeCoordsBuilder.index(entry.getKey(),
+               maxes_.get(entry.getKey()) - entry.getValue() + 1);
+      }
+      newSizeCoordsBuilder.channel(channelNames.size());
+      SummaryMetadata.Builder metadataBuilder = sourceMetadata.copyBuilder();
+      // Copy only the relevant stage positions
+      List<MultiStagePosition> stagePositions = sourceMetadata.getStagePositionList();
+      if (stagePositions != null && !stagePositions.isEmpty()
+            && mins_.containsKey(Coords.P)) {
+         List<MultiStagePosition> newStagePositionList = new ArrayList<>();
+         for (int p = mins_.get(Coords.P); p <= maxes_.get(Coords.P)
+               && p < stagePositions.size(); p++) {
+            newStagePositionList.add(stagePositions.get(p));
+         }
+         metadataBuilder.stagePositions(newStagePositionList);
+      }
+      metadataBuilder.channelNames(channelNames)
+            .intendedDimensions(newSizeCoordsBuilder.build());
+      if (width != null) {
+         metadataBuilder.imageWidth(width);
+      }
+      if (height != null) {
+         metadataBuilder.imageHeight(height);
+      }
+      summaryMetadata_ = metadataBuilder.build();
+   }
+
+   /**
+    * Translates coords of the view to coords of the source.  An axis that is
+    * not in the given coords is at index 0, as in the rest of the data API.
+    *
+    * @param coords Coords in the view
+    * @return Coords in the source, or null if outside of the view
+    */
+   public Coords toSource(Coords coords) {
+      return toSource(coords, Collections.<String>emptySet());
+   }
+
+   /**
+    * Translates coords of the view to coords of the source, leaving the given
+    * axes as they are.
+    */
+   private Coords toSource(Coords coords, Set<String> untranslated) {
+      Coords.Builder builder = coords.copyBuilder();
+      if (sourceChannels_ != null && !untranslated.contains(Coords.C)) {
+         int index = coords.getIndex(Coords.C);
+         if (index < 0 || index >= sourceChannels_.length) {
+            return null;
+         }
+         builder.index(Coords.C, sourceChannels_[index]);
+      }
+      for (Map.Entry<String, Integer> entry : mins_.entrySet()) {
+         String axis = entry.getKey();
+         if (untranslated.contains(axis)) {
+            continue;
+         }
+         int index = coords.getIndex(axis);
+         if (index < 0 || index > maxes_.get(axis) - entry.getValue()) {
+            return null;
+         }
+         builder.index(axis, index + entry.getValue());
+      }
+      return builder.build();
+   }
+
+   /**
+    * Translates coords of the source to coords of the view.
+    *
+    * @param coords Coords in the source
+    * @return Coords in the view, or null if outside of the view
+    */
+   public Coords fromSource(Coords coords) {
+      Coords.Builder builder = null;
+      if (viewChannels_ != null) {
+         // Images without a channel axis are in the first channel
+         int index = coords.getIndex(Coords.C);
+         if (index < 0 || index >= viewChannels_.length || viewChannels_[index] < 0) {
+            return null;
+         }
+         if (coords.hasAxis(Coords.C)) {
+            builder = coords.copyBuilder();
+            builder.index(Coords.C, viewChannels_[index]);
+         }
+      }
+      for (Map.Entry<String, Integer> entry : mins_.entrySet()) {
+         // Images without the axis are at index 0
+         int index = coords.getIndex(entry.getKey());
+         if (index < entry.getValue() || index > maxes_.get(entry.getKey())) {
+            return null;
+         }
+         if (coords.hasAxis(entry.getKey())) {
+            if (builder == null) {
+               builder = coords.copyBuilder();
+            }
+            builder.index(entry.getKey(), index - entry.getValue());
+         }
+      }
+      return builder == null ? coords : builder.build();
+   }
+
+   /**
+    * Returns the part of the image that is in the view.
+    */
+   private Image crop(Image image, Coords coords) {
+      if (roi_ == null || roi_.x + roi_.width > image.getWidth()
+            || roi_.y + roi_.height > image.getHeight()) {
+         return image.copyAtCoords(coords);
+      }
+      Object pixels = image.getRawPixels();
+      int samplesPerPixel = Array.getLength(pixels) / (image.getWidth() * image.getHeight());
+      Object cropped = Array.newInstance(pixels.getClass().getComponentType(),
+            roi_.width * roi_.height * samplesPerPixel);
+      int rowLength = roi_.width * samplesPerPixel;
+      for (int y = 0; y < roi_.height; y++) {
+         System.arraycopy(pixels,
+               ((roi_.y + y) * image.getWidth() + roi_.x) * samplesPerPixel,
+               cropped, y * rowLength, rowLength);
+      }
+      return data_.wrapImage(cropped, roi_.width, roi_.height,
+            image.getBytesPerPixel(), image.getNumComponents(), coords,
+            image.getMetadata());
+   }
+
+   private Image toView(Image image) {
+      if (image == null) {
+         return null;
+      }
+      Coords coords = fromSource(image.getCoords());
+      return coords == null ? null : crop(image, coords);
+   }
+
+   private List<Image> toView(List<Image> images) {
+      List<Image> result = new ArrayList<>(images.size());
+      for (Image image : images) {
+         Image viewImage = toView(image);
+         if (viewImage != null) {
+            result.add(viewImage);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Display settings for the view, i.e. those of the selected channels.
+    *
+    * @param original Display settings of the source
+    * @return Display settings to use for the view
+    */
+   public DisplaySettings getDisplaySettings(DisplaySettings original) {
+      DisplaySettings.Builder builder = original.copyBuilder();
+      if (sourceChannels_ != null) {
+         List<ChannelDisplaySettings> channelDisplaySettings = new ArrayList<>();
+         for (int sourceChannel : sourceChannels_) {
+            channelDisplaySettings.add(original.getChannelSettings(sourceChannel));
+         }
+         builder.channels(channelDisplaySettings);
+      }
+      return builder.build();
+   }
+
+   @Override
+   public void close() throws IOException {
+      // The source is not ours to close
+   }
+
+   @Override
+   public Image getAnyImage() throws IOException {
+      for (Coords coords : getUnorderedImageCoords()) {
+         Image image = getImage(coords);
+         if (image != null) {
+            return image;
+         }
+      }
+      return null;
+   }
+
+   @Override
+   public List<String> getAxes() {
+      return source_.getAxes();
+   }
+
+   @Override
+   @Deprecated
+   public int getAxisLength(String axis) {
+      return getNextIndex(axis);
+   }
+
+   @Override
+   public int getNextIndex(String axis) {
+      int sourceNext = source_.getNextIndex(axis);
+      if (axis.equals(Coords.C) && sourceChannels_ != null && sourceNext > 0) {
+         return sourceChannels_.length;
+      }
+      if (mins_.containsKey(axis) && sourceNext > 0) {
+         return Math.max(0, Math.min(maxes_.get(axis), sourceNext - 1)
+               - mins_.get(axis) + 1);
+      }
+      return sourceNext;
+   }
+
+   @Override
+   public Image getImage(Coords coords) throws IOException {
+      Coords sourceCoords = toSource(coords);
+      if (sourceCoords == null) {
+         return null;
+      }
+      return toView(source_.getImage(sourceCoords));
+   }
+
+   @Override
+   public List<Image> getImagesMatching(Coords coords) throws IOException {
+      // Axes that are not in the coords match any index; images outside of
+      // the view are dropped by toView
+      Set<String> unmatched = new HashSet<>(mins_.keySet());
+      if (sourceChannels_ != null) {
+         unmatched.add(Coords.C);
+      }
+      unmatched.removeAll(coords.getAxes());
+      Coords sourceCoords = toSource(coords, unmatched);
+      if (sourceCoords == null) {
+         return new ArrayList<>();
+      }
+      return toView(source_.getImagesMatching(sourceCoords));
+   }
+
+   @Override
+   public List<Image> getImagesIgnoringAxes(Coords coords, String... ignoreTheseAxes)
+         throws IOException {
+      Coords sourceCoords = toSource(coords, new HashSet<>(Arrays.asList(ignoreTheseAxes)));
+      if (sourceCoords == null) {
+         return new ArrayList<>();
+      }
+      return toView(source_.getImagesIgnoringAxes(sourceCoords, ignoreTheseAxes));
+   }
+
+   @Override
+   public boolean isFrozen() {
+      return source_.isFrozen();
+   }
+
+   @Override
+   public Coords getMaxIndices() {
+      Coords.CoordsBuilder builder = data_.coordsBuilder();
+      for (String axis : getAxes()) {
+         builder.index(axis, getNextIndex(axis) - 1);
+      }
+      return builder.build();
+   }
+
+   @Override
+   public int getNumImages() {
+      int count = 0;
+      for (Coords ignored : getUnorderedImageCoords()) {
+         count++;
+      }
+      return count;
+   }
+
+   @Override
+   public SummaryMetadata getSummaryMetadata() {
+      return summaryMetadata_;
+   }
+
+   /**
+    * Coords of the images in the view, translated from the coords of the
+    * source while iterating.
+    */
+   @Override
+   public Iterable<Coords> getUnorderedImageCoords() {
+      final Iterable<Coords> sourceCoords = source_.getUnorderedImageCoords();
+      return () -> new Iterator<Coords>() {
+         private final Iterator<Coords> it_ = sourceCoords.iterator();
+         private Coords next_ = advance();
+
+         private Coords advance() {
+            while (it_.hasNext()) {
+               Coords coords = fromSource(it_.next());
+               if (coords != null) {
+                  return coords;
+               }
+            }
+            return null;
+         }
+
+         @Override
+         public boolean hasNext() {
+            return next_ != null;
+         }
+
+         @Override
+         public Coords next() {
+            if (next_ == null) {
+               throw new NoSuchElementException();
+            }
+            Coords result = next_;
+            next_ = advance();
+            return result;
+         }
+      };
+   }
+
+   @Override
+   public boolean hasImage(Coords coords) {
+      Coords sourceCoords = toSource(coords);
+      return sourceCoords != null && source_.hasImage(sourceCoords);
+   }
+
+   @Override
+   public String getName() {
+      return name_;
+   }
+
+   @Override
+   public void registerForEvents(Object obj) {
+      bus_.register(obj);
+   }
+
+   @Override
+   public void unregisterForEvents(Object obj) {
+      bus_.unregister(obj);
+   }
+}
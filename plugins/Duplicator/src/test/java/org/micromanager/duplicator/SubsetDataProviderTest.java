@@ -0,0 +1,295 @@
+package org.micromanager.duplicator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+import org.micromanager.data.Coordinates;
+import org.micromanager.data.Coords;
+import org.micromanager.data.DataProvider;
+import org.micromanager.data.Image;
+import org.micromanager.data.SummaryMetadata;
+import org.micromanager.data.internal.DefaultDataManager;
+import org.micromanager.data.internal.DefaultImage;
+import org.micromanager.data.internal.DefaultMetadata;
+import org.micromanager.data.internal.DefaultSummaryMetadata;
+
+/**
+ * Tests for {@link SubsetDataProvider}, with a source of 3 channels, 5 time
+ * points and 3 slices of 4x3 pixel images.
+ */
+public class SubsetDataProviderTest {
+   private static final int WIDTH = 4;
+   private static final int HEIGHT = 3;
+   private static final int NR_CHANNELS = 3;
+   private static final int NR_FRAMES = 5;
+   private static final int NR_SLICES = 3;
+
+   /**
+    * Pixel value that identifies the plane and the pixel.
+    */
+   private static short value(int c, int t, int z, int x, int y) {
+      return (short) (1000 * c + 100 * t + 10 * z + y * WIDTH + x);
+   }
+
+   private static Coords coords(int c, int t, int z) {
+      return Coordinates.builder().c(c).t(t).z(z).build();
+   }
+
+   /**
+    * DataProvider with all images of the source in memory.
+    */
+   private static final class MapDataProvider implements DataProvider {
+      private final Map<Coords, Image> images_ = new LinkedHashMap<>();
+      private final SummaryMetadata summaryMetadata_ = new DefaultSummaryMetadata.Builder()
+            .channelNames("A", "B", "C").imageWidth(WIDTH).imageHeight(HEIGHT).build();
+
+      MapDataProvider() {
+         for (int c = 0; c < NR_CHANNELS; c++) {
+            for (int t = 0; t < NR_FRAMES; t++) {
+               for (int z = 0; z < NR_SLICES; z++) {
+                  short[] pixels = new short[WIDTH * HEIGHT];
+                  for (int y = 0; y < HEIGHT; y++) {
+                     for (int x = 0; x < WIDTH; x++) {
+                        pixels[y * WIDTH + x] = value(c, t, z, x, y);
+                     }
+                  }
+                  images_.put(coords(c, t, z), new DefaultImage(pixels, WIDTH, HEIGHT, 2, 1,
+                        coords(c, t, z), new DefaultMetadata.Builder().build()));
+               }
+            }
+         }
+      }
+
+      @Override
+      public void close() {
+      }
+
+      @Override
+      public Image getAnyImage() {
+         return images_.values().iterator().next();
+      }
+
+      @Override
+      public List<String> getAxes() {
+         return Arrays.asList(Coords.C, Coords.T, Coords.Z);
+      }
+
+      @Override
+      public int getAxisLength(String axis) {
+         return getNextIndex(axis);
+      }
+
+      @Override
+      public int getNextIndex(String axis) {
+         switch (axis) {
+            case Coords.C:
+               return NR_CHANNELS;
+            case Coords.T:
+               return NR_FRAMES;
+            case Coords.Z:
+               return NR_SLICES;
+            default:
+               return 0;
+         }
+      }
+
+      @Override
+      public Image getImage(Coords coords) {
+         return images_.get(coords);
+      }
+
+      @Override
+      public List<Image> getImagesMatching(Coords coords) {
+         List<Image> result = new ArrayList<>();
+         for (Image image : images_.values()) {
+            boolean matches = true;
+            for (String axis : coords.getAxes()) {
+               matches &= image.getCoords().getIndex(axis) == coords.getIndex(axis);
+            }
+            if (matches) {
+               result.add(image);
+            }
+         }
+         return result;
+      }
+
+      @Override
+      public List<Image> getImagesIgnoringAxes(Coords coords, String... ignoreTheseAxes) {
+         List<Image> result = new ArrayList<>();
+         for (Image image : images_.values()) {
+            if (image.getCoords().copyRemovingAxes(ignoreTheseAxes)
+                  .equals(coords.copyRemovingAxes(ignoreTheseAxes))) {
+               result.add(image);
+            }
+         }
+         return result;
+      }
+
+      @Override
+      public boolean isFrozen() {
+         return true;
+      }
+
+      @Override
+      public Coords getMaxIndices() {
+         return coords(NR_CHANNELS - 1, NR_FRAMES - 1, NR_SLICES - 1);
+      }
+
+      @Override
+      public int getNumImages() {
+         return images_.size();
+      }
+
+      @Override
+      public SummaryMetadata getSummaryMetadata() {
+         return summaryMetadata_;
+      }
+
+      @Override
+      public Iterable<Coords> getUnorderedImageCoords() {
+         return images_.keySet();
+      }
+
+      @Override
+      public boolean hasImage(Coords coords) {
+         return images_.containsKey(coords);
+      }
+
+      @Override
+      public String getName() {
+         return "source";
+      }
+
+      @Override
+      public void registerForEvents(Object obj) {
+      }
+
+      @Override
+      public void unregisterForEvents(Object obj) {
+      }
+   }
+
+   /**
+    * Channels B and C, time points 1 to 3, all slices.
+    */
+   private static SubsetDataProvider subset(Rectangle roi) {
+      Map<String, Integer> mins = new HashMap<>();
+      Map<String, Integer> maxes = new HashMap<>();
+      mins.put(Coords.T, 1);
+      maxes.put(Coords.T, 3);
+      LinkedHashMap<String, Boolean> channels = new LinkedHashMap<>();
+      channels.put("A", false);
+      channels.put("B", true);
+      channels.put("C", true);
+      // Coordinates and images are created without the Studio
+      return new SubsetDataProvider(new DefaultDataManager(null), new MapDataProvider(),
+            "subset", mins, maxes, channels, roi);
+   }
+
+   @Test
+   public void firstIndexOfRangesMapsToMinimum() {
+      SubsetDataProvider subset = subset(null);
+      // Index 0 is not stored in Coords, but still has to be translated
+      assertEquals(coords(1, 1, 0), subset.toSource(coords(0, 0, 0)));
+      assertEquals(coords(1, 1, 2), subset.toSource(coords(0, 0, 2)));
+      assertEquals(coords(2, 3, 1), subset.toSource(coords(1, 2, 1)));
+   }
+
+   @Test
+   public void coordsOutsideOfTheViewAreRejected() {
+      SubsetDataProvider subset = subset(null);
+      assertNull(subset.toSource(coords(2, 0, 0)));
+      assertNull(subset.toSource(coords(0, 3, 0)));
+      assertNull(subset.fromSource(coords(0, 1, 0)));
+      assertNull(subset.fromSource(coords(1, 0, 0)));
+      assertNull(subset.fromSource(coords(1, 4, 0)));
+   }
+
+   @Test
+   public void coordsRoundTrip() {
+      SubsetDataProvider subset = subset(null);
+      for (int c = 0; c < 2; c++) {
+         for (int t = 0; t < 3; t++) {
+            for (int z = 0; z < NR_SLICES; z++) {
+               Coords view = coords(c, t, z);
+               assertEquals(view, subset.fromSource(subset.toSource(view)));
+            }
+         }
+      }
+      for (int c = 1; c < NR_CHANNELS; c++) {
+         for (int t = 1; t <= 3; t++) {
+            Coords source = coords(c, t, 1);
+            assertEquals(source, subset.toSource(subset.fromSource(source)));
+         }
+      }
+   }
+
+   @Test
+   public void nextIndexIsThatOfTheView() {
+      SubsetDataProvider subset = subset(null);
+      assertEquals(2, subset.getNextIndex(Coords.C));
+      assertEquals(3, subset.getNextIndex(Coords.T));
+      assertEquals(NR_SLICES, subset.getNextIndex(Coords.Z));
+      assertEquals(coords(1, 2, NR_SLICES - 1), subset.getMaxIndices());
+      assertEquals(3, subset.getSummaryMetadata().getIntendedDimensions().getIndex(Coords.T));
+      assertEquals(Arrays.asList("B", "C"), subset.getSummaryMetadata().getChannelNameList());
+   }
+
+   @Test
+   public void everyImageOfTheViewCanBeRead() throws Exception {
+      SubsetDataProvider subset = subset(null);
+      Set<Coords> seen = new HashSet<>();
+      for (Coords coords : subset.getUnorderedImageCoords()) {
+         assertTrue(seen.add(coords));
+         Image image = subset.getImage(coords);
+         assertNotNull(coords.toString(), image);
+         assertEquals(coords, image.getCoords());
+         assertTrue(subset.hasImage(coords));
+      }
+      assertEquals(2 * 3 * NR_SLICES, seen.size());
+      assertEquals(2 * 3 * NR_SLICES, subset.getNumImages());
+      // The first selected channel at the first time point of the range
+      Image first = subset.getImage(coords(0, 0, 0));
+      assertEquals(value(1, 1, 0, 0, 0), ((short[]) first.getRawPixels())[0]);
+      assertFalse(subset.hasImage(coords(2, 0, 0)));
+   }
+
+   @Test
+   public void matchingUsesTheMissingAxesAsWildcards() throws Exception {
+      SubsetDataProvider subset = subset(null);
+      List<Image> images = subset.getImagesMatching(Coordinates.builder().z(1).build());
+      assertEquals(2 * 3, images.size());
+      for (Image image : images) {
+         assertEquals(1, image.getCoords().getZ());
+      }
+      images = subset.getImagesIgnoringAxes(coords(0, 0, 2), Coords.C);
+      assertEquals(2, images.size());
+   }
+
+   @Test
+   public void imagesAreCroppedToTheRoi() throws Exception {
+      SubsetDataProvider subset = subset(new Rectangle(1, 1, 2, 2));
+      assertEquals(2, (int) subset.getSummaryMetadata().getImageWidth());
+      assertEquals(2, (int) subset.getSummaryMetadata().getImageHeight());
+      Image image = subset.getImage(coords(1, 2, 1));
+      assertEquals(2, image.getWidth());
+      assertEquals(2, image.getHeight());
+      short[] expected = {value(2, 3, 1, 1, 1), value(2, 3, 1, 2, 1),
+            value(2, 3, 1, 1, 2), value(2, 3, 1, 2, 2)};
+      assertArrayEquals(expected, (short[]) image.getRawPixels());
+   }
+}
@@ -85,6 +85,7 @@ import org.micromanager.data.Coords;
 import org.micromanager.data.Datastore;
 import org.micromanager.data.Image;
 import org.micromanager.data.Metadata;
+import org.micromanager.data.MetadataTable;
 import org.micromanager.data.SummaryMetadata;
 import org.micromanager.display.DataViewer;
 import org.micromanager.display.DisplayPositionChangedEvent;
@@ -1006,11 +1007,14 @@ public class MainForm extends JFrame {
          emGainTextField_.setText(NumberUtils.doubleToDisplayString(emGain));
 
          int nrFrames = dataStore.getNextIndex(Coords.T);
-         Image img0 = dataStore.getImage(img.getCoords().copyBuilder().channel(0).t(0).build());
-         Image imgLast =
-               dataStore.getImage(img.getCoords().copyBuilder().channel(0).t(nrFrames - 1).build());
-         double startTimeMs = img0.getMetadata().getElapsedTimeMs(0.0);
-         double endTimeMs = imgLast.getMetadata().getElapsedTimeMs(0.0);
+         // Only the time stamps are needed, avoid loading the images
+         MetadataTable metadataTable = dataStore.getMetadataTable();
+         double startTimeMs = metadataTable.getValue(img.getCoords().copyBuilder()
+               .channel(0).t(0).build(), MetadataTable.Column.ELAPSED_TIME_MS);
+         double endTimeMs = metadataTable.getValue(img.getCoords().copyBuilder()
+               .channel(0).t(nrFrames - 1).build(), MetadataTable.Column.ELAPSED_TIME_MS);
+         startTimeMs = Double.isNaN(startTimeMs) ? 0.0 : startTimeMs;
+         endTimeMs = Double.isNaN(endTimeMs) ? 0.0 : endTimeMs;
          double msPerFrame = (endTimeMs - startTimeMs) / nrFrames;
          timeIntervalTextField_.setText(NumberUtils.doubleToDisplayString(msPerFrame));
       } catch (IOException ioe) {
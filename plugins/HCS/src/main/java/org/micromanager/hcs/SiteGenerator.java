@@ -12,6 +12,7 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.geom.Point2D;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -61,6 +62,7 @@ public class SiteGenerator extends JFrame implements ParentPlateGUI {
    private static final String SNAKE_ORDER = "Snake";
    private static final String TYPEWRITER_ORDER = "Typewriter";
    private static final String CASCADE_ORDER = "Cascade";
+   private static final String SHORTEST_TRAVEL_ORDER = "Shortest travel";
    
    private static final String ZPLANESTAGE = "Z-Plane stage: ";
 
@@ -99,6 +101,19 @@ public class SiteGenerator extends JFrame implements ParentPlateGUI {
    private static final String PLATE_DESCRIPTION = "plate_description";
    private static final String PLATE_EXTERNAL_ID = "plate_external_id";
    private static final String PLATE_STATUS      = "plate_status";
+   // Stage motion used to estimate travel time, in um/s and um/s^2.  There is no UI
+   // for these; see travelOptimizer() for how to set them.
+   private static final String STAGE_SPEED_X     = "stage_speed_x";
+   private static final String STAGE_SPEED_Y     = "stage_speed_y";
+   private static final String STAGE_SPEED_Z     = "stage_speed_z";
+   private static final String STAGE_ACCEL_X     = "stage_acceleration_x";
+   private static final String STAGE_ACCEL_Y     = "stage_acceleration_y";
+   private static final String STAGE_ACCEL_Z     = "stage_acceleration_z";
+   private static final double DEFAULT_SPEED_XY  = 5000.0;
+   private static final double DEFAULT_ACCEL_XY  = 50000.0;
+   private static final double DEFAULT_SPEED_Z   = 1000.0;
+   private static final double DEFAULT_ACCEL_Z   = 10000.0;
+   private static final long MAX_ORDERING_MS     = 2000;
 
    private final JLabel statusLabel_;
    private final JCheckBox chckbxThreePt_;
@@ -126,6 +141,9 @@ public class SiteGenerator extends JFrame implements ParentPlateGUI {
    private String plateExternalId_  = "";
    private String plateStatus_      = "";
 
+   // Estimated stage travel time of the last position list that was built
+   private String travelEstimate_ = "";
+
    /**
     * Immutable point class for thread-safe cursor position tracking.
     */
@@ -396,13 +414,15 @@ public class SiteGenerator extends JFrame implements ParentPlateGUI {
 
       sidebar.add(new JLabel("<html><b>Site visit order:</b></html>"), "gaptop 14");
       visitOrderInWell_ = new JComboBox<>(
-            new String[] {SNAKE_ORDER, TYPEWRITER_ORDER, CASCADE_ORDER});
+            new String[] {SNAKE_ORDER, TYPEWRITER_ORDER, CASCADE_ORDER,
+                  SHORTEST_TRAVEL_ORDER});
       visitOrderInWell_.addActionListener((ActionEvent e) -> regenerate());
       sidebar.add(new JLabel("In well:"), "split 2");
       sidebar.add(visitOrderInWell_, "growx");
 
       visitOrderBetweenWells_ = new JComboBox<>(
-            new String[] {SNAKE_ORDER, TYPEWRITER_ORDER, CASCADE_ORDER});
+            new String[] {SNAKE_ORDER, TYPEWRITER_ORDER, CASCADE_ORDER,
+                  SHORTEST_TRAVEL_ORDER});
       visitOrderBetweenWells_.addActionListener((ActionEvent e) -> regenerate());
       sidebar.add(new JLabel("Between wells:"), "split 2");
       sidebar.add(visitOrderBetweenWells_, "growx");
@@ -597,7 +617,9 @@ public class SiteGenerator extends JFrame implements ParentPlateGUI {
 
    private void setPositionList(String betweenWellOrder, boolean replaceList) {
       List<WellPositionList> wpl = platePanel_.getSelectedWellPositions();
-      if (!betweenWellOrder.equals(SNAKE_ORDER)) {
+      if (betweenWellOrder.equals(SHORTEST_TRAVEL_ORDER)) {
+         wpl = orderWellsByTravelTime(wpl);
+      } else if (!betweenWellOrder.equals(SNAKE_ORDER)) {
          if (betweenWellOrder.equals(TYPEWRITER_ORDER)) {
             Collections.sort(wpl, (l1, l2) -> {
                if (l1.getRow() == l2.getRow()) {
@@ -623,6 +645,7 @@ public class SiteGenerator extends JFrame implements ParentPlateGUI {
       } else {
          platePl = studio_.positions().getPositionList();
       }
+      final int firstNewPosition = platePl.getNumberOfPositions();
       MultiWellPlate.Builder mwpb = new DefaultMultiWellPlate.Builder();
       mwpb.plateColumns(plate_.getNumColumns());
       mwpb.plateRows(plate_.getNumRows());
@@ -678,6 +701,8 @@ public class SiteGenerator extends JFrame implements ParentPlateGUI {
          }
       }
 
+      reportTravelTime(platePl, firstNewPosition);
+
       try {
          if (studio_ != null) {
             if (platePl.getNumberOfPositions() == 0) {
@@ -878,6 +903,10 @@ public class SiteGenerator extends JFrame implements ParentPlateGUI {
          }
       }
 
+      if (visitOrderInWell_.getSelectedItem().equals(SHORTEST_TRAVEL_ORDER)) {
+         sites = orderSitesByTravelTime(sites);
+      }
+
       if (sites.getNumberOfPositions() == 0 && rows * cols > 0) {
          studio_.logs().showMessage(
                "No imaging sites fall within the well boundaries. "
@@ -886,6 +915,139 @@ public class SiteGenerator extends JFrame implements ParentPlateGUI {
       return sites;
    }
 
+   /**
+    * Stage motion model used to order positions and estimate travel time.  Speed and
+    * acceleration of each axis are read from the SiteGenerator settings in the user
+    * profile, so they can be set to the values of the actual stage:
+    * <ul>
+    * <li>stage_speed_x, stage_speed_y (um/s, default 5000)</li>
+    * <li>stage_acceleration_x, stage_acceleration_y (um/s^2, default 50000)</li>
+    * <li>stage_speed_z (um/s, default 1000)</li>
+    * <li>stage_acceleration_z (um/s^2, default 10000)</li>
+    * </ul>
+    * When one of them is not positive, the error is logged and the defaults are used.
+    */
+   private TravelOptimizer travelOptimizer() {
+      final MutablePropertyMapView settings = studio_.profile().getSettings(SiteGenerator.class);
+      try {
+         return new TravelOptimizer(
+               new TravelOptimizer.AxisMotion(settings.getDouble(STAGE_SPEED_X, DEFAULT_SPEED_XY),
+                     settings.getDouble(STAGE_ACCEL_X, DEFAULT_ACCEL_XY)),
+               new TravelOptimizer.AxisMotion(settings.getDouble(STAGE_SPEED_Y, DEFAULT_SPEED_XY),
+                     settings.getDouble(STAGE_ACCEL_Y, DEFAULT_ACCEL_XY)),
+               new TravelOptimizer.AxisMotion(settings.getDouble(STAGE_SPEED_Z, DEFAULT_SPEED_Z),
+                     settings.getDouble(STAGE_ACCEL_Z, DEFAULT_ACCEL_Z)),
+               MAX_ORDERING_MS);
+      } catch (IllegalArgumentException iae) {
+         studio_.logs().logError(iae, "HCS: invalid stage motion settings, using defaults");
+         TravelOptimizer.AxisMotion xy = new TravelOptimizer.AxisMotion(DEFAULT_SPEED_XY,
+               DEFAULT_ACCEL_XY);
+         return new TravelOptimizer(xy, xy,
+               new TravelOptimizer.AxisMotion(DEFAULT_SPEED_Z, DEFAULT_ACCEL_Z), MAX_ORDERING_MS);
+      }
+   }
+
+   /**
+    * Reorders the sites of a well so that the stage moves as little as possible.
+    * The first site of the grid order is still visited first.
+    */
+   private PositionList orderSitesByTravelTime(PositionList sites) {
+      int n = sites.getNumberOfPositions();
+      double[] xs = new double[n];
+      double[] ys = new double[n];
+      for (int i = 0; i < n; i++) {
+         xs[i] = sites.getPosition(i).getX();
+         ys[i] = sites.getPosition(i).getY();
+      }
+      PositionList ordered = new PositionList();
+      for (int i : travelOptimizer().order(xs, ys, null, 0)) {
+         ordered.addPosition(sites.getPosition(i));
+      }
+      return ordered;
+   }
+
+   /**
+    * Orders wells so that the stage moves as little as possible between them, starting
+    * with the well closest to the current stage position.  Each well is represented by
+    * the mean position of its sites, and, with 3-point focus, the focus plane there.
+    */
+   private List<WellPositionList> orderWellsByTravelTime(List<WellPositionList> wells) {
+      List<WellPositionList> withSites = new ArrayList<>();
+      List<WellPositionList> withoutSites = new ArrayList<>();
+      for (WellPositionList well : wells) {
+         if (well.getSitePositions().getNumberOfPositions() > 0) {
+            withSites.add(well);
+         } else {
+            withoutSites.add(well);
+         }
+      }
+      int n = withSites.size();
+      double[] xs = new double[n];
+      double[] ys = new double[n];
+      double[] zs = useThreePtAF() && focusPlane_ != null && focusPlane_.isValid()
+            ? new double[n] : null;
+      Point2D.Double stage = new Point2D.Double(xyStagePos_.x - offset_.getX(),
+            xyStagePos_.y - offset_.getY());
+      int start = 0;
+      double startDistance = Double.MAX_VALUE;
+      for (int i = 0; i < n; i++) {
+         PositionList sites = withSites.get(i).getSitePositions();
+         for (int j = 0; j < sites.getNumberOfPositions(); j++) {
+            xs[i] += sites.getPosition(j).getX();
+            ys[i] += sites.getPosition(j).getY();
+         }
+         xs[i] /= sites.getNumberOfPositions();
+         ys[i] /= sites.getNumberOfPositions();
+         if (zs != null) {
+            zs[i] = focusPlane_.getZPos(xs[i] + offset_.getX(), ys[i] + offset_.getY());
+         }
+         double distance = stage.distance(xs[i], ys[i]);
+         if (distance < startDistance) {
+            startDistance = distance;
+            start = i;
+         }
+      }
+      List<WellPositionList> ordered = new ArrayList<>(wells.size());
+      if (n > 0) {
+         for (int i : travelOptimizer().order(xs, ys, zs, start)) {
+            ordered.add(withSites.get(i));
+         }
+      }
+      ordered.addAll(withoutSites);
+      return ordered;
+   }
+
+   /**
+    * Logs and displays the estimated stage travel time to visit the positions of
+    * the list, starting at the given index, in list order.
+    */
+   private void reportTravelTime(PositionList pl, int first) {
+      int n = pl.getNumberOfPositions() - first;
+      if (n <= 0) {
+         return;
+      }
+      double[] xs = new double[n];
+      double[] ys = new double[n];
+      double[] zs = useThreePtAF() ? new double[n] : null;
+      int[] order = new int[n];
+      for (int i = 0; i < n; i++) {
+         MultiStagePosition msp = pl.getPosition(first + i);
+         xs[i] = msp.getX();
+         ys[i] = msp.getY();
+         if (zs != null) {
+            zs[i] = msp.getZ();
+         }
+         order[i] = i;
+      }
+      double seconds = travelOptimizer().travelTime(xs, ys, zs, order);
+      travelEstimate_ = "Est. stage travel: " + TextUtils.FMT2.format(seconds) + "s";
+      studio_.logs().logMessage("HCS: estimated stage travel time for " + n + " sites ("
+            + visitOrderInWell_.getSelectedItem() + " in wells, "
+            + visitOrderBetweenWells_.getSelectedItem() + " between wells): "
+            + TextUtils.FMT2.format(seconds) + " s");
+      displayStatus();
+   }
+
    /**
     * Generates a MSP for the given row and column within a well.  MultiStagePosition is
     * centered at the center of the well (i.e. 0,0 is at the center of the well).
@@ -958,7 +1120,8 @@ public class SiteGenerator extends JFrame implements ParentPlateGUI {
             + TextUtils.FMT2.format(xyStagePos_.x) + "um, Y="
             + TextUtils.FMT2.format(xyStagePos_.y) + "um"
             + zStagePart
-            +  ", " + stageWell_;
+            +  ", " + stageWell_
+            + (travelEstimate_.isEmpty() ? "" : "     --      " + travelEstimate_);
       statusLabel_.setText(statusTxt);
    }
 
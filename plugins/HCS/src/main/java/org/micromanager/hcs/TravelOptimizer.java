@@ -0,0 +1,585 @@
+package org.micromanager.hcs;
+
+import java.util.Arrays;
+
+/**
+ * Orders stage positions so that little time is spent moving the stage between them.
+ *
+ * <p>The time to move between two positions is estimated from the speed and acceleration
+ * of each axis, assuming that all axes start and stop at rest and move at the same time.
+ * The visiting order starts with nearest neighbour (the closest position that was not
+ * visited yet), and is then improved with 2-opt (reversing a stretch of the route) and
+ * Or-opt (moving one to three consecutive positions elsewhere) until no move helps or
+ * the time budget runs out. Both only look at the closest few positions of each
+ * position, so that plates with 100,000 sites can be ordered in about a second.</p>
+ *
+ * @author nico
+ */
+public final class TravelOptimizer {
+
+   // number of close positions considered as new neighbours of a position
+   private static final int NR_NEIGHBORS = 8;
+   private static final double EPSILON = 1e-9;
+
+   private final AxisMotion xMotion_;
+   private final AxisMotion yMotion_;
+   private final AxisMotion zMotion_;
+   private final long maxNanos_;
+
+   /**
+    * Speed and acceleration of one stage axis.
+    */
+   public static final class AxisMotion {
+      private final double speed_;
+      private final double acceleration_;
+
+      /**
+       * @param speedUmPerS         maximum speed in um/s
+       * @param accelerationUmPerS2 acceleration (and deceleration) in um/s^2
+       */
+      public AxisMotion(double speedUmPerS, double accelerationUmPerS2) {
+         if (!(speedUmPerS > 0.0) || !(accelerationUmPerS2 > 0.0)) {
+            throw new IllegalArgumentException(
+                  "Stage speed and acceleration need to be larger than 0");
+         }
+         speed_ = speedUmPerS;
+         acceleration_ = accelerationUmPerS2;
+      }
+
+      public double getSpeed() {
+         return speed_;
+      }
+
+      public double getAcceleration() {
+         return acceleration_;
+      }
+
+      /**
+       * Time in seconds to move over the given distance (in um), starting and
+       * stopping at rest.  Short moves never reach full speed.
+       */
+      public double moveTime(double distance) {
+         double d = Math.abs(distance);
+         if (d < speed_ * speed_ / acceleration_) {
+            return 2.0 * Math.sqrt(d / acceleration_);
+         }
+         return d / speed_ + speed_ / acceleration_;
+      }
+   }
+
+   /**
+    * @param xMotion   motion of the X axis
+    * @param yMotion   motion of the Y axis
+    * @param zMotion   motion of the Z axis, or null when Z positions are not taken into account
+    * @param maxMillis maximum time spent improving an order, in milliseconds
+    */
+   public TravelOptimizer(AxisMotion xMotion, AxisMotion yMotion, AxisMotion zMotion,
+         long maxMillis) {
+      xMotion_ = xMotion;
+      yMotion_ = yMotion;
+      zMotion_ = zMotion;
+      maxNanos_ = maxMillis * 1000000L;
+   }
+
+   /**
+    * Estimated time to move between two positions, in seconds.
+    *
+    * @param zs Z positions, or null to ignore Z
+    */
+   public double moveTime(double[] xs, double[] ys, double[] zs, int a, int b) {
+      double t = Math.max(xMotion_.moveTime(xs[a] - xs[b]), yMotion_.moveTime(ys[a] - ys[b]));
+      if (zs != null && zMotion_ != null) {
+         t = Math.max(t, zMotion_.moveTime(zs[a] - zs[b]));
+      }
+      return t;
+   }
+
+   /**
+    * Estimated time, in seconds, to visit the positions in the given order.
+    *
+    * @param zs Z positions, or null to ignore Z
+    */
+   public double travelTime(double[] xs, double[] ys, double[] zs, int[] order) {
+      double total = 0.0;
+      for (int i = 1; i < order.length; i++) {
+         total += moveTime(xs, ys, zs, order[i - 1], order[i]);
+      }
+      return total;
+   }
+
+   /**
+    * Finds a short order in which to visit all positions.
+    *
+    * @param xs    X positions in um
+    * @param ys    Y positions in um
+    * @param zs    Z positions in um, or null to ignore Z
+    * @param start index of the position to visit first
+    * @return indices of the positions, in the order they should be visited
+    */
+   public int[] order(double[] xs, double[] ys, double[] zs, int start) {
+      int n = xs.length;
+      if (n == 0) {
+         return new int[0];
+      }
+      if (start < 0 || start >= n) {
+         throw new IllegalArgumentException("Start position " + start + " out of range");
+      }
+      Route route = new Route(xs, ys, zs);
+      route.nearestNeighbor(start);
+      final long deadline = System.nanoTime() + maxNanos_;
+      boolean improved = n > 3;
+      while (improved && System.nanoTime() < deadline) {
+         improved = route.twoOpt(deadline);
+         improved |= route.orOpt(deadline);
+      }
+      return route.tour_;
+   }
+
+   /**
+    * Working state while ordering one set of positions.
+    */
+   private final class Route {
+      private final double[] xs_;
+      private final double[] ys_;
+      private final double[] zs_;
+      private final int n_;
+      private final int[][] neighbors_;
+      private final int[] tour_;
+      private final int[] pos_;
+      private final SpatialGrid grid_;
+
+      Route(double[] xs, double[] ys, double[] zs) {
+         xs_ = xs;
+         ys_ = ys;
+         zs_ = zs;
+         n_ = xs.length;
+         tour_ = new int[n_];
+         pos_ = new int[n_];
+         // Search neighbours in units of time at full speed, so that a slow axis counts more
+         double[] sx = new double[n_];
+         double[] sy = new double[n_];
+         for (int i = 0; i < n_; i++) {
+            sx[i] = xs[i] / xMotion_.getSpeed();
+            sy[i] = ys[i] / yMotion_.getSpeed();
+         }
+         grid_ = new SpatialGrid(sx, sy);
+         neighbors_ = new int[n_][];
+         for (int i = 0; i < n_; i++) {
+            neighbors_[i] = sortByCost(i, grid_.nearest(i, Math.min(NR_NEIGHBORS, n_ - 1)));
+         }
+      }
+
+      private double cost(int a, int b) {
+         return moveTime(xs_, ys_, zs_, a, b);
+      }
+
+      private int[] sortByCost(int from, int[] candidates) {
+         Integer[] boxed = new Integer[candidates.length];
+         for (int i = 0; i < candidates.length; i++) {
+            boxed[i] = candidates[i];
+         }
+         Arrays.sort(boxed, (a, b) -> {
+            int c = Double.compare(cost(from, a), cost(from, b));
+            return c != 0 ? c : Integer.compare(a, b);
+         });
+         int[] result = new int[boxed.length];
+         for (int i = 0; i < boxed.length; i++) {
+            result[i] = boxed[i];
+         }
+         return result;
+      }
+
+      void nearestNeighbor(int start) {
+         boolean[] visited = new boolean[n_];
+         int current = start;
+         for (int k = 0; k < n_; k++) {
+            tour_[k] = current;
+            pos_[current] = k;
+            visited[current] = true;
+            grid_.remove(current);
+            if (k == n_ - 1) {
+               break;
+            }
+            int next = -1;
+            for (int c : neighbors_[current]) {
+               if (!visited[c]) {
+                  next = c;
+                  break;
+               }
+            }
+            if (next < 0) {
+               next = grid_.nearestRemaining(current);
+            }
+            current = next;
+         }
+      }
+
+      // Reverses the tour between positions from and to, inclusive
+      private void reverse(int from, int to) {
+         while (from < to) {
+            int a = tour_[from];
+            tour_[from] = tour_[to];
+            tour_[to] = a;
+            pos_[tour_[from]] = from;
+            pos_[tour_[to]] = to;
+            from++;
+            to--;
+         }
+      }
+
+      boolean twoOpt(long deadline) {
+         boolean improvedAny = false;
+         for (int i = 0; i < n_; i++) {
+            if ((i & 255) == 0 && System.nanoTime() > deadline) {
+               break;
+            }
+            int a = tour_[i];
+            // new edge from a to a close position, replacing the edge to a's successor
+            if (i + 1 < n_) {
+               int b = tour_[i + 1];
+               double ab = cost(a, b);
+               for (int c : neighbors_[a]) {
+                  double ac = cost(a, c);
+                  if (ac >= ab - EPSILON) {
+                     break;
+                  }
+                  int j = pos_[c];
+                  if (j > i + 1) {
+                     int d = j + 1 < n_ ? tour_[j + 1] : -1;
+                     double delta = ac - ab
+                           + (d >= 0 ? cost(b, d) - cost(c, d) : 0.0);
+                     if (delta < -EPSILON) {
+                        reverse(i + 1, j);
+                        improvedAny = true;
+                        break;
+                     }
+                  } else if (j < i && j + 1 < i) {
+                     int cn = tour_[j + 1];
+                     double delta = ac + cost(cn, b) - cost(c, cn) - ab;
+                     if (delta < -EPSILON) {
+                        reverse(j + 1, i);
+                        improvedAny = true;
+                        break;
+                     }
+                  }
+               }
+            }
+            // new edge from a to a close position, replacing the edge to a's predecessor
+            if (i > 0) {
+               a = tour_[i];
+               int p = tour_[i - 1];
+               double pa = cost(p, a);
+               for (int c : neighbors_[a]) {
+                  double ac = cost(a, c);
+                  if (ac >= pa - EPSILON) {
+                     break;
+                  }
+                  int j = pos_[c];
+                  if (j >= 1 && j < i - 1) {
+                     int e = tour_[j - 1];
+                     double delta = ac + cost(e, p) - cost(e, c) - pa;
+                     if (delta < -EPSILON) {
+                        reverse(j, i - 1);
+                        improvedAny = true;
+                        break;
+                     }
+                  } else if (j > i + 1) {
+                     int e = tour_[j - 1];
+                     double delta = ac + cost(p, e) - pa - cost(e, c);
+                     if (delta < -EPSILON) {
+                        reverse(i, j - 1);
+                        improvedAny = true;
+                        break;
+                     }
+                  }
+               }
+            }
+         }
+         return improvedAny;
+      }
+
+      boolean orOpt(long deadline) {
+         boolean improvedAny = false;
+         for (int length = 1; length <= 3; length++) {
+            for (int i = 1; i + length <= n_; i++) {
+               if ((i & 255) == 0 && System.nanoTime() > deadline) {
+                  return improvedAny;
+               }
+               if (moveSegment(i, length)) {
+                  improvedAny = true;
+               }
+            }
+         }
+         return improvedAny;
+      }
+
+      // Tries to move the segment at positions i .. i + length - 1 between two other
+      // consecutive positions close to either end of the segment.
+      private boolean moveSegment(int i, int length) {
+         final int last = i + length - 1;
+         final int s0 = tour_[i];
+         final int s1 = tour_[last];
+         final int p = tour_[i - 1];
+         final int nx = last + 1 < n_ ? tour_[last + 1] : -1;
+         final double removeGain = cost(p, s0)
+               + (nx >= 0 ? cost(s1, nx) - cost(p, nx) : 0.0);
+         if (removeGain <= EPSILON) {
+            return false;
+         }
+         for (int end = 0; end < 2; end++) {
+            int s = end == 0 ? s0 : s1;
+            for (int c : neighbors_[s]) {
+               if (cost(s, c) >= removeGain - EPSILON) {
+                  break;
+               }
+               int j = pos_[c];
+               // the edges c - successor and predecessor - c
+               for (int k = j; k >= j - 1; k--) {
+                  if (k < 0 || (k >= i - 1 && k <= last)) {
+                     continue;
+                  }
+                  int u = tour_[k];
+                  int v = k + 1 < n_ ? tour_[k + 1] : -1;
+                  double uv = v >= 0 ? cost(u, v) : 0.0;
+                  double forward = cost(u, s0) + (v >= 0 ? cost(s1, v) : 0.0) - uv;
+                  double backward = cost(u, s1) + (v >= 0 ? cost(s0, v) : 0.0) - uv;
+                  boolean reversed = backward < forward;
+                  if (Math.min(forward, backward) < removeGain - EPSILON) {
+                     applySegmentMove(i, length, k, reversed);
+                     return true;
+                  }
+               }
+            }
+         }
+         return false;
+      }
+
+      // Moves the segment at positions i .. i + length - 1 to directly after position k
+      private void applySegmentMove(int i, int length, int k, boolean reversed) {
+         int[] segment = Arrays.copyOfRange(tour_, i, i + length);
+         if (reversed) {
+            for (int a = 0, b = length - 1; a < b; a++, b--) {
+               int t = segment[a];
+               segment[a] = segment[b];
+               segment[b] = t;
+            }
+         }
+         int from;
+         int to;
+         if (k < i) {
+            System.arraycopy(tour_, k + 1, tour_, k + 1 + length, i - k - 1);
+            System.arraycopy(segment, 0, tour_, k + 1, length);
+            from = k + 1;
+            to = i + length - 1;
+         } else {
+            System.arraycopy(tour_, i + length, tour_, i, k - i - length + 1);
+            System.arraycopy(segment, 0, tour_, k - length + 1, length);
+            from = i;
+            to = k;
+         }
+         for (int q = from; q <= to; q++) {
+            pos_[tour_[q]] = q;
+         }
+      }
+   }
+
+   /**
+    * Uniform grid over 2D points that finds close points, and the closest point
+    * among those that have not been removed yet.
+    */
+   private static final class SpatialGrid {
+      private final double[] xs_;
+      private final double[] ys_;
+      private final double minX_;
+      private final double minY_;
+      private final double cellSize_;
+      private final int nrColumns_;
+      private final int nrRows_;
+      private final int[] cellOf_;
+      private final int[] cellStart_;
+      private final int[] live_;     // per cell, number of points not removed yet
+      private final int[] sorted_;   // point indices grouped per cell, live points first
+      private final int[] slot_;     // position of each point in sorted_
+      private int[] ringBuffer_ = new int[64];
+
+      SpatialGrid(double[] xs, double[] ys) {
+         xs_ = xs;
+         ys_ = ys;
+         int n = xs.length;
+         double minX = Double.MAX_VALUE;
+         double minY = Double.MAX_VALUE;
+         double maxX = -Double.MAX_VALUE;
+         double maxY = -Double.MAX_VALUE;
+         for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+         }
+         double spanX = maxX - minX;
+         double spanY = maxY - minY;
+         // about two points per cell
+         double cellSize;
+         if (spanX > 0 && spanY > 0) {
+            cellSize = Math.sqrt(2.0 * spanX * spanY / n);
+         } else {
+            cellSize = 2.0 * Math.max(spanX, spanY) / n;
+         }
+         if (!(cellSize > 0)) {
+            cellSize = 1.0;
+         }
+         while ((spanX / cellSize + 1) * (spanY / cellSize + 1) > 4.0 * n + 16) {
+            cellSize *= 2.0;
+         }
+         minX_ = minX;
+         minY_ = minY;
+         cellSize_ = cellSize;
+         nrColumns_ = (int) (spanX / cellSize) + 1;
+         nrRows_ = (int) (spanY / cellSize) + 1;
+         int nrCells = nrColumns_ * nrRows_;
+         cellOf_ = new int[n];
+         cellStart_ = new int[nrCells + 1];
+         live_ = new int[nrCells];
+         for (int i = 0; i < n; i++) {
+            cellOf_[i] = row(ys[i]) * nrColumns_ + column(xs[i]);
+            cellStart_[cellOf_[i] + 1]++;
+         }
+         for (int c = 0; c < nrCells; c++) {
+            cellStart_[c + 1] += cellStart_[c];
+         }
+         sorted_ = new int[n];
+         slot_ = new int[n];
+         for (int i = 0; i < n; i++) {
+            int c = cellOf_[i];
+            slot_[i] = cellStart_[c] + live_[c]++;
+            sorted_[slot_[i]] = i;
+         }
+      }
+
+      private int column(double x) {
+         return Math.min(nrColumns_ - 1, (int) ((x - minX_) / cellSize_));
+      }
+
+      private int row(double y) {
+         return Math.min(nrRows_ - 1, (int) ((y - minY_) / cellSize_));
+      }
+
+      private double distanceSquared(int a, int b) {
+         double dx = xs_[a] - xs_[b];
+         double dy = ys_[a] - ys_[b];
+         return dx * dx + dy * dy;
+      }
+
+      /**
+       * The given number of points closest to point p (not counting p itself),
+       * whether removed or not.
+       */
+      int[] nearest(int p, int count) {
+         int[] best = new int[count];
+         double[] bestD = new double[count];
+         int found = 0;
+         int cx = cellOf_[p] % nrColumns_;
+         int cy = cellOf_[p] / nrColumns_;
+         int maxRing = Math.max(Math.max(cx, nrColumns_ - 1 - cx),
+               Math.max(cy, nrRows_ - 1 - cy));
+         for (int ring = 0; ring <= maxRing && count > 0; ring++) {
+            int nrCells = ringCells(cx, cy, ring);
+            int[] cells = ringBuffer_;
+            for (int ci = 0; ci < nrCells; ci++) {
+               int cell = cells[ci];
+               for (int k = cellStart_[cell]; k < cellStart_[cell + 1]; k++) {
+                  int q = sorted_[k];
+                  if (q == p) {
+                     continue;
+                  }
+                  double d = distanceSquared(p, q);
+                  if (found < count || d < bestD[found - 1]) {
+                     int at = found < count ? found++ : count - 1;
+                     while (at > 0 && bestD[at - 1] > d) {
+                        best[at] = best[at - 1];
+                        bestD[at] = bestD[at - 1];
+                        at--;
+                     }
+                     best[at] = q;
+                     bestD[at] = d;
+                  }
+               }
+            }
+            double reach = ring * cellSize_;
+            if (found == count && bestD[found - 1] <= reach * reach) {
+               break;
+            }
+         }
+         return Arrays.copyOf(best, found);
+      }
+
+      // Stores the cells at the given ring distance around cell (cx, cy) that lie
+      // within the grid in ringBuffer_, and returns how many there are
+      private int ringCells(int cx, int cy, int ring) {
+         if (ringBuffer_.length < 8 * ring + 1) {
+            ringBuffer_ = new int[16 * ring + 1];
+         }
+         int[] out = ringBuffer_;
+         int count = 0;
+         for (int r = Math.max(0, cy - ring); r <= Math.min(nrRows_ - 1, cy + ring); r++) {
+            if (r == cy - ring || r == cy + ring) {
+               for (int c = Math.max(0, cx - ring); c <= Math.min(nrColumns_ - 1, cx + ring);
+                     c++) {
+                  out[count++] = r * nrColumns_ + c;
+               }
+            } else {
+               if (cx - ring >= 0) {
+                  out[count++] = r * nrColumns_ + cx - ring;
+               }
+               if (cx + ring < nrColumns_) {
+                  out[count++] = r * nrColumns_ + cx + ring;
+               }
+            }
+         }
+         return count;
+      }
+
+      void remove(int p) {
+         int c = cellOf_[p];
+         int lastSlot = cellStart_[c] + --live_[c];
+         int q = sorted_[lastSlot];
+         sorted_[slot_[p]] = q;
+         slot_[q] = slot_[p];
+         sorted_[lastSlot] = p;
+         slot_[p] = lastSlot;
+      }
+
+      /**
+       * The point closest to point p among those not removed yet, or -1 if all
+       * points were removed.
+       */
+      int nearestRemaining(int p) {
+         int cx = column(xs_[p]);
+         int cy = row(ys_[p]);
+         int maxRing = Math.max(Math.max(cx, nrColumns_ - 1 - cx),
+               Math.max(cy, nrRows_ - 1 - cy));
+         int best = -1;
+         double bestD = Double.MAX_VALUE;
+         for (int ring = 0; ring <= maxRing; ring++) {
+            int nrCells = ringCells(cx, cy, ring);
+            int[] cells = ringBuffer_;
+            for (int ci = 0; ci < nrCells; ci++) {
+               int cell = cells[ci];
+               for (int k = cellStart_[cell]; k < cellStart_[cell] + live_[cell]; k++) {
+                  int q = sorted_[k];
+                  double d = distanceSquared(p, q);
+                  if (d < bestD || (d == bestD && q < best)) {
+                     best = q;
+                     bestD = d;
+                  }
+               }
+            }
+            double reach = ring * cellSize_;
+            if (best >= 0 && bestD <= reach * reach) {
+               break;
+            }
+         }
+         return best;
+      }
+   }
+}
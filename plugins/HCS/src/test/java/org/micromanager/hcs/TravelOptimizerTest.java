@@ -0,0 +1,202 @@
+package org.micromanager.hcs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests for {@link TravelOptimizer} on small and degenerate sets of positions.
+ */
+public class TravelOptimizerTest {
+   private static final TravelOptimizer.AxisMotion XY =
+         new TravelOptimizer.AxisMotion(5000.0, 50000.0);
+   private static final TravelOptimizer.AxisMotion Z =
+         new TravelOptimizer.AxisMotion(1000.0, 10000.0);
+
+   private static TravelOptimizer optimizer() {
+      return new TravelOptimizer(XY, XY, Z, 1000);
+   }
+
+   /**
+    * Checks that the order visits every position once, starting at start.
+    */
+   private static void assertVisitsAll(int[] order, int n, int start) {
+      assertEquals(n, order.length);
+      assertEquals(start, order[0]);
+      boolean[] seen = new boolean[n];
+      for (int i : order) {
+         assertTrue("Position " + i + " visited twice", !seen[i]);
+         seen[i] = true;
+      }
+   }
+
+   /**
+    * Travel time of the best order starting at start, trying all of them.
+    */
+   private static double bestTravelTime(TravelOptimizer optimizer, double[] xs, double[] ys,
+                                        double[] zs, int start) {
+      int n = xs.length;
+      int[] order = new int[n];
+      order[0] = start;
+      for (int i = 0, k = 1; i < n; i++) {
+         if (i != start) {
+            order[k++] = i;
+         }
+      }
+      double[] best = {Double.MAX_VALUE};
+      permute(optimizer, xs, ys, zs, order, 1, best);
+      return best[0];
+   }
+
+   private static void permute(TravelOptimizer optimizer, double[] xs, double[] ys,
+                               double[] zs, int[] order, int k, double[] best) {
+      if (k == order.length) {
+         best[0] = Math.min(best[0], optimizer.travelTime(xs, ys, zs, order));
+         return;
+      }
+      for (int i = k; i < order.length; i++) {
+         swap(order, k, i);
+         permute(optimizer, xs, ys, zs, order, k + 1, best);
+         swap(order, k, i);
+      }
+   }
+
+   private static void swap(int[] a, int i, int j) {
+      int t = a[i];
+      a[i] = a[j];
+      a[j] = t;
+   }
+
+   @Test
+   public void noPositions() {
+      assertEquals(0, optimizer().order(new double[0], new double[0], null, 0).length);
+   }
+
+   @Test
+   public void onePosition() {
+      assertArrayEquals(new int[] {0},
+            optimizer().order(new double[] {10.0}, new double[] {-3.0}, null, 0));
+   }
+
+   @Test
+   public void twoPositionsStartAtStart() {
+      double[] xs = {0.0, 500.0};
+      double[] ys = {0.0, 200.0};
+      assertArrayEquals(new int[] {0, 1}, optimizer().order(xs, ys, null, 0));
+      assertArrayEquals(new int[] {1, 0}, optimizer().order(xs, ys, null, 1));
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void startMustBeAPosition() {
+      optimizer().order(new double[] {0.0, 1.0}, new double[] {0.0, 1.0}, null, 2);
+   }
+
+   @Test
+   public void duplicatePositionsAreAllVisited() {
+      // Every position twice, and one three times
+      double[] xs = {0.0, 100.0, 0.0, 200.0, 100.0, 200.0, 200.0};
+      double[] ys = {0.0, 0.0, 0.0, 50.0, 0.0, 50.0, 50.0};
+      TravelOptimizer optimizer = optimizer();
+      for (int start = 0; start < xs.length; start++) {
+         int[] order = optimizer.order(xs, ys, null, start);
+         assertVisitsAll(order, xs.length, start);
+         assertEquals(bestTravelTime(optimizer, xs, ys, null, start),
+               optimizer.travelTime(xs, ys, null, order), 1e-9);
+      }
+   }
+
+   @Test
+   public void allPositionsTheSame() {
+      double[] xs = new double[20];
+      double[] ys = new double[20];
+      int[] order = optimizer().order(xs, ys, null, 7);
+      assertVisitsAll(order, xs.length, 7);
+      assertEquals(0.0, optimizer().travelTime(xs, ys, null, order), 0.0);
+   }
+
+   @Test
+   public void smallGridsAreOrderedOptimally() {
+      TravelOptimizer optimizer = optimizer();
+      for (int columns = 1; columns <= 3; columns++) {
+         for (int rows = 1; rows <= 3; rows++) {
+            int n = columns * rows;
+            double[] xs = new double[n];
+            double[] ys = new double[n];
+            for (int i = 0; i < n; i++) {
+               xs[i] = (i % columns) * 650.0;
+               ys[i] = (i / columns) * 450.0;
+            }
+            for (int start = 0; start < n; start++) {
+               int[] order = optimizer.order(xs, ys, null, start);
+               assertVisitsAll(order, n, start);
+               assertEquals(columns + "x" + rows + " from " + start,
+                     bestTravelTime(optimizer, xs, ys, null, start),
+                     optimizer.travelTime(xs, ys, null, order), 1e-9);
+            }
+         }
+      }
+   }
+
+   @Test
+   public void smallRandomSetsAreOrderedNearlyOptimally() {
+      TravelOptimizer optimizer = optimizer();
+      Random random = new Random(1);
+      for (int trial = 0; trial < 20; trial++) {
+         int n = 3 + random.nextInt(5);
+         double[] xs = new double[n];
+         double[] ys = new double[n];
+         double[] zs = new double[n];
+         for (int i = 0; i < n; i++) {
+            xs[i] = random.nextDouble() * 20000.0;
+            ys[i] = random.nextDouble() * 10000.0;
+            zs[i] = random.nextDouble() * 500.0;
+         }
+         int[] order = optimizer.order(xs, ys, zs, 0);
+         assertVisitsAll(order, n, 0);
+         // 2-opt and Or-opt do not always find the best order
+         double best = bestTravelTime(optimizer, xs, ys, zs, 0);
+         double travelTime = optimizer.travelTime(xs, ys, zs, order);
+         assertTrue("Trial " + trial + ": " + travelTime + " vs. " + best,
+               travelTime <= 1.05 * best);
+      }
+   }
+
+   @Test
+   public void largeGridIsNotWorseThanSnake() {
+      int columns = 40;
+      int rows = 30;
+      int n = columns * rows;
+      double[] xs = new double[n];
+      double[] ys = new double[n];
+      int[] snake = new int[n];
+      for (int i = 0; i < n; i++) {
+         int row = i / columns;
+         int column = row % 2 == 0 ? i % columns : columns - 1 - i % columns;
+         xs[i] = column * 650.0;
+         ys[i] = row * 450.0;
+         snake[i] = i;
+      }
+      TravelOptimizer optimizer = optimizer();
+      int[] order = optimizer.order(xs, ys, null, 0);
+      assertVisitsAll(order, n, 0);
+      assertTrue(optimizer.travelTime(xs, ys, null, order)
+            <= optimizer.travelTime(xs, ys, null, snake) + 1e-9);
+   }
+
+   @Test
+   public void shortMovesDoNotReachFullSpeed() {
+      // 5000 um/s is reached after 0.1 s and 250 um
+      assertEquals(2.0 * Math.sqrt(100.0 / 50000.0), XY.moveTime(100.0), 1e-12);
+      assertEquals(0.2, XY.moveTime(-500.0), 1e-12);
+      assertEquals(1.0 + 0.1, XY.moveTime(5000.0), 1e-12);
+      assertEquals(0.0, XY.moveTime(0.0), 0.0);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void speedMustBePositive() {
+      new TravelOptimizer.AxisMotion(0.0, 1.0);
+   }
+}
@@ -111,20 +111,36 @@ public class FlipperProcessor implements Processor {
    public static Image transformImage(Studio studio, Image image,
                                       boolean isMirrored, int rotation) {
 
-      ImageProcessor proc = studio.data().ij().createProcessor(image);
-
-      if (isMirrored) {
-         proc.flipHorizontal();
-      }
+      // Rotate first, from a processor sharing the pixels of the input, since
+      // rotation creates a new processor anyway.  Mirroring before a rotation
+      // by 90 or 270 degrees is the same as flipping vertically after it.
+      ImageProcessor proc = studio.data().ij().createSharedProcessor(image);
+      boolean flipHorizontal = isMirrored;
+      boolean flipVertical = false;
       if (rotation == R90) {
          proc = proc.rotateRight();
+      } else if (rotation == R270) {
+         proc = proc.rotateLeft();
       }
-      if (rotation == R180) {
-         proc = proc.rotateRight();
-         proc = proc.rotateRight();
+      if ((rotation == R90 || rotation == R270) && isMirrored) {
+         flipHorizontal = false;
+         flipVertical = true;
+      } else if (rotation == R180) {
+         // Rotation by 180 degrees flips in both directions
+         flipHorizontal = !isMirrored;
+         flipVertical = true;
       }
-      if (rotation == R270) {
-         proc = proc.rotateLeft();
+      if (flipHorizontal || flipVertical) {
+         if (rotation != R90 && rotation != R270) {
+            // Still shares the pixels of the input
+            proc = proc.duplicate();
+         }
+         if (flipHorizontal) {
+            proc.flipHorizontal();
+         }
+         if (flipVertical) {
+            proc.flipVertical();
+         }
       }
       // Insert some metadata to indicate what we did to the image.
       PropertyMap.Builder builder;
@@ -138,8 +154,10 @@ public class FlipperProcessor implements Processor {
       builder.putString("ImageFlipper-Mirror", isMirrored ? "On" : "Off");
       Metadata newMetadata =
             image.getMetadata().copyBuilderPreservingUUID().userData(builder.build()).build();
-      Image result = studio.data().ij().createImage(proc, image.getCoords(),
-            newMetadata);
-      return result;
+      if (proc.getPixels() == image.getRawPixels()) {
+         // Nothing changed
+         return image.copyWithMetadata(newMetadata);
+      }
+      return studio.data().ij().wrapProcessor(proc, image.getCoords(), newMetadata);
    }
 }
@@ -21,8 +21,6 @@ package edu.ucsf.valelab.mmclearvolumeplugin;
 // maintainability. However, this plugin code is older than the current
 // MMStudio API, so it still uses internal classes and interfaces. New code
 // should not imitate this practice.
-import static org.micromanager.data.internal.BufferTools.NATIVE_ORDER;
-
 import clearvolume.renderer.ClearVolumeRendererInterface;
 import clearvolume.renderer.cleargl.recorder.VideoRecorderInterface;
 import clearvolume.renderer.factory.ClearVolumeRendererFactory;
@@ -43,11 +41,14 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowFocusListener;
 import java.io.IOException;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import javax.swing.JFrame;
@@ -63,7 +64,6 @@ import org.micromanager.data.Image;
 import org.micromanager.data.Metadata;
 import org.micromanager.data.SummaryMetadata;
 import org.micromanager.data.internal.DefaultDatastoreClosingEvent;
-import org.micromanager.data.internal.DefaultImage;
 import org.micromanager.display.ChannelDisplaySettings;
 import org.micromanager.display.ComponentDisplaySettings;
 import org.micromanager.display.DataViewer;
@@ -106,6 +106,10 @@ public class CVViewer implements DataViewer, ImageStatsPublisher {
    private int activeChannel_ = 0;
    private Coords lastDisplayedCoords_;
    private ImagesAndStats lastCalculatedImagesAndStats_;
+   private CVVolumeCache volumeCache_;
+   // Volume, and its version, that the renderer currently holds for each channel
+   private final Map<Integer, CVVolumeCache.Volume> uploadedVolumes_ = new HashMap<>();
+   private final Map<Integer, Integer> uploadedVersions_ = new HashMap<>();
    private final Color[] colors = {Color.RED, Color.GREEN, Color.BLUE, Color.MAGENTA,
                                    Color.PINK, Color.CYAN, Color.YELLOW, Color.ORANGE};
    
@@ -322,6 +326,9 @@ public class CVViewer implements DataViewer, ImageStatsPublisher {
       dataProvider_.unregisterForEvents(this);
       studio_.events().unregisterForEvents(this);
       clearVolumeRenderer_.close();
+      if (volumeCache_ != null) {
+         volumeCache_.shutdown();
+      }
       cvFrame_.dispose();
       imageStatsProcessor_.shutdown();
    }
@@ -502,46 +509,31 @@ public class CVViewer implements DataViewer, ImageStatsPublisher {
    public final void drawVolume(final int timePoint, final int position) throws IOException {
       //if (timePoint == currentlyShownTimePoint_)
       //   return; // nothing to do, already showing requested timepoint
-      // create fragmented memory for each stack that needs sending to CV:
       Image randomImage = dataProvider_.getAnyImage();
       final Metadata metadata = randomImage.getMetadata();
       final SummaryMetadata summary = dataProvider_.getSummaryMetadata();
       final int nrZ = dataProvider_.getNextIndex(Coords.Z);
       final int nrCh = dataProvider_.getNextIndex(Coords.CHANNEL);
+      if (volumeCache_ == null) {
+         volumeCache_ = new CVVolumeCache(dataProvider_, studio_.logs(),
+               randomImage.getWidth(), randomImage.getHeight(),
+               randomImage.getBytesPerPixel(), CVVolumeCache.defaultByteBudget());
+      }
+      maxValue_ = randomImage.getBytesPerPixel() == 2 ? 65535 : 255;
 
       clearVolumeRenderer_.setVolumeDataUpdateAllowed(false);
 
       for (int ch = 0; ch < nrCh; ch++) {
-         FragmentedMemory fragmentedMemory = new FragmentedMemory();
-         for (int i = 0; i < nrZ; i++) {
-            Coords coords = Coordinates.builder().z(i).channel(ch).t(timePoint)
+         if (nrZ > 0) {
+            lastDisplayedCoords_ = Coordinates.builder().z(nrZ - 1).channel(ch).t(timePoint)
                   .stagePosition(position).build();
-            lastDisplayedCoords_ = coords;
-
-            // Bypass Micro-Manager api to get access to the pixels to avoid extra copying
-            DefaultImage image = (DefaultImage) dataProvider_.getImage(coords);
-            int maxIntensity = 255;
-
-            // add the contiguous memory as fragment:
-            if (image != null) {
-               if (image.getBytesPerPixel() == 1) {
-                  byte[] pixels = ((ByteBuffer) image.getPixelBuffer()).array();
-                  fragmentedMemory.add(ByteBuffer.allocateDirect(pixels.length).put(pixels));
-               } else if (image.getBytesPerPixel() == 2) {
-                  maxIntensity = 65535;
-                  short[] pixels = ((ShortBuffer) image.getPixelBuffer()).array();
-                  fragmentedMemory.add(ByteBuffer.allocateDirect(
-                        2 * pixels.length).order(NATIVE_ORDER).asShortBuffer().put(pixels));
-               }
-            } else {
-               // if the image is missing, replace with pixels initialized to 0
-               fragmentedMemory.add(ByteBuffer.allocateDirect(
-                        randomImage.getHeight()
-                              * randomImage.getWidth()
-                              * randomImage.getBytesPerPixel()));
-            }
-            maxValue_ = maxIntensity;
          }
+         // Direct buffers that are reused as long as the volume stays in the cache
+         CVVolumeCache.Volume volume = volumeCache_.getVolume(timePoint, position, ch, nrZ,
+               true);
+         final int version = volume.getVersion();
+         final boolean upToDate = volume == uploadedVolumes_.get(ch)
+               && uploadedVersions_.get(ch) == version;
 
          // TODO: correct x and y voxel sizes using aspect ratio
          double pixelSizeUm = metadata.getPixelSizeUm();
@@ -553,18 +545,30 @@ public class CVViewer implements DataViewer, ImageStatsPublisher {
             stepSizeUm = 1.0;
          }
          
-         // pass data to renderer: (this call takes a long time!)
-         clearVolumeRenderer_.setVolumeDataBuffer(0, 
-                 TimeUnit.SECONDS, 
-                 ch,
-                 fragmentedMemory,
-                 randomImage.getWidth(),
-                 randomImage.getHeight(),
-                 nrZ, 
-                 pixelSizeUm,
-                 pixelSizeUm, 
-                 stepSizeUm);
-
+         if (!upToDate) {
+            // create fragmented memory that refers to the planes of the volume
+            FragmentedMemory fragmentedMemory = new FragmentedMemory();
+            for (Buffer plane : volume.getPlanes()) {
+               if (plane instanceof ShortBuffer) {
+                  fragmentedMemory.add((ShortBuffer) plane);
+               } else {
+                  fragmentedMemory.add((ByteBuffer) plane);
+               }
+            }
+            // pass data to renderer: (this call takes a long time!)
+            clearVolumeRenderer_.setVolumeDataBuffer(0,
+                    TimeUnit.SECONDS,
+                    ch,
+                    fragmentedMemory,
+                    randomImage.getWidth(),
+                    randomImage.getHeight(),
+                    volume.getNrZ(),
+                    pixelSizeUm,
+                    pixelSizeUm,
+                    stepSizeUm);
+            uploadedVolumes_.put(ch, volume);
+            uploadedVersions_.put(ch, version);
+         }
 
          // Set various display options:
          // HACK: on occasion we get null colors, correct that problem here
@@ -600,6 +604,10 @@ public class CVViewer implements DataViewer, ImageStatsPublisher {
          studio_.logs().logError("ClearVolume timed out after 2 seconds");
       }
 
+      // Get the neighbouring time points ready for scrolling
+      volumeCache_.prefetchAround(timePoint, position, nrCh, nrZ,
+            dataProvider_.getNextIndex(Coords.T));
+
       setDisplaySettings(displaySettings_);
   
    }
@@ -1166,6 +1174,9 @@ public class CVViewer implements DataViewer, ImageStatsPublisher {
          return;
       }
       Coords newImageCoords = newImage.getCoords();
+      if (volumeCache_ != null) {
+         volumeCache_.imageArrived(newImageCoords);
+      }
       if (timePointComplete(newImageCoords.getT(), dataProvider_, studio_.logs())) {
          if (clearVolumeRenderer_ == null) {
             initializeRenderer(newImageCoords.getT(), newImageCoords.getP());
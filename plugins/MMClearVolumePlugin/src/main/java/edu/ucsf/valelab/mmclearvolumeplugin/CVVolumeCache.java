@@ -0,0 +1,384 @@
+/*
+ * Binding to ClearVolume 3D viewer View Micro-Manager datasets in 3D
+ *
+ * LICENSE: This file is distributed under the BSD license. License text is
+ * included with the source distribution.
+ *
+ * This file is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.
+ *
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+ */
+
+package edu.ucsf.valelab.mmclearvolumeplugin;
+
+import static org.micromanager.data.internal.BufferTools.NATIVE_ORDER;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.micromanager.LogManager;
+import org.micromanager.data.Coordinates;
+import org.micromanager.data.Coords;
+import org.micromanager.data.DataProvider;
+import org.micromanager.data.internal.DefaultImage;
+
+/**
+ * Direct-memory copies of z stacks, ready to be handed to ClearVolume.
+ *
+ * <p>Volumes are keyed by (time point, position, channel, number of z planes) and hold one
+ * direct buffer per z plane. ClearVolume receives these buffers as they are, so sending a
+ * cached volume again allocates and copies nothing on the Java side. Buffers of evicted
+ * volumes go back to a per-channel pool and are reused for the next volume.
+ * Neighbouring time points can be prefetched on a background thread, so that scrolling
+ * through time mostly finds its volumes ready.</p>
+ *
+ * <p>Volumes that were handed to the renderer most recently (one per channel), and volumes
+ * that are being filled, are never evicted, since their buffers may still be in use.</p>
+ *
+ * @author nico
+ */
+public final class CVVolumeCache {
+
+   private static final byte[] ZEROS = new byte[8192];
+
+   private final DataProvider dataProvider_;
+   private final LogManager logger_;
+   private final int width_;
+   private final int height_;
+   private final int bytesPerPixel_;
+   private final long byteBudget_;
+
+   // Access-ordered so that iteration starts with the least recently used volume
+   private final LinkedHashMap<Key, Volume> volumes_ = new LinkedHashMap<>(16, 0.75f, true);
+   // Plane buffers of evicted volumes, per channel
+   private final Map<Integer, ArrayDeque<ByteBuffer>> pools_ = new HashMap<>();
+   private final Map<Integer, Key> pinned_ = new HashMap<>();
+   private long bytesInUse_ = 0;
+
+   private final ExecutorService prefetcher_;
+   // Incremented for every new prefetch request; stale requests give up early
+   private final AtomicInteger prefetchGeneration_ = new AtomicInteger();
+
+   /**
+    * Creates the cache.
+    *
+    * @param dataProvider source of the images
+    * @param logger used to report problems reading images in the background
+    * @param width image width in pixels
+    * @param height image height in pixels
+    * @param bytesPerPixel 1 or 2
+    * @param byteBudget maximum number of bytes held in (unpinned) cached volumes
+    */
+   public CVVolumeCache(DataProvider dataProvider, LogManager logger,
+                        int width, int height, int bytesPerPixel, long byteBudget) {
+      dataProvider_ = dataProvider;
+      logger_ = logger;
+      width_ = width;
+      height_ = height;
+      bytesPerPixel_ = bytesPerPixel;
+      byteBudget_ = byteBudget;
+      prefetcher_ = Executors.newSingleThreadExecutor(r -> {
+         Thread t = new Thread(r, "ClearVolume prefetch");
+         t.setDaemon(true);
+         return t;
+      });
+   }
+
+   /**
+    * Default budget: a quarter of the maximum heap size (which is also the default
+    * limit for direct memory).
+    */
+   public static long defaultByteBudget() {
+      return Runtime.getRuntime().maxMemory() / 4;
+   }
+
+   /**
+    * Returns the volume for the given stack, reading only planes that are not yet
+    * in memory (or changed since they were read).
+    *
+    * @param timePoint zero-based time point index
+    * @param position zero-based position index
+    * @param channel zero-based channel index
+    * @param nrZ number of z planes in the volume
+    * @param pin whether the volume will be handed to the renderer.  A pinned volume
+    *            stays in memory at least until another volume of the same channel is
+    *            pinned.
+    * @return Volume, filled as far as images are available
+    * @throws IOException when reading images fails
+    */
+   public Volume getVolume(int timePoint, int position, int channel, int nrZ, boolean pin)
+         throws IOException {
+      Volume volume = acquire(new Key(timePoint, position, channel, nrZ));
+      boolean filled = false;
+      try {
+         volume.fill();
+         filled = true;
+      } finally {
+         // Pin before the volume becomes evictable, so that no other thread can
+         // recycle its buffers in between
+         synchronized (this) {
+            if (pin && filled) {
+               pinned_.put(channel, volume.key_);
+            }
+            volume.users_--;
+         }
+      }
+      return volume;
+   }
+
+   /**
+    * Starts reading the time points before and after the given one into memory.
+    * Earlier prefetch requests that did not yet run are abandoned.
+    */
+   public void prefetchAround(int timePoint, int position, int nrCh, int nrZ, int nrT) {
+      final int generation = prefetchGeneration_.incrementAndGet();
+      final int[] timePoints = {timePoint + 1, timePoint - 1};
+      try {
+         prefetcher_.submit(() -> {
+            for (int t : timePoints) {
+               if (t < 0 || t >= nrT) {
+                  continue;
+               }
+               for (int ch = 0; ch < nrCh; ch++) {
+                  if (prefetchGeneration_.get() != generation) {
+                     return;
+                  }
+                  try {
+                     getVolume(t, position, ch, nrZ, false);
+                  } catch (IOException ioe) {
+                     logger_.logError(ioe, "Failed to prefetch ClearVolume data");
+                     return;
+                  }
+               }
+            }
+         });
+      } catch (RejectedExecutionException ree) {
+         // cache was shut down
+      }
+   }
+
+   /**
+    * Marks the plane at the given coordinates for re-reading, e.g. because a new image
+    * arrived there.
+    */
+   public void imageArrived(Coords coords) {
+      List<Volume> stale = new ArrayList<>(1);
+      synchronized (this) {
+         // Iterating does not change the access order
+         for (Volume volume : volumes_.values()) {
+            if (volume.key_.timePoint_ == coords.getT() && volume.key_.position_ == coords.getP()
+                  && volume.key_.channel_ == coords.getChannel()) {
+               stale.add(volume);
+            }
+         }
+      }
+      for (Volume volume : stale) {
+         volume.invalidate(coords.getZ());
+      }
+   }
+
+   /**
+    * Stops prefetching and drops all volumes.
+    */
+   public synchronized void shutdown() {
+      prefetcher_.shutdownNow();
+      volumes_.clear();
+      pools_.clear();
+      pinned_.clear();
+      bytesInUse_ = 0;
+   }
+
+   // Returns the volume with its user count incremented.
+   // A z stack that grew during acquisition gets a new volume, since the key includes
+   // the number of planes; the smaller one is evicted like any other.
+   private synchronized Volume acquire(Key key) {
+      Volume volume = volumes_.get(key);
+      if (volume == null) {
+         int nrZ = key.nrZ_;
+         long planeBytes = (long) width_ * height_ * bytesPerPixel_;
+         evict(planeBytes * nrZ);
+         ArrayDeque<ByteBuffer> pool = pools_.get(key.channel_);
+         ByteBuffer[] planes = new ByteBuffer[nrZ];
+         boolean[] recycled = new boolean[nrZ];
+         for (int z = 0; z < nrZ; z++) {
+            recycled[z] = pool != null && !pool.isEmpty();
+            planes[z] = recycled[z] ? pool.pop()
+                  : ByteBuffer.allocateDirect((int) planeBytes).order(NATIVE_ORDER);
+         }
+         volume = new Volume(key, planes, recycled);
+         volumes_.put(key, volume);
+         bytesInUse_ += volume.sizeInBytes();
+      }
+      volume.users_++;
+      return volume;
+   }
+
+   private void evict(long bytesNeeded) {
+      Iterator<Map.Entry<Key, Volume>> it = volumes_.entrySet().iterator();
+      while (bytesInUse_ + bytesNeeded > byteBudget_ && it.hasNext()) {
+         Map.Entry<Key, Volume> entry = it.next();
+         Key key = entry.getKey();
+         Volume volume = entry.getValue();
+         if (volume.users_ > 0 || key.equals(pinned_.get(key.channel_))) {
+            continue;
+         }
+         it.remove();
+         release(volume);
+      }
+   }
+
+   private void release(Volume volume) {
+      bytesInUse_ -= volume.sizeInBytes();
+      ArrayDeque<ByteBuffer> pool = pools_.computeIfAbsent(volume.key_.channel_,
+            k -> new ArrayDeque<>());
+      for (ByteBuffer plane : volume.planeBytes_) {
+         pool.push(plane);
+      }
+   }
+
+   /**
+    * One z stack of one channel in direct memory.
+    */
+   public final class Volume {
+      private final Key key_;
+      private final int nrZ_;
+      private final ByteBuffer[] planeBytes_;
+      private final Buffer[] planes_;
+      private final boolean[] loaded_;
+      // Planes that may hold pixels of another volume
+      private final boolean[] dirty_;
+      private int version_ = 0;
+      // Number of threads between acquire() and the end of fill(); guarded by the cache
+      private int users_ = 0;
+
+      private Volume(Key key, ByteBuffer[] planeBytes, boolean[] recycled) {
+         key_ = key;
+         nrZ_ = planeBytes.length;
+         planeBytes_ = planeBytes;
+         planes_ = new Buffer[nrZ_];
+         loaded_ = new boolean[nrZ_];
+         dirty_ = recycled;
+         for (int z = 0; z < nrZ_; z++) {
+            planes_[z] = bytesPerPixel_ == 2 ? planeBytes[z].asShortBuffer() : planeBytes[z];
+         }
+      }
+
+      /**
+       * Per-plane views onto the volume, in z order. Planes without an image are zero.
+       *
+       * @return one ByteBuffer (8-bit) or ShortBuffer (16-bit) per z plane
+       */
+      public Buffer[] getPlanes() {
+         return planes_;
+      }
+
+      /**
+       * Increases whenever a plane is (re)read, so that callers can skip sending a
+       * volume the renderer already has.
+       */
+      public synchronized int getVersion() {
+         return version_;
+      }
+
+      public int getNrZ() {
+         return nrZ_;
+      }
+
+      private long sizeInBytes() {
+         return (long) nrZ_ * width_ * height_ * bytesPerPixel_;
+      }
+
+      private synchronized void invalidate(int z) {
+         if (z >= 0 && z < nrZ_) {
+            loaded_[z] = false;
+         }
+      }
+
+      private synchronized void fill() throws IOException {
+         for (int z = 0; z < nrZ_; z++) {
+            if (loaded_[z]) {
+               continue;
+            }
+            Coords coords = Coordinates.builder().z(z).channel(key_.channel_)
+                  .t(key_.timePoint_).stagePosition(key_.position_).build();
+            // Bypass Micro-Manager api to get access to the pixels to avoid extra copying
+            DefaultImage image = (DefaultImage) dataProvider_.getImage(coords);
+            if (image == null) {
+               // stays zero until the image arrives
+               if (dirty_[z]) {
+                  ByteBuffer target = planeBytes_[z].duplicate();
+                  target.clear();
+                  while (target.hasRemaining()) {
+                     target.put(ZEROS, 0, Math.min(ZEROS.length, target.remaining()));
+                  }
+                  dirty_[z] = false;
+                  version_++;
+               }
+               continue;
+            }
+            // Duplicates, so that positions of shared buffers are left alone
+            if (bytesPerPixel_ == 2) {
+               ShortBuffer source = ((ShortBuffer) image.getPixelBuffer()).duplicate();
+               source.rewind();
+               ShortBuffer target = ((ShortBuffer) planes_[z]).duplicate();
+               target.clear();
+               target.put(source);
+            } else {
+               ByteBuffer source = ((ByteBuffer) image.getPixelBuffer()).duplicate();
+               source.rewind();
+               ByteBuffer target = ((ByteBuffer) planes_[z]).duplicate();
+               target.clear();
+               target.put(source);
+            }
+            loaded_[z] = true;
+            dirty_[z] = false;
+            version_++;
+         }
+      }
+   }
+
+   private static final class Key {
+      private final int timePoint_;
+      private final int position_;
+      private final int channel_;
+      private final int nrZ_;
+
+      private Key(int timePoint, int position, int channel, int nrZ) {
+         timePoint_ = timePoint;
+         position_ = position;
+         channel_ = channel;
+         nrZ_ = nrZ;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (!(o instanceof Key)) {
+            return false;
+         }
+         Key other = (Key) o;
+         return timePoint_ == other.timePoint_ && position_ == other.position_
+               && channel_ == other.channel_ && nrZ_ == other.nrZ_;
+      }
+
+      @Override
+      public int hashCode() {
+         return Objects.hash(timePoint_, position_, channel_, nrZ_);
+      }
+   }
+}
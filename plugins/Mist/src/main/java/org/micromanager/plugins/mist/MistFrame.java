@@ -21,9 +21,6 @@
 package org.micromanager.plugins.mist;
 
 import com.google.common.eventbus.Subscribe;
-import ij.IJ;
-import ij.ImagePlus;
-import ij.process.ImageProcessor;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Insets;
@@ -53,6 +50,8 @@ import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.text.DefaultFormatter;
+import mmcorej.org.json.JSONException;
+import mmcorej.org.json.JSONObject;
 import net.miginfocom.swing.MigLayout;
 import org.micromanager.MultiStagePosition;
 import org.micromanager.Studio;
@@ -61,12 +60,12 @@ import org.micromanager.data.Coords;
 import org.micromanager.data.DataProvider;
 import org.micromanager.data.Datastore;
 import org.micromanager.data.Image;
-import org.micromanager.data.internal.DefaultImageJConverter;
 import org.micromanager.display.DataViewer;
 import org.micromanager.display.DisplayWindow;
 import org.micromanager.display.internal.event.DataViewerWillCloseEvent;
 import org.micromanager.internal.utils.FileDialogs;
 import org.micromanager.internal.utils.WindowPositioning;
+import org.micromanager.ndtiffstorage.MultiresNDTiffAPI;
 import org.micromanager.propertymap.MutablePropertyMapView;
 
 
@@ -92,6 +91,8 @@ public class MistFrame extends JFrame {
    private static final String SINGLEPLANE_TIFF_SERIES = "Separate Image Files";
    private static final String MULTIPAGE_TIFF = "Image Stack File";
    private static final String RAM = "RAM only";
+   private static final String NDTIFF = "NDTiff (tiled, multi-resolution)";
+   private static final String OME_ZARR = "OME-Zarr (tiled, multi-resolution)";
    private static final String UNSELECTED_CHANNELS = "UnselectedChannels";
 
 
@@ -264,7 +265,8 @@ public class MistFrame extends JFrame {
       super.add(new JSeparator(), "span, growx, wrap");
 
       super.add(new JLabel("Output Save format: "));
-      String[] formats = new String[] {RAM, MULTIPAGE_TIFF, SINGLEPLANE_TIFF_SERIES};
+      String[] formats = new String[] {RAM, MULTIPAGE_TIFF, SINGLEPLANE_TIFF_SERIES,
+            NDTIFF, OME_ZARR};
       saveFormat_ = new JComboBox<>(formats);
       saveFormat_.setSelectedItem(
               profileSettings_.getString("format", RAM));
@@ -279,6 +281,7 @@ public class MistFrame extends JFrame {
               profileSettings_.getBoolean("shouldDisplay", true));
       shouldDisplay_.addActionListener((ActionEvent e) ->
               profileSettings_.putBoolean("shouldDisplay", shouldDisplay_.isSelected()));
+      shouldDisplay_.setEnabled(!isTiled(saveFormat_.getSelectedItem()));
       super.add(shouldDisplay_, "span 2, wrap");
 
       super.add(new JLabel("Save path: "), "span 3, split");
@@ -314,6 +317,7 @@ public class MistFrame extends JFrame {
             profileSettings_.putString(DIRNAME, locationsField.getText());
             profileSettings_.putString("savePath", savePath_.getText());
             Datastore store = null;
+            final String format = (String) saveFormat_.getSelectedItem();
             if (Objects.equals(saveFormat_.getSelectedItem(), RAM)) {
                store = studio_.data().createRAMDatastore();
             } else if (Objects.equals(saveFormat_.getSelectedItem(), MULTIPAGE_TIFF)) {
@@ -329,10 +333,13 @@ public class MistFrame extends JFrame {
                }
             }
             final Datastore finalStore = store;
+            final String savePath = savePath_.getText();
             Runnable runnable =
                     () -> assembleData(locationsField.getText(),
                             ourWindow_,
                             finalStore,
+                            format,
+                            savePath,
                             channelList,
                             mins,
                             maxes);
@@ -365,6 +372,10 @@ public class MistFrame extends JFrame {
    }
 
 
+   private static boolean isTiled(Object format) {
+      return NDTIFF.equals(format) || OME_ZARR.equals(format);
+   }
+
    private void updateControls() {
       // Toggle availability of the save path controls.
       boolean isRAM = saveFormat_.getSelectedIndex() == 0;
@@ -372,7 +383,8 @@ public class MistFrame extends JFrame {
          // Can't not display RAM data.
          shouldDisplay_.setSelected(true);
       }
-      shouldDisplay_.setEnabled(!isRAM);
+      // Tiled data are opened with the Explorer plugin
+      shouldDisplay_.setEnabled(!isRAM && !isTiled(saveFormat_.getSelectedItem()));
       savePath_.setEnabled(!isRAM);
       browseButton_.setEnabled(!isRAM);
    }
@@ -396,10 +408,13 @@ public class MistFrame extends JFrame {
     *
     * @param locationsFile Output file from the Mist stitching plugin.  "img-global-positions-0"
     * @param dataViewer Micro-Manager dataViewer containing the input data/
-    * @param newStore Datastore to write the stitched images to.
+    * @param newStore Datastore to write the stitched images to, null for the tiled formats.
+    * @param format Output format.
+    * @param savePath Location of the tiled output.
     */
    private void assembleData(String locationsFile, final DataViewer dataViewer, Datastore newStore,
-                             List<String> channelList, Map<String, Integer> mins,
+                             String format, String savePath, List<String> channelList,
+                             Map<String, Integer> mins,
                              Map<String, Integer> maxes) {
       List<MistGlobalData> mistEntries = new ArrayList<>();
       PositionConvention positionConvention = PositionConvention.NotFound;
@@ -516,8 +531,6 @@ public class MistFrame extends JFrame {
          return;
       }
 
-      SwingUtilities.invokeLater(() -> assembleButton_.setEnabled(false));
-
       // calculate new image dimensions
       int imWidth = dp.getSummaryMetadata().getImageWidth();
       int imHeight = dp.getSummaryMetadata().getImageHeight();
@@ -532,8 +545,30 @@ public class MistFrame extends JFrame {
          }
       }
 
-      int newWidth = maxX + imWidth;
-      int newHeight = maxY + imHeight;
+      final int newWidth = maxX + imWidth;
+      final int newHeight = maxY + imHeight;
+      final boolean tiled = NDTIFF.equals(format) || OME_ZARR.equals(format);
+      if (!tiled && (long) newWidth * newHeight > Integer.MAX_VALUE - 8) {
+         studio_.logs().showError("The stitched image (" + newWidth + " x " + newHeight
+               + " pixels) is too large for this format; save it as "
+               + NDTIFF + " or " + OME_ZARR + " instead");
+         return;
+      }
+
+      Image anyImage;
+      try {
+         anyImage = dp.getAnyImage();
+      } catch (IOException e) {
+         studio_.logs().showError("Error reading data: " + e.getMessage());
+         return;
+      }
+      if (anyImage == null || anyImage.getNumComponents() != 1
+            || anyImage.getBytesPerPixel() > 2) {
+         studio_.logs().showError("Mist can only assemble 8- and 16-bit grayscale images");
+         return;
+      }
+      final int bytesPerPixel = anyImage.getBytesPerPixel();
+      final Double pixelSizeUm = anyImage.getMetadata().getPixelSizeUm();
 
       final int newNrC = channelList.size();
       final int newNrT = (maxes.getOrDefault(Coords.T, 0) - mins.getOrDefault(Coords.T, 0)
@@ -542,20 +577,80 @@ public class MistFrame extends JFrame {
               + 1);
       final int newNrP = dp.getSummaryMetadata().getIntendedDimensions().getP()
               / mistEntries.size();
+
+      // Where each position goes in the mosaic, in order of position index, so
+      // that later positions are placed over earlier ones, as before
+      List<List<MosaicAssembler.Tile>> tilesPerNewP = new ArrayList<>();
+      Map<Integer, String> positionNames = null;
+      for (int newP = 0; newP < newNrP; newP++) {
+         List<MosaicAssembler.Tile> tiles = new ArrayList<>();
+         for (int p = 0; p < mistEntries.size(); p++) {
+            int sourceP = newP * mistEntries.size() + p;
+            MistGlobalData msg = null;
+            if (PositionConvention.HCS.equals(positionConvention)) {
+               if (positionNames == null) {
+                  positionNames = getPositionNames(dp, stagePositionList);
+               }
+               String posName = positionNames.get(sourceP);
+               if (posName == null) {
+                  // No images at this position
+                  continue;
+               }
+               try {
+                  int siteNr = Integer.parseInt(posName.substring(
+                           posName.lastIndexOf('_') + 1));
+                  for (MistGlobalData entry : mistEntries) {
+                     if (entry.getSiteNr() == siteNr) {
+                        msg = entry;
+                        break;
+                     }
+                  }
+               } catch (NumberFormatException nfe) {
+                  // reported below
+               }
+            } else {
+               for (MistGlobalData entry : mistEntries) {
+                  if (entry.getSiteNr() == p) {
+                     msg = entry;
+                     break;
+                  }
+               }
+            }
+            if (msg == null) {
+               studio_.logs().showError("Did not find specified image");
+               return;
+            }
+            tiles.add(new MosaicAssembler.Tile(sourceP, msg.getPositionX(),
+                  msg.getPositionY()));
+         }
+         tilesPerNewP.add(tiles);
+      }
+
+      SwingUtilities.invokeLater(() -> assembleButton_.setEnabled(false));
+
       int maxNumImages = newNrC * newNrT * newNrZ * newNrP;
       ProgressMonitor monitor = new ProgressMonitor(this,
               "Stitching images...", null, 0, maxNumImages);
       DataViewer newDataViewer = null;
+      MultiresNDTiffAPI tiledStorage = null;
+      MosaicAssembler assembler = new MosaicAssembler(studio_.data(), dp, bytesPerPixel,
+            imWidth, imHeight);
       long startTime = System.currentTimeMillis();
       try {
-         // create datastore to hold the result
-         Coords dims = dp.getSummaryMetadata().getIntendedDimensions();
-         Coords.Builder cb = dims.copyBuilder().c(newNrC).t(newNrT).z(newNrZ).p(newNrP);
-         newStore.setSummaryMetadata(dp.getSummaryMetadata().copyBuilder().imageHeight(newHeight)
-                 .imageWidth(newWidth).intendedDimensions(cb.build())
-                 .build());
-         if (profileSettings_.getBoolean("shouldDisplay", true)) {
-            newDataViewer = studio_.displays().createDisplay(newStore);
+         if (tiled) {
+            tiledStorage = MosaicAssembler.createTiledStorage(OME_ZARR.equals(format), savePath,
+                  bytesPerPixel, channelList, pixelSizeUm == null ? 0 : pixelSizeUm,
+                  newWidth, newHeight);
+         } else {
+            // create datastore to hold the result
+            Coords dims = dp.getSummaryMetadata().getIntendedDimensions();
+            Coords.Builder cb = dims.copyBuilder().c(newNrC).t(newNrT).z(newNrZ).p(newNrP);
+            newStore.setSummaryMetadata(dp.getSummaryMetadata().copyBuilder()
+                    .imageHeight(newHeight).imageWidth(newWidth)
+                    .intendedDimensions(cb.build()).build());
+            if (profileSettings_.getBoolean("shouldDisplay", true)) {
+               newDataViewer = studio_.displays().createDisplay(newStore);
+            }
          }
          Coords id = dp.getSummaryMetadata().getIntendedDimensions();
          Coords.Builder intendedDimensionsB = dp.getSummaryMetadata().getIntendedDimensions()
@@ -566,13 +661,15 @@ public class MistFrame extends JFrame {
             }
          }
          Coords intendedDimensions = intendedDimensionsB.build();
+         List<String> channelNames = dp.getSummaryMetadata().getChannelNameList();
          Coords.Builder imgCb = studio_.data().coordsBuilder();
          int nrImages = 0;
          for (int newP = 0; newP < newNrP; newP++) {
             int tmpC = -1;
             for (int c = 0; c < intendedDimensions.getC(); c++) {
-               if (!channelList.contains(dp.getSummaryMetadata().getChannelNameList().get(c))) {
-                  break;
+               String channelName = c < channelNames.size() ? channelNames.get(c) : null;
+               if (!channelList.contains(channelName)) {
+                  continue;
                }
                tmpC++;
                for (int t = mins.getOrDefault(Coords.T, 0);
@@ -580,73 +677,37 @@ public class MistFrame extends JFrame {
                   for (int z = mins.getOrDefault(Coords.Z, 0); z <= maxes.getOrDefault(Coords.Z, 0);
                         z++) {
                      if (monitor.isCanceled()) {
-                        newStore.freeze();
-                        if (newDataViewer == null) {
-                           newStore.close();
-                        }
-                        SwingUtilities.invokeLater(() -> assembleButton_.setEnabled(true));
                         return;
                      }
-                     ImagePlus newImgPlus = IJ.createImage(
-                             "Stitched image-" + newP, "16-bit black", newWidth, newHeight, 2);
-                     boolean imgAdded = false;
-                     for (int p = 0; p < mistEntries.size(); p++) {
-                        if (monitor.isCanceled()) {
-                           newStore.freeze();
-                           if (newDataViewer == null) {
-                              newStore.close();
-                           }
-                           SwingUtilities.invokeLater(() -> assembleButton_.setEnabled(true));
-                           return;
+                     Coords plane = imgCb.c(c).t(t).z(z).p(0).build();
+                     boolean imgAdded;
+                     if (tiled) {
+                        HashMap<String, Object> axes = new HashMap<>();
+                        axes.put("channel", channelName);
+                        if (newNrT > 1) {
+                           axes.put("time", t - mins.getOrDefault(Coords.T, 0));
                         }
-                        Image img = null;
-                        Coords coords = imgCb.c(c).t(t).z(z)
-                                .p(newP * mistEntries.size() + p)
-                                .build();
-                        if (dp.hasImage(coords)) {
-                           img = dp.getImage(coords);
+                        if (newNrZ > 1) {
+                           axes.put("z", z - mins.getOrDefault(Coords.Z, 0));
                         }
-                        if (img != null) {
-                           imgAdded = true;
-                           String posName = img.getMetadata().getPositionName("");
-                           MistGlobalData msg = null;
-                           if (PositionConvention.HCS.equals(positionConvention)) {
-                              int siteNr = Integer.parseInt(posName.substring(
-                                       posName.lastIndexOf('_')
-                                       + 1));
-                              for (MistGlobalData entry : mistEntries) {
-                                 if (entry.getSiteNr() == siteNr) {
-                                    msg = entry;
-                                    break;
-                                 }
-                              }
-                           } else {
-                              for (MistGlobalData entry : mistEntries) {
-                                 if (entry.getSiteNr() == p) {
-                                    msg = entry;
-                                    break;
-                                 }
-                              }
-                           }
-                           if (msg == null) {
-                              studio_.logs().showError("Did not find specified image");
-                              SwingUtilities.invokeLater(() -> assembleButton_.setEnabled(true));
-                              return;
-                           }
-                           ImageProcessor ip = DefaultImageJConverter.createProcessor(img,
-                                    false);
-                           newImgPlus.getProcessor().insert(ip, msg.getPositionX(),
-                                    msg.getPositionY());
+                        if (newNrP > 1) {
+                           axes.put("position", newP);
                         }
-                     }
-                     if (imgAdded) {
-                        Image newImg = studio_.data().ij().createImage(newImgPlus.getProcessor(),
+                        imgAdded = assembler.writeTiled(tiledStorage, plane,
+                                tilesPerNewP.get(newP), newWidth, newHeight, axes,
+                                tileTags(bytesPerPixel, pixelSizeUm), monitor::isCanceled) > 0;
+                     } else {
+                        Image newImg = assembler.assemblePlane(plane, tilesPerNewP.get(newP),
+                                newWidth, newHeight,
                                 imgCb.c(tmpC).t(t - mins.getOrDefault(Coords.T, 0))
                                         .z(z - mins.getOrDefault(Coords.Z, 0))
-                                        .p(newP).build(),
-                                dp.getImage(imgCb.c(c).t(t).z(z).p(newP * mistEntries.size())
-                                        .build()).getMetadata().copyBuilderWithNewUUID().build());
-                        newStore.putImage(newImg);
+                                        .p(newP).build());
+                        imgAdded = newImg != null;
+                        if (imgAdded) {
+                           newStore.putImage(newImg);
+                        }
+                     }
+                     if (imgAdded) {
                         nrImages++;
                         final int count = nrImages;
                         SwingUtilities.invokeLater(() -> monitor.setProgress(count));
@@ -659,17 +720,23 @@ public class MistFrame extends JFrame {
             }
          }
       } catch (IOException e) {
-         studio_.logs().showError("Error creating new data store: " + e.getMessage());
+         studio_.logs().showError("Error creating stitched data: " + e.getMessage());
       } catch (NullPointerException npe) {
          studio_.logs().showError("Coding error in Mist plugin: " + npe.getMessage());
       } finally {
-         try {
-            newStore.freeze();
-            if (newDataViewer == null) {
-               newStore.close();
+         assembler.shutdown();
+         if (tiledStorage != null) {
+            MosaicAssembler.finishTiledStorage(studio_, tiledStorage, newWidth, newHeight);
+            updatableAlert.setText("Saved stitched data to " + tiledStorage.getDiskLocation());
+         } else {
+            try {
+               newStore.freeze();
+               if (newDataViewer == null) {
+                  newStore.close();
+               }
+            } catch (IOException ioe) {
+               studio_.logs().logError(ioe, "IO Error while freezing DataProvider");
             }
-         } catch (IOException ioe) {
-            studio_.logs().logError(ioe, "IO Error while freezing DataProvider");
          }
 
          SwingUtilities.invokeLater(() -> {
@@ -678,4 +745,56 @@ public class MistFrame extends JFrame {
          });
       }
    }
+
+   /**
+    * Tags given to the output tiles in tiled storage.
+    */
+   private static JSONObject tileTags(int bytesPerPixel, Double pixelSizeUm) throws IOException {
+      JSONObject tags = new JSONObject();
+      try {
+         tags.put("Width", MosaicAssembler.TILE_SIZE);
+         tags.put("Height", MosaicAssembler.TILE_SIZE);
+         tags.put("BytesPerPixel", bytesPerPixel);
+         tags.put("BitDepth", 8 * bytesPerPixel);
+         tags.put("PixelType", bytesPerPixel == 1 ? "GRAY8" : "GRAY16");
+         if (pixelSizeUm != null && pixelSizeUm > 0) {
+            tags.put("PixelSizeUm", pixelSizeUm);
+         }
+      } catch (JSONException e) {
+         throw new IOException("Failed to create tags", e);
+      }
+      return tags;
+   }
+
+   /**
+    * Position names by position index.  Taken from the stage position list
+    * when it has them, otherwise from the metadata of the first image found
+    * at each position.
+    */
+   private static Map<Integer, String> getPositionNames(DataProvider dp,
+            List<MultiStagePosition> stagePositionList) {
+      Map<Integer, String> names = new HashMap<>();
+      int nrP = dp.getNextIndex(Coords.P);
+      if (stagePositionList != null && stagePositionList.size() >= nrP) {
+         for (int p = 0; p < nrP; p++) {
+            names.put(p, stagePositionList.get(p).getLabel());
+         }
+         return names;
+      }
+      Map<Integer, Coords> firstCoords = new HashMap<>();
+      for (Coords coords : dp.getUnorderedImageCoords()) {
+         firstCoords.putIfAbsent(coords.getP(), coords);
+      }
+      for (Map.Entry<Integer, Coords> entry : firstCoords.entrySet()) {
+         try {
+            Image image = dp.getImage(entry.getValue());
+            if (image != null) {
+               names.put(entry.getKey(), image.getMetadata().getPositionName(""));
+            }
+         } catch (IOException ioe) {
+            // Treated as a position without images
+         }
+      }
+      return names;
+   }
 }
@@ -0,0 +1,486 @@
+/**
+ * MosaicAssembler.java
+ *
+ * <p>Copyright University of California, 2026
+ *
+ * <p>LICENSE: This file is distributed under the BSD license. License text is
+ * included with the source distribution.
+ *
+ * <p>This file is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE.
+ *
+ * <p>IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+ */
+
+package org.micromanager.plugins.mist;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import mmcorej.org.json.JSONArray;
+import mmcorej.org.json.JSONException;
+import mmcorej.org.json.JSONObject;
+import org.micromanager.Studio;
+import org.micromanager.data.Coords;
+import org.micromanager.data.DataManager;
+import org.micromanager.data.DataProvider;
+import org.micromanager.data.Image;
+import org.micromanager.data.Metadata;
+import org.micromanager.ndtiffstorage.MultiresNDTiffAPI;
+import org.micromanager.ndtiffstorage.NDTiffStorage;
+import org.micromanager.tileddataprovider.OMEZarrMultiresStorage;
+
+/**
+ * Assembles mosaics from the images of a DataProvider, placing each image at
+ * the location found by Mist.  Later images overwrite earlier ones where they
+ * overlap.
+ *
+ * <p>Images are read on a single thread, since the source may not support
+ * reading from several threads at once, a limited number ahead of where they
+ * are needed, so that reading overlaps with assembling and writing.
+ * A mosaic can either be assembled as a single image, or be written to tiled,
+ * multi-resolution storage as a grid of {@link #TILE_SIZE} x {@link #TILE_SIZE}
+ * tiles.  In the latter case the tiles are composited in parallel, one row of
+ * output tiles at a time, and only the images that reach into the rows being
+ * worked on are kept in memory, so that the size of the mosaic is not limited
+ * by the heap.  Each image is read only once per plane.</p>
+ *
+ * <p>Only 8- and 16-bit grayscale images are supported.  The assembler is
+ * used from a single thread; call {@link #shutdown()} when done.</p>
+ */
+final class MosaicAssembler {
+   /** Width and height of the tiles written to tiled storage. */
+   static final int TILE_SIZE = 2048;
+   // The pyramid is made deep enough that the coarsest level fits in this
+   private static final int COARSEST_TARGET_PX = 2048;
+   private static final int MIN_RES_LEVEL = 4;
+
+   /**
+    * An image of the source data (identified by its position index) and the
+    * location of its top left corner in the mosaic.
+    */
+   static final class Tile {
+      final int p;
+      final int x;
+      final int y;
+
+      Tile(int p, int x, int y) {
+         this.p = p;
+         this.x = x;
+         this.y = y;
+      }
+   }
+
+   private final DataManager data_;
+   private final DataProvider dp_;
+   private final int bytesPerPixel_;
+   private final int tileWidth_;
+   private final int tileHeight_;
+   private final int nrThreads_;
+   private final ExecutorService reader_;
+   private final ExecutorService executor_;
+   private boolean pyramidSet_ = false;
+
+   /**
+    * Creates the assembler and its threads.
+    *
+    * @param data Used to create the mosaic images
+    * @param dp Source data
+    * @param bytesPerPixel Bytes per pixel of the source images (1 or 2)
+    * @param tileWidth Width of the source images
+    * @param tileHeight Height of the source images
+    */
+   MosaicAssembler(DataManager data, DataProvider dp, int bytesPerPixel,
+                   int tileWidth, int tileHeight) {
+      data_ = data;
+      dp_ = dp;
+      bytesPerPixel_ = bytesPerPixel;
+      tileWidth_ = tileWidth;
+      tileHeight_ = tileHeight;
+      nrThreads_ = Runtime.getRuntime().availableProcessors();
+      reader_ = Executors.newSingleThreadExecutor();
+      executor_ = Executors.newFixedThreadPool(nrThreads_);
+   }
+
+   void shutdown() {
+      reader_.shutdownNow();
+      executor_.shutdownNow();
+   }
+
+   private Future<Image> load(Coords plane, Tile tile) {
+      final Coords coords = plane.copyBuilder().p(tile.p).build();
+      return reader_.submit(() -> dp_.hasImage(coords) ? dp_.getImage(coords) : null);
+   }
+
+   private static <T> T get(Future<T> future) throws IOException {
+      try {
+         return future.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while assembling the mosaic");
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof IOException) {
+            throw (IOException) cause;
+         } else if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw new IOException("Failed to assemble the mosaic: " + cause, cause);
+      }
+   }
+
+   private Object newPixels(int length) {
+      return bytesPerPixel_ == 1 ? new byte[length] : new short[length];
+   }
+
+   /**
+    * Copies the part of an image that falls within a region of the mosaic.
+    *
+    * @param image Image to copy
+    * @param tile Location of the image in the mosaic
+    * @param dest Pixels of the region, with a row length of regionWidth
+    * @param regionX Location of the region in the mosaic
+    * @param regionY Location of the region in the mosaic
+    * @param regionWidth Width of the region
+    * @param regionHeight Height of the region
+    */
+   void copy(Image image, Tile tile, Object dest, int regionX, int regionY,
+             int regionWidth, int regionHeight) throws IOException {
+      if (image.getBytesPerPixel() != bytesPerPixel_ || image.getNumComponents() != 1) {
+         throw new IOException("Image at position " + tile.p
+               + " differs in pixel type from the first image");
+      }
+      final int width = image.getWidth();
+      final int x0 = Math.max(regionX, tile.x);
+      final int x1 = Math.min(regionX + regionWidth, tile.x + width);
+      final int y0 = Math.max(regionY, tile.y);
+      final int y1 = Math.min(regionY + regionHeight, tile.y + image.getHeight());
+      if (x0 >= x1 || y0 >= y1) {
+         return;
+      }
+      Object src = image.getRawPixels();
+      for (int y = y0; y < y1; y++) {
+         System.arraycopy(src, (y - tile.y) * width + x0 - tile.x,
+               dest, (y - regionY) * regionWidth + x0 - regionX, x1 - x0);
+      }
+   }
+
+   private boolean intersects(Tile tile, int x, int y, int width, int height) {
+      return tile.x < x + width && tile.x + tileWidth_ > x
+            && tile.y < y + height && tile.y + tileHeight_ > y;
+   }
+
+   /**
+    * Assembles one plane of the mosaic as a single image.
+    *
+    * @param plane Coords of the plane in the source, without position
+    * @param tiles Images to place, in the order in which they are placed
+    * @param width Width of the mosaic
+    * @param height Height of the mosaic
+    * @param newCoords Coords of the new image
+    * @return The mosaic, with the metadata of the first image found, or null
+    *         when the plane has no images
+    * @throws IOException when reading fails or the mosaic is too large
+    */
+   Image assemblePlane(Coords plane, List<Tile> tiles, int width, int height,
+                       Coords newCoords) throws IOException {
+      if ((long) width * height > Integer.MAX_VALUE - 8) {
+         throw new IOException("Mosaic of " + width + " x " + height
+               + " pixels is too large for a single image; save it in a tiled format");
+      }
+      Object pixels = newPixels(width * height);
+      Metadata metadata = null;
+      ArrayDeque<Future<Image>> pending = new ArrayDeque<>();
+      ArrayDeque<Tile> pendingTiles = new ArrayDeque<>();
+      try {
+         for (int i = 0; i <= tiles.size(); i++) {
+            if (i < tiles.size()) {
+               pending.add(load(plane, tiles.get(i)));
+               pendingTiles.add(tiles.get(i));
+            }
+            boolean last = i == tiles.size();
+            while (pending.size() >= 2 * nrThreads_ || (last && !pending.isEmpty())) {
+               Image image = get(pending.remove());
+               Tile tile = pendingTiles.remove();
+               if (image != null) {
+                  if (metadata == null) {
+                     metadata = image.getMetadata();
+                  }
+                  copy(image, tile, pixels, 0, 0, width, height);
+               }
+            }
+         }
+      } finally {
+         for (Future<Image> future : pending) {
+            future.cancel(true);
+         }
+      }
+      if (metadata == null) {
+         return null;
+      }
+      return data_.wrapImage(pixels, width, height, bytesPerPixel_, 1,
+            newCoords, metadata.copyBuilderWithNewUUID().build());
+   }
+
+   /**
+    * Composites one output tile.
+    *
+    * @return Pixels of the tile, or null when no image reaches into it
+    */
+   private Object composite(int regionX, int regionY, List<Tile> tiles,
+                            List<Future<Image>> images) throws IOException {
+      Object pixels = null;
+      for (int i = 0; i < tiles.size(); i++) {
+         Image image = get(images.get(i));
+         if (image != null) {
+            if (pixels == null) {
+               pixels = newPixels(TILE_SIZE * TILE_SIZE);
+            }
+            copy(image, tiles.get(i), pixels, regionX, regionY, TILE_SIZE, TILE_SIZE);
+         }
+      }
+      return pixels;
+   }
+
+   /**
+    * Writes one plane of the mosaic to tiled storage, as a grid of output
+    * tiles with "row" and "column" axes.  Output tiles without data are not
+    * written; those at the right and bottom edge are padded with zeros.
+    *
+    * @param storage Storage to write to
+    * @param plane Coords of the plane in the source, without position
+    * @param tiles Images to place, in the order in which they are placed
+    * @param width Width of the mosaic
+    * @param height Height of the mosaic
+    * @param planeAxes Axes of this plane in the storage (without row and column)
+    * @param planeTags Tags to give every output tile of this plane
+    * @param cancelled Checked before each write; when true, stops early
+    * @return Number of output tiles written
+    * @throws IOException when reading or writing fails
+    */
+   int writeTiled(MultiresNDTiffAPI storage, Coords plane, List<Tile> tiles,
+                  int width, int height, Map<String, Object> planeAxes,
+                  JSONObject planeTags, BooleanSupplier cancelled) throws IOException {
+      final int nrRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+      final int nrCols = (width + TILE_SIZE - 1) / TILE_SIZE;
+      // Rows of output tiles reached by each image, -1 when outside the mosaic
+      final int[] firstRow = new int[tiles.size()];
+      final int[] lastRow = new int[tiles.size()];
+      for (int i = 0; i < tiles.size(); i++) {
+         Tile tile = tiles.get(i);
+         if (!intersects(tile, 0, 0, width, height)) {
+            firstRow[i] = -1;
+            lastRow[i] = -1;
+         } else {
+            firstRow[i] = Math.max(0, Math.floorDiv(tile.y, TILE_SIZE));
+            lastRow[i] = Math.min(nrRows - 1,
+                  Math.floorDiv(tile.y + tileHeight_ - 1, TILE_SIZE));
+         }
+      }
+
+      // Images that reach into the current row, by index in tiles
+      final Map<Integer, Future<Image>> loaded = new HashMap<>();
+      final ArrayDeque<Future<Object>> pending = new ArrayDeque<>();
+      final ArrayDeque<int[]> pendingRowCols = new ArrayDeque<>();
+      int nrWritten = 0;
+      try {
+         for (int row = 0; row < nrRows; row++) {
+            for (int i = 0; i < tiles.size(); i++) {
+               if (firstRow[i] == row) {
+                  loaded.put(i, load(plane, tiles.get(i)));
+               }
+            }
+            final int regionY = row * TILE_SIZE;
+            for (int col = 0; col < nrCols; col++) {
+               final int regionX = col * TILE_SIZE;
+               final List<Tile> parts = new ArrayList<>();
+               final List<Future<Image>> images = new ArrayList<>();
+               for (int i = 0; i < tiles.size(); i++) {
+                  if (loaded.containsKey(i)
+                        && intersects(tiles.get(i), regionX, regionY, TILE_SIZE, TILE_SIZE)) {
+                     parts.add(tiles.get(i));
+                     images.add(loaded.get(i));
+                  }
+               }
+               if (parts.isEmpty()) {
+                  continue;
+               }
+               // Images are read by the reader thread, so waiting for them in
+               // the compositing tasks can not dead-lock.
+               pending.add(executor_.submit(() -> composite(regionX, regionY, parts, images)));
+               pendingRowCols.add(new int[] {row, col});
+               while (pending.size() > 2 * nrThreads_) {
+                  if (cancelled.getAsBoolean()) {
+                     return nrWritten;
+                  }
+                  if (write(storage, get(pending.remove()), pendingRowCols.remove(),
+                        width, height, planeAxes, planeTags)) {
+                     nrWritten++;
+                  }
+               }
+            }
+            // The compositing tasks keep their own references to the images
+            final int currentRow = row;
+            loaded.keySet().removeIf(i -> lastRow[i] <= currentRow);
+         }
+         while (!pending.isEmpty()) {
+            if (cancelled.getAsBoolean()) {
+               return nrWritten;
+            }
+            if (write(storage, get(pending.remove()), pendingRowCols.remove(),
+                  width, height, planeAxes, planeTags)) {
+               nrWritten++;
+            }
+         }
+      } finally {
+         for (Future<Object> future : pending) {
+            future.cancel(true);
+         }
+         for (Future<Image> future : loaded.values()) {
+            future.cancel(true);
+         }
+      }
+      return nrWritten;
+   }
+
+   /**
+    * Writes one output tile.  Only called from the thread calling writeTiled,
+    * as building the lower resolutions in the storage is not thread safe.
+    *
+    * @return Whether the tile had data and was written
+    */
+   private boolean write(MultiresNDTiffAPI storage, Object pixels, int[] rowCol,
+                         int width, int height, Map<String, Object> planeAxes,
+                         JSONObject planeTags) throws IOException {
+      if (pixels == null) {
+         return false;
+      }
+      HashMap<String, Object> axes = new HashMap<>(planeAxes);
+      axes.put("row", rowCol[0]);
+      axes.put("column", rowCol[1]);
+      try {
+         JSONObject tags = new JSONObject();
+         String[] keys = JSONObject.getNames(planeTags);
+         if (keys != null) {
+            for (String key : keys) {
+               tags.put(key, planeTags.get(key));
+            }
+         }
+         JSONObject axesJson = new JSONObject();
+         for (Map.Entry<String, Object> entry : axes.entrySet()) {
+            axesJson.put(entry.getKey(), entry.getValue());
+         }
+         tags.put("Axes", axesJson);
+         storage.putImageMultiRes(pixels, tags, axes, false, 8 * bytesPerPixel_,
+               TILE_SIZE, TILE_SIZE).get();
+      } catch (JSONException e) {
+         throw new IOException("Failed to create the tags of a tile", e);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while writing the mosaic");
+      } catch (ExecutionException e) {
+         throw new IOException("Failed to write a tile of the mosaic", e.getCause());
+      }
+      // Once the first tile is written, the lower resolutions of all
+      // following tiles are built while writing
+      if (!pyramidSet_) {
+         storage.increaseMaxResolutionLevel(pyramidDepth(width, height));
+         pyramidSet_ = true;
+      }
+      return true;
+   }
+
+   /**
+    * Number of lower resolution levels, such that the coarsest one fits in
+    * a window.
+    */
+   static int pyramidDepth(int width, int height) {
+      int largest = Math.max(width, height);
+      int depth = MIN_RES_LEVEL;
+      while (depth < NDTiffStorage.MAX_RESOLUTION_LEVEL
+            && (largest >> depth) > COARSEST_TARGET_PX) {
+         depth++;
+      }
+      return depth;
+   }
+
+   /**
+    * Creates tiled storage for a mosaic.
+    *
+    * @param zarr Whether to use OME-Zarr rather than NDTiff
+    * @param path Location of the new data set; its last part is the name
+    * @param bytesPerPixel Bytes per pixel (1 or 2)
+    * @param channelNames Names of the channels
+    * @param pixelSizeUm Pixel size, or 0 when not known
+    * @param width Width of the mosaic
+    * @param height Height of the mosaic
+    * @return New storage
+    * @throws IOException when the summary metadata can not be created
+    */
+   static MultiresNDTiffAPI createTiledStorage(boolean zarr, String path, int bytesPerPixel,
+                                               List<String> channelNames, double pixelSizeUm,
+                                               int width, int height) throws IOException {
+      JSONObject summary = new JSONObject();
+      try {
+         summary.put("Width", TILE_SIZE);
+         summary.put("Height", TILE_SIZE);
+         // Output tiles are placed on a grid without overlap
+         summary.put("GridPixelOverlapX", 0);
+         summary.put("GridPixelOverlapY", 0);
+         if (pixelSizeUm > 0) {
+            summary.put("PixelSize_um", pixelSizeUm);
+         }
+         summary.put("BitDepth", 8 * bytesPerPixel);
+         summary.put("PixelType", bytesPerPixel == 1 ? "GRAY8" : "GRAY16");
+         if (!channelNames.isEmpty()) {
+            JSONArray names = new JSONArray();
+            for (String name : channelNames) {
+               names.put(name);
+            }
+            summary.put("ChNames", names);
+            summary.put("Channels", channelNames.size());
+         }
+      } catch (JSONException e) {
+         throw new IOException("Failed to create summary metadata", e);
+      }
+      File file = new File(path);
+      String parentDir = file.getParent() == null ? path : file.getParent();
+      if (zarr) {
+         OMEZarrMultiresStorage storage =
+               new OMEZarrMultiresStorage(parentDir, file.getName(), summary, 0, 0, 30);
+         storage.increaseMaxResolutionLevel(pyramidDepth(width, height));
+         return storage;
+      }
+      return new NDTiffStorage(parentDir, file.getName(), summary, 0, 0, true, null, 30,
+            null, true);
+   }
+
+   /**
+    * Builds the lower resolutions that are still missing and finishes writing.
+    *
+    * @param storage Storage to finish
+    * @param width Width of the mosaic
+    * @param height Height of the mosaic
+    */
+   static void finishTiledStorage(Studio studio, MultiresNDTiffAPI storage,
+                                  int width, int height) {
+      try {
+         storage.increaseMaxResolutionLevel(pyramidDepth(width, height));
+      } catch (RuntimeException e) {
+         // The full resolution data are still fine
+         studio.logs().logError(e, "Mist: failed to build the lower resolutions");
+      }
+      storage.finishedWriting();
+   }
+}
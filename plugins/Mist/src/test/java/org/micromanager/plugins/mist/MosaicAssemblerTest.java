@@ -0,0 +1,278 @@
+package org.micromanager.plugins.mist;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import mmcorej.org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+import org.micromanager.data.Coordinates;
+import org.micromanager.data.Coords;
+import org.micromanager.data.DataProvider;
+import org.micromanager.data.Image;
+import org.micromanager.data.internal.DefaultDataManager;
+import org.micromanager.data.internal.DefaultImage;
+import org.micromanager.data.internal.DefaultMetadata;
+import org.micromanager.ndtiffstorage.MultiresNDTiffAPI;
+import org.micromanager.ndtiffstorage.NDTiffStorage;
+
+/**
+ * Tests for {@link MosaicAssembler}, comparing the assembled mosaics with
+ * images placed one pixel at a time.
+ */
+public class MosaicAssemblerTest {
+   private static final int IMAGE_WIDTH = 300;
+   private static final int IMAGE_HEIGHT = 200;
+   private static final Coords PLANE = Coordinates.builder().build();
+
+   private final Map<Integer, Image> images_ = new HashMap<>();
+   private MosaicAssembler assembler_;
+
+   @After
+   public void shutdown() {
+      if (assembler_ != null) {
+         assembler_.shutdown();
+      }
+   }
+
+   private static Image image(int p, int width, int height, long seed) {
+      Random random = new Random(seed);
+      byte[] pixels = new byte[width * height];
+      random.nextBytes(pixels);
+      return new DefaultImage(pixels, width, height, 1, 1,
+            Coordinates.builder().p(p).build(), new DefaultMetadata.Builder().build());
+   }
+
+   /**
+    * DataProvider that serves images_ by position index, and fails when it
+    * is read from several threads at once.
+    */
+   private DataProvider dataProvider() {
+      final Object[] reader = new Object[1];
+      return (DataProvider) Proxy.newProxyInstance(DataProvider.class.getClassLoader(),
+            new Class<?>[] {DataProvider.class}, (proxy, method, args) -> {
+               Coords coords = (Coords) args[0];
+               synchronized (reader) {
+                  if (reader[0] != null && reader[0] != Thread.currentThread()) {
+                     throw new IOException("Read from two threads");
+                  }
+                  reader[0] = Thread.currentThread();
+               }
+               try {
+                  // Slow enough for concurrent reads to overlap
+                  Thread.sleep(2);
+                  switch (method.getName()) {
+                     case "hasImage":
+                        return images_.containsKey(coords.getP());
+                     case "getImage":
+                        return images_.get(coords.getP());
+                     default:
+                        throw new UnsupportedOperationException(method.getName());
+                  }
+               } finally {
+                  synchronized (reader) {
+                     reader[0] = null;
+                  }
+               }
+            });
+   }
+
+   private MosaicAssembler assembler() {
+      // Creating images does not need the Studio
+      assembler_ = new MosaicAssembler(new DefaultDataManager(null), dataProvider(), 1,
+            IMAGE_WIDTH, IMAGE_HEIGHT);
+      return assembler_;
+   }
+
+   /**
+    * Places the images one pixel at a time, later images on top.
+    */
+   private byte[] insert(List<MosaicAssembler.Tile> tiles, int width, int height) {
+      byte[] mosaic = new byte[width * height];
+      for (MosaicAssembler.Tile tile : tiles) {
+         Image image = images_.get(tile.p);
+         if (image == null) {
+            continue;
+         }
+         byte[] pixels = (byte[]) image.getRawPixels();
+         for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+               int mx = tile.x + x;
+               int my = tile.y + y;
+               if (mx >= 0 && mx < width && my >= 0 && my < height) {
+                  mosaic[my * width + mx] = pixels[y * image.getWidth() + x];
+               }
+            }
+         }
+      }
+      return mosaic;
+   }
+
+   /**
+    * Images on an overlapping grid, plus one partly outside the mosaic, and
+    * one position without image.
+    */
+   private List<MosaicAssembler.Tile> grid(int columns, int rows, int stepX, int stepY,
+                                           int offsetX, int offsetY) {
+      List<MosaicAssembler.Tile> tiles = new ArrayList<>();
+      int p = 0;
+      for (int row = 0; row < rows; row++) {
+         for (int col = 0; col < columns; col++) {
+            images_.put(p, image(p, IMAGE_WIDTH, IMAGE_HEIGHT, p));
+            tiles.add(new MosaicAssembler.Tile(p, offsetX + col * stepX,
+                  offsetY + row * stepY));
+            p++;
+         }
+      }
+      images_.put(p, image(p, IMAGE_WIDTH, IMAGE_HEIGHT, p));
+      tiles.add(new MosaicAssembler.Tile(p, -IMAGE_WIDTH / 2, -IMAGE_HEIGHT / 3));
+      tiles.add(new MosaicAssembler.Tile(p + 1, 10, 10));
+      return tiles;
+   }
+
+   @Test
+   public void copyClipsToTheRegion() throws IOException {
+      Image image = image(0, 4, 3, 1);
+      byte[] src = (byte[]) image.getRawPixels();
+      byte[] dest = new byte[5 * 5];
+      // The image reaches out of the region on the left and the bottom
+      assembler().copy(image, new MosaicAssembler.Tile(0, 8, 13), dest, 10, 10, 5, 5);
+      byte[] expected = new byte[5 * 5];
+      for (int y = 3; y < 5; y++) {
+         for (int x = 0; x < 2; x++) {
+            expected[y * 5 + x] = src[(y - 3) * 4 + x + 2];
+         }
+      }
+      assertArrayEquals(expected, dest);
+      // Outside of the region
+      byte[] untouched = new byte[5 * 5];
+      assembler_.copy(image, new MosaicAssembler.Tile(0, 0, 0), untouched, 10, 10, 5, 5);
+      assertArrayEquals(new byte[5 * 5], untouched);
+   }
+
+   @Test(expected = IOException.class)
+   public void copyRejectsOtherPixelTypes() throws IOException {
+      Image image = new DefaultImage(new short[4], 2, 2, 2, 1, PLANE,
+            new DefaultMetadata.Builder().build());
+      assembler().copy(image, new MosaicAssembler.Tile(0, 0, 0), new byte[4], 0, 0, 2, 2);
+   }
+
+   @Test
+   public void assembledPlaneMatchesInsert() throws IOException {
+      List<MosaicAssembler.Tile> tiles = grid(4, 3, 270, 180, 0, 0);
+      int width = 3 * 270 + IMAGE_WIDTH;
+      int height = 2 * 180 + IMAGE_HEIGHT;
+      Image mosaic = assembler().assemblePlane(PLANE, tiles, width, height, PLANE);
+      assertEquals(width, mosaic.getWidth());
+      assertEquals(height, mosaic.getHeight());
+      assertArrayEquals(insert(tiles, width, height), (byte[]) mosaic.getRawPixels());
+   }
+
+   @Test
+   public void planeWithoutImagesIsNull() throws IOException {
+      List<MosaicAssembler.Tile> tiles = new ArrayList<>();
+      tiles.add(new MosaicAssembler.Tile(5, 0, 0));
+      assertNull(assembler().assemblePlane(PLANE, tiles, 100, 100, PLANE));
+   }
+
+   /**
+    * Records the tiles written to it.
+    */
+   private static MultiresNDTiffAPI storage(Map<String, byte[]> written, int[] resLevels) {
+      return (MultiresNDTiffAPI) Proxy.newProxyInstance(
+            MultiresNDTiffAPI.class.getClassLoader(), new Class<?>[] {MultiresNDTiffAPI.class},
+            (proxy, method, args) -> {
+               switch (method.getName()) {
+                  case "putImageMultiRes":
+                     @SuppressWarnings("unchecked")
+                     Map<String, Object> axes = (Map<String, Object>) args[2];
+                     String key = axes.get("row") + "," + axes.get("column");
+                     assertNull("Tile " + key + " written twice",
+                           written.put(key, (byte[]) args[0]));
+                     JSONObject tags = (JSONObject) args[1];
+                     assertEquals(axes.get("row"), tags.getJSONObject("Axes").get("row"));
+                     return CompletableFuture.completedFuture(null);
+                  case "increaseMaxResolutionLevel":
+                     resLevels[0] = (Integer) args[0];
+                     return null;
+                  default:
+                     throw new UnsupportedOperationException(method.getName());
+               }
+            });
+   }
+
+   @Test
+   public void tiledPlaneMatchesInsert() throws IOException {
+      final int tileSize = MosaicAssembler.TILE_SIZE;
+      // 2 x 2 output tiles, with the images in the top half only, so that
+      // the bottom row has no data; images straddle the column boundary
+      List<MosaicAssembler.Tile> tiles = grid(3, 2, 270, 180,
+            tileSize - 400, tileSize / 2 - 300);
+      // An image at the bottom left, that straddles the row boundary
+      images_.put(100, image(100, IMAGE_WIDTH, IMAGE_HEIGHT, 100));
+      tiles.add(new MosaicAssembler.Tile(100, 50, tileSize - 100));
+      int width = tileSize + 500;
+      int height = tileSize + 200;
+      Map<String, byte[]> written = new HashMap<>();
+      int[] resLevels = {0};
+      int nrWritten = assembler().writeTiled(storage(written, resLevels), PLANE, tiles,
+            width, height, new HashMap<>(), new JSONObject(), () -> false);
+      // The bottom right output tile has no data
+      assertEquals(3, nrWritten);
+      assertEquals(3, written.size());
+      assertTrue(written.containsKey("1,0"));
+      assertEquals(MosaicAssembler.pyramidDepth(width, height), resLevels[0]);
+
+      byte[] expected = insert(tiles, width, height);
+      for (int row = 0; row < 2; row++) {
+         for (int col = 0; col < 2; col++) {
+            byte[] tile = written.get(row + "," + col);
+            if (tile == null) {
+               continue;
+            }
+            assertEquals(tileSize * tileSize, tile.length);
+            for (int y = 0; y < tileSize; y++) {
+               for (int x = 0; x < tileSize; x++) {
+                  int mx = col * tileSize + x;
+                  int my = row * tileSize + y;
+                  // Tiles at the edges are padded with zeros
+                  byte value = mx < width && my < height ? expected[my * width + mx] : 0;
+                  if (value != tile[y * tileSize + x]) {
+                     assertEquals("Pixel " + mx + ", " + my, value, tile[y * tileSize + x]);
+                  }
+               }
+            }
+         }
+      }
+   }
+
+   @Test
+   public void cancelledWritesStop() throws IOException {
+      List<MosaicAssembler.Tile> tiles = grid(2, 2, 270, 180, 0, 0);
+      Map<String, byte[]> written = new HashMap<>();
+      int nrWritten = assembler().writeTiled(storage(written, new int[1]), PLANE, tiles,
+            1000, 1000, new HashMap<>(), new JSONObject(), () -> true);
+      assertEquals(0, nrWritten);
+      assertTrue(written.isEmpty());
+   }
+
+   @Test
+   public void pyramidFitsTheCoarsestLevelInATile() {
+      assertEquals(4, MosaicAssembler.pyramidDepth(1000, 1000));
+      assertEquals(4, MosaicAssembler.pyramidDepth(16 * 2048, 100));
+      assertEquals(5, MosaicAssembler.pyramidDepth(100, 16 * 2048 + 16));
+      assertEquals(6, MosaicAssembler.pyramidDepth(64 * 2048, 64 * 2048));
+      assertEquals(NDTiffStorage.MAX_RESOLUTION_LEVEL,
+            MosaicAssembler.pyramidDepth(Integer.MAX_VALUE, 1));
+   }
+}
@@ -0,0 +1,485 @@
+package org.micromanager.orthogonalviewer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import org.micromanager.data.Coords;
+import org.micromanager.data.Image;
+
+/**
+ * Cache of resliced copies of Z-stacks, one entry per (channel, time point, position).
+ *
+ * <p>Each entry holds the stack twice: once XZ-major (one XZ plane per image row) and once
+ * YZ-major (one YZ plane per image column). Extracting the XZ or YZ slice through the
+ * crosshair then becomes a single array copy instead of a fetch of the whole Z-stack.
+ * Volumes are built on a single background thread, kept up to date as new planes arrive,
+ * and evicted least-recently-used first when the cache exceeds its byte budget.</p>
+ *
+ * <p>Only single-component 8-bit, 16-bit and 32-bit float stacks are cached; callers should
+ * fall back to {@link OrthogonalSliceExtractor} when {@link #getVolume} returns null.</p>
+ */
+final class OrthogonalResliceCache {
+
+   /**
+    * Loads the (unsorted, possibly sparse) Z-stack for one channel/time/position.
+    */
+   interface StackLoader {
+      List<Image> loadZStack(int channel, int time, int position) throws IOException;
+   }
+
+   /**
+    * Notified on the builder thread when a volume has been built and can be used.
+    */
+   interface Listener {
+      void volumeReady(int channel, int time, int position);
+   }
+
+   private final StackLoader loader_;
+   private final Listener listener_;
+   private final long byteBudget_;
+   private final ExecutorService builder_;
+
+   // Access-ordered, so iteration starts at the least recently used volume.
+   private final LinkedHashMap<Key, Volume> volumes_ =
+         new LinkedHashMap<Key, Volume>(16, 0.75f, true);
+   // Volumes being built, with the planes that arrived before the volume was published
+   private final Map<Key, List<Image>> pending_ = new HashMap<Key, List<Image>>();
+   private long bytesInUse_ = 0;
+   private boolean shutdown_ = false;
+
+   /**
+    * @param loader     source of Z-stacks for volumes that are not yet cached
+    * @param listener   notified when a newly built volume becomes available
+    * @param byteBudget maximum number of bytes held by all cached volumes
+    */
+   OrthogonalResliceCache(StackLoader loader, Listener listener, long byteBudget) {
+      loader_ = loader;
+      listener_ = listener;
+      byteBudget_ = byteBudget;
+      builder_ = Executors.newSingleThreadExecutor(new ThreadFactory() {
+         @Override
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Orthogonal reslice cache");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }
+
+   /**
+    * Default byte budget: a quarter of the maximum heap.
+    */
+   static long defaultByteBudget() {
+      return Runtime.getRuntime().maxMemory() / 4;
+   }
+
+   /**
+    * Return the cached volume for the given stack if it is complete and matches the given
+    * dimensions. Otherwise schedule a background build and return null.
+    */
+   synchronized Volume getVolume(int channel, int time, int position,
+                                 int width, int height, int numZ) {
+      if (shutdown_) {
+         return null;
+      }
+      Key key = new Key(channel, time, position);
+      Volume volume = volumes_.get(key);
+      if (volume != null) {
+         if (volume.matches(width, height, numZ)) {
+            return volume.isReady() ? volume : null;
+         }
+         // Stack grew (or dimensions changed); rebuild from scratch
+         remove(key);
+      }
+      // Two copies of at least one byte per voxel
+      if (2L * width * height * numZ > byteBudget_ - bytesPinnedBy(key)) {
+         return null;
+      }
+      if (!pending_.containsKey(key)) {
+         pending_.put(key, new ArrayList<Image>());
+         scheduleBuild(key, width, height, numZ);
+      }
+      return null;
+   }
+
+   /**
+    * Insert a newly acquired plane into its volume, if that volume is cached.
+    */
+   synchronized void imageArrived(final Image image) {
+      if (shutdown_) {
+         return;
+      }
+      Coords coords = image.getCoords();
+      final Key key = new Key(coords.getChannel(), coords.getTimePoint(),
+            coords.getStagePosition());
+      final Volume volume = volumes_.get(key);
+      if (volume == null) {
+         List<Image> early = pending_.get(key);
+         if (early != null) {
+            early.add(image);
+         }
+         return;
+      }
+      if (coords.getZ() >= volume.numZ_ || !volume.accepts(image)) {
+         // Stack outgrew the volume; it is rebuilt on the next request
+         remove(key);
+         return;
+      }
+      try {
+         builder_.submit(new Runnable() {
+            @Override
+            public void run() {
+               volume.insert(image);
+            }
+         });
+      } catch (RejectedExecutionException ignore) {
+         // Shut down concurrently
+      }
+   }
+
+   /**
+    * Drop all cached volumes.
+    */
+   synchronized void clear() {
+      volumes_.clear();
+      bytesInUse_ = 0;
+   }
+
+   /**
+    * Drop all cached volumes and stop the builder thread.
+    */
+   synchronized void shutdown() {
+      shutdown_ = true;
+      clear();
+      builder_.shutdownNow();
+   }
+
+   private void scheduleBuild(final Key key, final int width, final int height,
+                              final int numZ) {
+      try {
+         builder_.submit(new Runnable() {
+            @Override
+            public void run() {
+               try {
+                  build(key, width, height, numZ);
+               } finally {
+                  synchronized (OrthogonalResliceCache.this) {
+                     pending_.remove(key);
+                  }
+               }
+            }
+         });
+      } catch (RejectedExecutionException ignore) {
+         pending_.remove(key);
+      }
+   }
+
+   private void build(Key key, int width, int height, int numZ) {
+      List<Image> zStack;
+      try {
+         zStack = loader_.loadZStack(key.channel_, key.time_, key.position_);
+      } catch (IOException ex) {
+         return;
+      }
+      if (zStack == null || zStack.isEmpty()) {
+         return;
+      }
+      Volume volume = Volume.create(zStack, width, height, numZ);
+      if (volume == null) {
+         return;
+      }
+      List<Image> planes = new ArrayList<Image>(zStack);
+      synchronized (this) {
+         if (shutdown_ || !makeRoom(key, volume.sizeInBytes())) {
+            return;
+         }
+         // Publish before filling, so planes arriving from now on are queued behind this task
+         volumes_.put(key, volume);
+         bytesInUse_ += volume.sizeInBytes();
+         List<Image> early = pending_.get(key);
+         if (early != null) {
+            planes.addAll(early);
+         }
+      }
+      for (Image image : planes) {
+         if (Thread.currentThread().isInterrupted()) {
+            return;
+         }
+         if (image != null && volume.accepts(image)) {
+            volume.insert(image);
+         }
+      }
+      volume.setReady();
+      if (listener_ != null) {
+         listener_.volumeReady(key.channel_, key.time_, key.position_);
+      }
+   }
+
+   // Volumes of the other channels at the same time point and position are rendered
+   // together in composite mode; evicting them for each other would rebuild forever.
+   // Caller must hold the lock.
+   private long bytesPinnedBy(Key key) {
+      long pinned = 0;
+      for (Map.Entry<Key, Volume> entry : volumes_.entrySet()) {
+         if (entry.getKey().sameStackAs(key)) {
+            pinned += entry.getValue().sizeInBytes();
+         }
+      }
+      return pinned;
+   }
+
+   // Evict least recently used volumes, except pinned ones, until bytes fit the budget.
+   // Caller must hold the lock.
+   private boolean makeRoom(Key key, long bytes) {
+      if (bytes > byteBudget_ - bytesPinnedBy(key)) {
+         return false;
+      }
+      Iterator<Map.Entry<Key, Volume>> it = volumes_.entrySet().iterator();
+      while (bytesInUse_ + bytes > byteBudget_ && it.hasNext()) {
+         Map.Entry<Key, Volume> entry = it.next();
+         if (!entry.getKey().sameStackAs(key)) {
+            bytesInUse_ -= entry.getValue().sizeInBytes();
+            it.remove();
+         }
+      }
+      return bytesInUse_ + bytes <= byteBudget_;
+   }
+
+   // Caller must hold the lock.
+   private void remove(Key key) {
+      Volume removed = volumes_.remove(key);
+      if (removed != null) {
+         bytesInUse_ -= removed.sizeInBytes();
+      }
+   }
+
+   private static final class Key {
+      private final int channel_;
+      private final int time_;
+      private final int position_;
+
+      Key(int channel, int time, int position) {
+         channel_ = channel;
+         time_ = time;
+         position_ = position;
+      }
+
+      boolean sameStackAs(Key other) {
+         return time_ == other.time_ && position_ == other.position_;
+      }
+
+      @Override
+      public boolean equals(Object other) {
+         if (!(other instanceof Key)) {
+            return false;
+         }
+         Key k = (Key) other;
+         return channel_ == k.channel_ && time_ == k.time_ && position_ == k.position_;
+      }
+
+      @Override
+      public int hashCode() {
+         return (channel_ * 31 + time_) * 31 + position_;
+      }
+   }
+
+   /**
+    * One resliced Z-stack. Pixel arrays are byte[], short[] or float[] depending on the
+    * pixel type of the source images.
+    *
+    * <p>xzPlanes_[y] holds numZ * width values laid out as [z * width + x];
+    * yzPlanes_[x] holds height * numZ values laid out as [y * numZ + z]. These match the
+    * layouts produced by {@link OrthogonalSliceExtractor}, so slices are plain copies.
+    * Missing planes read as 0.</p>
+    */
+   static final class Volume {
+      private final int width_;
+      private final int height_;
+      private final int numZ_;
+      private final Class<?> pixelType_;
+      private final Object[] xzPlanes_;
+      private final Object[] yzPlanes_;
+      private volatile boolean ready_ = false;
+
+      private Volume(int width, int height, int numZ, Class<?> pixelType) {
+         width_ = width;
+         height_ = height;
+         numZ_ = numZ;
+         pixelType_ = pixelType;
+         xzPlanes_ = new Object[height];
+         yzPlanes_ = new Object[width];
+         for (int y = 0; y < height; y++) {
+            xzPlanes_[y] = java.lang.reflect.Array.newInstance(pixelType, numZ * width);
+         }
+         for (int x = 0; x < width; x++) {
+            yzPlanes_[x] = java.lang.reflect.Array.newInstance(pixelType, height * numZ);
+         }
+      }
+
+      /**
+       * Create an empty volume suitable for the given stack, or null if the pixel type
+       * is not supported.
+       */
+      static Volume create(List<Image> zStack, int width, int height, int numZ) {
+         for (Image image : zStack) {
+            if (image == null) {
+               continue;
+            }
+            Class<?> pixelType = pixelTypeOf(image);
+            if (pixelType == null || image.getWidth() != width || image.getHeight() != height) {
+               return null;
+            }
+            return new Volume(width, height, numZ, pixelType);
+         }
+         return null;
+      }
+
+      // Decided from the image header, since getRawPixels() may copy the pixels.
+      private static Class<?> pixelTypeOf(Image image) {
+         if (image.getNumComponents() != 1) {
+            return null;
+         }
+         switch (image.getBytesPerPixel()) {
+            case 1:
+               return byte.class;
+            case 2:
+               return short.class;
+            case 4:
+               return float.class;
+            default:
+               return null;
+         }
+      }
+
+      boolean matches(int width, int height, int numZ) {
+         return width_ == width && height_ == height && numZ_ == numZ;
+      }
+
+      boolean accepts(Image image) {
+         return image.getWidth() == width_ && image.getHeight() == height_
+               && pixelTypeOf(image) == pixelType_;
+      }
+
+      boolean isReady() {
+         return ready_;
+      }
+
+      void setReady() {
+         ready_ = true;
+      }
+
+      boolean isFloat() {
+         return pixelType_ == float.class;
+      }
+
+      long sizeInBytes() {
+         long elementSize = pixelType_ == byte.class ? 1 : (pixelType_ == short.class ? 2 : 4);
+         return 2L * width_ * height_ * numZ_ * elementSize;
+      }
+
+      /**
+       * Copy one XY plane into both reslice layouts.
+       */
+      synchronized void insert(Image image) {
+         int z = image.getCoords().getZ();
+         if (z < 0 || z >= numZ_) {
+            return;
+         }
+         Object pixels = image.getRawPixels();
+         int xzOffset = z * width_;
+         for (int y = 0; y < height_; y++) {
+            System.arraycopy(pixels, y * width_, xzPlanes_[y], xzOffset, width_);
+         }
+         if (pixelType_ == byte.class) {
+            byte[] src = (byte[]) pixels;
+            for (int x = 0; x < width_; x++) {
+               byte[] dst = (byte[]) yzPlanes_[x];
+               for (int y = 0, s = x, d = z; y < height_; y++, s += width_, d += numZ_) {
+                  dst[d] = src[s];
+               }
+            }
+         } else if (pixelType_ == short.class) {
+            short[] src = (short[]) pixels;
+            for (int x = 0; x < width_; x++) {
+               short[] dst = (short[]) yzPlanes_[x];
+               for (int y = 0, s = x, d = z; y < height_; y++, s += width_, d += numZ_) {
+                  dst[d] = src[s];
+               }
+            }
+         } else {
+            float[] src = (float[]) pixels;
+            for (int x = 0; x < width_; x++) {
+               float[] dst = (float[]) yzPlanes_[x];
+               for (int y = 0, s = x, d = z; y < height_; y++, s += width_, d += numZ_) {
+                  dst[d] = src[s];
+               }
+            }
+         }
+      }
+
+      /**
+       * XZ slice at row y; same layout as {@link OrthogonalSliceExtractor#extractXZ}.
+       */
+      synchronized int[] extractXZ(int y) {
+         return toIntArray(xzPlanes_[clamp(y, height_)]);
+      }
+
+      /**
+       * YZ slice at column x; same layout as {@link OrthogonalSliceExtractor#extractYZ}.
+       */
+      synchronized int[] extractYZ(int x) {
+         return toIntArray(yzPlanes_[clamp(x, width_)]);
+      }
+
+      /**
+       * Float XZ slice at row y; only valid when {@link #isFloat()}.
+       */
+      synchronized float[] extractXZFloat(int y) {
+         return ((float[]) xzPlanes_[clamp(y, height_)]).clone();
+      }
+
+      /**
+       * Float YZ slice at column x; only valid when {@link #isFloat()}.
+       */
+      synchronized float[] extractYZFloat(int x) {
+         return ((float[]) yzPlanes_[clamp(x, width_)]).clone();
+      }
+
+      private static int clamp(int value, int size) {
+         return Math.max(0, Math.min(value, size - 1));
+      }
+
+      private static int[] toIntArray(Object plane) {
+         if (plane instanceof short[]) {
+            short[] src = (short[]) plane;
+            int[] result = new int[src.length];
+            for (int i = 0; i < src.length; i++) {
+               result[i] = src[i] & 0xFFFF;
+            }
+            return result;
+         } else if (plane instanceof byte[]) {
+            byte[] src = (byte[]) plane;
+            int[] result = new int[src.length];
+            for (int i = 0; i < src.length; i++) {
+               result[i] = src[i] & 0xFF;
+            }
+            return result;
+         }
+         // Float volumes: raw bit patterns, as OrthogonalSliceExtractor.getPixelValue
+         float[] src = (float[]) plane;
+         int[] result = new int[src.length];
+         for (int i = 0; i < src.length; i++) {
+            result[i] = Float.floatToRawIntBits(src[i]);
+         }
+         return result;
+      }
+   }
+}
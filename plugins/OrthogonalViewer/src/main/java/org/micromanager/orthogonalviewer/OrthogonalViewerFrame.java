@@ -162,6 +162,9 @@ public class OrthogonalViewerFrame extends AbstractDataViewer
 
    // Inspector stats
    private final StatsComputeQueue computeQueue_ = StatsComputeQueue.create();
+
+   // XZ-/YZ-major copies of recently viewed stacks, so crosshair moves do not refetch them
+   private final OrthogonalResliceCache resliceCache_;
    private volatile ImagesAndStats currentImagesAndStats_;
    // Coords of the last position for which we triggered an autostretch re-render.
    // Cleared when Z changes; set when the stats-triggered re-render fires.
@@ -182,6 +185,26 @@ public class OrthogonalViewerFrame extends AbstractDataViewer
       super(sourceDisplay.getDisplaySettings());
       studio_ = studio;
       dataProvider_ = sourceDisplay.getDataProvider();
+      resliceCache_ = new OrthogonalResliceCache(
+            new OrthogonalResliceCache.StackLoader() {
+               @Override
+               public List<Image> loadZStack(int channel, int time, int position)
+                     throws IOException {
+                  return fetchZStack(channel, time, position);
+               }
+            },
+            new OrthogonalResliceCache.Listener() {
+               @Override
+               public void volumeReady(int channel, int time, int position) {
+                  SwingUtilities.invokeLater(new Runnable() {
+                     @Override
+                     public void run() {
+                        scheduleRefresh();
+                     }
+                  });
+               }
+            },
+            OrthogonalResliceCache.defaultByteBudget());
 
       // Probe dimensions
       probeDimensions();
@@ -472,6 +495,7 @@ public class OrthogonalViewerFrame extends AbstractDataViewer
 
    @Subscribe
    public void onNewImage(DataProviderHasNewImageEvent event) {
+      resliceCache_.imageArrived(event.getImage());
       final int newZ = Math.max(1, dataProvider_.getNextIndex(Coords.Z_SLICE));
       final int newC = Math.max(1, dataProvider_.getNextIndex(Coords.CHANNEL));
       final int newT = Math.max(1, dataProvider_.getNextIndex(Coords.TIME_POINT));
@@ -1013,19 +1037,15 @@ public class OrthogonalViewerFrame extends AbstractDataViewer
 
       if (!multiChannel) {
          // Single channel path — fetch only channel 0
-         List<Image> zStack;
-         try {
-            zStack = fetchZStack(0, t, p);
-         } catch (IOException ex) {
-            zStack = Collections.<Image>emptyList();
-         }
+         ChannelSlices slices = fetchChannelSlices(0, t, p, cx, cy, cz, w, h, numZ,
+               hasZ && numZ >= 2);
          // Collect XY image for Inspector stats
-         Image xyImg = getZImage(zStack, cz);
+         Image xyImg = slices.xyImage;
          result.xyImages = new java.util.ArrayList<Image>();
          if (xyImg != null) {
             result.xyImages.add(xyImg);
          }
-         if (zStack.isEmpty()) {
+         if (slices.empty) {
             return result;
          }
          ChannelDisplaySettings cs = settings.getChannelSettings(ch);
@@ -1033,19 +1053,18 @@ public class OrthogonalViewerFrame extends AbstractDataViewer
          double gamma = comp.getScalingGamma();
          Color color = grayscale ? Color.WHITE : cs.getColor();
 
-         boolean isFloat = isFloatStack(zStack);
-         if (isFloat) {
+         if (slices.isFloat) {
             double[] fScale = floatScalingMinMax(settings, stats, ch);
             float[] xyF = (xyImg != null) ? (float[]) xyImg.getRawPixels() : new float[w * h];
             result.xy = OrthogonalLutRenderer.renderFloat(xyF, w, h, fScale[0], fScale[1],
                   gamma, color);
             if (hasZ && numZ >= 2) {
                result.xz = scaleImage(OrthogonalLutRenderer.renderFloat(
-                     OrthogonalSliceExtractor.extractXZFloat(zStack, cy, w, numZ),
-                     w, numZ, fScale[0], fScale[1], gamma, color), w, zPhysH);
+                     slices.xzFloat, w, numZ, fScale[0], fScale[1], gamma, color),
+                     w, zPhysH);
                result.yz = scaleImage(OrthogonalLutRenderer.renderFloat(
-                     OrthogonalSliceExtractor.extractYZFloat(zStack, cx, h, numZ),
-                     numZ, h, fScale[0], fScale[1], gamma, color), zPhysH, h);
+                     slices.yzFloat, numZ, h, fScale[0], fScale[1], gamma, color),
+                     zPhysH, h);
             }
          } else {
             long[] stretch = autostretchMinMax(settings, stats, ch);
@@ -1059,26 +1078,20 @@ public class OrthogonalViewerFrame extends AbstractDataViewer
                      0, 1, 1.0, Color.WHITE);
             }
             if (hasZ && numZ >= 2) {
-               int[] xzPixels = OrthogonalSliceExtractor.extractXZ(zStack, cy, w, numZ);
                result.xz = scaleImage(
-                     OrthogonalLutRenderer.render(xzPixels, w, numZ, min, max, gamma, color),
+                     OrthogonalLutRenderer.render(slices.xz, w, numZ, min, max, gamma, color),
                      w, zPhysH);
-               int[] yzPixels = OrthogonalSliceExtractor.extractYZ(zStack, cx, h, numZ);
                result.yz = scaleImage(
-                     OrthogonalLutRenderer.render(yzPixels, numZ, h, min, max, gamma, color),
+                     OrthogonalLutRenderer.render(slices.yz, numZ, h, min, max, gamma, color),
                      zPhysH, h);
             }
          }
       } else if (!composite) {
          // Grayscale or Color mode with multi-channel: show only the selected channel
-         List<Image> zStack;
-         try {
-            zStack = fetchZStack(ch, t, p);
-         } catch (IOException ex) {
-            zStack = Collections.<Image>emptyList();
-         }
+         ChannelSlices slices = fetchChannelSlices(ch, t, p, cx, cy, cz, w, h, numZ,
+               hasZ && numZ >= 2);
          // Collect XY image for Inspector stats (reused below for rendering)
-         Image xyImg = getZImage(zStack, cz);
+         Image xyImg = slices.xyImage;
          result.xyImages = new java.util.ArrayList<Image>();
          if (xyImg != null) {
             result.xyImages.add(xyImg);
@@ -1088,19 +1101,18 @@ public class OrthogonalViewerFrame extends AbstractDataViewer
          double gamma = comp.getScalingGamma();
          Color color = grayscale ? Color.WHITE : cs.getColor();
 
-         boolean isFloat = isFloatStack(zStack);
-         if (isFloat) {
+         if (slices.isFloat) {
             double[] fScale = floatScalingMinMax(settings, stats, ch);
             float[] xyF = (xyImg != null) ? (float[]) xyImg.getRawPixels() : new float[w * h];
             result.xy = OrthogonalLutRenderer.renderFloat(xyF, w, h, fScale[0], fScale[1],
                   gamma, color);
             if (hasZ && numZ >= 2) {
                result.xz = scaleImage(OrthogonalLutRenderer.renderFloat(
-                     OrthogonalSliceExtractor.extractXZFloat(zStack, cy, w, numZ),
-                     w, numZ, fScale[0], fScale[1], gamma, color), w, zPhysH);
+                     slices.xzFloat, w, numZ, fScale[0], fScale[1], gamma, color),
+                     w, zPhysH);
                result.yz = scaleImage(OrthogonalLutRenderer.renderFloat(
-                     OrthogonalSliceExtractor.extractYZFloat(zStack, cx, h, numZ),
-                     numZ, h, fScale[0], fScale[1], gamma, color), zPhysH, h);
+                     slices.yzFloat, numZ, h, fScale[0], fScale[1], gamma, color),
+                     zPhysH, h);
             }
          } else {
             long[] stretch = autostretchMinMax(settings, stats, ch);
@@ -1114,30 +1126,26 @@ public class OrthogonalViewerFrame extends AbstractDataViewer
                      0, 1, 1.0, Color.WHITE);
             }
             if (hasZ && numZ >= 2) {
-               int[] xzPixels = OrthogonalSliceExtractor.extractXZ(zStack, cy, w, numZ);
                result.xz = scaleImage(
-                     OrthogonalLutRenderer.render(xzPixels, w, numZ, min, max, gamma, color),
+                     OrthogonalLutRenderer.render(slices.xz, w, numZ, min, max, gamma, color),
                      w, zPhysH);
-               int[] yzPixels = OrthogonalSliceExtractor.extractYZ(zStack, cx, h, numZ);
                result.yz = scaleImage(
-                     OrthogonalLutRenderer.render(yzPixels, numZ, h, min, max, gamma, color),
+                     OrthogonalLutRenderer.render(slices.yz, numZ, h, min, max, gamma, color),
                      zPhysH, h);
             }
          }
       } else {
          // Multi-channel composite path — fetch all channels
-         java.util.List<List<Image>> allChannelStacks = new java.util.ArrayList<List<Image>>();
+         java.util.List<ChannelSlices> allChannelSlices =
+               new java.util.ArrayList<ChannelSlices>();
          for (int c = 0; c < numChannels; c++) {
-            try {
-               allChannelStacks.add(fetchZStack(c, t, p));
-            } catch (IOException ex) {
-               allChannelStacks.add(Collections.<Image>emptyList());
-            }
+            allChannelSlices.add(fetchChannelSlices(c, t, p, cx, cy, cz, w, h, numZ,
+                  hasZ && numZ >= 2));
          }
          // Collect XY images for Inspector stats
          result.xyImages = new java.util.ArrayList<Image>();
          for (int c = 0; c < numChannels; c++) {
-            Image img = getZImage(allChannelStacks.get(c), cz);
+            Image img = allChannelSlices.get(c).xyImage;
             if (img != null) {
                result.xyImages.add(img);
             }
@@ -1148,25 +1156,22 @@ public class OrthogonalViewerFrame extends AbstractDataViewer
          java.util.List<int[]> yzChPixels = new java.util.ArrayList<int[]>();
 
          for (int c = 0; c < numChannels; c++) {
-            List<Image> zStack = allChannelStacks.get(c);
-            if (zStack.isEmpty()) {
+            ChannelSlices slices = allChannelSlices.get(c);
+            if (slices.empty) {
                xyChPixels.add(null);
                xzChPixels.add(null);
                yzChPixels.add(null);
                continue;
             }
-            Image xyAtZ = getZImage(zStack, cz);
+            Image xyAtZ = slices.xyImage;
             xyChPixels.add(xyAtZ != null
                   ? OrthogonalLutRenderer.toIntArray(xyAtZ.getRawPixels(), w * h)
                   : null);
-
-            if (hasZ && numZ >= 2) {
-               xzChPixels.add(OrthogonalSliceExtractor.extractXZ(zStack, cy, w, numZ));
-               yzChPixels.add(OrthogonalSliceExtractor.extractYZ(zStack, cx, h, numZ));
-            } else {
-               xzChPixels.add(null);
-               yzChPixels.add(null);
-            }
+            // Composite rendering works on integer values; float slices are passed as raw
+            // bit patterns, matching OrthogonalSliceExtractor.extractXZ/extractYZ.
+            // All null unless hasZ && numZ >= 2.
+            xzChPixels.add(slices.isFloat ? floatBits(slices.xzFloat) : slices.xz);
+            yzChPixels.add(slices.isFloat ? floatBits(slices.yzFloat) : slices.yz);
          }
 
          DisplaySettings renderSettings = buildAutostretchSettings(settings, stats, numChannels);
@@ -1186,6 +1191,83 @@ public class OrthogonalViewerFrame extends AbstractDataViewer
    }
 
 
+   /**
+    * Pixels needed to render one channel: the XY image at the crosshair Z and, when
+    * requested, the XZ/YZ slices through the crosshair.
+    */
+   private static class ChannelSlices {
+      Image xyImage;
+      boolean empty = true;
+      boolean isFloat;
+      // Set for integer stacks
+      int[] xz;
+      int[] yz;
+      // Set for float stacks
+      float[] xzFloat;
+      float[] yzFloat;
+   }
+
+   /**
+    * Gather the slices for one channel. The XZ/YZ slices come from the reslice cache when
+    * the volume is ready; otherwise the Z-stack is fetched and sliced directly, and the
+    * cache builds the volume in the background for the next request.
+    */
+   private ChannelSlices fetchChannelSlices(int channel, int t, int p, int cx, int cy, int cz,
+                                            int w, int h, int numZ, boolean withZ) {
+      ChannelSlices slices = new ChannelSlices();
+      OrthogonalResliceCache.Volume volume = withZ
+            ? resliceCache_.getVolume(channel, t, p, w, h, numZ) : null;
+      if (volume != null) {
+         try {
+            List<Image> xy = fetchXYImages(channel, t, p, cz);
+            slices.xyImage = xy.isEmpty() ? null : xy.get(0);
+         } catch (IOException ex) {
+            slices.xyImage = null;
+         }
+         slices.empty = false;
+         slices.isFloat = volume.isFloat();
+         if (slices.isFloat) {
+            slices.xzFloat = volume.extractXZFloat(cy);
+            slices.yzFloat = volume.extractYZFloat(cx);
+         } else {
+            slices.xz = volume.extractXZ(cy);
+            slices.yz = volume.extractYZ(cx);
+         }
+         return slices;
+      }
+
+      List<Image> zStack;
+      try {
+         zStack = fetchZStack(channel, t, p);
+      } catch (IOException ex) {
+         zStack = Collections.<Image>emptyList();
+      }
+      slices.xyImage = getZImage(zStack, cz);
+      slices.empty = zStack.isEmpty();
+      slices.isFloat = isFloatStack(zStack);
+      if (withZ) {
+         if (slices.isFloat) {
+            slices.xzFloat = OrthogonalSliceExtractor.extractXZFloat(zStack, cy, w, numZ);
+            slices.yzFloat = OrthogonalSliceExtractor.extractYZFloat(zStack, cx, h, numZ);
+         } else {
+            slices.xz = OrthogonalSliceExtractor.extractXZ(zStack, cy, w, numZ);
+            slices.yz = OrthogonalSliceExtractor.extractYZ(zStack, cx, h, numZ);
+         }
+      }
+      return slices;
+   }
+
+   private static int[] floatBits(float[] values) {
+      if (values == null) {
+         return null;
+      }
+      int[] bits = new int[values.length];
+      for (int i = 0; i < values.length; i++) {
+         bits[i] = Float.floatToRawIntBits(values[i]);
+      }
+      return bits;
+   }
+
    private static BufferedImage scaleImage(BufferedImage src, int targetW, int targetH) {
       if (src.getWidth() == targetW && src.getHeight() == targetH) {
          return src;
@@ -2164,6 +2246,7 @@ public class OrthogonalViewerFrame extends AbstractDataViewer
       }
       closed_ = true;
       dataProvider_.unregisterForEvents(this);
+      resliceCache_.shutdown();
       try {
          computeQueue_.shutdown();
       } catch (InterruptedException ignore) {
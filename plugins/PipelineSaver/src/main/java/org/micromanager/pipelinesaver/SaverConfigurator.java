@@ -24,6 +24,8 @@ import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
@@ -51,6 +53,10 @@ public class SaverConfigurator extends JFrame implements ProcessorConfigurator {
    private final JComboBox<String> saveFormat_;
    private JTextField savePath_;
    private final JButton browseButton_;
+   private final JCheckBox alsoMultipage_;
+   private final JCheckBox alsoSinglePlane_;
+   private final JTextField queueSize_;
+   private final JCheckBox skipWhenFull_;
 
    public SaverConfigurator(PropertyMap settings, Studio studio) {
       studio_ = studio;
@@ -96,6 +102,27 @@ public class SaverConfigurator extends JFrame implements ProcessorConfigurator {
          }
       });
       panel.add(browseButton_, "wrap");
+
+      List<String> extraFormats = settings.getStringList("extraFormats");
+      panel.add(new JLabel("Also save as: "), "split 3");
+      alsoMultipage_ = new JCheckBox(SaverPlugin.MULTIPAGE_TIFF);
+      alsoMultipage_.setSelected(extraFormats.contains(SaverPlugin.MULTIPAGE_TIFF));
+      panel.add(alsoMultipage_);
+      alsoSinglePlane_ = new JCheckBox(SaverPlugin.SINGLEPLANE_TIFF_SERIES);
+      alsoSinglePlane_.setSelected(extraFormats.contains(SaverPlugin.SINGLEPLANE_TIFF_SERIES));
+      panel.add(alsoSinglePlane_, "wrap");
+      alsoMultipage_.addActionListener(e -> updateControls());
+      alsoSinglePlane_.addActionListener(e -> updateControls());
+
+      panel.add(new JLabel("Write queue size (MB): "), "split 2");
+      queueSize_ = new JTextField(Integer.toString(settings.getInteger("queueSizeMB",
+            SaverProcessor.defaultQueueSizeMB())), 6);
+      panel.add(queueSize_, "wrap");
+      skipWhenFull_ = new JCheckBox("Skip saving images when the queue is full");
+      skipWhenFull_.setToolTipText("<html>When not checked, the pipeline waits until "
+            + "there is room in the queue,<br>which may slow down the acquisition.</html>");
+      skipWhenFull_.setSelected(settings.getBoolean("skipWhenFull", false));
+      panel.add(skipWhenFull_, "wrap");
       super.add(panel);
       updateControls();
 
@@ -113,8 +140,13 @@ public class SaverConfigurator extends JFrame implements ProcessorConfigurator {
          shouldDisplay_.setSelected(true);
       }
       shouldDisplay_.setEnabled(!isRAM);
-      savePath_.setEnabled(!isRAM);
-      browseButton_.setEnabled(!isRAM);
+      // The main format is saved anyway
+      String format = (String) saveFormat_.getSelectedItem();
+      alsoMultipage_.setEnabled(!SaverPlugin.MULTIPAGE_TIFF.equals(format));
+      alsoSinglePlane_.setEnabled(!SaverPlugin.SINGLEPLANE_TIFF_SERIES.equals(format));
+      boolean needsPath = !isRAM || alsoMultipage_.isSelected() || alsoSinglePlane_.isSelected();
+      savePath_.setEnabled(needsPath);
+      browseButton_.setEnabled(needsPath);
    }
 
    @Override
@@ -134,6 +166,22 @@ public class SaverConfigurator extends JFrame implements ProcessorConfigurator {
       builder.putString("format", format);
       builder.putBoolean("shouldDisplay", shouldDisplay_.isSelected());
       builder.putString("savePath", savePath_.getText());
+      List<String> extraFormats = new ArrayList<>();
+      if (alsoMultipage_.isEnabled() && alsoMultipage_.isSelected()) {
+         extraFormats.add(SaverPlugin.MULTIPAGE_TIFF);
+      }
+      if (alsoSinglePlane_.isEnabled() && alsoSinglePlane_.isSelected()) {
+         extraFormats.add(SaverPlugin.SINGLEPLANE_TIFF_SERIES);
+      }
+      builder.putStringList("extraFormats", extraFormats);
+      int queueSizeMB = SaverProcessor.defaultQueueSizeMB();
+      try {
+         queueSizeMB = Math.max(1, Integer.parseInt(queueSize_.getText().trim()));
+      } catch (NumberFormatException e) {
+         queueSize_.setText(Integer.toString(queueSizeMB));
+      }
+      builder.putInteger("queueSizeMB", queueSizeMB);
+      builder.putBoolean("skipWhenFull", skipWhenFull_.isSelected());
       return builder.build();
    }
 
@@ -39,6 +39,9 @@ public class SaverFactory implements ProcessorFactory {
       return new SaverProcessor(studio_,
             settings_.getString("format", SaverPlugin.MULTIPAGE_TIFF),
             settings_.getString("savePath", null),
-            settings_.getBoolean("shouldDisplay", true));
+            settings_.getBoolean("shouldDisplay", true),
+            settings_.getStringList("extraFormats"),
+            settings_.getInteger("queueSizeMB", SaverProcessor.defaultQueueSizeMB()),
+            settings_.getBoolean("skipWhenFull", false));
    }
 }
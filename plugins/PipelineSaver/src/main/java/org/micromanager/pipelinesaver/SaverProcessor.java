@@ -22,87 +22,138 @@ package org.micromanager.pipelinesaver;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.micromanager.Studio;
 import org.micromanager.data.Datastore;
-import org.micromanager.data.DatastoreFrozenException;
-import org.micromanager.data.DatastoreRewriteException;
 import org.micromanager.data.Image;
 import org.micromanager.data.Processor;
 import org.micromanager.data.ProcessorContext;
 
+/**
+ * Passes images on unchanged, and saves them on the side.
+ *
+ * <p>Every requested format gets its own Datastore and {@link StoreWriter},
+ * so that images are written in the background and several formats can be
+ * written at the same time.  Only when a write queue is full does the
+ * pipeline wait (or the image is not saved, if so configured).</p>
+ */
 public class SaverProcessor implements Processor {
-   private Studio studio_;
-   private Datastore store_;
-   private final String format_;
-   private final String savePath_;
+   private final Studio studio_;
+   private final List<StoreWriter> writers_ = new ArrayList<>();
 
+   /**
+    * Creates the Datastores and starts writing.
+    *
+    * @param studio Studio
+    * @param format Format of the main Datastore, one of the formats in SaverPlugin
+    * @param savePath Where to save the main Datastore, unless it is RAM
+    * @param shouldDisplay Whether to display the main Datastore
+    */
    public SaverProcessor(Studio studio, String format, String savePath,
                          boolean shouldDisplay) {
+      this(studio, format, savePath, shouldDisplay, new ArrayList<>(),
+            defaultQueueSizeMB(), false);
+   }
+
+   /**
+    * Creates the Datastores and starts writing.
+    *
+    * @param studio Studio
+    * @param format Format of the main Datastore, one of the formats in SaverPlugin
+    * @param savePath Where to save the main Datastore, unless it is RAM
+    * @param shouldDisplay Whether to display the main Datastore
+    * @param extraFormats Formats to save in as well, next to the main
+    *                     Datastore, each in a directory with the format
+    *                     appended to the save path
+    * @param queueSizeMB Maximum size of each write queue
+    * @param skipWhenFull Whether to not save images that arrive while the
+    *                     write queue is full, instead of waiting
+    */
+   public SaverProcessor(Studio studio, String format, String savePath,
+                         boolean shouldDisplay, List<String> extraFormats,
+                         int queueSizeMB, boolean skipWhenFull) {
       studio_ = studio;
-      format_ = format;
-      // Update save path to account for duplicates -- append a numerical
-      // suffix that's max of all suffices + 1.
-      savePath_ = findUniqueSavePath(savePath);
+      long maxQueuedBytes = Math.max(1, queueSizeMB) * 1024L * 1024L;
+      addWriter(format, savePath, shouldDisplay, maxQueuedBytes, skipWhenFull);
+      for (String extraFormat : extraFormats) {
+         if (extraFormat.equals(format) || extraFormat.equals(SaverPlugin.RAM)) {
+            continue;
+         }
+         addWriter(extraFormat, savePath + "_" + getSuffix(extraFormat), false,
+               maxQueuedBytes, skipWhenFull);
+      }
+   }
+
+   /**
+    * Default size of the write queues: a quarter of the heap, at most 1 GB.
+    */
+   static int defaultQueueSizeMB() {
+      return (int) Math.max(1, Math.min(1024,
+            Runtime.getRuntime().maxMemory() / 4 / 1024 / 1024));
+   }
+
+   private static String getSuffix(String format) {
+      if (format.equals(SaverPlugin.MULTIPAGE_TIFF)) {
+         return "stack";
+      } else if (format.equals(SaverPlugin.SINGLEPLANE_TIFF_SERIES)) {
+         return "series";
+      }
+      return "data";
+   }
+
+   private void addWriter(String format, String savePath, boolean shouldDisplay,
+                          long maxQueuedBytes, boolean skipWhenFull) {
+      Datastore store = null;
+      String uniquePath = null;
       try {
          if (format.equals(SaverPlugin.MULTIPAGE_TIFF)) {
+            // Update save path to account for duplicates -- append a numerical
+            // suffix that's max of all suffices + 1.
+            uniquePath = findUniqueSavePath(savePath);
             // TODO: hardcoded whether or not to split positions.
-            store_ = studio_.data().createMultipageTIFFDatastore(savePath_,
+            store = studio_.data().createMultipageTIFFDatastore(uniquePath,
                   true, true);
          } else if (format.equals(SaverPlugin.SINGLEPLANE_TIFF_SERIES)) {
-            store_ = studio.data().createSinglePlaneTIFFSeriesDatastore(savePath_);
+            uniquePath = findUniqueSavePath(savePath);
+            store = studio_.data().createSinglePlaneTIFFSeriesDatastore(uniquePath);
          } else if (format.equals(SaverPlugin.RAM)) {
-            store_ = studio.data().createRewritableRAMDatastore();
+            store = studio_.data().createRewritableRAMDatastore();
          } else {
             studio_.logs().logError("Unrecognized save format " + format);
+            return;
          }
       } catch (IOException e) {
-         studio_.logs().showError(e, "Error creating datastore at " + savePath_);
+         studio_.logs().showError(e, "Error creating datastore at " + uniquePath);
+         return;
       }
 
-      studio_.displays().manage(store_);
+      studio_.displays().manage(store);
 
       if (shouldDisplay) {
-         studio_.displays().createDisplay(store_);
+         studio_.displays().createDisplay(store);
       }
+      writers_.add(new StoreWriter(studio_, format, store, uniquePath,
+            maxQueuedBytes, skipWhenFull));
    }
 
    @Override
    public void processImage(Image image, ProcessorContext context) {
       try {
-         store_.putImage(image);
-      } catch (DatastoreFrozenException e) {
-         // Weird that we can not query the store if it is frozen but have to rely
-         // on an exception...
-         if (format_.equals(SaverPlugin.RAM)) {
-            store_ = studio_.data().createRewritableRAMDatastore();
-            studio_.displays().manage(store_);
-            studio_.displays().createDisplay(store_);
-            try {
-               store_.putImage(image);
-            } catch (IOException ioe) {
-               studio_.logs().logError(ioe, "Unable to show Data: IoException");
-            }
-         } else {
-            studio_.logs().logError(e, "Unable to save data: datastore is frozen");
+         for (StoreWriter writer : writers_) {
+            writer.offer(image);
          }
-      } catch (DatastoreRewriteException e) {
-         studio_.logs()
-               .logError(e, "Unable to save data: image already exists at " + image.getCoords());
-      } catch (IOException e) {
-         studio_.logs().logError(e, "Unable to save data: IOException");
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         studio_.logs().logError(e, "Interrupted while waiting to save an image");
       }
       context.outputImage(image);
    }
 
    @Override
    public void cleanup(ProcessorContext context) {
-      try {
-         store_.freeze();
-      } catch (IOException ioe) {
-         studio_.logs().logError(ioe, "SaverProcessor ran into trouble");
-      }
-      if (!format_.equals(SaverPlugin.RAM)) {
-         store_.setSavePath(savePath_);
+      for (StoreWriter writer : writers_) {
+         writer.finish();
       }
    }
 
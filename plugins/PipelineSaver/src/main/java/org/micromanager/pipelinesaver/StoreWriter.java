@@ -0,0 +1,233 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     mmstudio
+//-----------------------------------------------------------------------------
+//
+// COPYRIGHT:    Regents of the University of California, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.pipelinesaver;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import org.micromanager.Studio;
+import org.micromanager.data.Datastore;
+import org.micromanager.data.DatastoreFrozenException;
+import org.micromanager.data.DatastoreRewriteException;
+import org.micromanager.data.Image;
+
+/**
+ * Writes images to one Datastore on its own thread, so that the pipeline does
+ * not have to wait for the disk.
+ *
+ * <p>Images wait in a queue that is limited by the number of bytes of pixel
+ * data in it.  When the queue is full, {@link #offer} either waits until the
+ * writer made room (slowing down the pipeline, but saving every image), or
+ * skips the image.  Images are immutable, so the same image can be queued in
+ * several writers without copying.</p>
+ */
+final class StoreWriter {
+   private final Studio studio_;
+   private final String format_;
+   private final String savePath_;
+   private final long maxQueuedBytes_;
+   private final boolean skipWhenFull_;
+   private final Thread thread_;
+
+   // Guarded by this
+   private final ArrayDeque<Image> queue_ = new ArrayDeque<>();
+   private long queuedBytes_ = 0;
+   private boolean finishing_ = false;
+   private int maxQueueSize_ = 0;
+   private long maxQueuedBytesSeen_ = 0;
+   private int numSkipped_ = 0;
+   private boolean hasWaited_ = false;
+
+   // Only used by the writer thread
+   private Datastore store_;
+   private int numWritten_ = 0;
+   private long bytesWritten_ = 0;
+   private long writeNs_ = 0;
+
+   /**
+    * Starts the writer thread.
+    *
+    * @param studio Studio
+    * @param format One of the formats in SaverPlugin
+    * @param store Datastore to write to
+    * @param savePath Save path of the store, or null for RAM
+    * @param maxQueuedBytes Maximum number of bytes of pixel data waiting
+    * @param skipWhenFull Whether to skip images when the queue is full,
+    *                     instead of waiting
+    */
+   StoreWriter(Studio studio, String format, Datastore store, String savePath,
+               long maxQueuedBytes, boolean skipWhenFull) {
+      studio_ = studio;
+      format_ = format;
+      store_ = store;
+      savePath_ = savePath;
+      maxQueuedBytes_ = maxQueuedBytes;
+      skipWhenFull_ = skipWhenFull;
+      thread_ = new Thread(this::run, "Pipeline saver (" + format + ")");
+      // finish() waits for the queue to be written, but a pipeline that is
+      // never cleaned up should not keep the JVM from exiting
+      thread_.setDaemon(true);
+      thread_.start();
+   }
+
+   private static long sizeOf(Image image) {
+      return (long) image.getWidth() * image.getHeight() * image.getBytesPerPixel()
+            * image.getNumComponents();
+   }
+
+   /**
+    * Adds an image to the queue.  When the queue is full, either waits for
+    * room or skips the image.  A single image larger than the queue is still
+    * accepted when the queue is empty.
+    *
+    * @param image Image to write
+    * @throws InterruptedException when interrupted while waiting for room
+    */
+   synchronized void offer(Image image) throws InterruptedException {
+      if (finishing_) {
+         return;
+      }
+      long size = sizeOf(image);
+      while (!queue_.isEmpty() && queuedBytes_ + size > maxQueuedBytes_) {
+         if (skipWhenFull_) {
+            if (numSkipped_ == 0) {
+               studio_.logs().logMessage("Pipeline saver (" + format_
+                     + "): write queue full, skipping images");
+            }
+            numSkipped_++;
+            return;
+         }
+         if (!hasWaited_) {
+            hasWaited_ = true;
+            studio_.logs().logMessage("Pipeline saver (" + format_
+                  + "): write queue full, waiting for the disk");
+         }
+         wait();
+      }
+      queue_.addLast(image);
+      queuedBytes_ += size;
+      maxQueueSize_ = Math.max(maxQueueSize_, queue_.size());
+      maxQueuedBytesSeen_ = Math.max(maxQueuedBytesSeen_, queuedBytes_);
+      notifyAll();
+   }
+
+   private synchronized Image take() throws InterruptedException {
+      while (queue_.isEmpty() && !finishing_) {
+         wait();
+      }
+      return queue_.peekFirst();
+   }
+
+   private synchronized void remove(Image image) {
+      queue_.removeFirst();
+      queuedBytes_ -= sizeOf(image);
+      notifyAll();
+   }
+
+   private void run() {
+      try {
+         Image image;
+         while ((image = take()) != null) {
+            long start = System.nanoTime();
+            try {
+               write(image);
+            } catch (RuntimeException e) {
+               // Keep going, or offer() would wait forever
+               studio_.logs().logError(e, "Unable to save data");
+            }
+            writeNs_ += System.nanoTime() - start;
+            // Only now the image leaves the queue, so that its memory is
+            // counted until it is written
+            remove(image);
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   private void write(Image image) {
+      if (store_ == null) {
+         return;
+      }
+      if (store_.isFrozen()) {
+         if (!format_.equals(SaverPlugin.RAM)) {
+            studio_.logs().logError("Unable to save data: datastore is frozen");
+            store_ = null;
+            return;
+         }
+         // The RAM store was closed by the user; show the rest in a new one
+         store_ = studio_.data().createRewritableRAMDatastore();
+         studio_.displays().manage(store_);
+         studio_.displays().createDisplay(store_);
+      }
+      try {
+         store_.putImage(image);
+         numWritten_++;
+         bytesWritten_ += sizeOf(image);
+      } catch (DatastoreFrozenException e) {
+         studio_.logs().logError(e, "Unable to save data: datastore is frozen");
+      } catch (DatastoreRewriteException e) {
+         studio_.logs()
+               .logError(e, "Unable to save data: image already exists at " + image.getCoords());
+      } catch (IOException e) {
+         studio_.logs().logError(e, "Unable to save data: IOException");
+      }
+   }
+
+   /**
+    * Writes the images that are still queued, then freezes the store and
+    * logs the statistics.  Blocks until done.
+    */
+   void finish() {
+      synchronized (this) {
+         finishing_ = true;
+         notifyAll();
+      }
+      boolean interrupted = false;
+      while (thread_.isAlive()) {
+         try {
+            thread_.join();
+         } catch (InterruptedException e) {
+            interrupted = true;
+         }
+      }
+      if (store_ != null) {
+         try {
+            store_.freeze();
+         } catch (IOException ioe) {
+            studio_.logs().logError(ioe, "SaverProcessor ran into trouble");
+         }
+         if (savePath_ != null) {
+            store_.setSavePath(savePath_);
+         }
+      }
+      synchronized (this) {
+         double seconds = writeNs_ / 1e9;
+         studio_.logs().logMessage(String.format(Locale.US,
+               "Pipeline saver (%s): wrote %d images (%.1f MB) at %.1f MB/s, "
+                     + "longest queue %d images (%.1f MB), skipped %d images",
+               format_, numWritten_, bytesWritten_ / 1e6,
+               seconds > 0 ? bytesWritten_ / 1e6 / seconds : 0.0,
+               maxQueueSize_, maxQueuedBytesSeen_ / 1e6, numSkipped_));
+      }
+      if (interrupted) {
+         Thread.currentThread().interrupt();
+      }
+   }
+}
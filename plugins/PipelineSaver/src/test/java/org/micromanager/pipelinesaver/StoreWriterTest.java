@@ -0,0 +1,156 @@
+package org.micromanager.pipelinesaver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.micromanager.LogManager;
+import org.micromanager.Studio;
+import org.micromanager.data.Coordinates;
+import org.micromanager.data.Datastore;
+import org.micromanager.data.Image;
+import org.micromanager.data.internal.DefaultImage;
+import org.micromanager.data.internal.DefaultMetadata;
+
+/**
+ * Tests for the write queue of {@link StoreWriter}.
+ */
+public class StoreWriterTest {
+   // Pixel data of one image
+   private static final int IMAGE_BYTES = 100;
+   // Room for two images
+   private static final long MAX_QUEUED_BYTES = 250;
+
+   private final List<Image> written_ = Collections.synchronizedList(new ArrayList<>());
+   // Each putImage takes a permit, so that the test decides when images are written
+   private final Semaphore permits_ = new Semaphore(0);
+   private final boolean[] frozen_ = {false};
+
+   private static Image image(int t, int bytes) {
+      return new DefaultImage(new byte[bytes], bytes, 1, 1, 1,
+            Coordinates.builder().t(t).build(), new DefaultMetadata.Builder().build());
+   }
+
+   private static Studio studio() {
+      LogManager logs = (LogManager) Proxy.newProxyInstance(LogManager.class.getClassLoader(),
+            new Class<?>[] {LogManager.class}, (proxy, method, args) -> null);
+      return (Studio) Proxy.newProxyInstance(Studio.class.getClassLoader(),
+            new Class<?>[] {Studio.class}, (proxy, method, args) -> {
+               if (method.getName().equals("logs")) {
+                  return logs;
+               }
+               throw new UnsupportedOperationException(method.getName());
+            });
+   }
+
+   private Datastore store() {
+      return (Datastore) Proxy.newProxyInstance(Datastore.class.getClassLoader(),
+            new Class<?>[] {Datastore.class}, (proxy, method, args) -> {
+               switch (method.getName()) {
+                  case "isFrozen":
+                     return frozen_[0];
+                  case "freeze":
+                     frozen_[0] = true;
+                     return null;
+                  case "putImage":
+                     permits_.acquire();
+                     written_.add((Image) args[0]);
+                     return null;
+                  default:
+                     throw new UnsupportedOperationException(method.getName());
+               }
+            });
+   }
+
+   private StoreWriter writer(boolean skipWhenFull) {
+      return new StoreWriter(studio(), SaverPlugin.MULTIPAGE_TIFF, store(), null,
+            MAX_QUEUED_BYTES, skipWhenFull);
+   }
+
+   @Test
+   public void fullQueueSkipsImages() throws InterruptedException {
+      StoreWriter writer = writer(true);
+      Image first = image(0, IMAGE_BYTES);
+      Image second = image(1, IMAGE_BYTES);
+      // The first image stays in the queue until it is written
+      writer.offer(first);
+      writer.offer(second);
+      writer.offer(image(2, IMAGE_BYTES));
+      permits_.release(10);
+      writer.finish();
+      assertEquals(Arrays.asList(first, second), written_);
+      assertTrue(frozen_[0]);
+   }
+
+   @Test
+   public void fullQueueWaitsForTheWriter() throws InterruptedException {
+      StoreWriter writer = writer(false);
+      List<Image> images = new ArrayList<>();
+      for (int t = 0; t < 5; t++) {
+         images.add(image(t, IMAGE_BYTES));
+      }
+      writer.offer(images.get(0));
+      writer.offer(images.get(1));
+      Thread producer = new Thread(() -> {
+         try {
+            for (Image image : images.subList(2, images.size())) {
+               writer.offer(image);
+            }
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      });
+      producer.start();
+      producer.join(200);
+      assertTrue("offer() should wait while the queue is full", producer.isAlive());
+      assertTrue(written_.isEmpty());
+
+      permits_.release(images.size());
+      producer.join(TimeUnit.SECONDS.toMillis(10));
+      assertTrue(!producer.isAlive());
+      writer.finish();
+      assertEquals(images, written_);
+   }
+
+   @Test
+   public void largeImageFitsAnEmptyQueue() throws InterruptedException {
+      StoreWriter writer = writer(true);
+      Image large = image(0, 10 * IMAGE_BYTES);
+      writer.offer(large);
+      // The queue is not empty now, so the next image is skipped
+      writer.offer(image(1, IMAGE_BYTES));
+      permits_.release(10);
+      writer.finish();
+      assertEquals(Collections.singletonList(large), written_);
+   }
+
+   @Test
+   public void imagesOfferedAfterFinishAreIgnored() throws InterruptedException {
+      StoreWriter writer = writer(false);
+      permits_.release(10);
+      writer.finish();
+      writer.offer(image(0, IMAGE_BYTES));
+      assertTrue(written_.isEmpty());
+   }
+
+   @Test
+   public void writerThreadIsDaemon() throws InterruptedException {
+      StoreWriter writer = writer(false);
+      boolean found = false;
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+         if (thread.getName().equals("Pipeline saver (" + SaverPlugin.MULTIPAGE_TIFF + ")")) {
+            assertTrue(thread.isDaemon());
+            found = true;
+         }
+      }
+      assertTrue(found);
+      writer.finish();
+   }
+}
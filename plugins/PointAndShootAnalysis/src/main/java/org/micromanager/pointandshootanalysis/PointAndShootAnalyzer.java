@@ -54,6 +54,8 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.jfree.data.xy.XYSeries;
 import org.micromanager.PropertyMap;
@@ -67,6 +69,7 @@ import org.micromanager.display.DisplayWindow;
 import org.micromanager.imageprocessing.BoofCVUtils;
 import org.micromanager.internal.utils.imageanalysis.BoofCVImageConverter;
 import org.micromanager.pointandshootanalysis.algorithm.ContourStats;
+import org.micromanager.pointandshootanalysis.algorithm.PointGridIndex;
 import org.micromanager.pointandshootanalysis.data.PASData;
 import org.micromanager.pointandshootanalysis.data.PASFrameSet;
 import org.micromanager.pointandshootanalysis.data.ParticleData;
@@ -444,24 +447,24 @@ public class PointAndShootAnalyzer implements Runnable {
          // If within a certain distance from the centroid of the first particle
          // from another track, we'll assume this is one and the same and remove the track.
          final double identityDistance = 5.0;
+         List<ParticleData> firstParticles = new ArrayList<>(tracks.size());
+         for (Map<Integer, ParticleData> track : tracks) {
+            firstParticles.add(track.get(0));
+         }
+         CentroidIndex firstParticleIndex = new CentroidIndex(firstParticles, identityDistance);
+         boolean[] isDouble = new boolean[tracks.size()];
          List<Map<Integer, ParticleData>> doubleTracks = new ArrayList<>();
          for (int i = 0; i < tracks.size(); i++) {
-            Map<Integer, ParticleData> track = tracks.get(i);
-            if (!doubleTracks.contains(track)) {
-               ParticleData firstParticle = track.get(0);
-               if (firstParticle != null) {
-                  for (int j = 0; j < tracks.size(); j++) {
-                     if (j != i) {
-                        Map<Integer, ParticleData> otherTrack = tracks.get(j);
-                        ParticleData otherFirstParticle = otherTrack.get(0);
-                        if (otherFirstParticle != null
-                              && firstParticle.getCentroid().distance(
-                              otherFirstParticle.getCentroid()) < identityDistance) {
-                           doubleTracks.add(otherTrack);
+            ParticleData firstParticle = firstParticles.get(i);
+            if (!isDouble[i] && firstParticle != null && firstParticle.getCentroid() != null) {
+               final int trackNr = i;
+               firstParticleIndex.forEachWithin(firstParticle.getCentroid(),
+                     identityDistance, (j) -> {
+                        if (j != trackNr && !isDouble[j]) {
+                           isDouble[j] = true;
+                           doubleTracks.add(tracks.get(j));
                         }
-                     }
-                  }
-               }
+                     });
             }
          }
          // Remove the duplicates that were found
@@ -537,18 +540,15 @@ public class PointAndShootAnalyzer implements Runnable {
             List<List<Point2D_I32>> clusters =
                   BinaryImageOps.labelToClusters(contourImg, contours.size(), null);
             // Remove particles that were bleached
+            List<ParticleData> bleachedParticles = new ArrayList<>(tracks.size());
+            for (Map<Integer, ParticleData> track : tracks) {
+               bleachedParticles.add(track.get(0));
+            }
+            CentroidIndex bleachedIndex = new CentroidIndex(bleachedParticles, DIST_UNCERTAINTY);
             List<List<Point2D_I32>> controlClusters = new ArrayList<>();
             for (List<Point2D_I32> particle : clusters) {
                Point2D_I32 centroid = ContourStats.centroid(particle);
-               boolean isBleachedParticle = false;
-               for (Map<Integer, ParticleData> track : tracks) {
-                  if (track.get(0) != null) {
-                     if (centroid.distance(track.get(0).getCentroid()) < DIST_UNCERTAINTY) {
-                        isBleachedParticle = true;
-                     }
-                  }
-               }
-               if (!isBleachedParticle) {
+               if (!bleachedIndex.anyWithin(centroid, DIST_UNCERTAINTY)) {
                   controlClusters.add(particle);
                }
             }
@@ -556,42 +556,40 @@ public class PointAndShootAnalyzer implements Runnable {
             // only analyze the n largest clusters
             // TODO: make n an input variable
             final int nrLargestClusters = 15;
-            count = 0;
             controlClusters = ListUtils.getNLargestLists(controlClusters, nrLargestClusters);
+            // Index the bleached particles of each frame once, rather than comparing
+            // every control particle against all of them in every frame
+            final int nrFrames = dataProvider.getNextIndex(Coords.T);
+            final CentroidIndex[] bleachedByFrame = new CentroidIndex[nrFrames];
+            final List<List<ParticleData>> bleachedInFrame = new ArrayList<>(nrFrames);
+            for (int frame = 0; frame < nrFrames; frame++) {
+               List<ParticleData> particles = tracksIndexedByFrame.get(frame);
+               bleachedInFrame.add(particles == null ? new ArrayList<>() : particles);
+            }
+            IntStream.range(0, nrFrames).parallel().forEach((frame) ->
+                  bleachedByFrame[frame] = new CentroidIndex(bleachedInFrame.get(frame),
+                        maxDistance));
+            // Every control particle is tracked independently, so find them in
+            // parallel.  The DataProvider can not be read from several threads,
+            // so each frame is read here, and only searched in parallel
+            final List<ControlTrack> tracksToFollow = new ArrayList<>(controlClusters.size());
             for (List<Point2D_I32> particle : controlClusters) {
-               Point2D_I32 centroid = ContourStats.centroid(particle);
-               Map<Integer, ParticleData> track = new TreeMap<>();
-               Point2D_I32 currentPoint = centroid;
-               int missing = 0;
-               boolean bail = false;
-               for (int frame = 0; frame < dataProvider.getNextIndex(Coords.T) && !bail; frame++) {
-                  ParticleData nextParticle = ParticleData.centralParticle(dataProvider,
-                        cb, frame, currentPoint, halfROISize_);
-                  if (nextParticle != null
-                        && (currentPoint.distance(nextParticle.getCentroid()) < maxDistance)) {
-                     currentPoint = nextParticle.getCentroid();
-                     track.put(frame, nextParticle);
-                     missing = 0;
-                     // TODO: Check whether it is now the same as one of the bleached particles
-                     // and bail if so...
-                     for (ParticleData p : tracksIndexedByFrame.get(frame)) {
-                        if (p != null && p.getCentroid() != null
-                              && p.getCentroid().distance(currentPoint) < maxDistance) {
-                           bail = true;
-                        }
-                     }
-                  } else {
-                     // increase counter, give up when too high
-                     missing++;
-                     if (missing > 10) {
-                        bail = true;
-                     }
-                  }
-               }
-               if (!bail) {
-                  controlTracks.add(track);
+               tracksToFollow.add(new ControlTrack(ContourStats.centroid(particle)));
+            }
+            for (int frame = 0; frame < nrFrames; frame++) {
+               final int thisFrame = frame;
+               final ImageGray<? extends ImageGray<?>> image =
+                     BoofCVImageConverter.mmToBoofCV(dataProvider.getImage(
+                           cb.t(frame).build()), false);
+               tracksToFollow.parallelStream().filter(ControlTrack::isTracking).forEach(
+                     (track) -> track.follow(image, thisFrame, bleachedByFrame[thisFrame],
+                           maxDistance, halfROISize_));
+               psd_.setProgress((double) (frame + 1) / (double) nrFrames);
+            }
+            for (ControlTrack track : tracksToFollow) {
+               if (track.isTracking()) {
+                  controlTracks.add(track.getTrack());
                }
-               psd_.setProgress((double) ++count / (double) nrLargestClusters);
             }
 
          } catch (IOException ioe) {
@@ -870,6 +868,93 @@ public class PointAndShootAnalyzer implements Runnable {
       }
       return plotData;
    }
+
+   /**
+    * Spatial index over the centroids of a list of particles.  Query results
+    * are positions in that list; null particles (and particles without
+    * centroid) are left out.
+    */
+   private static final class CentroidIndex {
+      private final PointGridIndex index_;
+      private final int[] positions_;
+
+      CentroidIndex(List<ParticleData> particles, double cellSize) {
+         int[] xs = new int[particles.size()];
+         int[] ys = new int[particles.size()];
+         positions_ = new int[particles.size()];
+         int n = 0;
+         for (int i = 0; i < particles.size(); i++) {
+            ParticleData p = particles.get(i);
+            if (p != null && p.getCentroid() != null) {
+               xs[n] = p.getCentroid().x;
+               ys[n] = p.getCentroid().y;
+               positions_[n] = i;
+               n++;
+            }
+         }
+         index_ = new PointGridIndex(xs, ys, n, cellSize);
+      }
+
+      void forEachWithin(Point2D_I32 p, double distance, IntConsumer consumer) {
+         index_.forEachWithin(p.x, p.y, distance, (k) -> consumer.accept(positions_[k]));
+      }
+
+      boolean anyWithin(Point2D_I32 p, double distance) {
+         return index_.anyWithin(p.x, p.y, distance);
+      }
+   }
+
+   /**
+    * Follows a control (non-bleached) particle through all frames, one frame
+    * at a time.
+    */
+   private static final class ControlTrack {
+      private final Map<Integer, ParticleData> track_ = new TreeMap<>();
+      private Point2D_I32 currentPoint_;
+      private int missing_ = 0;
+      private boolean tracking_ = true;
+
+      ControlTrack(Point2D_I32 start) {
+         currentPoint_ = start;
+      }
+
+      /**
+       * Looks for the particle in the next frame.  Stops tracking when the
+       * particle was lost, or came too close to a bleached particle.
+       */
+      void follow(final ImageGray<? extends ImageGray<?>> image,
+                  final int frame,
+                  final CentroidIndex bleached,
+                  final int maxDistance,
+                  final int halfBoxSize) {
+         ParticleData nextParticle = ParticleData.centralParticle(image, currentPoint_,
+               halfBoxSize);
+         if (nextParticle != null
+               && (currentPoint_.distance(nextParticle.getCentroid()) < maxDistance)) {
+            currentPoint_ = nextParticle.getCentroid();
+            track_.put(frame, nextParticle);
+            missing_ = 0;
+            // bail when it is now the same as one of the bleached particles
+            if (bleached.anyWithin(currentPoint_, maxDistance)) {
+               tracking_ = false;
+            }
+         } else {
+            // increase counter, give up when too high
+            missing_++;
+            if (missing_ > 10) {
+               tracking_ = false;
+            }
+         }
+      }
+
+      boolean isTracking() {
+         return tracking_;
+      }
+
+      Map<Integer, ParticleData> getTrack() {
+         return track_;
+      }
+   }
  
    
    /*
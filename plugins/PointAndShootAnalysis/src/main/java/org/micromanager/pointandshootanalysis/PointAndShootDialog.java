@@ -261,6 +261,7 @@ public class PointAndShootDialog extends JDialog {
          SwingUtilities.invokeLater(() -> {
             setStatus(status);
          });
+         return;
       }
       statusString_.setText(status);
    }
@@ -270,6 +271,7 @@ public class PointAndShootDialog extends JDialog {
          SwingUtilities.invokeLater(() -> {
             setProgress(progress);
          });
+         return;
       }
       int p = (int) (progress * 100.0);
       progressString_.setText(" " + p + "%");
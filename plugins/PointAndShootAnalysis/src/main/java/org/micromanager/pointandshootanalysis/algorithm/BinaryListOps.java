@@ -4,6 +4,7 @@ package org.micromanager.pointandshootanalysis.algorithm;
 import georegression.struct.point.Point2D_I32;
 import java.awt.Point;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -28,26 +29,40 @@ public class BinaryListOps {
     */
    public static Set<Point> dilate4(Set<Point> input, 
            final int width, final int height) {
-      Set<Point> output = new HashSet<>();
+      // Track membership in a bitmap so that each output pixel results in one
+      // Point and one hash insert, rather than up to five
+      BitSet seen = new BitSet(width * height);
+      Set<Point> output = new HashSet<>(input.size() * 4);
       for (Point pixel : input) {
-         if (!output.contains(pixel)) {
-            output.add(pixel);
-         }
+         addPixel(output, seen, pixel.x, pixel.y, width, height);
          if (pixel.x > 1) {
-            output.add(new Point(pixel.x - 1, pixel.y));
+            addPixel(output, seen, pixel.x - 1, pixel.y, width, height);
          }
          if (pixel.x < width - 2) {
-            output.add(new Point(pixel.x + 1, pixel.y));
+            addPixel(output, seen, pixel.x + 1, pixel.y, width, height);
          }
          if (pixel.y > 1) {
-            output.add(new Point(pixel.x, pixel.y - 1));
+            addPixel(output, seen, pixel.x, pixel.y - 1, width, height);
          }
          if (pixel.y < height - 2) {
-            output.add(new Point(pixel.x, pixel.y + 1));
+            addPixel(output, seen, pixel.x, pixel.y + 1, width, height);
          }
       }
       return output;
    }
+
+   private static void addPixel(Set<Point> output, BitSet seen, int x, int y,
+                                int width, int height) {
+      if (x < 0 || y < 0 || x >= width || y >= height) {
+         output.add(new Point(x, y));
+         return;
+      }
+      int index = y * width + x;
+      if (!seen.get(index)) {
+         seen.set(index);
+         output.add(new Point(x, y));
+      }
+   }
    
    public static <E> List<E> setToList(Set<E> input) {
       List<E> output = new ArrayList<>();
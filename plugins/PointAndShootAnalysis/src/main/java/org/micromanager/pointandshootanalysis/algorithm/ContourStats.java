@@ -1,7 +1,6 @@
 
 package org.micromanager.pointandshootanalysis.algorithm;
 
-import georegression.struct.line.LineSegment2D_I32;
 import georegression.struct.point.Point2D_I32;
 import georegression.struct.shapes.Rectangle2D_I32;
 import java.util.Collection;
@@ -69,9 +68,9 @@ public class ContourStats {
     */
    public static Point2D_I32 nearestPoint(Point2D_I32 target, Collection<Point2D_I32> source) {
       Point2D_I32 cp = new Point2D_I32();
-      double minDist = Double.MAX_VALUE;
+      long minDist = Long.MAX_VALUE;
       for (Point2D_I32 sourcePoint : source) {
-         double newDistance = (new LineSegment2D_I32(target, sourcePoint)).getLength();
+         long newDistance = distanceSquared(target, sourcePoint);
          if (newDistance < minDist) {
             minDist = newDistance;
             cp.x = sourcePoint.x;
@@ -90,9 +89,9 @@ public class ContourStats {
     */
    public static ParticleData nearestParticle(Point2D_I32 target, Collection<ParticleData> source) {
       ParticleData closestParticle = null;
-      double minDist = Double.MAX_VALUE;
+      long minDist = Long.MAX_VALUE;
       for (ParticleData particle : source) {
-         double newDistance = (new LineSegment2D_I32(target, particle.getCentroid())).getLength();
+         long newDistance = distanceSquared(target, particle.getCentroid());
          if (newDistance < minDist) {
             minDist = newDistance;
             closestParticle = particle;
@@ -101,6 +100,16 @@ public class ContourStats {
       return closestParticle;
    }
 
+   /**
+    * Squared Euclidean distance between two points.  Sufficient to compare
+    * distances, and avoids the square root and object allocation.
+    */
+   public static long distanceSquared(Point2D_I32 a, Point2D_I32 b) {
+      long dx = (long) a.x - b.x;
+      long dy = (long) a.y - b.y;
+      return dx * dx + dy * dy;
+   }
+
    /**
     * Test whether a given point is in the source list
     * Has to be used instead of source.contains(Point2D_I32) since one object
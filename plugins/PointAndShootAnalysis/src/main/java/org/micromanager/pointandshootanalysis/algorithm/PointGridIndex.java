@@ -0,0 +1,152 @@
+package org.micromanager.pointandshootanalysis.algorithm;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Uniform grid over a fixed set of integer points, used to answer
+ * "which points are within distance d" without comparing against every point.
+ *
+ * <p>Point coordinates are kept in primitive arrays, and the points of each grid
+ * cell are stored contiguously (counting sort on cell number), so building the
+ * index and querying it does not allocate per point.
+ * Points are referred to by their index in the arrays handed to the constructor.
+ *
+ * @author nico
+ */
+public final class PointGridIndex {
+   // Upper bound on the number of cells per point, so that a handful of points
+   // spread over a large image do not result in a huge, mostly empty grid
+   private static final int MAX_CELLS_PER_POINT = 4;
+
+   private final int[] xs_;
+   private final int[] ys_;
+   private final int nrPoints_;
+   private final int minX_;
+   private final int minY_;
+   private final int cellSize_;
+   private final int nrColumns_;
+   private final int nrRows_;
+   private final int[] cellStart_; // nrColumns_ * nrRows_ + 1 entries
+   private final int[] sorted_;    // point indices, grouped by cell
+
+   /**
+    * Builds the index.  The coordinate arrays are not copied and should not be
+    * changed while the index is in use.
+    *
+    * @param xs       x coordinates of the points
+    * @param ys       y coordinates of the points
+    * @param nrPoints number of entries of xs and ys to index
+    * @param cellSize edge length of a grid cell in pixels.  Choosing the
+    *                 typical query distance works well.
+    */
+   public PointGridIndex(int[] xs, int[] ys, int nrPoints, double cellSize) {
+      xs_ = xs;
+      ys_ = ys;
+      nrPoints_ = nrPoints;
+      int minX = Integer.MAX_VALUE;
+      int minY = Integer.MAX_VALUE;
+      int maxX = Integer.MIN_VALUE;
+      int maxY = Integer.MIN_VALUE;
+      for (int i = 0; i < nrPoints; i++) {
+         minX = Math.min(minX, xs[i]);
+         minY = Math.min(minY, ys[i]);
+         maxX = Math.max(maxX, xs[i]);
+         maxY = Math.max(maxY, ys[i]);
+      }
+      if (nrPoints == 0) {
+         minX = minY = maxX = maxY = 0;
+      }
+      long spanX = (long) maxX - minX + 1;
+      long spanY = (long) maxY - minY + 1;
+      int size = Math.max(1, (int) Math.ceil(cellSize));
+      long maxCells = Math.max(1L, (long) nrPoints * MAX_CELLS_PER_POINT);
+      while (((spanX + size - 1) / size) * ((spanY + size - 1) / size) > maxCells) {
+         size *= 2;
+      }
+      minX_ = minX;
+      minY_ = minY;
+      cellSize_ = size;
+      nrColumns_ = (int) ((spanX + size - 1) / size);
+      nrRows_ = (int) ((spanY + size - 1) / size);
+
+      cellStart_ = new int[nrColumns_ * nrRows_ + 1];
+      int[] cellOf = new int[nrPoints];
+      for (int i = 0; i < nrPoints; i++) {
+         cellOf[i] = (ys[i] - minY_) / cellSize_ * nrColumns_ + (xs[i] - minX_) / cellSize_;
+         cellStart_[cellOf[i] + 1]++;
+      }
+      for (int c = 0; c < nrColumns_ * nrRows_; c++) {
+         cellStart_[c + 1] += cellStart_[c];
+      }
+      sorted_ = new int[nrPoints];
+      int[] fill = new int[nrColumns_ * nrRows_];
+      for (int i = 0; i < nrPoints; i++) {
+         sorted_[cellStart_[cellOf[i]] + fill[cellOf[i]]++] = i;
+      }
+   }
+
+   public int size() {
+      return nrPoints_;
+   }
+
+   /**
+    * Calls the consumer with the index of every point whose Euclidean distance
+    * to (x, y) is strictly smaller than the given distance.
+    * Points are reported in no particular order.
+    */
+   public void forEachWithin(int x, int y, double distance, IntConsumer consumer) {
+      if (nrPoints_ == 0 || !(distance > 0.0)) {
+         return;
+      }
+      double d2 = distance * distance;
+      int reach = (int) Math.ceil(distance);
+      long c0 = Math.max(0L, Math.floorDiv((long) x - reach - minX_, cellSize_));
+      long c1 = Math.min(nrColumns_ - 1L, Math.floorDiv((long) x + reach - minX_, cellSize_));
+      long r0 = Math.max(0L, Math.floorDiv((long) y - reach - minY_, cellSize_));
+      long r1 = Math.min(nrRows_ - 1L, Math.floorDiv((long) y + reach - minY_, cellSize_));
+      for (long r = r0; r <= r1; r++) {
+         for (long c = c0; c <= c1; c++) {
+            int cell = (int) (r * nrColumns_ + c);
+            for (int k = cellStart_[cell]; k < cellStart_[cell + 1]; k++) {
+               int i = sorted_[k];
+               if (distanceSquared(i, x, y) < d2) {
+                  consumer.accept(i);
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Whether any point lies at a Euclidean distance strictly smaller than the
+    * given distance from (x, y).  Stops at the first point found.
+    */
+   public boolean anyWithin(int x, int y, double distance) {
+      if (nrPoints_ == 0 || !(distance > 0.0)) {
+         return false;
+      }
+      double d2 = distance * distance;
+      int reach = (int) Math.ceil(distance);
+      long c0 = Math.max(0L, Math.floorDiv((long) x - reach - minX_, cellSize_));
+      long c1 = Math.min(nrColumns_ - 1L, Math.floorDiv((long) x + reach - minX_, cellSize_));
+      long r0 = Math.max(0L, Math.floorDiv((long) y - reach - minY_, cellSize_));
+      long r1 = Math.min(nrRows_ - 1L, Math.floorDiv((long) y + reach - minY_, cellSize_));
+      for (long r = r0; r <= r1; r++) {
+         for (long c = c0; c <= c1; c++) {
+            int cell = (int) (r * nrColumns_ + c);
+            for (int k = cellStart_[cell]; k < cellStart_[cell + 1]; k++) {
+               if (distanceSquared(sorted_[k], x, y) < d2) {
+                  return true;
+               }
+            }
+         }
+      }
+      return false;
+   }
+
+   private long distanceSquared(int i, int x, int y) {
+      long dx = (long) xs_[i] - x;
+      long dy = (long) ys_[i] - y;
+      return dx * dx + dy * dy;
+   }
+}
@@ -262,8 +262,24 @@ public class ParticleData {
                                               final int frame,
                                               final Point2D_I32 startCenter,
                                               final int halfBoxSize) throws IOException {
+      return centralParticle(BoofCVImageConverter.mmToBoofCV(
+            dp.getImage(cb.t(frame).build()), false), startCenter, halfBoxSize);
+   }
 
-      ImageGray<?> sub = BoofCVImageConverter.subImage(dp, cb, frame, startCenter, halfBoxSize);
+   /**
+    * Finds the centroid of the particle closest to the given input coordinates.
+    * Does not touch the DataProvider, so several threads can look for particles
+    * in an image read earlier.
+    *
+    * @param image       Image (frame) in which to look for the particle centroid
+    * @param startCenter input xy position around which to look
+    * @param halfBoxSize Defines size of the Box in which the code looks for a particle
+    * @return particle (or null if not found)
+    */
+   public static ParticleData centralParticle(final ImageGray<? extends ImageGray<?>> image,
+                                              final Point2D_I32 startCenter,
+                                              final int halfBoxSize) {
+      ImageGray<?> sub = BoofCVImageConverter.subImage(image, startCenter, halfBoxSize);
       if (sub == null) {
          return null;
       }
@@ -0,0 +1,114 @@
+package org.micromanager.pointandshootanalysis.algorithm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.Test;
+
+/**
+ * Tests for {@link PointGridIndex}, comparing its answers with a scan over
+ * all points.
+ */
+public class PointGridIndexTest {
+
+   private static Set<Integer> bruteForceWithin(int[] xs, int[] ys, int n,
+                                                int x, int y, double distance) {
+      Set<Integer> result = new TreeSet<>();
+      for (int i = 0; i < n; i++) {
+         double dx = xs[i] - x;
+         double dy = ys[i] - y;
+         if (dx * dx + dy * dy < distance * distance) {
+            result.add(i);
+         }
+      }
+      return result;
+   }
+
+   private static Set<Integer> within(PointGridIndex index, int x, int y, double distance) {
+      Set<Integer> result = new TreeSet<>();
+      index.forEachWithin(x, y, distance, (i) -> assertTrue(result.add(i)));
+      return result;
+   }
+
+   private static void checkQueries(int[] xs, int[] ys, int n, double cellSize, long seed) {
+      PointGridIndex index = new PointGridIndex(xs, ys, n, cellSize);
+      assertEquals(n, index.size());
+      Random random = new Random(seed);
+      for (int q = 0; q < 500; q++) {
+         // queries reach beyond the points on every side
+         int x = random.nextInt(700) - 150;
+         int y = random.nextInt(500) - 150;
+         double distance = random.nextDouble() * 60;
+         Set<Integer> expected = bruteForceWithin(xs, ys, n, x, y, distance);
+         String message = x + ", " + y + ", " + distance;
+         assertEquals(message, expected, within(index, x, y, distance));
+         assertEquals(message, !expected.isEmpty(), index.anyWithin(x, y, distance));
+      }
+   }
+
+   @Test
+   public void randomPointsMatchBruteForce() {
+      Random random = new Random(1);
+      int n = 300;
+      int[] xs = new int[n];
+      int[] ys = new int[n];
+      for (int i = 0; i < n; i++) {
+         xs[i] = random.nextInt(400);
+         ys[i] = random.nextInt(200);
+      }
+      checkQueries(xs, ys, n, 10, 2);
+      checkQueries(xs, ys, n, 0.5, 3);
+      // only part of the arrays is indexed
+      checkQueries(xs, ys, n / 3, 25, 4);
+   }
+
+   @Test
+   public void clusteredAndNegativePointsMatchBruteForce() {
+      Random random = new Random(5);
+      int n = 100;
+      int[] xs = new int[n];
+      int[] ys = new int[n];
+      for (int i = 0; i < n; i++) {
+         // two tight clusters far apart, so the cell size has to grow
+         boolean left = i % 2 == 0;
+         xs[i] = (left ? -100 : 500) + random.nextInt(5);
+         ys[i] = (left ? -120 : 300) + random.nextInt(5);
+      }
+      checkQueries(xs, ys, n, 1, 6);
+   }
+
+   @Test
+   public void duplicatesAreAllReported() {
+      int[] xs = {7, 7, 7, 20};
+      int[] ys = {3, 3, 3, 3};
+      PointGridIndex index = new PointGridIndex(xs, ys, xs.length, 4);
+      assertEquals(bruteForceWithin(xs, ys, 3, 0, 0, 100), within(index, 7, 3, 1));
+      assertEquals(new TreeSet<>(Arrays.asList(0, 1, 2)), within(index, 7, 0, 13.3));
+      // the distance bound is exclusive
+      assertFalse(index.anyWithin(10, 3, 3));
+      assertTrue(index.anyWithin(10, 3, 3.01));
+   }
+
+   @Test
+   public void emptyIndexFindsNothing() {
+      PointGridIndex index = new PointGridIndex(new int[0], new int[0], 0, 10);
+      assertEquals(0, index.size());
+      assertTrue(within(index, 0, 0, 100).isEmpty());
+      assertFalse(index.anyWithin(0, 0, 100));
+   }
+
+   @Test
+   public void zeroDistanceFindsNothing() {
+      int[] xs = {1};
+      int[] ys = {1};
+      PointGridIndex index = new PointGridIndex(xs, ys, 1, 10);
+      assertFalse(index.anyWithin(1, 1, 0));
+      assertTrue(within(index, 1, 1, 0).isEmpty());
+      assertTrue(index.anyWithin(1, 1, 0.5));
+   }
+}
@@ -31,6 +31,7 @@ import java.awt.Toolkit;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.geom.Ellipse2D;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JFrame;
@@ -38,6 +39,7 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.Timer;
 import net.miginfocom.swing.MigLayout;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartFrame;
@@ -65,7 +67,6 @@ public class RTIntensitiesFrame extends JFrame {
    private DataProvider dataProvider_;
    // Only one chart for the time being
    private ChartFrame graphFrame_ = null;
-   private double lastElapsedTimeMs_ = 0.0;
    // autoStart on new active window
    private boolean autoStart_;
    // acquisition plot start on first image delivered.
@@ -84,12 +85,18 @@ public class RTIntensitiesFrame extends JFrame {
    private int channels_ = 0;
    // how many series do we plot ?
    private int plots_ = 0;
-   // how many extra data do we need for a time point
-   private int missing_ = 0;
    private final JLabel title_;
    XYSeries[] data_ = null;
    // Doing background "equalization" ?
    private int backgroundEq_ = -1;
+   // Measures ROIs on raw pixels; rebuilt for new ROIs or image sizes
+   private RoiIntensityEngine engine_ = null;
+   // ROI means of the image being processed
+   private final double[] means_ = new double[MAX_ROIS];
+   // Measured points waiting to be added to the chart, which happens in batches on the EDT
+   private final ConcurrentLinkedQueue<PlotPoint> pendingPoints_ =
+         new ConcurrentLinkedQueue<>();
+   private Timer plotTimer_ = null;
    // Min refresh time (ms)
    private int minPeriod_;
    // Max plot points
@@ -193,6 +200,9 @@ public class RTIntensitiesFrame extends JFrame {
          if (result == JOptionPane.OK_OPTION) {
             minPeriod_ = new Integer(period.getText());
             prefs.putInteger(MIN_PERIOD, minPeriod_);
+            if (plotTimer_ != null) {
+               plotTimer_.setDelay(Math.max(1, minPeriod_));
+            }
             maxPoints_ = new Integer(maxPoints.getText());
             prefs.putInteger(MAX_POINTS, maxPoints_);
             ratio_ = ratioPlot.isSelected();
@@ -277,11 +287,9 @@ public class RTIntensitiesFrame extends JFrame {
          if (ratio_) {
             plots_ = 1;
             channels_ = 2;
-            missing_ = 1; // wait for pairs of data points
             plotmode = "Channel 1/2 ratio";
          } else {
             plots_ = channels_;
-            missing_ = channels_ - 1;
             plotmode = "Channel intensities";
          }
       } else {
@@ -293,7 +301,8 @@ public class RTIntensitiesFrame extends JFrame {
 
       data_ = new XYSeries[channels_ * rois_];
       imagesReceived_ = 0; // new plot
-      lastElapsedTimeMs_ = 0;
+      engine_ = null; // ROIs may have changed
+      pendingPoints_.clear();
       XYSeriesCollection dataset = new XYSeriesCollection();
       for (int i = 0; i < rois_; i++) {
          if (!roi_[i].isCursor()) {
@@ -322,9 +331,16 @@ public class RTIntensitiesFrame extends JFrame {
       graphFrame_.addWindowListener(new WindowAdapter() {
          public void windowClosing(WindowEvent e) {
             graphFrame_ = null;
+            if (plotTimer_ != null) {
+               plotTimer_.stop();
+            }
             title_.setText("Ready");
          }
       });
+      if (plotTimer_ == null) {
+         plotTimer_ = new Timer(Math.max(1, minPeriod_), e -> flushPoints());
+      }
+      plotTimer_.start();
       if (!delayedStart_) {
          title_.setText("Waiting for images...");
          dataProvider_.registerForEvents(RThandler_);
@@ -354,77 +370,122 @@ public class RTIntensitiesFrame extends JFrame {
       }
       Double elapsedTimeMs = 10.0;
       elapsedTimeMs = image.getMetadata().getElapsedTimeMs(elapsedTimeMs);
-      if (imagesReceived_ == 0) {
-         lastElapsedTimeMs_ = -minPeriod_; // process first
-      }
-      // do not process images at more than 100 Hz
-      if (missing_ > 0 || elapsedTimeMs - lastElapsedTimeMs_ >= minPeriod_) {
-         lastElapsedTimeMs_ = elapsedTimeMs;
-         int channel = image.getCoords().getChannel(); // 0..(n-1)
-         if (channel >= channels_) {
-            return;
-         }
-         if (channel == 0) {
-            missing_ = channels_ - 1;
-         } else {
-            missing_--;
-         }
-
-         title_.setText("Data should be on the plot.(" + channel + "/" + imagesReceived_ + ")");
+      int channel = image.getCoords().getChannel(); // 0..(n-1)
+      if (channel >= channels_) {
+         return;
+      }
 
-         ImageProcessor processor = studio_.data().ij().createProcessor(image);
+      measureMeans(image);
 
-         double v;
-         double bg = 0;
-         if (backgroundEq_ >= 0) {
-            int points = 0;
-            for (int i = 0; i < rois_; i++) {
-               if (roi_[i].isCursor()) {
-                  processor.setRoi(roi_[i]);
-                  bg += processor.getStats().mean;
-                  points++;
-               }
+      double v;
+      double bg = 0;
+      if (backgroundEq_ >= 0) {
+         int points = 0;
+         for (int i = 0; i < rois_; i++) {
+            if (roi_[i].isCursor()) {
+               bg += means_[i];
+               points++;
             }
-            bg /= points;
          }
+         bg /= points;
+      }
 
-         if (channels_ > 1 && ratio_ && channel == 0) {
-            //Remember values of first channel when doing ratio plotting
-            for (int i = 0; i < rois_; i++) {
-               if (!roi_[i].isCursor()) {
-                  processor.setRoi(roi_[i]);
-                  last_[i] = processor.getStats().mean - bg;
-               }
+      if (channels_ > 1 && ratio_ && channel == 0) {
+         //Remember values of first channel when doing ratio plotting
+         for (int i = 0; i < rois_; i++) {
+            if (!roi_[i].isCursor()) {
+               last_[i] = means_[i] - bg;
             }
-            if (backgroundEq_ >= 0) {
-               last_[backgroundEq_] = bg;
-            }
-         } else {
-            int idx = 0; // follow series order with background gaps
-            for (int i = 0; i < rois_; i++) {
-               if (!roi_[i].isCursor()) {
-                  processor.setRoi(roi_[i]);
-                  v = processor.getStats().mean - bg;
-                  if (ratio_) {
-                     // Compute ratio, assign to base channel
-                     channel = 0;
-                     v = last_[i] / (v + 0.000001); //Check!
-                  }
-                  data_[channel + idx * plots_].add((double) elapsedTimeMs, v, idx >= rois_ - 1);
-                  idx++; // Background ROIs do not have data series, just one at the end
-               }
-            }
-            if (backgroundEq_ >= 0) {
+         }
+         if (backgroundEq_ >= 0) {
+            last_[backgroundEq_] = bg;
+         }
+      } else {
+         int idx = 0; // follow series order with background gaps
+         for (int i = 0; i < rois_; i++) {
+            if (!roi_[i].isCursor()) {
+               v = means_[i] - bg;
                if (ratio_) {
-                  bg = last_[backgroundEq_] / (bg + 0.000001); //Check!
+                  // Compute ratio, assign to base channel
+                  channel = 0;
+                  v = last_[i] / (v + 0.000001); //Check!
                }
-               data_[channel + idx * plots_].add((double) elapsedTimeMs, bg, true);
+               pendingPoints_.add(new PlotPoint(channel + idx * plots_, elapsedTimeMs, v));
+               idx++; // Background ROIs do not have data series, just one at the end
+            }
+         }
+         if (backgroundEq_ >= 0) {
+            if (ratio_) {
+               bg = last_[backgroundEq_] / (bg + 0.000001); //Check!
             }
+            pendingPoints_.add(new PlotPoint(channel + idx * plots_, elapsedTimeMs, bg));
          }
       }
       imagesReceived_++;
    }
 
+   /**
+    * Fills means_ with the mean intensity of each ROI in the image. Uses the raw pixel
+    * buffer when possible and falls back to an ImageJ processor otherwise (e.g. RGB).
+    */
+   private void measureMeans(Image image) {
+      Object pixels = image.getNumComponents() == 1 ? image.getRawPixels() : null;
+      boolean areasOnly = true;
+      for (int i = 0; i < rois_; i++) {
+         areasOnly &= RoiIntensityEngine.canMeasure(roi_[i]);
+      }
+      if (areasOnly && RoiIntensityEngine.canMeasure(pixels)) {
+         if (engine_ == null || engine_.getWidth() != image.getWidth()
+               || engine_.getHeight() != image.getHeight()) {
+            engine_ = new RoiIntensityEngine(roi_, rois_, image.getWidth(), image.getHeight());
+         }
+         engine_.measureMeans(pixels, means_);
+         return;
+      }
+      ImageProcessor processor = studio_.data().ij().createProcessor(image);
+      for (int i = 0; i < rois_; i++) {
+         processor.setRoi(roi_[i]);
+         means_[i] = processor.getStats().mean;
+      }
+   }
+
+   /**
+    * Adds all points measured since the last call to the chart, notifying the chart
+    * once per series. Runs on the EDT.
+    */
+   private void flushPoints() {
+      XYSeries[] data = data_;
+      if (data == null || pendingPoints_.isEmpty()) {
+         return;
+      }
+      boolean[] changed = new boolean[data.length];
+      PlotPoint point;
+      while ((point = pendingPoints_.poll()) != null) {
+         if (point.series_ < data.length && data[point.series_] != null) {
+            data[point.series_].add(point.x_, point.y_, false);
+            changed[point.series_] = true;
+         }
+      }
+      for (int i = 0; i < data.length; i++) {
+         if (changed[i]) {
+            data[i].fireSeriesChanged();
+         }
+      }
+      title_.setText("Data should be on the plot.(" + imagesReceived_ + " images)");
+   }
+
+   private static final class PlotPoint {
+      private final int series_;
+      private final double x_;
+      private final double y_;
+
+      private PlotPoint(int series, double x, double y) {
+         series_ = series;
+         x_ = x;
+         y_ = y;
+      }
+   }
+
    /**
     * Create a frame with a plot of the data given in XYSeries.
     *
@@ -0,0 +1,76 @@
+package org.micromanager.plugins.rtintensities;
+
+import ij.gui.OvalRoi;
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RoiIntensityEngineTest {
+   private static final int WIDTH = 97;
+   private static final int HEIGHT = 61;
+
+   private static Roi[] testRois() {
+      return new Roi[] {
+            new Roi(3, 4, 20, 10),
+            new OvalRoi(50, 20, 30, 55), // extends past the bottom edge
+            new PolygonRoi(new int[] {1, 40, 10}, new int[] {1, 5, 50}, 3, Roi.POLYGON),
+            new OvalRoi(-5, -5, 20, 20) // extends past the top left corner
+      };
+   }
+
+   private static void assertMatchesImageJ(Object pixels, ImageProcessor processor) {
+      Roi[] rois = testRois();
+      RoiIntensityEngine engine = new RoiIntensityEngine(rois, rois.length, WIDTH, HEIGHT);
+      double[] means = new double[rois.length];
+      engine.measureMeans(pixels, means);
+      for (int i = 0; i < rois.length; i++) {
+         processor.setRoi(rois[i]);
+         Assert.assertEquals(processor.getStats().pixelCount, engine.getPixelCount(i));
+         Assert.assertEquals(processor.getStats().mean, means[i], 1e-9);
+      }
+   }
+
+   @Test
+   public void testShortPixels() {
+      Random random = new Random(1);
+      short[] pixels = new short[WIDTH * HEIGHT];
+      for (int i = 0; i < pixels.length; i++) {
+         pixels[i] = (short) random.nextInt(65536);
+      }
+      assertMatchesImageJ(pixels, new ShortProcessor(WIDTH, HEIGHT, pixels, null));
+   }
+
+   @Test
+   public void testBytePixels() {
+      Random random = new Random(2);
+      byte[] pixels = new byte[WIDTH * HEIGHT];
+      random.nextBytes(pixels);
+      assertMatchesImageJ(pixels, new ByteProcessor(WIDTH, HEIGHT, pixels));
+   }
+
+   @Test
+   public void testFloatPixels() {
+      Random random = new Random(3);
+      float[] pixels = new float[WIDTH * HEIGHT];
+      for (int i = 0; i < pixels.length; i++) {
+         pixels[i] = random.nextFloat() * 100.0f;
+      }
+      assertMatchesImageJ(pixels, new FloatProcessor(WIDTH, HEIGHT, pixels));
+   }
+
+   @Test
+   public void testRoiOutsideImage() {
+      Roi[] rois = {new Roi(200, 200, 10, 10)};
+      RoiIntensityEngine engine = new RoiIntensityEngine(rois, 1, WIDTH, HEIGHT);
+      double[] means = new double[1];
+      engine.measureMeans(new short[WIDTH * HEIGHT], means);
+      Assert.assertEquals(0, engine.getPixelCount(0));
+      Assert.assertTrue(Double.isNaN(means[0]));
+   }
+}
@@ -24,15 +24,12 @@
 package org.micromanager.ratioimaging;
 
 import ij.ImagePlus;
-import ij.process.Blitter;
-import ij.process.ByteProcessor;
-import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
-import ij.process.ShortProcessor;
 import java.awt.Rectangle;
 import java.text.ParseException;
-import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.micromanager.PropertyMap;
 import org.micromanager.Studio;
 import org.micromanager.data.Coords;
@@ -53,6 +50,8 @@ import org.micromanager.internal.utils.NumberUtils;
  * @author nico
  */
 public class RatioImagingProcessor implements Processor {
+   // Maximum number of images waiting for the image of the other channel
+   private static final int MAX_PENDING = 128;
 
    private final Studio studio_;
    private final PropertyMap settings_;
@@ -63,7 +62,13 @@ public class RatioImagingProcessor implements Processor {
    private final String bc2Path_;
    private ImagePlus bc1_;
    private ImagePlus bc2_;
-   private final List<Image> images_;
+   private int[] bc1Pixels_;
+   private int[] bc2Pixels_;
+   private final RatioKernel kernel_;
+   // Images of channel 1 or 2 waiting for the image of the other channel,
+   // by their coords without the channel axis
+   private final Map<Coords, Image> pending_;
+   private boolean droppedPending_ = false;
    private boolean process_;
    private int ch1Index_;
    private int ch2Index_;
@@ -78,7 +83,20 @@ public class RatioImagingProcessor implements Processor {
    public RatioImagingProcessor(Studio studio, PropertyMap settings) {
       studio_ = studio;
       settings_ = settings;
-      images_ = new ArrayList<Image>();
+      pending_ = new LinkedHashMap<Coords, Image>() {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<Coords, Image> eldest) {
+            if (size() <= MAX_PENDING) {
+               return false;
+            }
+            if (!droppedPending_) {
+               droppedPending_ = true;
+               studio_.logs().logMessage("Ratio Imaging: no matching image for "
+                       + eldest.getKey() + ", skipping it");
+            }
+            return true;
+         }
+      };
       int factor = 1;
       int bc1Constant = 0;
       int bc2Constant = 0;
@@ -111,6 +129,7 @@ public class RatioImagingProcessor implements Processor {
       factor_ = factor;
       bc1Constant_ = bc1Constant;
       bc2Constant_ = bc2Constant;
+      kernel_ = new RatioKernel(factor_, bc1Constant_, bc2Constant_);
    }
 
    @Override
@@ -236,188 +255,109 @@ public class RatioImagingProcessor implements Processor {
       int nrBytesPerPixel = newImage.getBytesPerPixel();
       if (bc1_ == null) {
          bc1_ = getBackground(bc1Path_, binning, roi, nrBytesPerPixel);
+         bc1Pixels_ = getPixelValues(bc1_);
       }
       if (bc2_ == null) {
          bc2_ = getBackground(bc2Path_, binning, roi, nrBytesPerPixel);
+         bc2Pixels_ = getPixelValues(bc2_);
       }
       
       if (!process_) {
          return;
       }
 
-      Coords newCoords = newImage.getCoords();
       int c = newImage.getCoords().getC();
       if (!(c == ch1Index_ || c == ch2Index_)) {
          return;
       }
 
-      for (Image oldImage : images_) {
-         Coords oldCoords = oldImage.getCoords();
-         if (newCoords.copyRemovingAxes(Coords.C).equals(oldCoords.copyRemovingAxes(Coords.C))) {
-            if (newCoords.getC() == ch1Index_ && oldCoords.getC() == ch2Index_) {
-               process(newImage, oldImage, context);
-               images_.remove(oldImage);
-               return;
-            }
-         
-            if (oldCoords.getC() == ch1Index_ && newCoords.getC() == ch2Index_) {
-               process(oldImage, newImage, context);
-               images_.remove(oldImage);
-               return;
-            }
+      Coords key = newImage.getCoords().copyRemovingAxes(Coords.C);
+      Image oldImage = pending_.get(key);
+      if (oldImage != null && oldImage.getCoords().getC() != c) {
+         pending_.remove(key);
+         if (c == ch1Index_) {
+            process(newImage, oldImage, context);
+         } else {
+            process(oldImage, newImage, context);
          }
+         return;
       }
       
-      // if we are still here, there was no match, so add this image to our list
-      images_.add(newImage);
+      // if we are still here, there was no match, so wait for the other channel
+      pending_.put(key, newImage);
 
    }
-      
+
    private void process(Image ch1Image, Image ch2Image, ProcessorContext context) {
       
       final Coords ratioCoords = ch1Image.getCoords().copyBuilder().c(ratioIndex_).build();
-      
-      ImageProcessor ch1Proc = studio_.data().ij().createProcessor(ch1Image);
-      ImageProcessor ch2Proc = studio_.data().ij().createProcessor(ch2Image);
-      if (bc1_ != null) {
-         ch1Proc = subtractImageProcessors(ch1Proc, bc1_.getProcessor());
-      }
-      if (bc2_ != null) {
-         ch2Proc = subtractImageProcessors(ch2Proc, bc2_.getProcessor());
+      final int width = ch1Image.getWidth();
+      final int height = ch1Image.getHeight();
+      if (width != ch2Image.getWidth() || height != ch2Image.getHeight()
+              || ch1Image.getBytesPerPixel() != ch2Image.getBytesPerPixel()) {
+         return;
       }
-      ch1Proc = ch1Proc.convertToFloat();
-      ch2Proc = ch2Proc.convertToFloat();
-      ch1Proc.subtract(bc1Constant_);
-      ch2Proc.subtract(bc2Constant_);
-      ImageProcessor ch3Proc = ch1Proc.createProcessor(ch1Proc.getWidth(), 
-              ch1Proc.getHeight());
-      ch3Proc.insert(ch1Proc, 0, 0);
-      ch3Proc.copyBits(ch2Proc, 0, 0, Blitter.DIVIDE);
-      ch3Proc.multiply(factor_);
-      
+      checkBackgroundSize(bc1_, width, height);
+      checkBackgroundSize(bc2_, width, height);
+      final int[] bg1 = bc1Pixels_;
+      final int[] bg2 = bc2Pixels_;
+
+      // The kernel only reads the input pixels, and makes a new output array
+      Object ratioPixels;
       if (ch1Image.getBytesPerPixel() == 1) {
-         // check this actually works....
-         ch3Proc = ch3Proc.convertToByteProcessor();
-      } else if (ch1Image.getBytesPerPixel() == 2) {
-         // ImageJ method seems to be broken. Copied code from ImageJ1 here
-         ch3Proc = convertFloatToShort((FloatProcessor) ch3Proc);
+         ratioPixels = kernel_.ratio((byte[]) ch1Image.getRawPixels(),
+                 (byte[]) ch2Image.getRawPixels(), bg1, bg2);
+      } else {
+         ratioPixels = kernel_.ratio((short[]) ch1Image.getRawPixels(),
+                 (short[]) ch2Image.getRawPixels(), bg1, bg2);
       }
-      int max = (int) ch3Proc.getMax();
+      int max = kernel_.getMax();
       int bitDepth = 1;
       while ((1 << bitDepth) < max && bitDepth <= ch1Image.getBytesPerPixel() * 8) {
          bitDepth += 1;
       }
       
-      Image ratioImage = studio_.data().ij().createImage(ch3Proc, ratioCoords, 
-              ch1Image.getMetadata().copyBuilderWithNewUUID().bitDepth(bitDepth)
-                          .build());
+      Image ratioImage = studio_.data().wrapImage(ratioPixels, width, height,
+              ch1Image.getBytesPerPixel(), 1, ratioCoords,
+              ch1Image.getMetadata().copyBuilderWithNewUUID().bitDepth(bitDepth).build());
       
       context.outputImage(ratioImage);
    }
-   
-   /**
-    * Copied from https://github.com/imagej/imagej1/blob/master/ij/process/TypeConverter.java.
-    *
-    * <p>The call to chrProc.convertToShortProcess results in pixel values of -1
-    * Not sure why (but in included ImageJ version?) 
-    * Copying the relevant code from the ImageJ1 source fixes it
-    *
-    * @param ip FloatProcessor to be converted
-    * @return Shortprocessor
-    */
-   ShortProcessor convertFloatToShort(FloatProcessor ip) {
-      float[] pixels32 = (float[]) ip.getPixels();
-      short[] pixels16 = new short[ip.getWidth() * ip.getHeight()];
-      double value;
-      for (int i = 0, j = 0; i < (ip.getWidth() * ip.getHeight()); i++) {
-         value = pixels32[i];
-         if (value < 0.0) {
-            value = 0.0;
-         }
-         if (value > 65535.0) {
-            value = 65535.0;
-         }
-         pixels16[i] = (short) (value + 0.5);
-      }
-      return new ShortProcessor(ip.getWidth(), ip.getHeight(), pixels16, ip.getColorModel());
-   }
-   
-   private static ByteProcessor subtractByteProcessors(ByteProcessor proc1, ByteProcessor proc2) {
-      return new ByteProcessor(proc1.getWidth(), proc1.getHeight(),
-              subtractPixelArrays((byte []) proc1.getPixels(), (byte []) proc2.getPixels()),
-              null);
-   }
-
-   private static ShortProcessor subtractShortProcessors(ShortProcessor proc1,
-                                                         ShortProcessor proc2) {
-      return new ShortProcessor(proc1.getWidth(), proc1.getHeight(),
-              subtractPixelArrays((short []) proc1.getPixels(), (short []) proc2.getPixels()),
-              null);
-   }
 
    /**
-    * Subtracts array 2 from array 1 and returens the result.
+    * Fails when a background image does not have the size of the images,
+    * e.g. after a change in ROI, so that no ratio image is made and the error
+    * is reported by the pipeline.
     *
-    * @param array1 Source array
-    * @param array2 Array to subtract (member by member) from the source array
-    * @return Resulting array
+    * @param background Background image, may be null
+    * @param width Width of the images
+    * @param height Height of the images
     */
-   public static byte[] subtractPixelArrays(byte[] array1, byte[] array2) {
-      int l = array1.length;
-      byte[] result = new byte[l];
-      for (int i = 0; i < l; ++i) {
-         result[i] = (byte) Math.max(0, unsignedValue(array1[i])
-               - unsignedValue(array2[i]));
+   private static void checkBackgroundSize(ImagePlus background, int width, int height) {
+      if (background != null
+              && (background.getWidth() != width || background.getHeight() != height)) {
+         throw new IllegalStateException("Ratio Imaging: background image of "
+                 + background.getWidth() + "x" + background.getHeight()
+                 + " does not match image of " + width + "x" + height);
       }
-      return result;
    }
 
    /**
-    * Subtracts array 2 from array 1 and returens the result.
+    * Returns the pixel values of a background image, to be subtracted from
+    * images of the same size.
     *
-    * @param array1 Source array
-    * @param array2 Array to subtract (member by member) from the source array
-    * @return Resulting array
+    * @param background Background image, may be null
+    * @return Unsigned pixel values, or null when there is no background
     */
-   public static short[] subtractPixelArrays(short[] array1, short[] array2) {
-      int l = array1.length;
-      short[] result = new short[l];
-      for (int i = 0; i < l; ++i) {
-         result[i] = (short) Math.max(0, unsignedValue(array1[i]) - unsignedValue(array2[i]));
-      }
-      return result;
-   }
-   
-   public static int unsignedValue(byte b) {
-      // Sign-extend, then mask
-      return ((int) b) & 0x000000ff;
-   }
-
-   public static int unsignedValue(short s) {
-      // Sign-extend, then mask
-      return ((int) s) & 0x0000ffff;
-   }
-
-   /**
-    * Subtracts ImageProcessor 2 from 1 and returns the result.
-    *
-    * @param proc1 Source image
-    * @param proc2 Image subtract (pixel by pixel) from the proc1
-    * @return Resulting Image
-    */
-   public static ImageProcessor subtractImageProcessors(ImageProcessor proc1,
-                                                        ImageProcessor proc2) {
-      if ((proc1.getWidth() != proc2.getWidth())
-              || (proc1.getHeight() != proc2.getHeight())) {
+   private static int[] getPixelValues(ImagePlus background) {
+      if (background == null) {
          return null;
       }
-
-      if (proc1 instanceof ByteProcessor && proc2 instanceof ByteProcessor) {
-         return subtractByteProcessors((ByteProcessor) proc1, (ByteProcessor) proc2);
-      } else if (proc1 instanceof ShortProcessor && proc2 instanceof ShortProcessor) {
-         return subtractShortProcessors((ShortProcessor) proc1, (ShortProcessor) proc2);
+      ImageProcessor proc = background.getProcessor();
+      int[] values = new int[proc.getPixelCount()];
+      for (int i = 0; i < values.length; i++) {
+         values[i] = Math.max(0, Math.round(proc.getf(i)));
       }
-      
-      return null;
+      return values;
    }
 }
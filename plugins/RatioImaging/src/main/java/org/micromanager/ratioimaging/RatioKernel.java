@@ -0,0 +1,190 @@
+///////////////////////////////////////////////////////////////////////////////
+//FILE:          RatioKernel.java
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     RatioImaging plugin
+//-----------------------------------------------------------------------------
+//
+// COPYRIGHT:    Regents of the University of California, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.ratioimaging;
+
+import ij.process.FloatBlitter;
+
+/**
+ * Calculates ratio images directly on the pixel arrays.
+ *
+ * <p>For every pixel, the background image (if any) is subtracted from each
+ * channel (clipping at zero), then the background constant, after which the
+ * first channel is divided by the second and the result multiplied by the
+ * factor.  This gives the same numbers as doing these steps one by one with
+ * ImageJ processors (conversion to float, Blitter.DIVIDE, multiply and
+ * conversion back), but in one pass and without intermediate images.</p>
+ *
+ * <p>16-bit ratios are rounded and clipped to 0-65535.  8-bit ratios are
+ * scaled to 0-255 as ImageJ does when converting a float image to 8-bit,
+ * which takes a second pass over a float buffer that is kept between images.
+ * The range used for that scaling is the one the ImageJ steps ended up with:
+ * that of channel 1 after subtraction of both backgrounds, since ImageJ does
+ * not update the display range when dividing and multiplying.</p>
+ *
+ * <p>Not thread safe.</p>
+ */
+final class RatioKernel {
+   private final int factor_;
+   private final int bc1Constant_;
+   private final int bc2Constant_;
+   private float[] ratios_;
+   private int max_;
+
+   RatioKernel(int factor, int bc1Constant, int bc2Constant) {
+      factor_ = factor;
+      bc1Constant_ = bc1Constant;
+      bc2Constant_ = bc2Constant;
+   }
+
+   /**
+    * Maximum pixel value of the last ratio image, as ImageJ would report it
+    * for that image (255 for 8-bit images).
+    *
+    * @return Maximum pixel value
+    */
+   int getMax() {
+      return max_;
+   }
+
+   /**
+    * Value that Blitter.DIVIDE assigns when dividing by zero.  ImageJ only
+    * uses the value from its preferences when it is finite.
+    */
+   private static float divideByZeroValue() {
+      float value = FloatBlitter.divideByZeroValue;
+      return Float.isInfinite(value) ? Float.NaN : value;
+   }
+
+   /**
+    * Calculates the ratio of a pixel.
+    *
+    * @param v1 Value of channel 1, after subtraction of the background image.
+    * @param v2 Value of channel 2, after subtraction of the background image.
+    * @param divideByZero Result of a division by zero, or NaN when it
+    *                     follows IEEE rules (+-Infinity or NaN).
+    * @return Ratio multiplied by the factor.
+    */
+   private float ratio(int v1, int v2, float divideByZero) {
+      // Same steps as FloatProcessor.subtract(), Blitter.DIVIDE and
+      // FloatProcessor.multiply().  ImageJ subtracts and multiplies in double,
+      // but with integer pixels and constants that gives the same floats
+      float f1 = (float) v1 - bc1Constant_;
+      float f2 = (float) v2 - bc2Constant_;
+      float r = f2 == 0f && !Float.isNaN(divideByZero) ? divideByZero : f1 / f2;
+      return r * factor_;
+   }
+
+   /**
+    * Calculates the ratio image of two 16-bit images.
+    *
+    * @param ch1 Pixels of channel 1.
+    * @param ch2 Pixels of channel 2, same length as ch1.
+    * @param bg1 Background of channel 1 (same length), or null.
+    * @param bg2 Background of channel 2 (same length), or null.
+    * @return New array with the ratio image.
+    */
+   short[] ratio(short[] ch1, short[] ch2, int[] bg1, int[] bg2) {
+      final float divideByZero = divideByZeroValue();
+      final int length = ch1.length;
+      short[] result = new short[length];
+      int max = 0;
+      for (int i = 0; i < length; i++) {
+         int v1 = ch1[i] & 0xffff;
+         int v2 = ch2[i] & 0xffff;
+         if (bg1 != null) {
+            v1 = Math.max(0, v1 - bg1[i]);
+         }
+         if (bg2 != null) {
+            v2 = Math.max(0, v2 - bg2[i]);
+         }
+         double value = ratio(v1, v2, divideByZero);
+         if (value < 0.0) {
+            value = 0.0;
+         }
+         if (value > 65535.0) {
+            value = 65535.0;
+         }
+         int out = (int) (value + 0.5);
+         result[i] = (short) out;
+         if (out > max) {
+            max = out;
+         }
+      }
+      max_ = max;
+      return result;
+   }
+
+   /**
+    * Calculates the ratio image of two 8-bit images.
+    *
+    * @param ch1 Pixels of channel 1.
+    * @param ch2 Pixels of channel 2, same length as ch1.
+    * @param bg1 Background of channel 1 (same length), or null.
+    * @param bg2 Background of channel 2 (same length), or null.
+    * @return New array with the ratio image.
+    */
+   byte[] ratio(byte[] ch1, byte[] ch2, int[] bg1, int[] bg2) {
+      final float divideByZero = divideByZeroValue();
+      final int length = ch1.length;
+      if (ratios_ == null || ratios_.length != length) {
+         ratios_ = new float[length];
+      }
+      final float[] ratios = ratios_;
+      // Range of channel 1 before subtraction of the constant
+      int min = Integer.MAX_VALUE;
+      int max = Integer.MIN_VALUE;
+      for (int i = 0; i < length; i++) {
+         int v1 = ch1[i] & 0xff;
+         int v2 = ch2[i] & 0xff;
+         if (bg1 != null) {
+            v1 = Math.max(0, v1 - bg1[i]);
+         }
+         if (bg2 != null) {
+            v2 = Math.max(0, v2 - bg2[i]);
+         }
+         ratios[i] = ratio(v1, v2, divideByZero);
+         if (v1 < min) {
+            min = v1;
+         }
+         if (v1 > max) {
+            max = v1;
+         }
+      }
+      // Scaling as in FloatProcessor.create8BitImage(), with the range
+      // FloatProcessor.subtract() found for channel 1
+      final float min1 = (float) min - bc1Constant_;
+      final float max1 = (float) max - bc1Constant_;
+      final float scale = 255f / (max1 - min1);
+      byte[] result = new byte[length];
+      for (int i = 0; i < length; i++) {
+         float value = ratios[i] - min1;
+         if (value < 0f) {
+            value = 0f;
+         }
+         int out = (int) (value * scale + 0.5f);
+         if (out > 255) {
+            out = 255;
+         }
+         result[i] = (byte) out;
+      }
+      max_ = 255;
+      return result;
+   }
+}
@@ -0,0 +1,150 @@
+package org.micromanager.ratioimaging;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import ij.process.Blitter;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks that {@link RatioKernel} gives the same images as the ImageJ steps
+ * RatioImagingProcessor used before: background image subtraction, conversion
+ * to float, subtraction of the constant, Blitter.DIVIDE, multiplication and
+ * conversion back.
+ */
+public class RatioKernelTest {
+   private static final int WIDTH = 37;
+   private static final int HEIGHT = 23;
+
+   private static ImageProcessor random(boolean sixteenBit, int max, long seed) {
+      Random random = new Random(seed);
+      ImageProcessor proc = sixteenBit ? new ShortProcessor(WIDTH, HEIGHT)
+            : new ByteProcessor(WIDTH, HEIGHT);
+      for (int i = 0; i < WIDTH * HEIGHT; i++) {
+         // Some zeros, so that divisions by zero are exercised
+         proc.set(i, random.nextInt(10) == 0 ? 0 : random.nextInt(max + 1));
+      }
+      return proc;
+   }
+
+   private static int[] values(ImageProcessor proc) {
+      int[] values = new int[proc.getPixelCount()];
+      for (int i = 0; i < values.length; i++) {
+         values[i] = proc.get(i);
+      }
+      return values;
+   }
+
+   // Pixel by pixel subtraction, clipping at zero
+   private static ImageProcessor subtract(ImageProcessor proc, ImageProcessor background) {
+      ImageProcessor result = proc.duplicate();
+      for (int i = 0; i < proc.getPixelCount(); i++) {
+         result.set(i, Math.max(0, proc.get(i) - background.get(i)));
+      }
+      return result;
+   }
+
+   private static ImageProcessor legacyRatio(ImageProcessor ch1, ImageProcessor ch2,
+                                             ImageProcessor bg1, ImageProcessor bg2,
+                                             int factor, int bc1Constant, int bc2Constant) {
+      if (bg1 != null) {
+         ch1 = subtract(ch1, bg1);
+      }
+      if (bg2 != null) {
+         ch2 = subtract(ch2, bg2);
+      }
+      ImageProcessor f1 = ch1.convertToFloat();
+      ImageProcessor f2 = ch2.convertToFloat();
+      f1.subtract(bc1Constant);
+      f2.subtract(bc2Constant);
+      ImageProcessor ratio = f1.createProcessor(WIDTH, HEIGHT);
+      ratio.insert(f1, 0, 0);
+      ratio.copyBits(f2, 0, 0, Blitter.DIVIDE);
+      ratio.multiply(factor);
+      if (ch1 instanceof ByteProcessor) {
+         return ratio.convertToByteProcessor();
+      }
+      // RatioImagingProcessor.convertFloatToShort
+      float[] pixels32 = (float[]) ((FloatProcessor) ratio).getPixels();
+      short[] pixels16 = new short[pixels32.length];
+      for (int i = 0; i < pixels32.length; i++) {
+         double value = pixels32[i];
+         if (value < 0.0) {
+            value = 0.0;
+         }
+         if (value > 65535.0) {
+            value = 65535.0;
+         }
+         pixels16[i] = (short) (value + 0.5);
+      }
+      return new ShortProcessor(WIDTH, HEIGHT, pixels16, null);
+   }
+
+   private static void check(boolean sixteenBit, boolean backgrounds, int factor,
+                             int bc1Constant, int bc2Constant, long seed) {
+      int max = sixteenBit ? 4095 : 255;
+      ImageProcessor ch1 = random(sixteenBit, max, seed);
+      ImageProcessor ch2 = random(sixteenBit, max, seed + 1);
+      ImageProcessor bg1 = backgrounds ? random(sixteenBit, max / 8, seed + 2) : null;
+      ImageProcessor bg2 = backgrounds ? random(sixteenBit, max / 8, seed + 3) : null;
+      ImageProcessor expected = legacyRatio(ch1, ch2, bg1, bg2, factor,
+            bc1Constant, bc2Constant);
+
+      RatioKernel kernel = new RatioKernel(factor, bc1Constant, bc2Constant);
+      int[] bgValues1 = backgrounds ? values(bg1) : null;
+      int[] bgValues2 = backgrounds ? values(bg2) : null;
+      String message = (sixteenBit ? "16" : "8") + "-bit, backgrounds " + backgrounds
+            + ", factor " + factor + ", constants " + bc1Constant + " " + bc2Constant;
+      if (sixteenBit) {
+         short[] ch2Before = ((short[]) ch2.getPixels()).clone();
+         short[] actual = kernel.ratio((short[]) ch1.getPixels(), (short[]) ch2.getPixels(),
+               bgValues1, bgValues2);
+         assertArrayEquals(message, (short[]) expected.getPixels(), actual);
+         assertEquals(message, (int) expected.getMax(), kernel.getMax());
+         // Input pixels are left alone
+         assertArrayEquals(ch2Before, (short[]) ch2.getPixels());
+      } else {
+         byte[] actual = kernel.ratio((byte[]) ch1.getPixels(), (byte[]) ch2.getPixels(),
+               bgValues1, bgValues2);
+         assertArrayEquals(message, (byte[]) expected.getPixels(), actual);
+         assertEquals(message, 255, kernel.getMax());
+      }
+   }
+
+   @Test
+   public void sixteenBitMatchesImageJ() {
+      check(true, false, 1, 0, 0, 1);
+      check(true, false, 1000, 0, 0, 2);
+      check(true, true, 1000, 0, 0, 3);
+      check(true, true, 500, 20, 30, 4);
+      for (long seed = 10; seed < 20; seed++) {
+         check(true, true, 100 * (int) seed, (int) seed, (int) seed % 4, seed);
+      }
+   }
+
+   @Test
+   public void eightBitMatchesImageJ() {
+      check(false, false, 1, 0, 0, 5);
+      check(false, true, 100, 0, 0, 6);
+      check(false, true, 10, 5, 3, 7);
+      for (long seed = 10; seed < 20; seed++) {
+         check(false, true, (int) seed, (int) seed % 7, (int) seed % 4, seed);
+      }
+   }
+
+   @Test
+   public void bufferIsReusedForImagesOfAnotherSize() {
+      RatioKernel kernel = new RatioKernel(1, 0, 0);
+      byte[] small = {10, 20};
+      assertEquals(2, kernel.ratio(small, small, null, null).length);
+      byte[] large = new byte[WIDTH * HEIGHT];
+      Arrays.fill(large, (byte) 7);
+      assertEquals(large.length, kernel.ratio(large, large, null, null).length);
+   }
+}
@@ -14,6 +14,9 @@
  * cameras are displayed correctly and so that images are all processed by
  * the default image processing queue.
  *
+ * Updated 2026 to recall on a background thread while the images are shown,
+ * optionally saving them directly to disk.
+ *
  * Copyright University of California
  *
  * LICENSE:      This file is distributed under the BSD license.
@@ -29,21 +32,20 @@
 package org.micromanager.recall;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import javax.swing.JOptionPane;
 import mmcorej.CMMCore;
-import mmcorej.TaggedImage;
-import mmcorej.org.json.JSONException;
 import org.micromanager.MenuPlugin;
 import org.micromanager.Studio;
-import org.micromanager.acquisition.internal.TaggedImageQueue;
 import org.micromanager.data.Coords;
 import org.micromanager.data.Datastore;
-import org.micromanager.data.DatastoreFrozenException;
-import org.micromanager.data.Image;
 import org.micromanager.data.SummaryMetadata;
 import org.micromanager.internal.MMStudio;
+import org.micromanager.internal.utils.FileDialogs;
+import org.micromanager.internal.utils.JavaUtils;
 import org.scijava.plugin.Plugin;
 import org.scijava.plugin.SciJavaPlugin;
 
@@ -54,7 +56,6 @@ public class RecallPlugin implements MenuPlugin, SciJavaPlugin {
          "Recalls (live) images left over in the internal sequence buffer";
    private CMMCore core_;
    private MMStudio studio_;
-   // TODO: assign this name to the viewer window once the api has that ability
    private final String acqName_ = "Live Replay";
    private Datastore store_;
 
@@ -78,7 +79,11 @@ public class RecallPlugin implements MenuPlugin, SciJavaPlugin {
          return;
       }
 
-      store_ = studio_.data().createRAMDatastore();
+      store_ = createDatastore(remaining);
+      if (store_ == null) {
+         return;
+      }
+      store_.setName(acqName_);
       // It is imperative to set the axis order, or animation will not work correctly
       final SummaryMetadata.Builder metadataBuilder = store_.getSummaryMetadata().copyBuilder();
       List<String> orderedAxis = new ArrayList<String>();
@@ -101,83 +106,50 @@ public class RecallPlugin implements MenuPlugin, SciJavaPlugin {
       studio_.getDisplayManager().createDisplay(store_);
       studio_.getDisplayManager().manage(store_);
 
-      String camera = core_.getCameraDevice();
-
-      if (numCameraChannels == 1) {
-         int frameCounter = 0;
-         for (int i = 0; i < remaining; i++) {
-            try {
-               TaggedImage tImg = core_.popNextTaggedImage();
-
-               Image convertedTaggedImage = studio_.data().convertTaggedImage(tImg);
-               if (convertedTaggedImage != null) {
-                  store_.putImage(normalizeTags(convertedTaggedImage, tImg, frameCounter));
-               }
-               frameCounter++;
-            } catch (DatastoreFrozenException e) { // Can't add to datastore.
-               studio_.logs().logError(e);
-            } catch (JSONException e) { // Error in TaggedImage tags
-               studio_.logs().logError(e);
-            } catch (Exception e) { // Error in popNextTaggedImage
-               studio_.logs().logError(e);
-            }
-         }
-      } else {
-         int[] frameCounters = new int[numCameraChannels];
-         for (int i = 0; i < remaining; i++) {
-            try {
-               TaggedImage tImg = core_.popNextTaggedImage();
-
-               if (!tImg.tags.has(camera + "-CameraChannelName")) {
-                  continue;
-               }
-               String channelName = tImg.tags.getString(camera + "-CameraChannelName");
-               tImg.tags.put("Channel", channelName);
-               int channelIndex = tImg.tags.getInt(camera + "-CameraChannelIndex");
-               tImg.tags.put("ChannelIndex", channelIndex);
-               Image convertedTaggedImage = studio_.data().convertTaggedImage(tImg);
-               if (convertedTaggedImage != null) {
-                  store_.putImage(normalizeTags(
-                        convertedTaggedImage, tImg, frameCounters[channelIndex]));
-               }
-               frameCounters[channelIndex]++;
-            } catch (DatastoreFrozenException e) { // Can't add to datastore.
-               studio_.logs().logError(e);
-            } catch (JSONException e) { // Error in TaggedImage tags
-               studio_.logs().logError(e);
-            } catch (Exception e) { // Error in popNextTaggedImage
-               studio_.logs().logError(e);
-            }
-         }
-      }
+      // Images appear in the display as they are recalled
+      new RecallWorker(studio_, store_, remaining, numCameraChannels).execute();
    }
 
-   private Image normalizeTags(Image convertedTaggedImage, TaggedImage ti, int frameIndex) {
-
-      Coords.Builder coordsBuilder = convertedTaggedImage.getCoords().copyBuilder();
-      if (ti != TaggedImageQueue.POISON) {
-         int channel = 0;
-
-         try {
-            if (ti.tags.has("Multi Camera-CameraChannelIndex")) {
-               channel = ti.tags.getInt("Multi Camera-CameraChannelIndex");
-            } else if (ti.tags.has("CameraChannelIndex")) {
-               channel = ti.tags.getInt("CameraChannelIndex");
-            } else if (ti.tags.has("ChannelIndex")) {
-               channel = ti.tags.getInt("ChannelIndex");
-            }
-
-            Coords coords = coordsBuilder.channel(channel).t(frameIndex).build();
-
-            return convertedTaggedImage.copyAtCoords(coords);
-
-         } catch (JSONException ex) {
-            studio_.logs().logError(ex);
+   /**
+    * Creates a RAM datastore, or when the images in the buffer may not fit in
+    * memory and the user agrees, a datastore on disk in the preferred format.
+    *
+    * @return the datastore, or null if the user cancelled
+    */
+   private Datastore createDatastore(int numImages) {
+      long bytes = (long) numImages * core_.getImageBufferSize();
+      if (bytes < JavaUtils.getAvailableUnusedMemory() / 2) {
+         return studio_.data().createRAMDatastore();
+      }
+      String[] options = {"Save to Disk...", "Keep in Memory", "Cancel"};
+      int choice = JOptionPane.showOptionDialog(null,
+            String.format("The %d images in the buffer (%d MB) may not fit in memory.%n"
+                  + "Save them directly to disk instead?", numImages, bytes >> 20),
+            MENU_NAME, JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE,
+            null, options, options[0]);
+      if (choice == 1) {
+         return studio_.data().createRAMDatastore();
+      } else if (choice != 0) {
+         return null;
+      }
+      File file = FileDialogs.save(null, "Save Live Replay images", FileDialogs.MM_DATA_SET);
+      if (file == null) {
+         return null;
+      }
+      String dir = studio_.data().getUniqueSaveDirectory(file.getAbsolutePath());
+      try {
+         switch (studio_.data().getPreferredSaveMode()) {
+            case MULTIPAGE_TIFF:
+               return studio_.data().createMultipageTIFFDatastore(dir, true, false);
+            case SINGLEPLANE_TIFF_SERIES:
+               return studio_.data().createSinglePlaneTIFFSeriesDatastore(dir);
+            default:
+               return studio_.data().createNDTIFFDatastore(dir);
          }
+      } catch (IOException ioe) {
+         studio_.logs().showError(ioe, "Failed to create a datastore in " + dir);
+         return null;
       }
-
-      Coords coords = coordsBuilder.c(0).t(frameIndex).build();
-      return convertedTaggedImage.copyAtCoords(coords);
    }
 
    public void configurationChanged() {
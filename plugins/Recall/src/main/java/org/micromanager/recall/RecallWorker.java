@@ -0,0 +1,294 @@
+/*
+ * Micro-Manager "Live Replay"
+ *
+ * Copies the images in the Micro-Manager circular buffer into a Datastore on
+ * a background thread.
+ *
+ * Copyright University of California
+ *
+ * LICENSE:      This file is distributed under the BSD license.
+ * License text is included with the source distribution.
+ * This file is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+ */
+
+package org.micromanager.recall;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import mmcorej.CMMCore;
+import mmcorej.TaggedImage;
+import mmcorej.org.json.JSONObject;
+import org.micromanager.PropertyMap;
+import org.micromanager.Studio;
+import org.micromanager.data.Coords;
+import org.micromanager.data.Datastore;
+import org.micromanager.data.Image;
+import org.micromanager.data.Metadata;
+
+/**
+ * Pops the images from the circular buffer and puts them in a Datastore,
+ * which is shown while the images arrive.  Progress is shown in a
+ * ProgressMonitor, that can be used to stop early.
+ *
+ * <p>Only the first image from each camera channel is converted by parsing
+ * all its tags.  Following images with the same size and pixel type get a
+ * copy of that image's metadata, in which the tags that differ from those of
+ * the first image are replaced: the per-frame values such as elapsed time and
+ * stage positions, and the values of the tags that end up in the user data.
+ * When any other tag differs, the image is converted in full and becomes the
+ * new template.  The pixel arrays from the core are used without copying
+ * them.</p>
+ */
+final class RecallWorker extends SwingWorker<Integer, Void> {
+   private final Studio studio_;
+   private final CMMCore core_;
+   private final Datastore store_;
+   private final int numImages_;
+   private final int numCameraChannels_;
+   private final String camera_;
+   private final ProgressMonitor monitor_;
+   private int numErrors_ = 0;
+   // Set when the user cancels; the images recalled so far are kept
+   private volatile boolean stopRequested_ = false;
+
+   // Tags that change from frame to frame and are set in the metadata
+   // directly
+   private static final Set<String> PER_FRAME_TAGS = new HashSet<>(Arrays.asList(
+         "ElapsedTime-ms", "ImageNumber", "ReceivedTime", "Exposure-ms",
+         "PositionName", "XPositionUm", "YPositionUm", "ZPositionUm"));
+
+   /**
+    * A fully converted image and the tags it was converted from.
+    */
+   private static final class Template {
+      final Image image;
+      final JSONObject tags;
+
+      Template(Image image, JSONObject tags) {
+         this.image = image;
+         this.tags = tags;
+      }
+   }
+
+   // Camera and channel index to the last fully converted image
+   private final Map<String, Template> templates_ = new HashMap<>();
+
+   RecallWorker(Studio studio, Datastore store, int numImages, int numCameraChannels) {
+      studio_ = studio;
+      core_ = studio.core();
+      store_ = store;
+      numImages_ = numImages;
+      numCameraChannels_ = numCameraChannels;
+      camera_ = core_.getCameraDevice();
+      monitor_ = new ProgressMonitor(null, "Recalling images from the buffer",
+            "", 0, numImages);
+      monitor_.setMillisToDecideToPopup(250);
+      addPropertyChangeListener(evt -> {
+         if ("progress".equals(evt.getPropertyName())) {
+            monitor_.setProgress((Integer) evt.getNewValue() * numImages_ / 100);
+            if (monitor_.isCanceled()) {
+               stopRequested_ = true;
+            }
+         }
+      });
+   }
+
+   @Override
+   protected Integer doInBackground() {
+      // With a single camera, images are numbered in the order they arrive,
+      // whatever channel their tags name
+      int[] frameCounters = new int[numCameraChannels_];
+      int numRecalled = 0;
+      for (int i = 0; i < numImages_ && !isStopRequested(); i++) {
+         try {
+            TaggedImage tImg = core_.popNextTaggedImage();
+            int channelIndex = 0;
+            int counter = 0;
+            if (numCameraChannels_ > 1) {
+               if (!tImg.tags.has(camera_ + "-CameraChannelName")) {
+                  continue;
+               }
+               channelIndex = tImg.tags.getInt(camera_ + "-CameraChannelIndex");
+               tImg.tags.put("Channel", tImg.tags.getString(camera_ + "-CameraChannelName"));
+               tImg.tags.put("ChannelIndex", channelIndex);
+               counter = channelIndex;
+            } else {
+               channelIndex = getChannelIndex(tImg.tags);
+            }
+            Coords coords = studio_.data().coordsBuilder()
+                  .channel(channelIndex).t(frameCounters[counter]).build();
+            store_.putImage(convert(tImg, channelIndex, coords));
+            frameCounters[counter]++;
+            numRecalled++;
+         } catch (Exception e) {
+            // Error in popNextTaggedImage or in the tags
+            numErrors_++;
+            studio_.logs().logError(e, "Live Replay failed to recall an image");
+         }
+         setProgress((i + 1) * 100 / numImages_);
+      }
+      return numRecalled;
+   }
+
+   /**
+    * The ProgressMonitor is only updated when the progress changes, which may
+    * be many frames apart, so it is asked directly as well.
+    */
+   private boolean isStopRequested() {
+      if (!stopRequested_ && monitor_.isCanceled()) {
+         stopRequested_ = true;
+      }
+      return stopRequested_;
+   }
+
+   /**
+    * Index of the camera channel, as the tags of images from a single
+    * camera may still contain it.
+    */
+   private static int getChannelIndex(JSONObject tags) {
+      if (tags.has("Multi Camera-CameraChannelIndex")) {
+         return tags.optInt("Multi Camera-CameraChannelIndex", 0);
+      } else if (tags.has("CameraChannelIndex")) {
+         return tags.optInt("CameraChannelIndex", 0);
+      } else if (tags.has("ChannelIndex")) {
+         return tags.optInt("ChannelIndex", 0);
+      }
+      return 0;
+   }
+
+   private Image convert(TaggedImage tImg, int channelIndex, Coords coords)
+         throws Exception {
+      JSONObject tags = tImg.tags;
+      String key = tags.optString("Camera", "") + "/" + channelIndex;
+      Template template = templates_.get(key);
+      Metadata metadata = null;
+      if (template != null && hasFormatOf(tImg, template.image)) {
+         metadata = updateMetadata(template, tags);
+      }
+      if (metadata == null) {
+         Image image = studio_.data().convertTaggedImage(tImg);
+         templates_.put(key, new Template(image, tags));
+         return image.copyAtCoords(coords);
+      }
+      Image image = template.image;
+      return studio_.data().wrapImage(tImg.pix, image.getWidth(),
+            image.getHeight(), image.getBytesPerPixel(),
+            image.getNumComponents(), coords, metadata);
+   }
+
+   /**
+    * Metadata of the template, with the tags that differ from those of the
+    * template set from the given tags.
+    *
+    * @return the metadata, or null when a tag differs that can only be
+    *     taken into account by converting all tags
+    */
+   private static Metadata updateMetadata(Template template, JSONObject tags)
+         throws Exception {
+      if (tags.length() != template.tags.length()) {
+         return null;
+      }
+      Metadata.Builder builder = template.image.getMetadata().copyBuilderWithNewUUID();
+      PropertyMap userData = template.image.getMetadata().getUserData();
+      PropertyMap.Builder userDataBuilder = null;
+      String[] keys = JSONObject.getNames(tags);
+      for (String key : keys == null ? new String[0] : keys) {
+         Object value = tags.get(key);
+         if (value.equals(template.tags.opt(key))) {
+            continue;
+         }
+         if (PER_FRAME_TAGS.contains(key)) {
+            setPerFrameValue(builder, tags, key);
+         } else if (value instanceof String && userData.containsString(key)) {
+            if (userDataBuilder == null) {
+               userDataBuilder = userData.copyBuilder();
+            }
+            userDataBuilder.putString(key, (String) value);
+         } else {
+            return null;
+         }
+      }
+      if (userDataBuilder != null) {
+         builder.userData(userDataBuilder.build());
+      }
+      return builder.build();
+   }
+
+   private static void setPerFrameValue(Metadata.Builder builder, JSONObject tags, String key)
+         throws Exception {
+      switch (key) {
+         case "ElapsedTime-ms":
+            builder.elapsedTimeMs(tags.getDouble(key));
+            break;
+         case "ImageNumber":
+            builder.imageNumber(tags.getLong(key));
+            break;
+         case "ReceivedTime":
+            builder.receivedTime(tags.getString(key));
+            break;
+         case "Exposure-ms":
+            builder.exposureMs(tags.getDouble(key));
+            break;
+         case "PositionName":
+            builder.positionName(tags.getString(key));
+            break;
+         case "XPositionUm":
+            builder.xPositionUm(tags.getDouble(key));
+            break;
+         case "YPositionUm":
+            builder.yPositionUm(tags.getDouble(key));
+            break;
+         case "ZPositionUm":
+            builder.zPositionUm(tags.getDouble(key));
+            break;
+         default:
+            throw new IllegalArgumentException(key);
+      }
+   }
+
+   /**
+    * Whether the image has the same size and pixel type as the template.
+    */
+   private static boolean hasFormatOf(TaggedImage tImg, Image template) {
+      Object pixels = template.getRawPixels();
+      return tImg.pix != null && tImg.pix.getClass() == pixels.getClass()
+            && Array.getLength(tImg.pix) == Array.getLength(pixels)
+            && tImg.tags.optInt("Width", -1) == template.getWidth()
+            && tImg.tags.optInt("Height", -1) == template.getHeight();
+   }
+
+   @Override
+   protected void done() {
+      monitor_.close();
+      int numRecalled = 0;
+      try {
+         numRecalled = get();
+      } catch (InterruptedException | ExecutionException e) {
+         studio_.logs().logError(e, "Live Replay failed");
+      }
+      try {
+         store_.freeze();
+      } catch (IOException e) {
+         studio_.logs().showError(e, "Failed to finish saving the Live Replay images");
+      }
+      studio_.logs().logMessage("Live Replay recalled " + numRecalled + " of "
+            + numImages_ + " images");
+      if (numErrors_ > 0) {
+         studio_.logs().showError(numErrors_ + " images could not be recalled, "
+               + "see the CoreLog for details");
+      }
+   }
+}
@@ -21,14 +21,11 @@
 
 package org.micromanager.sharpest;
 
-import ij.ImageStack;
-import ij.process.ImageProcessor;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.SortedMap;
-import java.util.TreeMap;
 import javax.swing.SwingWorker;
 import org.jfree.data.xy.XYSeries;
 import org.micromanager.Studio;
@@ -50,6 +47,7 @@ import org.micromanager.display.DisplayWindow;
 // MMStudio API, so it still uses internal classes and interfaces. New code
 // should not imitate this practice.
 import org.micromanager.imageprocessing.ImgSharpnessAnalysis;
+import org.micromanager.imageprocessing.SharpnessStackScorer;
 import org.micromanager.imageprocessing.curvefit.Fitter;
 import org.micromanager.imageprocessing.curvefit.PlotUtils;
 import org.micromanager.internal.utils.FileDialogs;
@@ -252,35 +250,37 @@ public class SharpestPluginExecutor {
                  "No images found while projecting");
          return;
       }
-      ImageStack stack = new ImageStack(
-               tmpImg.getWidth(), tmpImg.getHeight());
+      ImgSharpnessAnalysis imgScoringFunction = new ImgSharpnessAnalysis();
+      imgScoringFunction.setComputationMethod(zpd.sharpnessMethod_);
+      SortedMap<Integer, Double> focusScoreMap;
       Metadata imgMetadata = null;
-      for (int z = 0; z < oldProvider_.getNextIndex(Coords.Z); z++) {
-         Image img = oldProvider_.getImage(cbp.index(Coords.Z, z).build());
-         if (img != null) {  // null happens when this image was skipped
-            if (imgMetadata == null) {
-               imgMetadata = img.getMetadata().copyBuilderWithNewUUID().build();
+      int nrSlices = 0;
+      // Planes are scored on other threads while the next ones are read
+      try (SharpnessStackScorer scorer = new SharpnessStackScorer(imgScoringFunction)) {
+         for (int z = 0; z < oldProvider_.getNextIndex(Coords.Z); z++) {
+            Image img = oldProvider_.getImage(cbp.index(Coords.Z, z).build());
+            if (img != null) {  // null happens when this image was skipped
+               if (imgMetadata == null) {
+                  imgMetadata = img.getMetadata().copyBuilderWithNewUUID().build();
+               }
+               scorer.submit(nrSlices, studio_.data().getImageJConverter().createProcessor(img));
+               nrSlices++;
             }
-            ImageProcessor ip
-                    = studio_.data().getImageJConverter().createProcessor(img);
-            stack.addSlice(ip);
          }
+         focusScoreMap = scorer.getScores();
+      } catch (InterruptedException ie) {
+         Thread.currentThread().interrupt();
+         return;
       }
-      if (stack.getSize() > 0 && imgMetadata != null) {
-         ImgSharpnessAnalysis imgScoringFunction = new ImgSharpnessAnalysis();
-         imgScoringFunction.setComputationMethod(zpd.sharpnessMethod_);
-         imgScoringFunction.allowInPlaceModification(true);
-         SortedMap<Integer, Double> focusScoreMap = new TreeMap<>();
-         int nrSlices = stack.getSize();
+      if (nrSlices > 0 && imgMetadata != null) {
          double maxScore = Double.NEGATIVE_INFINITY;
          int bestIndex = 0;
          for (int i = 0; i < nrSlices; i++) {
-            double score = imgScoringFunction.compute(stack.getProcessor(i + 1));
+            double score = focusScoreMap.get(i);
             if (score > maxScore) {
                maxScore = score;
                bestIndex = i;
             }
-            focusScoreMap.put(i, score);
          }
          if (zpd.showGraph_ || zpd.useFit_) {
             XYSeries xySeries = new XYSeries("Focus Score");
@@ -304,8 +304,8 @@ public class SharpestPluginExecutor {
          }
          if (bestIndex < 0) {
             bestIndex = 0;
-         } else if (bestIndex >= stack.size()) {
-            bestIndex = stack.size() - 1;
+         } else if (bestIndex >= nrSlices) {
+            bestIndex = nrSlices - 1;
          }
          int start = bestIndex;
          int end = bestIndex;
@@ -317,8 +317,8 @@ public class SharpestPluginExecutor {
             start = 0;
             end = zpd.nrPlanes_ - 1;
          }
-         if (end >= stack.size()) {
-            end = stack.size() - 1;
+         if (end >= nrSlices) {
+            end = nrSlices - 1;
             start = end - zpd.nrPlanes_ + 1;
          }
          for (int z = start; z <= end; z++) {
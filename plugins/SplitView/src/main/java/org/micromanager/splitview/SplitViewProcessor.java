@@ -102,7 +102,8 @@ public class SplitViewProcessor implements Processor {
 
    @Override
    public void processImage(Image image, ProcessorContext context) {
-      ImageProcessor proc = studio_.data().ij().createProcessor(image);
+      // Only read, crop() copies the pixels of each part into a new processor
+      ImageProcessor proc = studio_.data().ij().createSharedProcessor(image);
 
       int width = image.getWidth();
       int height = image.getHeight();
@@ -122,7 +123,7 @@ public class SplitViewProcessor implements Processor {
 
          Coords coords = image.getCoords().copy()
                .channel(channelIndex * numSplits_ + i).build();
-         Image output = studio_.data().createImage(proc.crop().getPixels(),
+         Image output = studio_.data().wrapImage(proc.crop().getPixels(),
                width, height, image.getBytesPerPixel(),
                image.getNumComponents(), coords, image.getMetadata());
          context.outputImage(output);